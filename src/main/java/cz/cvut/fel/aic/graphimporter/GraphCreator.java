@@ -23,6 +23,7 @@ import cz.cvut.fel.aic.geographtools.Graph;
 import cz.cvut.fel.aic.geographtools.GraphBuilder;
 import cz.cvut.fel.aic.geographtools.Node;
 import cz.cvut.fel.aic.geographtools.util.StronglyConnectedComponentsFinder;
+import cz.cvut.fel.aic.graphimporter.restriction.TurnRestrictionIndex;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.EdgeBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.client.EdgeFactory;
@@ -55,6 +56,8 @@ public class GraphCreator<N extends Node, E extends Edge> {
 
 	private final Importer importer;
 
+	private TurnRestrictionIndex turnRestrictions;
+
 	public GraphCreator(boolean serializationOn, boolean simplificationOn, Importer importer,
 			NodeFactory<N> nodeFactory, EdgeFactory<N, E> edgeFactory) {
 		this.serializationOn = serializationOn;
@@ -73,16 +76,19 @@ public class GraphCreator<N extends Node, E extends Edge> {
 		Graph<N, E> graph;
 
 		File serializedEdgesFile = new File(importer.getSerializedGraphName());
+		File serializedRestrictionsFile = new File(importer.getSerializedGraphName() + ".restrictions");
 
-		if (serializationOn) {
+		if (serializationOn && importer.isSerializedGraphOutdated()) {
+			LOGGER.info("Serialized graph is outdated, the graph is rebuilt.");
+			graph = buildAndSerialize(serializedEdgesFile, serializedRestrictionsFile);
+		} else if (serializationOn) {
 			try {
 				graph = deserializeGraph(serializedEdgesFile);
 				LOGGER.info("Loading serialized map from:" + serializedEdgesFile.getAbsolutePath());
+				turnRestrictions = deserializeTurnRestrictions(serializedRestrictionsFile);
 			} catch (Exception ex) {
 				LOGGER.warn("Cannot perform deserialization of the cached graphs:" + ex.getMessage());
-				graph = build();
-				removePreviousSerializedGraph(importer.getSerializedBasePath());
-				serializeGraph(graph, serializedEdgesFile);
+				graph = buildAndSerialize(serializedEdgesFile, serializedRestrictionsFile);
 			}
 		} else {
 			graph = build();
@@ -91,6 +97,26 @@ public class GraphCreator<N extends Node, E extends Edge> {
 		return graph;
 	}
 
+	private Graph<N, E> buildAndSerialize(File serializedEdgesFile, File serializedRestrictionsFile) {
+		Graph<N, E> graph = build();
+		removePreviousSerializedGraph(importer.getSerializedBasePath());
+		serializeGraph(graph, serializedEdgesFile);
+		if (turnRestrictions != null) {
+			serializeGraph(turnRestrictions, serializedRestrictionsFile);
+		}
+		return graph;
+	}
+
+	/**
+	 * Turn restrictions of the graph returned by {@link #getMap()}. The restriction nodes are kept by the
+	 * simplification, so the restricted edges exist in the graph.
+	 *
+	 * @return Turn restrictions or null if the importer doesn't provide them.
+	 */
+	public TurnRestrictionIndex getTurnRestrictions() {
+		return turnRestrictions;
+	}
+
 	/**
 	 * Construct road graph
 	 *
@@ -98,18 +124,18 @@ public class GraphCreator<N extends Node, E extends Edge> {
 	 *		 simplified (impact on visio - more sharp curves)
 	 */
 	private Graph<N, E> build() {
-		builder = importer.loadGraph();
-
-//		removeMinorComponents(builder);
-
 		// TODO: Simplifier - make switch for Visio and for Simulation.
 		// TODO: Properly handle RoadEdgeExtended - find opposite way and uniqueWayId
-		LOGGER.debug(
-				"Graph [#nodes=" + builder.getNodeCount() + ", #edges=" + builder.getEdgeCount() + "] simplification");
-
 		if (simplificationOn) {
-			GraphSimplifier.simplify(builder, Collections.emptySet()); // not working for RoadExtended
+			builder = importer.loadSimplifiedGraph(); // not working for RoadExtended
+		} else {
+			builder = importer.loadGraph();
 		}
+		turnRestrictions = importer.getTurnRestrictions();
+
+//		removeMinorComponents(builder);
+
+		LOGGER.debug("Graph [#nodes=" + builder.getNodeCount() + ", #edges=" + builder.getEdgeCount() + "]");
 
 		Graph<InternalNode, InternalEdge> graph = builder.createGraph();
 
@@ -186,7 +212,7 @@ public class GraphCreator<N extends Node, E extends Edge> {
 		return finalGraphBuilder.createGraph();
 	}
 
-	private void serializeGraph(Graph<N, E> graph, File serializedFile) {
+	private void serializeGraph(Object graph, File serializedFile) {
 		try (OutputStream file = new FileOutputStream(serializedFile);
 				OutputStream buffer = new BufferedOutputStream(file);
 				ObjectOutput output = new ObjectOutputStream(buffer);) {
@@ -204,6 +230,19 @@ public class GraphCreator<N extends Node, E extends Edge> {
 		return (Graph<N, E>) input.readObject();
 	}
 
+	/**
+	 * @return Deserialized turn restrictions or null if the graph was serialized without them.
+	 */
+	private TurnRestrictionIndex deserializeTurnRestrictions(File serializedFile) throws IOException,
+			ClassNotFoundException {
+		if (!serializedFile.exists()) {
+			return null;
+		}
+		try (ObjectInput input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serializedFile)))) {
+			return (TurnRestrictionIndex) input.readObject();
+		}
+	}
+
 	private void removePreviousSerializedGraph(String basePath) {
 		File file = new File(basePath);
 		File folder = file.getAbsoluteFile().getParentFile();
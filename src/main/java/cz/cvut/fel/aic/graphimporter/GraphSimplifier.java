@@ -18,14 +18,15 @@
  */
 package cz.cvut.fel.aic.graphimporter;
 
-import cz.cvut.fel.aic.geographtools.EdgeId;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.EdgeBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdge;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdgeBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNode;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.SimplifiedInternalEdgeBuilder;
+import cz.cvut.fel.aic.graphimporter.util.LongIntHashMap;
 import java.util.*;
+import java.util.function.BiConsumer;
 import org.apache.log4j.Logger;
 
 /**
@@ -37,6 +38,11 @@ public class GraphSimplifier {
 	private final TmpGraphBuilder<InternalNode, InternalEdge> graph;
 	private final Set<Integer> notToBeRemovedNodes;
 
+	/**
+	 * Consumer of the created simplified edges and the tmp ids of their nodes. Can be null.
+	 */
+	private final BiConsumer<InternalEdgeBuilder, List<Integer>> edgeNodes;
+
 	/**
 	 * It contains mapping of the first and last deleted points of SimplificationBuilders to the builders. For example,
 	 * a builder representing edges {@code from -> n1 -> n2 -> n3 -> to} as mapped from n1 and n3. All other nodes
@@ -47,26 +53,34 @@ public class GraphSimplifier {
 	private final Map<Integer, SimplifiedInternalEdgeBuilder> nodeToSimplBuilders = new LinkedHashMap<>();
 
 	private final Set<Integer> nodesToRemove = new LinkedHashSet<>();
-	private final Set<EdgeId> edgesToRemove = new LinkedHashSet<>();
 
-	private GraphSimplifier(TmpGraphBuilder<InternalNode, InternalEdge> graph, Set<Integer> notToBeRemovedNodes) {
+	/**
+	 * Edges to be removed in the order they were marked. Their indices are mapped from the packed tmp ids of their
+	 * nodes (see {@link TmpGraphBuilder#edgeKey}) in {@link #edgesToRemoveIndices}.
+	 */
+	private final List<InternalEdgeBuilder> edgesToRemove = new ArrayList<>();
+	private final LongIntHashMap edgesToRemoveIndices = new LongIntHashMap();
+
+	private GraphSimplifier(TmpGraphBuilder<InternalNode, InternalEdge> graph, Set<Integer> notToBeRemovedNodes,
+			BiConsumer<InternalEdgeBuilder, List<Integer>> edgeNodes) {
 		this.graph = graph;
 		this.notToBeRemovedNodes = notToBeRemovedNodes;
+		this.edgeNodes = edgeNodes;
 	}
 
 	public void simplify() {
-		Map<Integer, Set<Integer>> inDegree = graph.getNodesByInDegree();
-		Map<Integer, Set<Integer>> outDegree = graph.getNodesByOutDegree();
+		// the graph isn't modified until the edges are replaced, so the degrees stay valid
+		int[] simplNodes2 = getRemovableNodes(1);
+		int[] simplNodes4 = getRemovableNodes(2);
 
-		prepareOneWays(inDegree, outDegree);
-		prepareTwoWays(inDegree, outDegree);
+		prepareOneWays(simplNodes2);
+		prepareTwoWays(simplNodes4);
 
 		replaceEdges();
 	}
 
-	private void prepareOneWays(Map<Integer, Set<Integer>> inDegree, Map<Integer, Set<Integer>> outDegree) {
-		Set<Integer> simplNodes2 = getRemovableNodes(inDegree, outDegree, 1);
-		for (Integer nodeId : simplNodes2) {
+	private void prepareOneWays(int[] simplNodes2) {
+		for (int nodeId : simplNodes2) {
 			InternalEdgeBuilder in = (InternalEdgeBuilder) graph.getIncomingEdges(nodeId).get(0);
 			InternalEdgeBuilder out = (InternalEdgeBuilder) graph.getOutgoingEdges(nodeId).get(0);
 			if (mergable(in, out)) {
@@ -91,15 +105,14 @@ public class GraphSimplifier {
 					nodeToSimplBuilders.put(n, builder);
 				}
 				nodesToRemove.add(n);
-				edgesToRemove.add(in.getEdgeId());
-				edgesToRemove.add(out.getEdgeId());
+				markToRemove(in);
+				markToRemove(out);
 			}
 		}
 	}
 
-	private void prepareTwoWays(Map<Integer, Set<Integer>> inDegree, Map<Integer, Set<Integer>> outDegree) {
-		Set<Integer> simplNodes4 = getRemovableNodes(inDegree, outDegree, 2);
-		for (Integer nodeId : simplNodes4) {
+	private void prepareTwoWays(int[] simplNodes4) {
+		for (int nodeId : simplNodes4) {
 			List<EdgeBuilder<InternalEdge, InternalNode>> ins = graph.getIncomingEdges(nodeId);
 			List<EdgeBuilder<InternalEdge, InternalNode>> outs = graph.getOutgoingEdges(nodeId);
 
@@ -140,10 +153,10 @@ public class GraphSimplifier {
 				nodeToSimplBuilders.put(n, builder);
 			}
 			nodesToRemove.add(n);
-			edgesToRemove.add(in1.getEdgeId());
-			edgesToRemove.add(in2.getEdgeId());
-			edgesToRemove.add(out1.getEdgeId());
-			edgesToRemove.add(out2.getEdgeId());
+			markToRemove(in1);
+			markToRemove(in2);
+			markToRemove(out1);
+			markToRemove(out2);
 			return true;
 		}
 		return false;
@@ -182,6 +195,14 @@ public class GraphSimplifier {
 		nullify(n, null);
 	}
 
+	private void markToRemove(InternalEdgeBuilder edge) {
+		long key = TmpGraphBuilder.edgeKey(edge.getTmpFromId(), edge.getTmpToId());
+		if (!edgesToRemoveIndices.containsKey(key)) {
+			edgesToRemoveIndices.put(key, edgesToRemove.size());
+			edgesToRemove.add(edge);
+		}
+	}
+
 	private boolean mergable(InternalEdgeBuilder incoming, InternalEdgeBuilder outgoing) {
 		return incoming.equalAttributes(outgoing) && !incoming.isCircle(outgoing);
 	}
@@ -241,21 +262,15 @@ public class GraphSimplifier {
 	/**
 	 * Get all nodes that have both (in/out) degrees equal to {@code degree} and can be removed from the graph.
 	 *
-	 * @param inDegree
-	 * @param outDegree
 	 * @param degree
-	 * @return
+	 * @return Tmp ids of the nodes in ascending order.
 	 */
-	private Set<Integer> getRemovableNodes(Map<Integer, Set<Integer>> inDegree, Map<Integer, Set<Integer>> outDegree, int degree) {
-		Set<Integer> nodes = new HashSet<>();
-		if (inDegree.containsKey(degree)) {
-			nodes.addAll(inDegree.get(degree));
-		}
-		if (outDegree.containsKey(degree)) {
-			nodes.retainAll(outDegree.get(degree));
+	private int[] getRemovableNodes(int degree) {
+		int[] nodes = graph.getNodesWithDegree(degree, degree);
+		if (notToBeRemovedNodes.isEmpty()) {
+			return nodes;
 		}
-		nodes.removeAll(notToBeRemovedNodes);
-		return nodes;
+		return Arrays.stream(nodes).filter(nodeId -> !notToBeRemovedNodes.contains(nodeId)).toArray();
 	}
 
 	private void replaceEdges() {
@@ -267,25 +282,22 @@ public class GraphSimplifier {
 		// is split
 		Collections.sort(builderList, SimplifiedInternalEdgeBuilder.LENGTH_COMPARATOR);
 
-		Map<EdgeId, InternalEdgeBuilder> removedEdges = new HashMap<>();
-		for (EdgeId edgeId : edgesToRemove) {
-			InternalEdgeBuilder removed = (InternalEdgeBuilder) graph.remove(edgeId);
-			if (removed == null) {
+		for (InternalEdgeBuilder edge : edgesToRemove) {
+			if (graph.remove(edge.getTmpFromId(), edge.getTmpToId()) == null) {
 				throw new IllegalStateException("Edge doesn't exist.");
 			}
-			removedEdges.put(edgeId, removed);
 		}
 
 		for (SimplifiedInternalEdgeBuilder builder : builderList) {
 			List<InternalEdgeBuilder> newEdges;
 			//if graph already contains the possible new edges or the edge start and ends in the same node
 			if (builder.isCircle()) {
-				newEdges = builder.build(3, graph, removedEdges);
+				newEdges = builder.build(3, graph, edgesToRemoveIndices, edgesToRemove, edgeNodes);
 			} else if (graph.containsEdge(builder.getTmpFromId(), builder.getTmpToId()) || (!builder.isOneWay() && graph
 					.containsEdge(builder.getTmpToId(), builder.getTmpFromId()))) {
-				newEdges = builder.build(2, graph, removedEdges);
+				newEdges = builder.build(2, graph, edgesToRemoveIndices, edgesToRemove, edgeNodes);
 			} else {
-				newEdges = builder.build(1, graph, removedEdges);
+				newEdges = builder.build(1, graph, edgesToRemoveIndices, edgesToRemove, edgeNodes);
 			}
 			for (InternalEdgeBuilder newEdge : newEdges) {
 				graph.addEdge(newEdge);
@@ -309,6 +321,21 @@ public class GraphSimplifier {
 	 * @param notToBeRemovedNodes nodes that has to stay in graph builder (they have special function, such as parkAndRideStation)
 	 */
 	public static void simplify(TmpGraphBuilder<InternalNode, InternalEdge> graph, Set<Integer> notToBeRemovedNodes) {
-		new GraphSimplifier(graph, notToBeRemovedNodes).simplify();
+		new GraphSimplifier(graph, notToBeRemovedNodes, null).simplify();
+	}
+
+	/**
+	 * Same as {@link #simplify(TmpGraphBuilder, Set)}, every created simplified edge is passed to {@code edgeNodes}
+	 * with the tmp ids of the nodes it replaces (in the edge direction, including its end nodes). Edges that aren't
+	 * simplified keep their nodes. A created edge can still be discarded by the graph builder if the graph already
+	 * contains an edge between its end nodes.
+	 *
+	 * @param graph			   graph to be merged
+	 * @param notToBeRemovedNodes nodes that has to stay in graph builder
+	 * @param edgeNodes		   consumer of the created edges and their nodes
+	 */
+	public static void simplify(TmpGraphBuilder<InternalNode, InternalEdge> graph, Set<Integer> notToBeRemovedNodes,
+			BiConsumer<InternalEdgeBuilder, List<Integer>> edgeNodes) {
+		new GraphSimplifier(graph, notToBeRemovedNodes, edgeNodes).simplify();
 	}
 }
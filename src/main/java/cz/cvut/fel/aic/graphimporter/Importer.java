@@ -18,9 +18,13 @@
  */
 package cz.cvut.fel.aic.graphimporter;
 
+import cz.cvut.fel.aic.graphimporter.restriction.TurnRestrictionIndex;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.GraphSink;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdge;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNode;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  *
@@ -32,4 +36,54 @@ public abstract class Importer {
 	public abstract String getSerializedBasePath();
 	
 	public abstract TmpGraphBuilder<InternalNode,InternalEdge> loadGraph();
+
+	/**
+	 * Passes the imported nodes and edges to the sink instead of returning them in a graph builder. Importers
+	 * supporting the streaming import pass them as they are produced, so the graph is never held in memory. This
+	 * default implementation loads the graph by {@link #loadGraph()} and passes its content.
+	 *
+	 * @param sink
+	 */
+	public void loadGraph(GraphSink<InternalNode, InternalEdge> sink) {
+		TmpGraphBuilder<InternalNode, InternalEdge> builder = loadGraph();
+		builder.getAllNodes().forEach(sink::addNode);
+		builder.getAllEdges().forEach(sink::addEdge);
+		sink.finish();
+	}
+
+	/**
+	 * Loads the graph and simplifies it by {@link GraphSimplifier}, keeping the nodes given by
+	 * {@link #getNodesToKeep()}. Importers able to update a simplified graph incrementally can override it and skip
+	 * the simplification of the unchanged parts.
+	 *
+	 * @return Simplified graph.
+	 */
+	public TmpGraphBuilder<InternalNode, InternalEdge> loadSimplifiedGraph() {
+		TmpGraphBuilder<InternalNode, InternalEdge> builder = loadGraph();
+		GraphSimplifier.simplify(builder, getNodesToKeep());
+		return builder;
+	}
+
+	/**
+	 * @return Tmp ids of the nodes loaded by {@link #loadGraph()} that mustn't be removed by the graph simplification.
+	 */
+	public Set<Integer> getNodesToKeep() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * @return Turn restrictions of the graph loaded by {@link #loadGraph()} or null if the importer doesn't provide
+	 * them.
+	 */
+	public TurnRestrictionIndex getTurnRestrictions() {
+		return null;
+	}
+
+	/**
+	 * @return True if the serialized graph mustn't be used even if it exists, e.g. because the importer applies
+	 * changes of the source data that the serialized graph doesn't contain.
+	 */
+	public boolean isSerializedGraphOutdated() {
+		return false;
+	}
 }
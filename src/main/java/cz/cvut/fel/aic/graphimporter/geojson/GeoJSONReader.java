@@ -21,14 +21,15 @@ package cz.cvut.fel.aic.graphimporter.geojson;
 import cz.cvut.fel.aic.geographtools.GPSLocation;
 import cz.cvut.fel.aic.geographtools.TransportMode;
 import cz.cvut.fel.aic.geographtools.UTM;
-import cz.cvut.fel.aic.geographtools.util.GPSLocationTools;
 import cz.cvut.fel.aic.geographtools.util.Transformer;
 import cz.cvut.fel.aic.graphimporter.Importer;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.GraphSink;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdge;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdgeBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNode;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNodeBuilder;
+import cz.cvut.fel.aic.graphimporter.util.BatchProjection;
 import cz.cvut.fel.aic.graphimporter.util.MD5ChecksumGenerator;
 import java.io.File;
 import java.io.FileReader;
@@ -62,6 +63,16 @@ public class GeoJSONReader extends Importer {
 	
 	
 	private int removedParallelEdgesCount = 0;
+
+	/**
+	 * Sink of the streaming import (see {@link #loadGraph(GraphSink)}). Null if the graph is built in the graph
+	 * builder.
+	 */
+	private GraphSink<InternalNode, InternalEdge> sink;
+
+	private int sinkNodeCount;
+
+	private int sinkEdgeCount;
 	
 	
 
@@ -98,13 +109,46 @@ public class GeoJSONReader extends Importer {
 
 
 	private void processFeatures() {
+		GPSLocation[] locations = projectFeatures();
+		int offset = 0;
 		for (Object feature : features) {
-			parseFeature((JSONObject) feature);
+			offset = parseFeature((JSONObject) feature, locations, offset);
 		}
 	}
 
+	/**
+	 * Projects coordinates of all features in bulk.
+	 *
+	 * @return Projected locations of all feature coordinates, in the order of the features and their coordinates.
+	 */
+	private GPSLocation[] projectFeatures() {
+		BatchProjection batchProjection = new BatchProjection(projection);
+		for (Object feature : features) {
+			JSONObject geometry = (JSONObject) ((JSONObject) feature).get("geometry");
+			JSONArray coordinates = (JSONArray) geometry.get("coordinates");
+			String geometryType = (String) geometry.get("type");
+			if (geometryType.equals("LineString")) {
+				for (Object latLon : coordinates) {
+					addToProjection(batchProjection, (JSONArray) latLon);
+				}
+			} else if (geometryType.equals("Point")) {
+				addToProjection(batchProjection, coordinates);
+			}
+		}
+		return batchProjection.project();
+	}
+
+	private static void addToProjection(BatchProjection batchProjection, JSONArray latLonArray) {
+		batchProjection.add((double) latLonArray.get(1), (double) latLonArray.get(0), 0);
+	}
+
 
 	int addNode(GPSLocation location, long sourceId, Map<String, Object> otherParams) {
+		if (sink != null) {
+			InternalNodeBuilder nodeBuilder = new InternalNodeBuilder(sinkNodeCount++, sourceId, location, otherParams);
+			sink.addNode(nodeBuilder);
+			return nodeBuilder.tmpId;
+		}
 		InternalNodeBuilder nodeBuilder = new InternalNodeBuilder(builder.getNodeCount(),
 				sourceId, location, otherParams);
 		builder.addNode(nodeBuilder);
@@ -112,7 +156,12 @@ public class GeoJSONReader extends Importer {
 	}
 
 
-	void parseFeature(JSONObject feature) {
+	/**
+	 * @param locations projected coordinates of the features (see {@link #projectFeatures()})
+	 * @param offset index of the first location of the feature in {@code locations}
+	 * @return Index of the first location of the next feature.
+	 */
+	int parseFeature(JSONObject feature, GPSLocation[] locations, int offset) {
 		JSONObject properties = (JSONObject) feature.get("properties");
 		JSONObject geometry = (JSONObject) feature.get("geometry");
 		JSONArray coordinates = (JSONArray) geometry.get("coordinates");
@@ -126,17 +175,21 @@ public class GeoJSONReader extends Importer {
                     
 			JSONArray fromLatLon = (JSONArray) coordinates.get(0);
 			JSONArray toLatlon = (JSONArray) coordinates.get(coordinates.size() - 1);
-			int fromId = getOrCreateNode(fromLatLon, properties);
-			int toId = getOrCreateNode(toLatlon, properties);
+			int fromId = getOrCreateNode(fromLatLon, locations[offset], properties);
+			int toId = getOrCreateNode(toLatlon, locations[offset + coordinates.size() - 1], properties);
                         
                         
-			addEdge(fromId, toId, properties, coordinates);
+			addEdge(fromId, toId, properties, coordinates, Arrays.asList(locations).subList(offset,
+					offset + coordinates.size()));
 //			if (!isOneWay || isBothWayOverride) {
 //				addEdge(toId, fromId, properties, coordinates);
 //			}
+			return offset + coordinates.size();
 		} else if (geometryType.equals("Point")) {
-			int fromId = getOrCreateNode(coordinates, properties);
+			int fromId = getOrCreateNode(coordinates, locations[offset], properties);
+			return offset + 1;
 		}
+		return offset;
 	}
 
 	private JSONObject parseStringToJSON(String tagsString) {
@@ -154,10 +207,10 @@ public class GeoJSONReader extends Importer {
 	}
 
 
-	void addEdge(int fromId, int toId, JSONObject properties, JSONArray coordinates) {
+	void addEdge(int fromId, int toId, JSONObject properties, JSONArray coordinates, List<GPSLocation> locations) {
 		Long osmId = null;
 		try {
-			int uniqueWayId = builder.getEdgeCount();
+			int uniqueWayId = sink == null ? builder.getEdgeCount() : sinkEdgeCount++;
 			int oppositeWayUniqueId = -1;
 			int lengthCm = tryParseInt(properties, "length");
 //		int length = GPSLocationTools.computeDistance(graphBuilder.getNode(fromId).location, graphBuilder.getNode(toId).location);
@@ -166,9 +219,9 @@ public class GeoJSONReader extends Importer {
 			int allowedMaxSpeed = tryParseInt(properties, "maxspeed");
 			int lanesCount = tryParseInt(properties, "lanes");
                         
-			List<GPSLocation> coordinateList = new ArrayList<>();
+			List<GPSLocation> coordinateList = sink == null ? builder.getPolylineStore().add(locations)
+					: new ArrayList<>(locations);
 			for (int i = 0; i < coordinates.size(); i++) {
-				coordinateList.add(getGpsLocation((JSONArray) coordinates.get(i), 0));
 				assert UTM.checkLocationValidUTM(coordinateList.get(i));
 			}
 			
@@ -179,6 +232,12 @@ public class GeoJSONReader extends Importer {
 			InternalEdgeBuilder edgeBuilder = new InternalEdgeBuilder(fromId, toId, uniqueWayId, oppositeWayUniqueId,
 				lengthCm, modeOfTransports, allowedMaxSpeed, lanesCount, coordinateList, properties);
 
+			if (sink != null) {
+				// parallel edges are resolved by the sink
+				sink.addEdge(edgeBuilder);
+				return;
+			}
+
 			if(builder.containsEdge(fromId, toId)){
 				removedParallelEdgesCount++;
 				InternalEdgeBuilder oldEdgeBuilder = (InternalEdgeBuilder) builder.getEdge(fromId, toId);
@@ -289,9 +348,8 @@ public class GeoJSONReader extends Importer {
 	}
 
 
-	private int getOrCreateNode(JSONArray latLon, JSONObject properties) {
+	private int getOrCreateNode(JSONArray latLon, GPSLocation location, JSONObject properties) {
 		String nodesIdKey = "node_id";
-		int elevation = 0;
 		String coordinatesString = latLon.toString();
 
 
@@ -299,22 +357,15 @@ public class GeoJSONReader extends Importer {
 
 
 		if (!nodes.containsKey(coordinatesString)) {
-			GPSLocation location = getGpsLocation(latLon, elevation);
 //			System.out.println(location +" "+location.lonProjected+" "+location.latProjected);
 			Map<String,Object> otherParams = properties;
-			addNode(location, sourceId, otherParams);
-			int id = builder.getIntIdForSourceId(sourceId);
+			int tmpId = addNode(location, sourceId, otherParams);
+			int id = sink == null ? builder.getIntIdForSourceId(sourceId) : tmpId;
 			nodes.put(coordinatesString, id);
 		}
 		return nodes.get(coordinatesString);
 	}
 
-	private GPSLocation getGpsLocation(JSONArray latlonArray, int elevation) {
-		double lat = (double) latlonArray.get(1);
-		double lon = (double) latlonArray.get(0);
-		return GPSLocationTools.createGPSLocation(lat, lon, Math.round(elevation), projection);
-	}
-
 	public void setIsBothWayOverride(boolean isBothWayOverride) {
 		this.isBothWayOverride = isBothWayOverride;
 	}
@@ -356,6 +407,25 @@ public class GeoJSONReader extends Importer {
 		return builder;
 	}
 
+	/**
+	 * Streaming import. Nodes and edges are passed to the sink as the features are processed and the graph builder
+	 * stays empty. Parallel edges aren't discarded, all of them are passed to the sink.
+	 *
+	 * @param sink
+	 */
+	@Override
+	public void loadGraph(GraphSink<InternalNode, InternalEdge> sink) {
+		this.sink = sink;
+		sinkNodeCount = 0;
+		sinkEdgeCount = 0;
+		try {
+			parseGEOJSON();
+		} finally {
+			this.sink = null;
+		}
+		sink.finish();
+	}
+
 	protected void parseGEOJSON() {
 		LOGGER.info("Parsing of geojson started - node file: " + geoJsonNodeFile);
 
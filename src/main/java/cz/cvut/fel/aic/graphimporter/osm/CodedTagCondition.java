@@ -0,0 +1,110 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm;
+
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import cz.cvut.fel.aic.graphimporter.osm.element.TagDictionary;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Tag condition in the format of the evaluators ({key1 - {v1,v2,v3,...}, key - ...}, value "*" stands for any value)
+ * compiled to the {@link TagDictionary} codes. The values of the condition are registered in the dictionary, so the
+ * element tags are compared by the codes only.
+ */
+final class CodedTagCondition {
+
+	private static final String ANY_VALUE = "*";
+
+	private static final CodedTagCondition EMPTY = new CodedTagCondition(new int[0], new int[0][]);
+
+	private final int[] keyCodes;
+
+	/**
+	 * Codes of the allowed values of the keys, null stands for any value.
+	 */
+	private final int[][] valueCodes;
+
+	private CodedTagCondition(int[] keyCodes, int[][] valueCodes) {
+		this.keyCodes = keyCodes;
+		this.valueCodes = valueCodes;
+	}
+
+	/**
+	 * @param condition
+	 * @return Compiled condition or null if the dictionary can't hold all the strings of the condition.
+	 */
+	static CodedTagCondition compile(Map<String, Set<String>> condition) {
+		if (condition == null || condition.isEmpty()) {
+			return EMPTY;
+		}
+		TagDictionary dictionary = TagDictionary.getInstance();
+		int[] keyCodes = new int[condition.size()];
+		int[][] valueCodes = new int[condition.size()][];
+		int i = 0;
+		for (Entry<String, Set<String>> entry : condition.entrySet()) {
+			keyCodes[i] = dictionary.internKey(entry.getKey());
+			if (keyCodes[i] == TagDictionary.NO_CODE) {
+				return null;
+			}
+			if (!entry.getValue().contains(ANY_VALUE)) {
+				valueCodes[i] = new int[entry.getValue().size()];
+				int j = 0;
+				for (String value : entry.getValue()) {
+					valueCodes[i][j] = dictionary.registerValue(value);
+					if (valueCodes[i][j++] == TagDictionary.NO_CODE) {
+						return null;
+					}
+				}
+			}
+			i++;
+		}
+		return new CodedTagCondition(keyCodes, valueCodes);
+	}
+
+	/**
+	 * @param element
+	 * @return True if the element has any of the tags of the condition.
+	 */
+	boolean matchesAny(OsmElement element) {
+		for (int i = 0; i < keyCodes.length; i++) {
+			if (valueCodes[i] == null) {
+				if (element.hasTag(keyCodes[i])) {
+					return true;
+				}
+			} else {
+				int valueCode = element.getTagCode(keyCodes[i]);
+				if (valueCode != TagDictionary.NO_CODE && contains(valueCodes[i], valueCode)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean contains(int[] codes, int code) {
+		for (int c : codes) {
+			if (c == code) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
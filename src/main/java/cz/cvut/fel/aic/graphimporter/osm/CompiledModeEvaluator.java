@@ -0,0 +1,296 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm;
+
+import cz.cvut.fel.aic.geographtools.TransportMode;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import cz.cvut.fel.aic.graphimporter.osm.element.TagDictionary;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Evaluator of the mode and one-way evaluators of all modes at once. The {@link InclExclTagEvaluator}s are compiled
+ * into one table mapping tags to bit masks of the evaluators the tag is included in, excluded from, etc., so all the
+ * evaluators are evaluated by a single scan of the tags. The table is also indexed by the {@link TagDictionary}
+ * codes, so the tags of the OSM elements are evaluated without comparing strings. Other evaluators (including the
+ * subclasses of {@link InclExclTagEvaluator}) can't be compiled, they are tested one by one.
+ * <p>
+ * The result is a bit mask indexed by {@link TransportMode#ordinal()}, the allowed modes are in the lower 32 bits and
+ * the one-way modes in the upper 32 bits.
+ */
+public class CompiledModeEvaluator {
+
+	private static final int INCLUDE = 0;
+	private static final int EXCLUDE = 1;
+	private static final int EXCLUDE_UNLESS = 2;
+	private static final int UNLESS = 3;
+
+	private static final String ANY_VALUE = "*";
+
+	private static final int ONE_WAY_SHIFT = 32;
+
+	private static final TransportMode[] MODES = TransportMode.values();
+
+	/**
+	 * Masks for tag keys, evaluators are indexed by the mode ordinal (mode evaluators) and the mode ordinal + 32
+	 * (one-way evaluators).
+	 */
+	private final Map<String, KeyMasks> table = new HashMap<>();
+
+	/**
+	 * Masks of {@link #table} indexed by the key codes or null if the dictionary can't hold all the strings.
+	 */
+	private final KeyMasks[] codedTable;
+
+	/**
+	 * Mask of all compiled evaluators.
+	 */
+	private long compiledMask;
+
+	private final Map<TransportMode, TagEvaluator> notCompiledModeEvaluators = new HashMap<>();
+
+	private final Map<TransportMode, TagEvaluator> notCompiledOneWayEvaluators = new HashMap<>();
+
+	/**
+	 * @param modeEvaluators evaluators saying if the mode is allowed on a way
+	 * @param oneWayEvaluators evaluators saying if a way is one-way for the mode
+	 */
+	public CompiledModeEvaluator(Map<TransportMode, TagEvaluator> modeEvaluators,
+								 Map<TransportMode, TagEvaluator> oneWayEvaluators) {
+		if (MODES.length > ONE_WAY_SHIFT) {
+			throw new IllegalStateException("Too many transport modes for the compiled evaluator.");
+		}
+		for (Entry<TransportMode, TagEvaluator> entry : modeEvaluators.entrySet()) {
+			add(entry.getValue(), entry.getKey().ordinal(), entry.getKey(), notCompiledModeEvaluators);
+		}
+		for (Entry<TransportMode, TagEvaluator> entry : oneWayEvaluators.entrySet()) {
+			add(entry.getValue(), entry.getKey().ordinal() + ONE_WAY_SHIFT, entry.getKey(),
+					notCompiledOneWayEvaluators);
+		}
+		codedTable = compileCodes();
+	}
+
+	/**
+	 * Evaluates all evaluators.
+	 *
+	 * @param tags
+	 * @return Bit mask with the allowed modes in the lower 32 bits and the one-way modes in the upper 32 bits.
+	 */
+	public long evaluate(Map<String, String> tags) {
+		long included = 0;
+		long excluded = 0;
+		long excludedUnless = 0;
+		long unless = 0;
+		for (Entry<String, String> tag : tags.entrySet()) {
+			KeyMasks keyMasks = table.get(tag.getKey());
+			if (keyMasks != null) {
+				long[] anyValueMasks = keyMasks.anyValueMasks;
+				long[] valueMasks = keyMasks.valueMasks.get(tag.getValue());
+				if (valueMasks == null) {
+					valueMasks = KeyMasks.EMPTY;
+				}
+				included |= anyValueMasks[INCLUDE] | valueMasks[INCLUDE];
+				excluded |= anyValueMasks[EXCLUDE] | valueMasks[EXCLUDE];
+				excludedUnless |= anyValueMasks[EXCLUDE_UNLESS] | valueMasks[EXCLUDE_UNLESS];
+				unless |= anyValueMasks[UNLESS] | valueMasks[UNLESS];
+			}
+		}
+		long result = included & ~excluded & ~(excludedUnless & ~unless) & compiledMask;
+
+		for (Entry<TransportMode, TagEvaluator> entry : notCompiledModeEvaluators.entrySet()) {
+			if (entry.getValue().test(tags)) {
+				result |= 1L << entry.getKey().ordinal();
+			}
+		}
+		for (Entry<TransportMode, TagEvaluator> entry : notCompiledOneWayEvaluators.entrySet()) {
+			if (entry.getValue().test(tags)) {
+				result |= 1L << (entry.getKey().ordinal() + ONE_WAY_SHIFT);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates all evaluators on the tags of the element. The tags are compared by the codes.
+	 *
+	 * @param element
+	 * @return Bit mask with the allowed modes in the lower 32 bits and the one-way modes in the upper 32 bits.
+	 */
+	public long evaluate(OsmElement element) {
+		if (codedTable == null) {
+			return evaluate(element.getTags());
+		}
+		long included = 0;
+		long excluded = 0;
+		long excludedUnless = 0;
+		long unless = 0;
+		for (int i = 0; i < element.getTagCount(); i++) {
+			int keyCode = element.getKeyCode(i);
+			if (keyCode >= 0 && keyCode < codedTable.length && codedTable[keyCode] != null) {
+				KeyMasks keyMasks = codedTable[keyCode];
+				long[] anyValueMasks = keyMasks.anyValueMasks;
+				long[] valueMasks = keyMasks.getValueMasks(element.getValueCode(i));
+				included |= anyValueMasks[INCLUDE] | valueMasks[INCLUDE];
+				excluded |= anyValueMasks[EXCLUDE] | valueMasks[EXCLUDE];
+				excludedUnless |= anyValueMasks[EXCLUDE_UNLESS] | valueMasks[EXCLUDE_UNLESS];
+				unless |= anyValueMasks[UNLESS] | valueMasks[UNLESS];
+			}
+		}
+		long result = included & ~excluded & ~(excludedUnless & ~unless) & compiledMask;
+
+		for (Entry<TransportMode, TagEvaluator> entry : notCompiledModeEvaluators.entrySet()) {
+			if (entry.getValue().test(element)) {
+				result |= 1L << entry.getKey().ordinal();
+			}
+		}
+		for (Entry<TransportMode, TagEvaluator> entry : notCompiledOneWayEvaluators.entrySet()) {
+			if (entry.getValue().test(element)) {
+				result |= 1L << (entry.getKey().ordinal() + ONE_WAY_SHIFT);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param result result of {@link #evaluate(Map)}
+	 * @return Modes allowed on the way.
+	 */
+	public static Set<TransportMode> getModes(long result) {
+		return toModes((int) result);
+	}
+
+	/**
+	 * @param result result of {@link #evaluate(Map)}
+	 * @return Modes for which the way is one-way.
+	 */
+	public static Set<TransportMode> getOneWayModes(long result) {
+		return toModes((int) (result >>> ONE_WAY_SHIFT));
+	}
+
+	private static Set<TransportMode> toModes(int mask) {
+		Set<TransportMode> modes = EnumSet.noneOf(TransportMode.class);
+		for (TransportMode mode : MODES) {
+			if ((mask & 1 << mode.ordinal()) != 0) {
+				modes.add(mode);
+			}
+		}
+		return modes;
+	}
+
+	private void add(TagEvaluator evaluator, int bit, TransportMode mode,
+					 Map<TransportMode, TagEvaluator> notCompiledEvaluators) {
+		if (evaluator == TagEvaluator.ALWAYS_FALSE) {
+			return;
+		}
+		// subclasses can override the evaluation, so only the base class is compiled
+		if (evaluator.getClass() != InclExclTagEvaluator.class) {
+			notCompiledEvaluators.put(mode, evaluator);
+			return;
+		}
+		InclExclTagEvaluator inclExclEvaluator = (InclExclTagEvaluator) evaluator;
+		long mask = 1L << bit;
+		addTags(inclExclEvaluator.getInclude(), INCLUDE, mask);
+		addTags(inclExclEvaluator.getExclude(), EXCLUDE, mask);
+		addTags(inclExclEvaluator.getExcludeUnless().getExclude(), EXCLUDE_UNLESS, mask);
+		addTags(inclExclEvaluator.getExcludeUnless().getUnless(), UNLESS, mask);
+		compiledMask |= mask;
+	}
+
+	private void addTags(Map<String, Set<String>> tags, int type, long mask) {
+		if (tags == null) {
+			return;
+		}
+		for (Entry<String, Set<String>> entry : tags.entrySet()) {
+			KeyMasks keyMasks = table.computeIfAbsent(entry.getKey(), key -> new KeyMasks());
+			for (String value : entry.getValue()) {
+				long[] masks = ANY_VALUE.equals(value) ? keyMasks.anyValueMasks
+						: keyMasks.valueMasks.computeIfAbsent(value, v -> new long[4]);
+				masks[type] |= mask;
+			}
+		}
+	}
+
+	/**
+	 * Indexes the masks by the dictionary codes of the keys and values. The values are registered in the dictionary,
+	 * so the element tags with these values are stored with the codes.
+	 *
+	 * @return Table indexed by the key codes or null if some string doesn't have the code (the dictionary is full).
+	 */
+	private KeyMasks[] compileCodes() {
+		TagDictionary dictionary = TagDictionary.getInstance();
+		KeyMasks[] codes = new KeyMasks[0];
+		for (Entry<String, KeyMasks> entry : table.entrySet()) {
+			int keyCode = dictionary.internKey(entry.getKey());
+			if (keyCode == TagDictionary.NO_CODE || !entry.getValue().compileCodes(dictionary)) {
+				return null;
+			}
+			if (keyCode >= codes.length) {
+				codes = Arrays.copyOf(codes, keyCode + 1);
+			}
+			codes[keyCode] = entry.getValue();
+		}
+		return codes;
+	}
+
+	private static final class KeyMasks {
+
+		static final long[] EMPTY = new long[4];
+
+		final long[] anyValueMasks = new long[4];
+
+		final Map<String, long[]> valueMasks = new HashMap<>();
+
+		/**
+		 * Sorted codes of the values in {@link #valueMasks}.
+		 */
+		int[] valueCodes;
+
+		/**
+		 * Masks of the values in the order of {@link #valueCodes}.
+		 */
+		long[][] codedValueMasks;
+
+		boolean compileCodes(TagDictionary dictionary) {
+			int[] codes = new int[valueMasks.size()];
+			int i = 0;
+			for (String value : valueMasks.keySet()) {
+				codes[i] = dictionary.registerValue(value);
+				if (codes[i++] == TagDictionary.NO_CODE) {
+					return false;
+				}
+			}
+			Arrays.sort(codes);
+			codedValueMasks = new long[codes.length][];
+			for (i = 0; i < codes.length; i++) {
+				codedValueMasks[i] = valueMasks.get(dictionary.getString(codes[i]));
+			}
+			valueCodes = codes;
+			return true;
+		}
+
+		long[] getValueMasks(int valueCode) {
+			int index = valueCode == TagDictionary.NO_CODE ? -1 : Arrays.binarySearch(valueCodes, valueCode);
+			return index < 0 ? EMPTY : codedValueMasks[index];
+		}
+	}
+}
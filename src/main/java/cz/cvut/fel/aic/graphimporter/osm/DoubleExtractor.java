@@ -19,7 +19,9 @@
 package cz.cvut.fel.aic.graphimporter.osm;
 
 import com.google.common.primitives.Doubles;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Marek Cuchý
@@ -47,4 +49,9 @@ public class DoubleExtractor implements TagExtractor<Double> {
 	public double applyPrimitive(Map<String, String> tags) {
 		return apply(tags);
 	}
+
+	@Override
+	public Set<String> getTagKeys() {
+		return Collections.singleton(tagKey);
+	}
 }
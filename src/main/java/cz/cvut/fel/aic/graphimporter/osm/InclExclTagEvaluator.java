@@ -18,7 +18,9 @@
  */
 package cz.cvut.fel.aic.graphimporter.osm;
 
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -36,6 +38,14 @@ public class InclExclTagEvaluator implements TagEvaluator {
 	private final Map<String, Set<String>> exclude;
 	private final ExclUnless excludeUnless;
 
+	/**
+	 * Conditions compiled to the tag codes (include, exclude, exclude unless, unless). They are compiled on the first
+	 * use, because the evaluator can be deserialized. It stays null if the conditions can't be compiled.
+	 */
+	private volatile CodedTagCondition[] codedConditions;
+
+	private volatile boolean compiled;
+
 	private InclExclTagEvaluator() {
 		this(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
 	}
@@ -81,6 +91,46 @@ public class InclExclTagEvaluator implements TagEvaluator {
 		return included;
 	}
 
+	/**
+	 * Compares the codes of the element tags with the conditions. Subclasses can override {@link #test(Map)}, so they
+	 * are evaluated by it.
+	 *
+	 * @param element
+	 * @return
+	 */
+	@Override
+	public boolean test(OsmElement element) {
+		if (getClass() != InclExclTagEvaluator.class) {
+			return test(element.getTags());
+		}
+		if (!compiled) {
+			codedConditions = compile();
+			compiled = true;
+		}
+		CodedTagCondition[] conditions = codedConditions;
+		if (conditions == null) {
+			return test(element.getTags());
+		}
+		if (conditions[1].matchesAny(element)) {
+			return false;
+		}
+		if (conditions[2].matchesAny(element) && !conditions[3].matchesAny(element)) {
+			return false;
+		}
+		return conditions[0].matchesAny(element);
+	}
+
+	private CodedTagCondition[] compile() {
+		CodedTagCondition[] conditions = {CodedTagCondition.compile(include), CodedTagCondition.compile(exclude),
+				CodedTagCondition.compile(excludeUnless.exclude), CodedTagCondition.compile(excludeUnless.unless)};
+		for (CodedTagCondition condition : conditions) {
+			if (condition == null) {
+				return null;
+			}
+		}
+		return conditions;
+	}
+
 	private static boolean contains(Map<String, Set<String>> tagCondition, Entry<String, String> tag) {
 		Set<String> inclValue = tagCondition.get(tag.getKey());
 		return inclValue != null && (inclValue.contains("*") || inclValue.contains(tag.getValue()));
@@ -98,7 +148,23 @@ public class InclExclTagEvaluator implements TagEvaluator {
 		return excludeUnless;
 	}
 
-	private static class ExclUnless {
+	@Override
+	public Set<String> getTagKeys() {
+		Set<String> keys = new HashSet<>();
+		addKeys(keys, include);
+		addKeys(keys, exclude);
+		addKeys(keys, excludeUnless.exclude);
+		addKeys(keys, excludeUnless.unless);
+		return keys;
+	}
+
+	private static void addKeys(Set<String> keys, Map<String, Set<String>> tagCondition) {
+		if (tagCondition != null) {
+			keys.addAll(tagCondition.keySet());
+		}
+	}
+
+	static class ExclUnless {
 
 		private final Map<String, Set<String>> exclude;
 		private final Map<String, Set<String>> unless;
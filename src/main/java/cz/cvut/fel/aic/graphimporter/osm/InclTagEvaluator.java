@@ -18,6 +18,7 @@
  */
 package cz.cvut.fel.aic.graphimporter.osm;
 
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -29,6 +30,14 @@ public class InclTagEvaluator implements TagEvaluator {
 
 	private final Map<String, Set<String>> include;
 
+	/**
+	 * Include condition compiled to the tag codes. It's compiled on the first use, because the evaluator can be
+	 * deserialized. It stays null if the condition can't be compiled.
+	 */
+	private volatile CodedTagCondition codedInclude;
+
+	private volatile boolean compiled;
+
 	private InclTagEvaluator() {
 		this.include = null;
 	}
@@ -45,6 +54,25 @@ public class InclTagEvaluator implements TagEvaluator {
 		return false;
 	}
 
+	/**
+	 * Compares the codes of the element tags with the {@code include} map. Subclasses can override
+	 * {@link #include(Entry)} or {@link #test(Map)}, so they are evaluated by {@link #test(Map)}.
+	 *
+	 * @param element
+	 * @return
+	 */
+	@Override
+	public boolean test(OsmElement element) {
+		if (getClass() != InclTagEvaluator.class) {
+			return test(element.getTags());
+		}
+		if (!compiled) {
+			codedInclude = CodedTagCondition.compile(include);
+			compiled = true;
+		}
+		return codedInclude == null ? test(element.getTags()) : codedInclude.matchesAny(element);
+	}
+
 	protected static boolean contains(Map<String, Set<String>> tagCondition, Entry<String, String> tag) {
 		Set<String> inclValue = tagCondition.get(tag.getKey());
 		return inclValue != null && (inclValue.contains("*") || inclValue.contains(tag.getValue()));
@@ -57,4 +85,9 @@ public class InclTagEvaluator implements TagEvaluator {
 	public Map<String, Set<String>> getInclude() {
 		return include;
 	}
+
+	@Override
+	public Set<String> getTagKeys() {
+		return include.keySet();
+	}
 }
@@ -19,7 +19,10 @@
 package cz.cvut.fel.aic.graphimporter.osm;
 
 import com.google.common.primitives.Ints;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.apache.log4j.Logger;
 
 /**
@@ -105,6 +108,14 @@ public class LanesCountExtractor implements WayTagExtractor<Integer> {
 		return count;
 	}
 
+	/**
+	 * The [OsmParser]::bidirectional tag is added by the importer, so it isn't included.
+	 */
+	@Override
+	public Set<String> getTagKeys() {
+		return new HashSet<>(Arrays.asList("lanes", "lanes:forward", "lanes:backward"));
+	}
+
 	private Integer getMainValue(Map<String, String> tags) {
 		return parseCount(tags.get("lanes"));
 	}
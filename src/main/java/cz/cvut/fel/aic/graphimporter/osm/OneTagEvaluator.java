@@ -18,7 +18,11 @@
  */
 package cz.cvut.fel.aic.graphimporter.osm;
 
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import cz.cvut.fel.aic.graphimporter.osm.element.TagDictionary;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Marek Cuchý
@@ -28,9 +32,19 @@ public class OneTagEvaluator implements TagEvaluator {
 	private final String key;
 	private final String value;
 
+	private final int keyCode;
+
+	/**
+	 * Code of the value, {@link TagDictionary#NO_CODE} for any value.
+	 */
+	private final int valueCode;
+
 	public OneTagEvaluator(String key, String value) {
 		this.key = key;
 		this.value = value;
+		TagDictionary dictionary = TagDictionary.getInstance();
+		this.keyCode = dictionary.internKey(key);
+		this.valueCode = value.equals("*") ? TagDictionary.NO_CODE : dictionary.registerValue(value);
 	}
 
 	@Override
@@ -40,4 +54,27 @@ public class OneTagEvaluator implements TagEvaluator {
 		if (value.equals("*") || value.equals(val)) return true;
 		return false;
 	}
+
+	/**
+	 * Compares the codes of the element tags. Subclasses can override {@link #test(Map)}, so they are evaluated by it.
+	 *
+	 * @param element
+	 * @return
+	 */
+	@Override
+	public boolean test(OsmElement element) {
+		if (getClass() != OneTagEvaluator.class) {
+			return test(element.getTags());
+		}
+		if (keyCode == TagDictionary.NO_CODE || valueCode == TagDictionary.NO_CODE && !value.equals("*")) {
+			// the dictionary is full
+			return test(element.getTags());
+		}
+		return valueCode == TagDictionary.NO_CODE ? element.hasTag(keyCode) : element.hasTag(keyCode, valueCode);
+	}
+
+	@Override
+	public Set<String> getTagKeys() {
+		return Collections.singleton(key);
+	}
 }
@@ -28,31 +28,51 @@ import cz.cvut.fel.aic.geographtools.TransportMode;
 import cz.cvut.fel.aic.geographtools.util.GPSLocationTools;
 import cz.cvut.fel.aic.geographtools.util.Transformer;
 import cz.cvut.fel.aic.graphimporter.GraphCreator;
+import cz.cvut.fel.aic.graphimporter.GraphSimplifier;
 import cz.cvut.fel.aic.graphimporter.Importer;
+import cz.cvut.fel.aic.graphimporter.osm.area.AreaFilter;
+import cz.cvut.fel.aic.graphimporter.osm.change.OsmChangeConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.change.OsmChangeReader;
+import cz.cvut.fel.aic.graphimporter.osm.change.OsmImportState;
+import cz.cvut.fel.aic.graphimporter.osm.change.SimplifiedGraphState;
+import cz.cvut.fel.aic.graphimporter.osm.compression.CompressedInput;
 import cz.cvut.fel.aic.graphimporter.osm.element.OsmNode;
 import cz.cvut.fel.aic.graphimporter.osm.element.OsmRelation;
 import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
-import cz.cvut.fel.aic.graphimporter.osm.handler.OsmHandler;
+import cz.cvut.fel.aic.graphimporter.osm.handler.OsmXmlReader;
+import cz.cvut.fel.aic.graphimporter.osm.pbf.PbfReader;
+import cz.cvut.fel.aic.graphimporter.osm.store.InMemoryNodeLocationStore;
+import cz.cvut.fel.aic.graphimporter.osm.store.NodeLocationStore;
+import cz.cvut.fel.aic.graphimporter.restriction.TurnRestrictionIndex;
+import cz.cvut.fel.aic.graphimporter.restriction.TurnRestrictionType;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.EdgeBuilder;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.GraphSink;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.NodeBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.EdgeAttributes;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdge;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdgeBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNode;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNodeBuilder;
+import cz.cvut.fel.aic.graphimporter.util.BatchProjection;
+import cz.cvut.fel.aic.graphimporter.util.LongArrayList;
+import cz.cvut.fel.aic.graphimporter.util.LongIntHashMap;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import static java.util.stream.Collectors.toSet;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
 import org.apache.log4j.Logger;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
 /**
+ * Importer of the road graph from an OSM file.
+ * <p>
+ * By default, the readers skip the tags that aren't used by the configured evaluators and extractors (see
+ * {@link #setParseProfile}). Evaluators and extractors that don't report their tag keys get all the tags, but
+ * subclasses reading other tags of the elements directly have to set {@link ParseProfile#ALL}, otherwise such tags
+ * are missing.
+ *
  * @author fido
  */
 public class OsmImporter extends Importer implements OsmElementConsumer {
@@ -66,7 +86,10 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 	}
 
 
-	private final Map<Long, OsmNode> osmNodes;
+	/**
+	 * Locations of the OSM nodes, the nodes are needed until all ways are processed.
+	 */
+	private NodeLocationStore nodeLocations;
 
 	/**
 	 * Predicate for each mode, allowed in the graph, that says if the mode is allowed on a particular way (edge)
@@ -98,8 +121,39 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 	 */
 	private final Map<TransportMode, TagEvaluator> oneWayEvaluators;
 
+	/**
+	 * Mode and one-way evaluators of all modes compiled into one evaluator.
+	 */
+	private CompiledModeEvaluator compiledModeEvaluator;
+
 	private final File osmFile;
 
+	/**
+	 * Reader of the OSM file format. If not set, it's chosen according to the file extension.
+	 */
+	private OsmReader reader;
+
+	/**
+	 * Data of the OSM file needed by the import. If not set, it's derived from the evaluators and extractors.
+	 */
+	private ParseProfile parseProfile;
+
+	/**
+	 * If true, the OSM file is read twice. The first pass collects ids of nodes used by the ways allowed for some
+	 * mode, so that only these nodes are kept in memory during the second pass.
+	 */
+	private boolean twoPassImport;
+
+	/**
+	 * Area of the import. If set, only the nodes inside the area are imported. Null means no restriction.
+	 */
+	private AreaFilter areaFilter;
+
+	/**
+	 * Sorted ids of nodes referenced by the allowed ways. Null if all nodes are kept.
+	 */
+	private long[] referencedNodeIds;
+
 	protected final Set<TransportMode> allowedModes;
 
 	/**
@@ -115,19 +169,100 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 
 	private int mergedEdges;
 
+	/**
+	 * Number of ways processed in parallel in one batch. 0 means that the ways are evaluated by the parsing thread.
+	 */
+	private int wayBatchSize;
+
+	/**
+	 * Ways waiting for the parallel processing.
+	 */
+	private final List<OsmWay> wayBatch = new ArrayList<>();
+
+	/**
+	 * Projection of the nodes of the way batch and of the stored graph.
+	 */
+	private final BatchProjection batchProjection;
+
+	private boolean turnRestrictionsEnabled;
+
+	/**
+	 * Nodes of the ways added to the graph builder. They are needed for the resolution of the turn restrictions, so
+	 * they are kept only during the parsing and only if the restrictions are enabled.
+	 */
+	private Map<Long, long[]> wayNodes;
+
+	/**
+	 * Turn restrictions of the imported graph. Null if the restrictions are disabled.
+	 */
+	private TurnRestrictionIndex turnRestrictions;
+
+	/**
+	 * Tmp ids of the nodes used by the turn restrictions.
+	 */
+	private final Set<Integer> turnRestrictionNodes = new HashSet<>();
+
+	private int skippedTurnRestrictions;
+
+	/**
+	 * File with the persisted import state. Null if the incremental import isn't used.
+	 */
+	private File importStateFile;
+
+	/**
+	 * OSM change files applied to the import state.
+	 */
+	private final List<File> changeFiles = new ArrayList<>();
+
+	/**
+	 * Segments of the graph region simplified again by the incremental import. Edges of other segments aren't added to
+	 * the graph builder. Null if all edges are added.
+	 */
+	private SimplifiedGraphState.Region segmentFilter;
+
+	/**
+	 * Ids of the ways creating or merged into the edges, by the packed tmp ids of the edge nodes (see
+	 * {@link TmpGraphBuilder#edgeKey}). Collected only by the incremental import of the simplified graph.
+	 */
+	private Map<Long, LongArrayList> segmentWays;
+
+	/**
+	 * Added to the unique way ids of the created edges, so the edges of a simplified region don't share the ids with
+	 * the edges kept in the stored graph.
+	 */
+	private int uniqueWayIdOffset;
+
+	/**
+	 * Sink of the streaming import (see {@link #loadGraph(GraphSink)}). Null if the graph is built in the graph
+	 * builder.
+	 */
+	private GraphSink<InternalNode, InternalEdge> sink;
+
+	/**
+	 * Tmp ids of the nodes passed to the sink by their source ids.
+	 */
+	private LongIntHashMap sinkNodeIds;
+
+	/**
+	 * Locations of the nodes passed to the sink, indexed by their tmp ids.
+	 */
+	private List<GPSLocation> sinkNodeLocations;
+
+	private int sinkEdgeCount;
+
 
 	public OsmImporter(File osmFile, Set<TransportMode> allowedOsmModes, Transformer projection) {
 		this.projection = projection;
 		this.osmFile = osmFile;
 		allowedModes = allowedOsmModes;
 
-		osmNodes = new HashMap<>();
 		modeEvaluators = new EnumMap<>(TransportMode.class);
 		oppositeDirectionEvaluator = new OneTagEvaluator("oneway", "-1");
 		builder = new TmpGraphBuilder<>();
 		elevationExtractor = new DoubleExtractor("height", 0);
 		oneWayEvaluators = new EnumMap<>(TransportMode.class);
 		mergedEdges = 0;
+		batchProjection = new BatchProjection(projection);
 	}
 
 	public TmpGraphBuilder<InternalNode, InternalEdge> loadGraph() {
@@ -137,35 +272,550 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 		return builder;
 	}
 
+	/**
+	 * Streaming import. Nodes and edges are passed to the sink as the ways are processed and the graph builder stays
+	 * empty, only the node locations and the tmp ids of the passed nodes are kept in memory. A segment shared by more
+	 * ways is passed as more edges, each with the modes of its own way, instead of one edge with the merged modes.
+	 * Turn restrictions aren't supported, as they need the edges of the graph.
+	 *
+	 * @param sink
+	 */
+	@Override
+	public void loadGraph(GraphSink<InternalNode, InternalEdge> sink) {
+		if (turnRestrictionsEnabled) {
+			throw new IllegalStateException("Turn restrictions aren't supported by the streaming import.");
+		}
+		loadMissingSettings();
+		this.sink = sink;
+		sinkNodeIds = new LongIntHashMap();
+		sinkNodeLocations = new ArrayList<>();
+		sinkEdgeCount = 0;
+		try {
+			parseOSM();
+		} finally {
+			this.sink = null;
+			sinkNodeIds = null;
+			sinkNodeLocations = null;
+		}
+		sink.finish();
+	}
+
+	/**
+	 * Loads the simplified graph. Without the import state, the graph is loaded and simplified as usual. With the
+	 * import state (see {@link #setImportStateFile}), the simplified graph is kept in the state and only its part
+	 * around the nodes and ways changed by the change files is simplified again. The graph is then created from the
+	 * stored simplified graph. It has the same nodes and edges as the graph simplified after the import of the updated
+	 * OSM file, but the ids (tmp ids, unique way ids) can differ.
+	 *
+	 * @throws IllegalStateException if the import state is used together with the turn restrictions
+	 */
+	@Override
+	public TmpGraphBuilder<InternalNode, InternalEdge> loadSimplifiedGraph() {
+		if (importStateFile == null) {
+			return super.loadSimplifiedGraph();
+		}
+		checkImportStateSettings();
+		loadMissingSettings();
+		LOGGER.info("Incremental import of the simplified graph started...");
+		long t1 = System.currentTimeMillis();
+
+		ImportStateUpdater updater = updateImportState();
+		OsmImportState state = updater.state;
+		boolean graphStored = state.getGraph() != null;
+		updateSimplifiedGraph(updater);
+		if (updater.stateChanged() || !graphStored) {
+			saveImportState(state);
+		}
+		nodeLocations.clear();
+		addStoredGraph(state, state.getGraph());
+
+		long t2 = System.currentTimeMillis();
+		LOGGER.info("Incremental import finished in " + (t2 - t1) + "ms, graph [#nodes=" + builder.getNodeCount()
+				+ ", #edges=" + builder.getEdgeCount() + "]");
+		return builder;
+	}
+
+	/**
+	 * Set the reader used for parsing of the OSM file. By default, {@link PbfReader} is used for files with the
+	 * {@code .pbf} extension and {@link OsmXmlReader} reusing the element instances for all other files. The importer
+	 * copies the elements it keeps, so readers reusing the elements can be used.
+	 *
+	 * @param reader
+	 */
+	public void setReader(OsmReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Set the profile of the data read from the OSM file. By default, only the tags used by the configured evaluators
+	 * and extractors are read and the relations are read only if the turn restrictions are enabled. Subclasses using
+	 * other tags or relations have to set the profile accordingly (e.g. {@link ParseProfile#ALL}).
+	 *
+	 * @param parseProfile
+	 */
+	public void setParseProfile(ParseProfile parseProfile) {
+		this.parseProfile = parseProfile;
+	}
+
+	/**
+	 * Set the store of the node locations used during the import. By default, {@link InMemoryNodeLocationStore} is
+	 * used. For files with more nodes than fits into the heap, use the
+	 * {@link cz.cvut.fel.aic.graphimporter.osm.store.MappedNodeLocationStore}.
+	 *
+	 * @param nodeLocations
+	 */
+	public void setNodeLocationStore(NodeLocationStore nodeLocations) {
+		this.nodeLocations = nodeLocations;
+	}
+
+	/**
+	 * Restricts the import to the area. Nodes outside the area are dropped and ways leaving the area are split into
+	 * the sections inside the area.
+	 *
+	 * @param areaFilter
+	 */
+	public void setAreaFilter(AreaFilter areaFilter) {
+		this.areaFilter = areaFilter;
+	}
+
+	/**
+	 * Enables the batched parallel processing of ways. The evaluation of the way tags is done for whole batches of
+	 * ways on the fork-join pool. Ways are then added to the graph builder by one thread in the input order, so the
+	 * resulting graph (including all ids) is the same as in the sequential processing. The new nodes of a batch are
+	 * projected at once in parallel chunks (each node only once, even if it's shared by more ways of the batch). The
+	 * sequential processing projects the new nodes of each way in bulk as well, without copying the way.
+	 *
+	 * @param wayBatchSize number of ways in one batch, 0 disables the parallel processing
+	 */
+	public void setWayBatchSize(int wayBatchSize) {
+		this.wayBatchSize = wayBatchSize;
+	}
+
+	/**
+	 * Enables the import of the turn restrictions ({@code type=restriction} relations with a via node). Relations are
+	 * resolved when they are read, so they have to follow the ways in the file, as in the standard OSM files.
+	 *
+	 * @param turnRestrictionsEnabled
+	 */
+	public void setTurnRestrictionsEnabled(boolean turnRestrictionsEnabled) {
+		this.turnRestrictionsEnabled = turnRestrictionsEnabled;
+	}
+
+	/**
+	 * Enables the two-pass import. It needs to read the OSM file twice, but only the nodes used by the graph are
+	 * kept in memory, which considerably reduces the peak memory consumption for large files.
+	 *
+	 * @param twoPassImport
+	 */
+	public void setTwoPassImport(boolean twoPassImport) {
+		this.twoPassImport = twoPassImport;
+	}
+
+	/**
+	 * Enables the incremental import. The node locations and the allowed ways are kept in a compact state persisted in
+	 * the {@code importStateFile}. If the file doesn't exist, the state is created from the OSM file. Otherwise, the
+	 * OSM file isn't read at all: the change files ({@link #setChangeFiles}) that weren't applied yet are applied to the
+	 * stored state and the graph is built from it.
+	 * <p>
+	 * {@link #loadSimplifiedGraph()} keeps also the simplified graph in the state. After the changes are applied, only
+	 * the simplified edges around the changed nodes and ways are removed and the region is simplified again from the
+	 * updated ways, the rest of the stored graph is used as it is. {@link #loadGraph()} builds the whole graph from the
+	 * state and drops the stored simplified graph if it applies any change.
+	 * <p>
+	 * The state is valid only for the same settings of the importer (modes, evaluators, extractors and area filter).
+	 * The turn restrictions aren't supported by the incremental import, the import fails if they are enabled. Don't put
+	 * the state file into the working directory with the OSM file name prefix, such files are deleted by
+	 * {@link GraphCreator} when it serializes a new graph.
+	 *
+	 * @param importStateFile
+	 */
+	public void setImportStateFile(File importStateFile) {
+		this.importStateFile = importStateFile;
+	}
+
+	/**
+	 * Sets the OSM change files ({@code .osc}, can be compressed) applied to the import state in the given order. The
+	 * applied files are recorded in the state by their absolute paths and they are skipped if they are set again, so
+	 * the replication diffs can be kept in place and new ones appended to the list.
+	 *
+	 * @param changeFiles
+	 */
+	public void setChangeFiles(File... changeFiles) {
+		this.changeFiles.clear();
+		this.changeFiles.addAll(Arrays.asList(changeFiles));
+	}
+
+	/**
+	 * @return True if any of the change files wasn't applied to the import state yet, so the graph serialized before
+	 * is outdated.
+	 * @throws IllegalStateException if the import state is used together with the turn restrictions
+	 */
+	@Override
+	public boolean isSerializedGraphOutdated() {
+		if (importStateFile == null) {
+			return false;
+		}
+		checkImportStateSettings();
+		if (!importStateFile.exists()) {
+			return !changeFiles.isEmpty();
+		}
+		try {
+			Set<String> appliedChangeFiles = new HashSet<>(OsmImportState.readAppliedChangeFiles(importStateFile));
+			for (File changeFile : changeFiles) {
+				if (!appliedChangeFiles.contains(getChangeFileId(changeFile))) {
+					return true;
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			LOGGER.warn("Applied change files can't be read from " + importStateFile + ": " + e.getMessage());
+			return true;
+		}
+	}
+
+	private void checkImportStateSettings() {
+		if (turnRestrictionsEnabled) {
+			throw new IllegalStateException("Turn restrictions aren't supported by the incremental import.");
+		}
+	}
+
+	private static String getChangeFileId(File changeFile) {
+		return changeFile.getAbsolutePath();
+	}
 
 	@Override
 	public void accept(OsmNode node) {
-		osmNodes.put(node.id, node);
+		// ways waiting in the batch mustn't see nodes that follow them in the file
+		flushWayBatch();
+		if (areaFilter != null && !areaFilter.contains(node.getLat(), node.getLon())) {
+			return;
+		}
+		if (referencedNodeIds == null || Arrays.binarySearch(referencedNodeIds, node.getId()) >= 0) {
+			nodeLocations.put(node.getId(), node.getLat(), node.getLon(), extractElevation(node));
+		}
+	}
+
+	private int extractElevation(OsmNode node) {
+		return (int) Math.round(elevationExtractor.apply(node.getTags()));
 	}
 
 	@Override
 	public void accept(OsmWay way) {
-		way.removeMissingNodes(osmNodes.keySet());
+		if (wayBatchSize > 0) {
+			// the reader can reuse the way instance
+			wayBatch.add(way.copy());
+			if (wayBatch.size() >= wayBatchSize) {
+				flushWayBatch();
+			}
+		} else {
+			// the way is added before the reader reuses it, so it isn't copied
+			PreparedWay preparedWay = prepareWay(way);
+			if (preparedWay != null) {
+				projectNodes(Collections.singletonList(preparedWay));
+				addWay(preparedWay);
+			}
+		}
+	}
 
-		Set<TransportMode> modesOfTransport = getModesOfTransport(way);
+	/**
+	 * Prepares the ways of the batch in parallel, projects their new nodes in bulk and adds the ways to the graph
+	 * builder in the original order.
+	 */
+	private void flushWayBatch() {
+		if (wayBatch.isEmpty()) {
+			return;
+		}
+		List<PreparedWay> preparedWays = wayBatch.parallelStream().map(this::prepareWay).collect(Collectors.toList());
+		wayBatch.clear();
+		projectNodes(preparedWays);
+		for (PreparedWay preparedWay : preparedWays) {
+			if (preparedWay != null) {
+				addWay(preparedWay);
+			}
+		}
+	}
 
-		if (!modesOfTransport.isEmpty()) {
-			createEdges(way, modesOfTransport);
+	/**
+	 * Computes everything needed for adding the way to the graph builder, except the node locations, which are left
+	 * null and projected later by {@link #projectNodes}. It doesn't modify the importer state, so it can run in
+	 * parallel for more ways (as long as nothing else modifies the importer).
+	 *
+	 * @return Prepared way or null if the way isn't allowed for any mode.
+	 */
+	private PreparedWay prepareWay(OsmWay way) {
+		long evaluation = compiledModeEvaluator.evaluate(way);
+		Set<TransportMode> modesOfTransport = CompiledModeEvaluator.getModes(evaluation);
+		if (modesOfTransport.isEmpty()) {
+			return null;
+		}
+		Set<TransportMode> bidirectionalModes = EnumSet.copyOf(modesOfTransport);
+		bidirectionalModes.removeAll(CompiledModeEvaluator.getOneWayModes(evaluation));
+
+		List<List<Long>> sections;
+		if (areaFilter == null) {
+			way.removeMissingNodes(nodeLocations::contains);
+			sections = Collections.singletonList(way.getNodes());
+		} else {
+			// the way mustn't be joined over the nodes outside the area
+			sections = getSectionsWithExistingNodes(way);
+		}
+
+		//reverse nodes if way is the opposite direction. Have to cooperate with one-way evaluators.
+		if (oppositeDirectionEvaluator.test(way)) {
+			sections = Lists.transform(sections, Lists::reverse);
+		}
+
+		List<GPSLocation[]> locations = new ArrayList<>(sections.size());
+		for (List<Long> section : sections) {
+			locations.add(new GPSLocation[section.size()]);
+		}
+
+		if (!bidirectionalModes.isEmpty()) {
+			way.addTag("[OsmParser]::bidirectional", "1"); // TODO: do it properly inside WayTagExtractor
+		}
+
+		// TODO implement custom params
+		return new PreparedWay(way, sections, locations, createEdgeAttributes(way, modesOfTransport, EdgeType.FORWARD),
+				bidirectionalModes.isEmpty() ? null
+						: createEdgeAttributes(way, bidirectionalModes, EdgeType.BACKWARD), new HashMap<>());
+	}
+
+	private EdgeAttributes createEdgeAttributes(OsmWay way, Set<TransportMode> modesOfTransport, EdgeType edgeType) {
+		return EdgeAttributes.of(modesOfTransport, extractSpeed(way, edgeType), extractLanesCount(way, edgeType));
+	}
+
+	/**
+	 * Projects the nodes of the prepared ways that aren't in the graph builder yet. The nodes are projected in bulk,
+	 * each of them only once.
+	 */
+	private void projectNodes(List<PreparedWay> preparedWays) {
+		Map<Long, Integer> projectionIndices = new HashMap<>();
+		for (PreparedWay way : preparedWays) {
+			if (way != null) {
+				for (List<Long> section : way.sections) {
+					for (long nodeId : section) {
+						if (!containsNode(nodeId) && !projectionIndices.containsKey(nodeId)) {
+							projectionIndices.put(nodeId, batchProjection.add(nodeLocations.getLat(nodeId),
+									nodeLocations.getLon(nodeId), nodeLocations.getElevation(nodeId)));
+						}
+					}
+				}
+			}
+		}
+		GPSLocation[] projected = batchProjection.project();
+		for (PreparedWay way : preparedWays) {
+			if (way != null) {
+				for (int i = 0; i < way.sections.size(); i++) {
+					List<Long> section = way.sections.get(i);
+					GPSLocation[] locations = way.locations.get(i);
+					for (int j = 0; j < section.size(); j++) {
+						Integer index = projectionIndices.get(section.get(j));
+						if (index != null) {
+							locations[j] = projected[index];
+						}
+					}
+				}
+			}
 		}
 	}
 
+	private void addWay(PreparedWay way) {
+		if (wayNodes != null) {
+			wayNodes.put(way.way.getId(), way.way.getNodeIds());
+		}
+		for (int i = 0; i < way.sections.size(); i++) {
+			createEdges(way, way.sections.get(i), way.locations.get(i));
+		}
+	}
+
+	/**
+	 * Splits the way nodes into the maximal sections of the nodes present in the node store.
+	 */
+	private List<List<Long>> getSectionsWithExistingNodes(OsmWay way) {
+		List<List<Long>> sections = new ArrayList<>();
+		List<Long> section = new ArrayList<>();
+		for (int i = 0; i < way.getNodeCount(); i++) {
+			long nodeId = way.getNode(i);
+			if (nodeLocations.contains(nodeId)) {
+				section.add(nodeId);
+			} else {
+				if (section.size() > 1) {
+					sections.add(section);
+				}
+				section = new ArrayList<>();
+			}
+		}
+		if (section.size() > 1) {
+			sections.add(section);
+		}
+		return sections;
+	}
+
 	@Override
 	public void accept(OsmRelation relation) {
+		flushWayBatch();
+		if (turnRestrictions != null && "restriction".equals(relation.getTag("type"))) {
+			addTurnRestriction(relation);
+		}
+	}
+
+	/**
+	 * Resolves the restriction relation into the nodes of the from and to edges. Only the restrictions with a via node
+	 * and with ways already added to the graph builder are supported, other restrictions are skipped.
+	 */
+	private void addTurnRestriction(OsmRelation relation) {
+		TurnRestrictionType type = TurnRestrictionType.fromTagValue(relation.getTag("restriction"));
+		long fromWayId = 0;
+		long viaNodeId = 0;
+		long toWayId = 0;
+		int fromCount = 0;
+		int viaNodeCount = 0;
+		int toCount = 0;
+		boolean supported = type != null;
+		for (int i = 0; i < relation.getMemberCount(); i++) {
+			OsmRelation.MemberType memberType = relation.getMemberType(i);
+			switch (relation.getMemberRole(i)) {
+				case "from":
+					fromWayId = relation.getMemberId(i);
+					fromCount++;
+					supported &= memberType == OsmRelation.MemberType.WAY;
+					break;
+				case "via":
+					viaNodeId = relation.getMemberId(i);
+					viaNodeCount++;
+					supported &= memberType == OsmRelation.MemberType.NODE;
+					break;
+				case "to":
+					toWayId = relation.getMemberId(i);
+					toCount++;
+					supported &= memberType == OsmRelation.MemberType.WAY;
+					break;
+			}
+		}
+		if (!supported || fromCount != 1 || viaNodeCount != 1 || toCount != 1) {
+			skippedTurnRestrictions++;
+			return;
+		}
+
+		long[] fromWayNodes = wayNodes.get(fromWayId);
+		long[] toWayNodes = wayNodes.get(toWayId);
+		if (fromWayNodes == null || toWayNodes == null || !builder.containsNode(viaNodeId)) {
+			skippedTurnRestrictions++;
+			return;
+		}
+		int viaTmpId = builder.getIntIdForSourceId(viaNodeId);
+		int fromIndex = findTurnRestrictionNeighbor(fromWayNodes, viaNodeId, viaTmpId, true);
+		int toIndex = findTurnRestrictionNeighbor(toWayNodes, viaNodeId, viaTmpId, false);
+		if (fromIndex < 0 || toIndex < 0) {
+			skippedTurnRestrictions++;
+			return;
+		}
+
+		turnRestrictions.add(fromWayNodes[fromIndex], viaNodeId, toWayNodes[toIndex], type);
+		turnRestrictionNodes.add(builder.getIntIdForSourceId(fromWayNodes[fromIndex]));
+		turnRestrictionNodes.add(viaTmpId);
+		turnRestrictionNodes.add(builder.getIntIdForSourceId(toWayNodes[toIndex]));
+	}
+
+	/**
+	 * Finds the way node adjacent to the via node that forms an edge to the via node ({@code incoming}) or from the
+	 * via node.
+	 *
+	 * @return Index of the node in {@code nodes} or -1 if there is no such node or if there are more of them.
+	 */
+	private int findTurnRestrictionNeighbor(long[] nodes, long viaNodeId, int viaTmpId, boolean incoming) {
+		int neighbor = -1;
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] != viaNodeId) {
+				continue;
+			}
+			for (int j = i - 1; j <= i + 1; j += 2) {
+				if (j < 0 || j >= nodes.length || nodes[j] == viaNodeId || !builder.containsNode(nodes[j])) {
+					continue;
+				}
+				int tmpId = builder.getIntIdForSourceId(nodes[j]);
+				if (incoming ? builder.containsEdge(tmpId, viaTmpId) : builder.containsEdge(viaTmpId, tmpId)) {
+					if (neighbor >= 0 && nodes[neighbor] != nodes[j]) {
+						return -1;
+					}
+					neighbor = j;
+				}
+			}
+		}
+		return neighbor;
+	}
+
+	@Override
+	public Set<Integer> getNodesToKeep() {
+		return turnRestrictionNodes;
+	}
+
+	/**
+	 * @return Turn restrictions of the imported graph or null if they are disabled (see
+	 * {@link #setTurnRestrictionsEnabled}).
+	 */
+	@Override
+	public TurnRestrictionIndex getTurnRestrictions() {
+		return turnRestrictions;
 	}
 
 	/**
 	 * Check for setting
 	 */
 	protected void loadMissingSettings() {
+		loadReaderIfNeeded();
+		loadNodeLocationStoreIfNeeded();
 		loadSpeedExtractorIfNeeded();
 		loadModeEvaluatorsIfNeeded();
 		loadOneWayEvaluatorsIfNeeded();
 		loadLaneCountExtractorIfNeeded();
+		loadParseProfileIfNeeded();
+		compiledModeEvaluator = new CompiledModeEvaluator(modeEvaluators, oneWayEvaluators);
+	}
+
+	private void loadParseProfileIfNeeded() {
+		if (parseProfile == null) {
+			List<Set<String>> wayTagKeys = new ArrayList<>();
+			modeEvaluators.values().forEach(evaluator -> wayTagKeys.add(evaluator.getTagKeys()));
+			oneWayEvaluators.values().forEach(evaluator -> wayTagKeys.add(evaluator.getTagKeys()));
+			wayTagKeys.add(oppositeDirectionEvaluator.getTagKeys());
+			wayTagKeys.add(speedExtractor.getTagKeys());
+			wayTagKeys.add(lanesCountExtractor.getTagKeys());
+			parseProfile = new ParseProfile(true, elevationExtractor.getTagKeys(), true, union(wayTagKeys),
+					turnRestrictionsEnabled, new HashSet<>(Arrays.asList("type", "restriction")));
+			LOGGER.debug("Parse profile: " + parseProfile);
+		}
+	}
+
+	/**
+	 * @return Union of the tag keys or null if any of them is null (i.e., all tags are needed).
+	 */
+	private static Set<String> union(List<Set<String>> tagKeys) {
+		Set<String> union = new HashSet<>();
+		for (Set<String> keys : tagKeys) {
+			if (keys == null) {
+				return null;
+			}
+			union.addAll(keys);
+		}
+		return union;
+	}
+
+	private void loadReaderIfNeeded() {
+		if (reader == null) {
+			if (osmFile.getName().endsWith(".pbf")) {
+				reader = new PbfReader();
+			} else {
+				// the importer copies every element it keeps, so the elements can be reused
+				reader = new OsmXmlReader(true);
+			}
+		}
+	}
+
+	private void loadNodeLocationStoreIfNeeded() {
+		if (nodeLocations == null) {
+			nodeLocations = new InMemoryNodeLocationStore();
+		}
 	}
 
 	/**
@@ -239,20 +889,277 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 
 		long t1 = System.currentTimeMillis();
 
-		try {
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			SAXParser parser = factory.newSAXParser();
-			XMLReader xmlreader = parser.getXMLReader();
-			xmlreader.setContentHandler(new OsmHandler(this));
-			xmlreader.parse(new InputSource(osmFile.toURI().toURL().openStream()));
-		} catch (ParserConfigurationException | SAXException | IOException e) {
-			throw new IllegalStateException("OSM can't be parsed.", e);
+		if (importStateFile != null) {
+			loadFromImportState();
+		} else {
+			if (twoPassImport) {
+				ReferencedNodesCollector collector = new ReferencedNodesCollector();
+				// the first pass needs only the ways
+				readOsmFile(collector, new ParseProfile(false, null, true, parseProfile.getWayTagKeys(), false, null));
+				referencedNodeIds = collector.getReferencedNodeIds();
+				LOGGER.info("First pass finished, " + referencedNodeIds.length + " nodes referenced by allowed ways");
+			}
+			if (turnRestrictionsEnabled) {
+				wayNodes = new HashMap<>();
+				turnRestrictions = new TurnRestrictionIndex();
+			}
+			readOsmFile(this, parseProfile);
+		}
+		flushWayBatch();
+		if (turnRestrictions != null) {
+			turnRestrictions.sort();
+			LOGGER.info(turnRestrictions.size() + " turn restrictions imported, " + skippedTurnRestrictions
+					+ " skipped");
 		}
 
 		LOGGER.info(getStatistic());
 		long t2 = System.currentTimeMillis();
 		LOGGER.info("Parsing of OSM finished in " + (t2 - t1) + "ms");
-		osmNodes.clear();
+		nodeLocations.clear();
+		referencedNodeIds = null;
+		wayNodes = null;
+	}
+
+	/**
+	 * Updates the import state (see {@link #updateImportState()}) and passes the nodes and ways of the state to the
+	 * importer in the id order, i.e., the graph is the same as if the updated OSM file was imported. The simplified
+	 * graph stored in the state is dropped if any change is applied, as it isn't updated.
+	 */
+	private void loadFromImportState() {
+		checkImportStateSettings();
+		ImportStateUpdater updater = updateImportState();
+		OsmImportState state = updater.state;
+		if (updater.changeFileCount > 0) {
+			state.setGraph(null);
+		}
+		if (updater.stateChanged()) {
+			saveImportState(state);
+		}
+		LOGGER.info("Import state: " + state.getNodeCount() + " nodes, " + state.getWayCount() + " ways");
+
+		state.forEachNode(nodeLocations::put);
+		state.forEachWay(this::accept);
+	}
+
+	/**
+	 * Loads the import state (or creates it from the OSM file) and applies the change files that weren't applied to it
+	 * yet. The state isn't saved.
+	 *
+	 * @return Updater with the state and with the nodes and ways changed by the change files.
+	 */
+	private ImportStateUpdater updateImportState() {
+		OsmImportState state;
+		boolean created = !importStateFile.exists();
+		if (created) {
+			state = new OsmImportState();
+			readOsmFile(new ImportStateUpdater(state, false), parseProfile);
+			LOGGER.info("Import state created from " + osmFile.getName());
+		} else {
+			try {
+				state = OsmImportState.load(importStateFile);
+			} catch (IOException e) {
+				throw new IllegalStateException("Import state can't be loaded from " + importStateFile, e);
+			}
+		}
+
+		ImportStateUpdater updater = new ImportStateUpdater(state, true);
+		updater.created = created;
+		for (File changeFile : changeFiles) {
+			String changeFileId = getChangeFileId(changeFile);
+			if (state.isChangeFileApplied(changeFileId)) {
+				LOGGER.info("OSM change file " + changeFile.getName() + " already applied, skipped");
+				continue;
+			}
+			try (InputStream stream = CompressedInput.open(changeFile)) {
+				new OsmChangeReader().read(stream, updater, parseProfile);
+			} catch (IOException e) {
+				throw new IllegalStateException("OSM change file " + changeFile + " can't be parsed.", e);
+			}
+			state.addAppliedChangeFile(changeFileId);
+			updater.changeFileCount++;
+			LOGGER.info("OSM change file " + changeFile.getName() + " applied");
+		}
+		return updater;
+	}
+
+	private void saveImportState(OsmImportState state) {
+		try {
+			state.save(importStateFile);
+		} catch (IOException e) {
+			throw new IllegalStateException("Import state can't be saved to " + importStateFile, e);
+		}
+	}
+
+	/**
+	 * Updates the simplified graph stored in the import state. The edges around the changed nodes and ways are removed
+	 * from the stored graph, the edges of the removed region are created again from the updated ways and simplified
+	 * (the nodes connecting the region to the rest of the graph are kept) and the new simplified edges are stored.
+	 * The whole graph is simplified only if the state doesn't contain it yet.
+	 */
+	private void updateSimplifiedGraph(ImportStateUpdater updater) {
+		OsmImportState state = updater.state;
+		SimplifiedGraphState graph = state.getGraph();
+		if (graph == null) {
+			graph = new SimplifiedGraphState();
+			state.forEachNode(nodeLocations::put);
+			simplifyRegion(state, graph, null, id -> true);
+			state.setGraph(graph);
+			LOGGER.info("Simplified graph of the import state created, " + graph.getEdgeCount() + " edges");
+			return;
+		}
+		if (updater.changeFileCount == 0) {
+			return;
+		}
+
+		// ways with changed nodes can get other sections (e.g., by the area filter), so they are changed as well
+		Set<Long> changedWays = new HashSet<>(updater.changedWays);
+		changedWays.addAll(state.findWaysWithNodes(updater.changedNodes));
+		Set<Long> changedNodes = new HashSet<>(updater.changedNodes);
+		changedNodes.addAll(updater.previousWayNodes);
+		for (long wayId : changedWays) {
+			long[] nodes = state.getWayNodes(wayId);
+			if (nodes != null) {
+				for (long nodeId : nodes) {
+					changedNodes.add(nodeId);
+				}
+			}
+		}
+
+		SimplifiedGraphState.Region region = graph.removeRegion(changedNodes);
+		Set<Long> regionWays = new HashSet<>(region.getWayIds());
+		for (long wayId : changedWays) {
+			long[] nodes = state.getWayNodes(wayId);
+			if (nodes != null) {
+				// the edge direction is given by the way tags
+				region.addSegments(nodes, true);
+				regionWays.add(wayId);
+			}
+		}
+		int storedEdgeCount = graph.getEdgeCount();
+		simplifyRegion(state, graph, region, regionWays::contains);
+		LOGGER.info(region.getEdgeCount() + " simplified edges of " + regionWays.size() + " ways replaced by "
+				+ (graph.getEdgeCount() - storedEdgeCount) + " edges");
+	}
+
+	/**
+	 * Creates the edges of the ways in the region, simplifies them and adds the simplified edges to the stored graph.
+	 *
+	 * @param region region to simplify or null for the whole graph
+	 * @param wayFilter ways with the edges in the region
+	 */
+	private void simplifyRegion(OsmImportState state, SimplifiedGraphState graph, SimplifiedGraphState.Region region,
+			LongPredicate wayFilter) {
+		builder.clear();
+		segmentFilter = region;
+		segmentWays = new HashMap<>();
+		uniqueWayIdOffset = graph.getNextUniqueWayId();
+		try {
+			state.forEachWay(wayFilter, way -> {
+				if (region != null) {
+					for (int i = 0; i < way.getNodeCount(); i++) {
+						state.getNode(way.getNode(i), nodeLocations::put);
+					}
+				}
+				accept(way);
+			});
+			flushWayBatch();
+			// nodes of the way sections outside the region
+			builder.removeIsolatedNodes();
+
+			long[] sourceIds = new long[builder.getNodeCount() == 0 ? 0 : builder.getMaxId() + 1];
+			for (NodeBuilder<InternalNode> node : builder.getAllNodes()) {
+				sourceIds[node.tmpId] = node.sourceId;
+			}
+			Set<Integer> nodesToKeep = new HashSet<>();
+			if (region != null) {
+				for (long nodeId : region.getBoundaryNodes()) {
+					if (builder.containsNode(nodeId)) {
+						nodesToKeep.add(builder.getIntIdForSourceId(nodeId));
+					}
+				}
+			}
+			Map<InternalEdgeBuilder, List<Integer>> simplifiedEdgeNodes = new IdentityHashMap<>();
+			GraphSimplifier.simplify(builder, nodesToKeep, simplifiedEdgeNodes::put);
+
+			for (EdgeBuilder<InternalEdge, InternalNode> edgeBuilder : builder.getAllEdges()) {
+				InternalEdgeBuilder edge = (InternalEdgeBuilder) edgeBuilder;
+				List<Integer> tmpIds = simplifiedEdgeNodes.get(edge);
+				if (tmpIds == null) {
+					tmpIds = Arrays.asList(edge.getTmpFromId(), edge.getTmpToId());
+				}
+				long[] nodes = new long[tmpIds.size()];
+				LongArrayList wayIds = new LongArrayList();
+				for (int i = 0; i < nodes.length; i++) {
+					nodes[i] = sourceIds[tmpIds.get(i)];
+					if (i > 0) {
+						LongArrayList ways = segmentWays.get(TmpGraphBuilder.edgeKey(tmpIds.get(i - 1), tmpIds.get(i)));
+						for (int j = 0; j < ways.size(); j++) {
+							wayIds.add(ways.get(j));
+						}
+					}
+				}
+				wayIds.sortUnique();
+				graph.addEdge(nodes, edge.getLengthCm(), edge.getAttributes(), edge.uniqueWayID,
+						edge.oppositeWayUniqueId, edge.getOtherParams(), wayIds.toArray());
+			}
+		} finally {
+			builder.clear();
+			segmentFilter = null;
+			segmentWays = null;
+			uniqueWayIdOffset = 0;
+		}
+	}
+
+	/**
+	 * Adds the edges of the stored simplified graph to the empty graph builder. Nodes get the tmp ids in the order of
+	 * their source ids, edges are added in the order of the stored edges. The locations of the nodes are projected in
+	 * bulk.
+	 */
+	private void addStoredGraph(OsmImportState state, SimplifiedGraphState graph) {
+		LongIntHashMap projectionIndices = new LongIntHashMap();
+		LongArrayList endNodes = new LongArrayList();
+		for (SimplifiedGraphState.StoredEdge edge : graph.getEdges()) {
+			endNodes.add(edge.getFromId());
+			endNodes.add(edge.getToId());
+			for (int i = 0; i < edge.getNodeCount(); i++) {
+				long nodeId = edge.getNode(i);
+				if (projectionIndices.containsKey(nodeId)) {
+					continue;
+				}
+				boolean found = state.getNode(nodeId, (id, lat, lon, elevation) ->
+						projectionIndices.put(id, batchProjection.add(lat, lon, elevation)));
+				if (!found) {
+					throw new IllegalStateException("Node " + nodeId + " of the stored graph isn't in the import state.");
+				}
+			}
+		}
+		GPSLocation[] locations = batchProjection.project();
+
+		endNodes.sortUnique();
+		for (int tmpId = 0; tmpId < endNodes.size(); tmpId++) {
+			long nodeId = endNodes.get(tmpId);
+			builder.addNode(new InternalNodeBuilder(tmpId, nodeId,
+					locations[projectionIndices.getOrDefault(nodeId, -1)], new HashMap<>()));
+		}
+		for (SimplifiedGraphState.StoredEdge edge : graph.getEdges()) {
+			List<GPSLocation> shape = new ArrayList<>(edge.getNodeCount());
+			for (int i = 0; i < edge.getNodeCount(); i++) {
+				shape.add(locations[projectionIndices.getOrDefault(edge.getNode(i), -1)]);
+			}
+			builder.addEdge(new InternalEdgeBuilder(builder.getIntIdForSourceId(edge.getFromId()),
+					builder.getIntIdForSourceId(edge.getToId()), edge.getUniqueWayId(),
+					edge.getOppositeWayUniqueId(), edge.getLengthCm(), edge.getAttributes(),
+					edge.getNodeCount() > 2 ? builder.getPolylineStore().add(shape) : shape,
+					edge.getOtherParams()));
+		}
+	}
+
+	private void readOsmFile(OsmElementConsumer consumer, ParseProfile profile) {
+		try (InputStream stream = CompressedInput.open(osmFile)) {
+			reader.read(stream, consumer, profile);
+		} catch (IOException e) {
+			throw new IllegalStateException("OSM can't be parsed.", e);
+		}
 	}
 
 	/**
@@ -268,30 +1175,16 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 	 * OSM way modes
 	 */
 	private Set<TransportMode> getModesOfTransport(OsmWay way) {
-		Set<TransportMode> ModesOfTransport = EnumSet.noneOf(TransportMode.class);
-
-		for (Map.Entry<TransportMode, TagEvaluator> entry : modeEvaluators.entrySet()) {
-			TransportMode mode = entry.getKey();
-			if (entry.getValue().test(way.getTags())) {
-				ModesOfTransport.add(mode);
-			}
-		}
-		return ModesOfTransport;
+		return CompiledModeEvaluator.getModes(compiledModeEvaluator.evaluate(way));
 	}
 
 	/**
 	 * Create nodes & edges section
 	 */
-	private void createEdges(OsmWay way, Set<TransportMode> modeOfTransports) {
-		List<Long> nodes = way.getNodes();
-
-		//reverse nodes if way is the opposite direction. Have to cooperate with one-way evaluators.
-		if (oppositeDirectionEvaluator.test(way.getTags())) {
-			nodes = Lists.reverse(nodes);
+	private void createEdges(PreparedWay way, List<Long> nodes, GPSLocation[] locations) {
+		for (int i = 0; i < nodes.size(); i++) {
+			createAndAddNode(nodes.get(i), locations[i]);
 		}
-		nodes.forEach(this::createAndAddNode);
-
-		Set<TransportMode> bidirectionalModes = getBidirectionalModes(way, modeOfTransports);
 
 		//the EdgeType parameters doesn't take into account the possibility of reversed direction - possible fix in
 		// the future
@@ -299,13 +1192,12 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 		// bidirectionalStatus is used for (int) uniqueWayId and (int) oppositeWayId. If 0, then edge is one-way.
 		//If the number is 1, it is a bidirectional edge (in FORWARD) and if the number is 2, then it is the opposite
 		// direction of the edge (BACKWARD)
-		if (bidirectionalModes.isEmpty()) {
-			createAndAddOrMergeEdges(nodes, modeOfTransports, way, EdgeType.FORWARD, 0);
+		if (way.backward == null) {
+			createAndAddOrMergeEdges(nodes, way.forward, way.otherParams, way.way, EdgeType.FORWARD, 0);
 		} else {
-			way.addTag("[OsmParser]::bidirectional", "1"); // TODO: do it properly inside WayTagExtractor
-
-			createAndAddOrMergeEdges(nodes, modeOfTransports, way, EdgeType.FORWARD, 1);
-			createAndAddOrMergeEdges(Lists.reverse(nodes), bidirectionalModes, way, EdgeType.BACKWARD, 2);
+			createAndAddOrMergeEdges(nodes, way.forward, way.otherParams, way.way, EdgeType.FORWARD, 1);
+			createAndAddOrMergeEdges(Lists.reverse(nodes), way.backward, way.otherParams, way.way, EdgeType.BACKWARD,
+					2);
 		}
 	}
 
@@ -314,24 +1206,49 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 	 * in TmpGraphBuilder
 	 *
 	 * @param nodeId - source id in OsmNode
+	 * @param location projected location of the node or null if it wasn't computed yet. The importer always passes
+	 * the location projected in bulk, null is kept for the subclasses adding other nodes, whose location is projected
+	 * individually.
 	 */
-	protected void createAndAddNode(long nodeId) {
-		if (!builder.containsNode(nodeId)) {
-			OsmNode osmNode = osmNodes.get(nodeId);
+	protected void createAndAddNode(long nodeId, GPSLocation location) {
+		if (!containsNode(nodeId)) {
 			// TODO implement custom params
 			Map<String,Object> otherParams = new HashMap<>();
-			InternalNodeBuilder internalNodeBuilder = new InternalNodeBuilder(builder.getNodeCount(),
-					nodeId, getProjectedGPS(osmNode),otherParams);
-			builder.addNode(internalNodeBuilder);
+			InternalNodeBuilder internalNodeBuilder = new InternalNodeBuilder(getNodeCount(),
+					nodeId, location != null ? location : getProjectedGPS(nodeId),otherParams);
+			if (sink == null) {
+				builder.addNode(internalNodeBuilder);
+			} else {
+				sinkNodeIds.put(nodeId, internalNodeBuilder.tmpId);
+				sinkNodeLocations.add(internalNodeBuilder.location);
+				sink.addNode(internalNodeBuilder);
+			}
 		}
 	}
 
-	private GPSLocation getProjectedGPS(double lat, double lon, double elevation) {
-		return GPSLocationTools.createGPSLocation(lat, lon, (int) Math.round(elevation), projection);
+	private boolean containsNode(long nodeId) {
+		return sink == null ? builder.containsNode(nodeId) : sinkNodeIds.containsKey(nodeId);
+	}
+
+	private int getNodeCount() {
+		return sink == null ? builder.getNodeCount() : sinkNodeLocations.size();
+	}
+
+	private int getTmpId(long nodeId) {
+		return sink == null ? builder.getIntIdForSourceId(nodeId) : sinkNodeIds.getOrDefault(nodeId, -1);
+	}
+
+	private GPSLocation getNodeLocation(int tmpId) {
+		return sink == null ? builder.getNode(tmpId).location : sinkNodeLocations.get(tmpId);
 	}
 
-	private GPSLocation getProjectedGPS(OsmNode osmNode) {
-		return getProjectedGPS(osmNode.lat, osmNode.lon, elevationExtractor.apply(osmNode.getTags()));
+	private GPSLocation getProjectedGPS(double lat, double lon, int elevation) {
+		return GPSLocationTools.createGPSLocation(lat, lon, elevation, projection);
+	}
+
+	private GPSLocation getProjectedGPS(long nodeId) {
+		return getProjectedGPS(nodeLocations.getLat(nodeId), nodeLocations.getLon(nodeId),
+				nodeLocations.getElevation(nodeId));
 	}
 
 	/**
@@ -341,25 +1258,44 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 	 *							If the number is 1, it is a bidirectional edge (in FORWARD) and if the number is 2,
 	 *							then it is the opposite direction of the edge (BACKWARD)
 	 */
-	private void createAndAddOrMergeEdges(List<Long> nodes, Set<TransportMode> modeOfTransports, OsmWay way,
-										  EdgeType edgeType, int bidirectionalStatus) {
+	private void createAndAddOrMergeEdges(List<Long> nodes, EdgeAttributes attributes,
+										  Map<String, Object> otherParams, OsmWay way, EdgeType edgeType,
+										  int bidirectionalStatus) {
 		for (int i = 1; i < nodes.size(); i++) {
-			createAndAddOrMergeEdge(nodes.get(i - 1), nodes.get(i), modeOfTransports, way, edgeType, bidirectionalStatus);
+			long fromSourceId = nodes.get(i - 1);
+			long toSourceId = nodes.get(i);
+			if (segmentFilter != null && !segmentFilter.containsSegment(fromSourceId, toSourceId)) {
+				continue;
+			}
+			createAndAddOrMergeEdge(fromSourceId, toSourceId, attributes, otherParams, way, edgeType,
+					bidirectionalStatus);
+			if (segmentWays != null) {
+				segmentWays.computeIfAbsent(TmpGraphBuilder.edgeKey(getTmpId(fromSourceId), getTmpId(toSourceId)),
+						key -> new LongArrayList()).add(way.getId());
+			}
 		}
 	}
 
-	protected void createAndAddOrMergeEdge(long fromSourceId, long toSourceId, Set<TransportMode> modeOfTransports,
-										   OsmWay way, EdgeType edgeType, int bidirectionalStatus) {
-		int tmpFromId = builder.getIntIdForSourceId(fromSourceId);
-		int tmpToId = builder.getIntIdForSourceId(toSourceId);
-
-		if (builder.containsEdge(tmpFromId, tmpToId)) {
+	/**
+	 * Creates the edge between the nodes or merges the modes into the existing edge.
+	 *
+	 * @param attributes interned attributes of the way in the edge direction
+	 * @param otherParams custom parameters of the way, shared by the builders of all the way edges
+	 */
+	protected void createAndAddOrMergeEdge(long fromSourceId, long toSourceId, EdgeAttributes attributes,
+										 Map<String, Object> otherParams, OsmWay way, EdgeType edgeType,
+										 int bidirectionalStatus) {
+		int tmpFromId = getTmpId(fromSourceId);
+		int tmpToId = getTmpId(toSourceId);
+
+		// the streamed edges can't be looked up, so they are never merged
+		if (sink == null && builder.containsEdge(tmpFromId, tmpToId)) {
 			//edge already built, so add  another mode
 			mergedEdges++;
-			resolveConflictEdges(tmpFromId, tmpToId, modeOfTransports, way, edgeType);
+			resolveConflictEdges(tmpFromId, tmpToId, attributes.getModesOfTransport(), way, edgeType);
 		} else {
 			// begin with new edge
-			int uniqueId = builder.getEdgeCount();
+			int uniqueId = sink == null ? uniqueWayIdOffset + builder.getEdgeCount() : sinkEdgeCount++;
 
 			// decide on opposite way
 			int oppositeWayUniqueId;
@@ -370,17 +1306,18 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 			} else {
 				oppositeWayUniqueId = -1;
 			}
-			
-			// TODO implement custom params
-			Map<String,Object> otherParams = new HashMap<>();
+
 			// create temporary edge
 			InternalEdgeBuilder internalEdgeBuilder = new InternalEdgeBuilder(tmpFromId, tmpToId, uniqueId,
-					oppositeWayUniqueId, (int) calculateLength(tmpFromId, tmpToId), modeOfTransports,
-					extractSpeed(way, edgeType), extractLanesCount(way, edgeType), 
-					Arrays.asList(builder.getNode(tmpFromId).location, builder.getNode(tmpToId).location), otherParams);
+					oppositeWayUniqueId, (int) calculateLength(tmpFromId, tmpToId), attributes,
+					Arrays.asList(getNodeLocation(tmpFromId), getNodeLocation(tmpToId)), otherParams);
 
-			// add edge to TmpGraphBuilder
-			builder.addEdge(internalEdgeBuilder);
+			// add edge to TmpGraphBuilder or pass it to the sink
+			if (sink == null) {
+				builder.addEdge(internalEdgeBuilder);
+			} else {
+				sink.addEdge(internalEdgeBuilder);
+			}
 		}
 	}
 
@@ -391,9 +1328,7 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 	}
 
 	protected double calculateLength(int fromId, int toId) {
-		NodeBuilder<? extends InternalNode> n1 = builder.getNode(fromId);
-		NodeBuilder<? extends InternalNode> n2 = builder.getNode(toId);
-		return GPSLocationTools.computeDistance(n1.location, n2.location);
+		return GPSLocationTools.computeDistance(getNodeLocation(fromId), getNodeLocation(toId));
 	}
 
 	private Integer extractLanesCount(OsmWay way, EdgeType edgeType) {
@@ -408,17 +1343,6 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 		return edgeType.apply(speedExtractor, way.getTags()).intValue();
 	}
 
-	/**
-	 * Return subset of {@code ModeOfTransports} for which the way is bidirectional (isn't one-way).
-	 */
-	private Set<TransportMode> getBidirectionalModes(OsmWay way, Set<TransportMode> ModeOfTransports) {
-		return ModeOfTransports.stream().filter(mode -> isBidirectional(way, mode)).collect(toSet());
-	}
-
-	private boolean isBidirectional(OsmWay way, TransportMode mode) {
-		return !oneWayEvaluators.get(mode).test(way.getTags());
-	}
-
 	@Override
 	public String getSerializedGraphName() {
 		return osmFile.getName() + ".ser";
@@ -430,6 +1354,186 @@ public class OsmImporter extends Importer implements OsmElementConsumer {
 	}
 
 
+	/**
+	 * First pass of the two-pass import: collects ids of nodes of the ways that are allowed for some mode. Most nodes
+	 * are referenced by more ways, so the duplicates are removed whenever the list doubles since the last removal. The
+	 * list then holds at most twice as many ids as there are unique nodes.
+	 */
+	private class ReferencedNodesCollector implements OsmElementConsumer {
+
+		private static final int MIN_DEDUPLICATION_SIZE = 1 << 16;
+
+		private final LongArrayList nodeIds = new LongArrayList();
+
+		/**
+		 * Size of the list at which the duplicates are removed next.
+		 */
+		private int deduplicationSize = MIN_DEDUPLICATION_SIZE;
+
+		@Override
+		public void accept(OsmNode node) {
+		}
+
+		@Override
+		public void accept(OsmWay way) {
+			if (!getModesOfTransport(way).isEmpty()) {
+				for (int i = 0; i < way.getNodeCount(); i++) {
+					nodeIds.add(way.getNode(i));
+				}
+				if (nodeIds.size() >= deduplicationSize) {
+					nodeIds.sortUnique();
+					deduplicationSize = Math.max(nodeIds.size() * 2, MIN_DEDUPLICATION_SIZE);
+				}
+			}
+		}
+
+		@Override
+		public void accept(OsmRelation relation) {
+		}
+
+		long[] getReferencedNodeIds() {
+			nodeIds.sortUnique();
+			return nodeIds.toArray();
+		}
+	}
+
+	/**
+	 * Applies the OSM elements to the import state: the nodes inside the import area and the allowed ways are stored,
+	 * other elements are removed from the state. When applying the change files, the ids of the changed nodes and ways
+	 * are collected together with the nodes the changed ways had before the change.
+	 */
+	private class ImportStateUpdater implements OsmChangeConsumer {
+
+		private final OsmImportState state;
+
+		private final boolean trackChanges;
+
+		private final Set<Long> changedNodes = new HashSet<>();
+
+		private final Set<Long> changedWays = new HashSet<>();
+
+		/**
+		 * Nodes of the changed ways before the change.
+		 */
+		private final Set<Long> previousWayNodes = new HashSet<>();
+
+		/**
+		 * True if the state was created from the OSM file.
+		 */
+		private boolean created;
+
+		private int changeFileCount;
+
+		ImportStateUpdater(OsmImportState state, boolean trackChanges) {
+			this.state = state;
+			this.trackChanges = trackChanges;
+		}
+
+		boolean stateChanged() {
+			return created || changeFileCount > 0;
+		}
+
+		@Override
+		public void accept(OsmNode node) {
+			if (trackChanges) {
+				changedNodes.add(node.getId());
+			}
+			if (areaFilter != null && !areaFilter.contains(node.getLat(), node.getLon())) {
+				// the node could be moved out of the area
+				state.removeNode(node.getId());
+			} else {
+				state.putNode(node.getId(), node.getLat(), node.getLon(), extractElevation(node));
+			}
+		}
+
+		@Override
+		public void accept(OsmWay way) {
+			wayChanged(way.getId());
+			if (getModesOfTransport(way).isEmpty()) {
+				state.removeWay(way.getId());
+			} else {
+				state.putWay(way);
+			}
+		}
+
+		@Override
+		public void accept(OsmRelation relation) {
+		}
+
+		@Override
+		public void deleteNode(long id) {
+			if (trackChanges) {
+				changedNodes.add(id);
+			}
+			state.removeNode(id);
+		}
+
+		@Override
+		public void deleteWay(long id) {
+			wayChanged(id);
+			state.removeWay(id);
+		}
+
+		@Override
+		public void deleteRelation(long id) {
+		}
+
+		private void wayChanged(long id) {
+			if (trackChanges) {
+				changedWays.add(id);
+				long[] nodes = state.getWayNodes(id);
+				if (nodes != null) {
+					for (long nodeId : nodes) {
+						previousWayNodes.add(nodeId);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Way with all the data needed for adding it to the graph builder.
+	 */
+	private static final class PreparedWay {
+
+		final OsmWay way;
+
+		/**
+		 * Sections of the way nodes (in the order of the edge direction).
+		 */
+		final List<List<Long>> sections;
+
+		/**
+		 * Projected locations of the section nodes. Locations of nodes already contained in the graph builder are null.
+		 */
+		final List<GPSLocation[]> locations;
+
+		/**
+		 * Interned attributes of the forward edges.
+		 */
+		final EdgeAttributes forward;
+
+		/**
+		 * Interned attributes of the opposite direction, null if the way is one-way for all its modes.
+		 */
+		final EdgeAttributes backward;
+
+		/**
+		 * Custom parameters shared by all edges of the way.
+		 */
+		final Map<String, Object> otherParams;
+
+		PreparedWay(OsmWay way, List<List<Long>> sections, List<GPSLocation[]> locations, EdgeAttributes forward,
+					EdgeAttributes backward, Map<String, Object> otherParams) {
+			this.way = way;
+			this.sections = sections;
+			this.locations = locations;
+			this.forward = forward;
+			this.backward = backward;
+			this.otherParams = otherParams;
+		}
+	}
+
 	protected enum EdgeType {
 		FORWARD {
 			@Override
@@ -0,0 +1,46 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader of an OSM file format. It parses the OSM elements from the stream and passes them to an
+ * {@link OsmElementConsumer} in the order in which they appear in the file.
+ */
+public interface OsmReader {
+
+	public void read(InputStream inputStream, OsmElementConsumer consumer) throws IOException;
+
+	/**
+	 * Reads only the data needed according to the {@code profile}. Elements of the types that aren't needed aren't
+	 * passed to the consumer and elements don't contain the tags that aren't needed. Readers that don't support the
+	 * profiles read everything.
+	 *
+	 * @param inputStream
+	 * @param consumer
+	 * @param profile
+	 * @throws IOException
+	 */
+	public default void read(InputStream inputStream, OsmElementConsumer consumer, ParseProfile profile)
+			throws IOException {
+		read(inputStream, consumer);
+	}
+}
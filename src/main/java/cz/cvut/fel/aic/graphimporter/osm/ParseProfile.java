@@ -0,0 +1,127 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Description of the OSM data needed by an {@link OsmElementConsumer}: the element types and the keys of the tags of
+ * each type. Readers use it to skip everything else, so the skipped data don't have to be decoded and stored in the
+ * elements. If the relations aren't needed, the readers stop at the first relation, as the relations are the last
+ * section of the OSM files.
+ */
+public class ParseProfile {
+
+	/**
+	 * Profile of a consumer that needs all the data.
+	 */
+	public static final ParseProfile ALL = new ParseProfile(true, null, true, null, true, null);
+
+	private final boolean nodesNeeded;
+	private final Set<String> nodeTagKeys;
+
+	private final boolean waysNeeded;
+	private final Set<String> wayTagKeys;
+
+	private final boolean relationsNeeded;
+	private final Set<String> relationTagKeys;
+
+	/**
+	 * @param nodesNeeded
+	 * @param nodeTagKeys
+	 * 		Keys of the needed node tags, null if all the tags are needed.
+	 * @param waysNeeded
+	 * @param wayTagKeys
+	 * 		Keys of the needed way tags, null if all the tags are needed.
+	 * @param relationsNeeded
+	 * @param relationTagKeys
+	 * 		Keys of the needed relation tags, null if all the tags are needed.
+	 */
+	public ParseProfile(boolean nodesNeeded, Set<String> nodeTagKeys, boolean waysNeeded, Set<String> wayTagKeys,
+						boolean relationsNeeded, Set<String> relationTagKeys) {
+		this.nodesNeeded = nodesNeeded;
+		this.nodeTagKeys = copy(nodeTagKeys);
+		this.waysNeeded = waysNeeded;
+		this.wayTagKeys = copy(wayTagKeys);
+		this.relationsNeeded = relationsNeeded;
+		this.relationTagKeys = copy(relationTagKeys);
+	}
+
+	private static Set<String> copy(Set<String> keys) {
+		return keys == null ? null : Collections.unmodifiableSet(new HashSet<>(keys));
+	}
+
+	public boolean isNodesNeeded() {
+		return nodesNeeded;
+	}
+
+	/**
+	 * @return Keys of the needed node tags, null if all the tags are needed.
+	 */
+	public Set<String> getNodeTagKeys() {
+		return nodeTagKeys;
+	}
+
+	public boolean isWaysNeeded() {
+		return waysNeeded;
+	}
+
+	/**
+	 * @return Keys of the needed way tags, null if all the tags are needed.
+	 */
+	public Set<String> getWayTagKeys() {
+		return wayTagKeys;
+	}
+
+	public boolean isRelationsNeeded() {
+		return relationsNeeded;
+	}
+
+	/**
+	 * @return Keys of the needed relation tags, null if all the tags are needed.
+	 */
+	public Set<String> getRelationTagKeys() {
+		return relationTagKeys;
+	}
+
+	/**
+	 * @param keys
+	 * 		Keys of the needed tags, null means all the tags.
+	 * @param key
+	 * @return True if the tag with the {@code key} is needed.
+	 */
+	public static boolean isTagNeeded(Set<String> keys, String key) {
+		return keys == null || keys.contains(key);
+	}
+
+	@Override
+	public String toString() {
+		return "ParseProfile{" +
+				"nodes=" + (nodesNeeded ? keysToString(nodeTagKeys) : "skipped") +
+				", ways=" + (waysNeeded ? keysToString(wayTagKeys) : "skipped") +
+				", relations=" + (relationsNeeded ? keysToString(relationTagKeys) : "skipped") +
+				'}';
+	}
+
+	private static String keysToString(Set<String> keys) {
+		return keys == null ? "all tags" : keys.toString();
+	}
+}
@@ -19,8 +19,11 @@
 package cz.cvut.fel.aic.graphimporter.osm;
 
 import com.google.common.primitives.Doubles;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Marek Cuchý
@@ -85,6 +88,11 @@ public class SpeedExtractor implements WayTagExtractor<Double> {
 		return speed / 3.6;
 	}
 
+	@Override
+	public Set<String> getTagKeys() {
+		return new HashSet<>(Arrays.asList("highway", "maxspeed", "maxspeed:forward", "maxspeed:backward"));
+	}
+
 	private Double parseSpeedInKmh(String s) {
 		if (s == null) return null;
 		return Doubles.tryParse(s);
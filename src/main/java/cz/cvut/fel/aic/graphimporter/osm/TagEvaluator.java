@@ -18,7 +18,10 @@
  */
 package cz.cvut.fel.aic.graphimporter.osm;
 
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 
 /**
@@ -27,6 +30,46 @@ import java.util.function.Predicate;
 @FunctionalInterface
 public interface TagEvaluator extends Predicate<Map<String, String>> {
 
-	public static TagEvaluator ALWAYS_FALSE = t -> false;
-	public static TagEvaluator ALWAYS_TRUE = t -> true;
+	public static TagEvaluator ALWAYS_FALSE = new TagEvaluator() {
+		@Override
+		public boolean test(Map<String, String> tags) {
+			return false;
+		}
+
+		@Override
+		public Set<String> getTagKeys() {
+			return Collections.emptySet();
+		}
+	};
+
+	public static TagEvaluator ALWAYS_TRUE = new TagEvaluator() {
+		@Override
+		public boolean test(Map<String, String> tags) {
+			return true;
+		}
+
+		@Override
+		public Set<String> getTagKeys() {
+			return Collections.emptySet();
+		}
+	};
+
+	/**
+	 * Evaluates the tags of the element. Evaluators can override it to compare the {@link
+	 * cz.cvut.fel.aic.graphimporter.osm.element.TagDictionary} codes of the tags instead of the strings, the result has
+	 * to be the same as the result of {@link #test(Map)} for the element tags.
+	 *
+	 * @param element
+	 * @return
+	 */
+	public default boolean test(OsmElement element) {
+		return test(element.getTags());
+	}
+
+	/**
+	 * @return Keys of the tags used by the evaluator or null if they aren't known (any tag can be used).
+	 */
+	public default Set<String> getTagKeys() {
+		return null;
+	}
 }
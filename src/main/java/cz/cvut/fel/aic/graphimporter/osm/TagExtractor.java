@@ -19,6 +19,7 @@
 package cz.cvut.fel.aic.graphimporter.osm;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
@@ -29,4 +30,10 @@ import java.util.function.Function;
 @FunctionalInterface
 public interface TagExtractor<TValue> extends Function<Map<String, String>, TValue> {
 
+	/**
+	 * @return Keys of the tags used by the extractor or null if they aren't known (any tag can be used).
+	 */
+	public default Set<String> getTagKeys() {
+		return null;
+	}
 }
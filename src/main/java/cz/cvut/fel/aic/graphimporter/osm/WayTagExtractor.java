@@ -19,6 +19,7 @@
 package cz.cvut.fel.aic.graphimporter.osm;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Marek Cuchý
@@ -42,4 +43,11 @@ public interface WayTagExtractor<TValue> {
 	 * @return
 	 */
 	public TValue getBackwardValue(Map<String, String> tags);
+
+	/**
+	 * @return Keys of the tags used by the extractor or null if they aren't known (any tag can be used).
+	 */
+	public default Set<String> getTagKeys() {
+		return null;
+	}
 }
@@ -0,0 +1,46 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.area;
+
+/**
+ * Rectangular area given by the minimal and maximal latitude and longitude (inclusive).
+ */
+public class BoundingBoxAreaFilter implements AreaFilter {
+
+	private final double minLat;
+	private final double minLon;
+	private final double maxLat;
+	private final double maxLon;
+
+	public BoundingBoxAreaFilter(double minLat, double minLon, double maxLat, double maxLon) {
+		if (minLat > maxLat || minLon > maxLon) {
+			throw new IllegalArgumentException("Invalid bounding box: [" + minLat + ", " + minLon + "], ["
+					+ maxLat + ", " + maxLon + "]");
+		}
+		this.minLat = minLat;
+		this.minLon = minLon;
+		this.maxLat = maxLat;
+		this.maxLon = maxLon;
+	}
+
+	@Override
+	public boolean contains(double lat, double lon) {
+		return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+	}
+}
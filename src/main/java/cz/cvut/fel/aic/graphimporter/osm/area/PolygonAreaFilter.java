@@ -0,0 +1,354 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.area;
+
+import cz.cvut.fel.aic.graphimporter.util.IntArrayList;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Area given by polygons (with holes). A point is inside the area if it's inside any of the polygons. A point is
+ * inside a polygon if a ray from the point crosses the rings of the polygon (the outer ring and the holes) an odd
+ * number of times. The polygons are evaluated separately, so overlapping polygons don't cancel each other out.
+ * <p>
+ * Each polygon is indexed by a regular grid over its bounding box. Each grid row stores the edges crossing it, so
+ * the ray casting tests only the edges of one row. Cells not touched by any edge are entirely inside or outside, their
+ * state is precomputed, so most of the points are resolved by a single array lookup.
+ */
+public class PolygonAreaFilter implements AreaFilter {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte BOUNDARY = 1;
+	private static final byte INSIDE = 2;
+	private static final byte OUTSIDE = 3;
+
+	private static final int MIN_GRID_SIZE = 16;
+	private static final int MAX_GRID_SIZE = 1024;
+
+	private final Polygon[] polygons;
+
+	private final double minLat;
+	private final double minLon;
+	private final double maxLat;
+	private final double maxLon;
+
+	/**
+	 * @param rings rings of one polygon (the outer ring and the holes), each ring is an array of {@code [lat, lon]}
+	 * pairs. The rings don't have to be closed.
+	 */
+	public PolygonAreaFilter(List<double[][]> rings) {
+		this(new Polygon[]{new Polygon(rings)});
+	}
+
+	private PolygonAreaFilter(Polygon[] polygons) {
+		if (polygons.length == 0) {
+			throw new IllegalArgumentException("Area must have at least one polygon.");
+		}
+		this.polygons = polygons;
+		double minLat = Double.POSITIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY;
+		double maxLon = Double.NEGATIVE_INFINITY;
+		for (Polygon polygon : polygons) {
+			minLat = Math.min(minLat, polygon.minLat);
+			minLon = Math.min(minLon, polygon.minLon);
+			maxLat = Math.max(maxLat, polygon.maxLat);
+			maxLon = Math.max(maxLon, polygon.maxLon);
+		}
+		this.minLat = minLat;
+		this.minLon = minLon;
+		this.maxLat = maxLat;
+		this.maxLon = maxLon;
+	}
+
+	/**
+	 * @param polygons polygons of the area, each polygon is given by its rings as in {@link
+	 * #PolygonAreaFilter(List)}.
+	 * @return
+	 */
+	public static PolygonAreaFilter fromPolygons(List<List<double[][]>> polygons) {
+		Polygon[] indexed = new Polygon[polygons.size()];
+		for (int i = 0; i < indexed.length; i++) {
+			indexed[i] = new Polygon(polygons.get(i));
+		}
+		return new PolygonAreaFilter(indexed);
+	}
+
+	/**
+	 * Loads the area from a GeoJSON file. All Polygon and MultiPolygon geometries in the file (a feature collection,
+	 * a feature or a geometry) are used, each polygon separately.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static PolygonAreaFilter fromGeoJson(File file) throws IOException {
+		Object json;
+		try (FileReader reader = new FileReader(file)) {
+			json = new JSONParser().parse(reader);
+		} catch (ParseException e) {
+			throw new IOException("Area file " + file + " can't be parsed.", e);
+		}
+		List<List<double[][]>> polygons = new ArrayList<>();
+		addPolygons((JSONObject) json, polygons);
+		if (polygons.isEmpty()) {
+			throw new IOException("Area file " + file + " doesn't contain any polygon.");
+		}
+		return fromPolygons(polygons);
+	}
+
+	@Override
+	public boolean contains(double lat, double lon) {
+		if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon) {
+			return false;
+		}
+		for (Polygon polygon : polygons) {
+			if (polygon.contains(lat, lon)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void addPolygons(JSONObject json, List<List<double[][]>> polygons) {
+		String type = (String) json.get("type");
+		if (type == null) {
+			return;
+		}
+		switch (type) {
+			case "FeatureCollection":
+				for (Object feature : (JSONArray) json.get("features")) {
+					addPolygons((JSONObject) feature, polygons);
+				}
+				break;
+			case "Feature":
+				if (json.get("geometry") != null) {
+					addPolygons((JSONObject) json.get("geometry"), polygons);
+				}
+				break;
+			case "GeometryCollection":
+				for (Object geometry : (JSONArray) json.get("geometries")) {
+					addPolygons((JSONObject) geometry, polygons);
+				}
+				break;
+			case "Polygon":
+				polygons.add(toRings((JSONArray) json.get("coordinates")));
+				break;
+			case "MultiPolygon":
+				for (Object polygon : (JSONArray) json.get("coordinates")) {
+					polygons.add(toRings((JSONArray) polygon));
+				}
+				break;
+			default:
+				// other geometries don't define any area
+		}
+	}
+
+	private static List<double[][]> toRings(JSONArray polygon) {
+		List<double[][]> rings = new ArrayList<>(polygon.size());
+		for (Object ringObject : polygon) {
+			JSONArray ring = (JSONArray) ringObject;
+			double[][] vertices = new double[ring.size()][];
+			for (int i = 0; i < ring.size(); i++) {
+				JSONArray position = (JSONArray) ring.get(i);
+				// GeoJSON positions are [lon, lat]
+				vertices[i] = new double[]{((Number) position.get(1)).doubleValue(),
+						((Number) position.get(0)).doubleValue()};
+			}
+			rings.add(vertices);
+		}
+		return rings;
+	}
+
+	/**
+	 * One polygon with its grid index.
+	 */
+	private static final class Polygon {
+
+		/**
+		 * Edge coordinates, edge {@code i} goes from {@code [lats[2i], lons[2i]]} to
+		 * {@code [lats[2i+1], lons[2i+1]]}.
+		 */
+		private final double[] lats;
+		private final double[] lons;
+
+		private final double minLat;
+		private final double minLon;
+		private final double maxLat;
+		private final double maxLon;
+
+		private final int gridSize;
+		private final double cellHeight;
+		private final double cellWidth;
+
+		private final int[][] rowEdges;
+
+		private final byte[] cellStates;
+
+		Polygon(List<double[][]> rings) {
+			int edgeCount = 0;
+			for (double[][] ring : rings) {
+				edgeCount += ring.length;
+			}
+			if (edgeCount < 3) {
+				throw new IllegalArgumentException("Polygon must have at least three vertices.");
+			}
+			lats = new double[edgeCount * 2];
+			lons = new double[edgeCount * 2];
+			double minLat = Double.POSITIVE_INFINITY;
+			double minLon = Double.POSITIVE_INFINITY;
+			double maxLat = Double.NEGATIVE_INFINITY;
+			double maxLon = Double.NEGATIVE_INFINITY;
+			int index = 0;
+			for (double[][] ring : rings) {
+				for (int i = 0; i < ring.length; i++) {
+					double[] from = ring[i];
+					double[] to = ring[(i + 1) % ring.length];
+					lats[index] = from[0];
+					lons[index] = from[1];
+					lats[index + 1] = to[0];
+					lons[index + 1] = to[1];
+					index += 2;
+					minLat = Math.min(minLat, from[0]);
+					minLon = Math.min(minLon, from[1]);
+					maxLat = Math.max(maxLat, from[0]);
+					maxLon = Math.max(maxLon, from[1]);
+				}
+			}
+			this.minLat = minLat;
+			this.minLon = minLon;
+			this.maxLat = maxLat;
+			this.maxLon = maxLon;
+
+			gridSize = Math.max(MIN_GRID_SIZE, Math.min(MAX_GRID_SIZE, (int) Math.sqrt(edgeCount) * 2));
+			cellHeight = Math.max(maxLat - minLat, Double.MIN_NORMAL) / gridSize;
+			cellWidth = Math.max(maxLon - minLon, Double.MIN_NORMAL) / gridSize;
+
+			rowEdges = new int[gridSize][];
+			cellStates = new byte[gridSize * gridSize];
+			buildIndex(edgeCount);
+		}
+
+		boolean contains(double lat, double lon) {
+			if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon) {
+				return false;
+			}
+			int row = getRow(lat);
+			byte state = cellStates[row * gridSize + getColumn(lon)];
+			if (state != BOUNDARY) {
+				return state == INSIDE;
+			}
+			return isInside(lat, lon, row);
+		}
+
+		private void buildIndex(int edgeCount) {
+			IntArrayList[] rows = new IntArrayList[gridSize];
+			for (int i = 0; i < gridSize; i++) {
+				rows[i] = new IntArrayList();
+			}
+			for (int edge = 0; edge < edgeCount; edge++) {
+				double lat1 = lats[edge * 2];
+				double lon1 = lons[edge * 2];
+				double lat2 = lats[edge * 2 + 1];
+				double lon2 = lons[edge * 2 + 1];
+				int firstRow = getRow(Math.min(lat1, lat2));
+				int lastRow = getRow(Math.max(lat1, lat2));
+				for (int row = firstRow; row <= lastRow; row++) {
+					rows[row].add(edge);
+					markBoundaryCells(row, lat1, lon1, lat2, lon2);
+				}
+			}
+			for (int row = 0; row < gridSize; row++) {
+				rowEdges[row] = rows[row].toArray();
+			}
+			for (int row = 0; row < gridSize; row++) {
+				double lat = minLat + (row + 0.5) * cellHeight;
+				for (int column = 0; column < gridSize; column++) {
+					int cell = row * gridSize + column;
+					if (cellStates[cell] == UNKNOWN) {
+						double lon = minLon + (column + 0.5) * cellWidth;
+						cellStates[cell] = isInside(lat, lon, row) ? INSIDE : OUTSIDE;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Marks the cells of the row touched by the edge as boundary cells.
+		 */
+		private void markBoundaryCells(int row, double lat1, double lon1, double lat2, double lon2) {
+			double rowMinLat = minLat + row * cellHeight;
+			double rowMaxLat = rowMinLat + cellHeight;
+			// part of the edge inside the row
+			double edgeMinLon;
+			double edgeMaxLon;
+			if (lat1 == lat2) {
+				edgeMinLon = Math.min(lon1, lon2);
+				edgeMaxLon = Math.max(lon1, lon2);
+			} else {
+				double t1 = clamp((rowMinLat - lat1) / (lat2 - lat1));
+				double t2 = clamp((rowMaxLat - lat1) / (lat2 - lat1));
+				double lonA = lon1 + (lon2 - lon1) * t1;
+				double lonB = lon1 + (lon2 - lon1) * t2;
+				edgeMinLon = Math.min(lonA, lonB);
+				edgeMaxLon = Math.max(lonA, lonB);
+			}
+			// one more cell on each side for the rounding errors
+			int firstColumn = Math.max(0, getColumn(edgeMinLon) - 1);
+			int lastColumn = Math.min(gridSize - 1, getColumn(edgeMaxLon) + 1);
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				cellStates[row * gridSize + column] = BOUNDARY;
+			}
+		}
+
+		private boolean isInside(double lat, double lon, int row) {
+			boolean inside = false;
+			for (int edge : rowEdges[row]) {
+				double lat1 = lats[edge * 2];
+				double lon1 = lons[edge * 2];
+				double lat2 = lats[edge * 2 + 1];
+				double lon2 = lons[edge * 2 + 1];
+				if ((lat1 > lat) != (lat2 > lat)
+						&& lon < lon1 + (lat - lat1) / (lat2 - lat1) * (lon2 - lon1)) {
+					inside = !inside;
+				}
+			}
+			return inside;
+		}
+
+		private int getRow(double lat) {
+			return Math.min(gridSize - 1, Math.max(0, (int) ((lat - minLat) / cellHeight)));
+		}
+
+		private int getColumn(double lon) {
+			return Math.min(gridSize - 1, Math.max(0, (int) ((lon - minLon) / cellWidth)));
+		}
+
+		private static double clamp(double t) {
+			return Math.max(0, Math.min(1, t));
+		}
+	}
+}
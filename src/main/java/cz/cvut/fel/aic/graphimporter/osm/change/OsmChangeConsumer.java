@@ -0,0 +1,35 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.change;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+
+/**
+ * Consumer of the elements of an OSM change file. Created and modified elements are passed to the {@code accept}
+ * methods in their complete new version (the consumer doesn't need to distinguish between them), deleted elements are
+ * identified only by their ids.
+ */
+public interface OsmChangeConsumer extends OsmElementConsumer {
+
+	void deleteNode(long id);
+
+	void deleteWay(long id);
+
+	void deleteRelation(long id);
+}
@@ -0,0 +1,153 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.change;
+
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import cz.cvut.fel.aic.graphimporter.osm.handler.OsmHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reader of the OSM change files ({@code .osc}). Elements of the {@code create} and {@code modify} sections are parsed
+ * by {@link OsmHandler}, elements of the {@code delete} section are passed to the consumer only by their ids (their
+ * content isn't reliable in the change files).
+ * <p>
+ * Element instances are reused, so the consumer has to copy everything it wants to keep.
+ */
+public class OsmChangeReader {
+
+	public void read(InputStream inputStream, OsmChangeConsumer consumer) throws IOException {
+		read(inputStream, consumer, ParseProfile.ALL);
+	}
+
+	/**
+	 * @param inputStream
+	 * @param consumer
+	 * @param profile
+	 * 		Profile of the created and modified elements. Unlike the OSM files, the change file is read to the end even
+	 * 		if the relations aren't needed, the relations aren't at the end of the change files.
+	 * @throws IOException
+	 */
+	public void read(InputStream inputStream, OsmChangeConsumer consumer, ParseProfile profile) throws IOException {
+		try {
+			XMLReader xmlreader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			xmlreader.setContentHandler(new ChangeHandler(consumer, profile));
+			xmlreader.parse(new InputSource(inputStream));
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("OSM change XML can't be parsed.", e);
+		}
+	}
+
+	/**
+	 * Handler tracking the change sections and passing the created and modified elements to {@link OsmHandler}.
+	 */
+	private static final class ChangeHandler extends DefaultHandler {
+
+		private final OsmChangeConsumer consumer;
+
+		private final ParseProfile profile;
+
+		private final OsmHandler elementHandler;
+
+		private boolean inDeleteSection;
+
+		/**
+		 * Name of the skipped element (a deleted element or an unneeded relation), null if no element is skipped.
+		 */
+		private String skippedElement;
+
+		ChangeHandler(OsmChangeConsumer consumer, ParseProfile profile) {
+			this.consumer = consumer;
+			this.profile = profile;
+			elementHandler = new OsmHandler(consumer, true);
+			elementHandler.setParseProfile(profile);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes)
+				throws SAXException {
+			if (skippedElement != null) {
+				return;
+			}
+			switch (qName) {
+				case "osmChange":
+					return;
+				case "create":
+				case "modify":
+					inDeleteSection = false;
+					return;
+				case "delete":
+					inDeleteSection = true;
+					return;
+				case "node":
+				case "way":
+				case "relation":
+					if (inDeleteSection) {
+						delete(qName, Long.parseLong(attributes.getValue("id")));
+						skippedElement = qName;
+						return;
+					}
+					if (qName.equals("relation") && !profile.isRelationsNeeded()) {
+						skippedElement = qName;
+						return;
+					}
+					break;
+			}
+			elementHandler.startElement(uri, localName, qName, attributes);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (skippedElement != null) {
+				if (qName.equals(skippedElement)) {
+					skippedElement = null;
+				}
+				return;
+			}
+			switch (qName) {
+				case "osmChange":
+				case "create":
+				case "modify":
+				case "delete":
+					return;
+			}
+			elementHandler.endElement(uri, localName, qName);
+		}
+
+		private void delete(String elementName, long id) {
+			switch (elementName) {
+				case "node":
+					consumer.deleteNode(id);
+					break;
+				case "way":
+					consumer.deleteWay(id);
+					break;
+				default:
+					consumer.deleteRelation(id);
+			}
+		}
+	}
+}
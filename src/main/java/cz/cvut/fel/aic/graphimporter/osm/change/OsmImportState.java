@@ -0,0 +1,460 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.change;
+
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import cz.cvut.fel.aic.graphimporter.osm.store.NodeLocationStore;
+import cz.cvut.fel.aic.graphimporter.util.LongArrayList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Persisted intermediate state of the OSM import: the node locations and the ways used by the graph (with the tags
+ * needed by the importer). The OSM change files are applied to the state, so the graph can be rebuilt without reading
+ * the whole OSM file again. The state also records the applied change files and it can keep the simplified graph
+ * built from it (see {@link SimplifiedGraphState}), so only the changed part of the graph has to be simplified again.
+ * <p>
+ * Nodes are stored in primitive arrays sorted by id. Nodes added in the id order are appended to the arrays, other
+ * added nodes are kept in a map until the state is compacted (before it's saved). Ways are kept in a map sorted by id,
+ * so both the nodes and the ways are replayed in the id order, which is the order of the standard OSM files.
+ */
+public class OsmImportState implements Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	/**
+	 * Latitude of the deleted nodes that weren't removed from the arrays yet.
+	 */
+	private static final int DELETED = Integer.MIN_VALUE;
+
+	private long[] nodeIds = new long[16];
+	private int[] latitudesE7 = new int[16];
+	private int[] longitudesE7 = new int[16];
+	private int[] elevations = new int[16];
+
+	private int nodeCount;
+
+	/**
+	 * Added nodes that can't be appended to the sorted arrays, each as {latE7, lonE7, elevation}.
+	 */
+	private TreeMap<Long, int[]> addedNodes = new TreeMap<>();
+
+	private final TreeMap<Long, StoredWay> ways = new TreeMap<>();
+
+	/**
+	 * Identifiers of the applied change files in the order of application.
+	 */
+	private final List<String> appliedChangeFiles = new ArrayList<>();
+
+	/**
+	 * Simplified graph built from the state. Null if it wasn't built or if it's outdated.
+	 */
+	private SimplifiedGraphState graph;
+
+	/**
+	 * Ids of the ways referencing the node, by the node id. Built lazily by the first query, then the added ways are
+	 * added to it. The ways removed or changed since aren't removed from it, so the entries are checked by the query.
+	 */
+	private transient Map<Long, LongArrayList> nodeWays;
+
+	/**
+	 * Adds the node or replaces the location of the node with the same id.
+	 */
+	public void putNode(long id, double lat, double lon, int elevation) {
+		int latE7 = NodeLocationStore.toE7(lat);
+		int lonE7 = NodeLocationStore.toE7(lon);
+		int index = findNode(id);
+		if (index >= 0) {
+			latitudesE7[index] = latE7;
+			longitudesE7[index] = lonE7;
+			elevations[index] = elevation;
+		} else if ((nodeCount == 0 || id > nodeIds[nodeCount - 1]) && addedNodes.isEmpty()) {
+			ensureCapacity(nodeCount + 1);
+			nodeIds[nodeCount] = id;
+			latitudesE7[nodeCount] = latE7;
+			longitudesE7[nodeCount] = lonE7;
+			elevations[nodeCount] = elevation;
+			nodeCount++;
+		} else {
+			addedNodes.put(id, new int[]{latE7, lonE7, elevation});
+		}
+	}
+
+	public void removeNode(long id) {
+		int index = findNode(id);
+		if (index >= 0) {
+			latitudesE7[index] = DELETED;
+		} else {
+			addedNodes.remove(id);
+		}
+	}
+
+	public boolean containsNode(long id) {
+		int index = findNode(id);
+		return index >= 0 ? latitudesE7[index] != DELETED : addedNodes.containsKey(id);
+	}
+
+	/**
+	 * Passes the node to the visitor if the state contains it.
+	 *
+	 * @return True if the node was found.
+	 */
+	public boolean getNode(long id, NodeVisitor visitor) {
+		int index = findNode(id);
+		if (index >= 0) {
+			if (latitudesE7[index] == DELETED) {
+				return false;
+			}
+			visitor.visit(id, NodeLocationStore.fromE7(latitudesE7[index]),
+					NodeLocationStore.fromE7(longitudesE7[index]), elevations[index]);
+			return true;
+		}
+		int[] location = addedNodes.get(id);
+		if (location == null) {
+			return false;
+		}
+		visitor.visit(id, NodeLocationStore.fromE7(location[0]), NodeLocationStore.fromE7(location[1]), location[2]);
+		return true;
+	}
+
+	/**
+	 * Adds the way or replaces the way with the same id. All the way tags are stored, so the way should be read with
+	 * the parse profile of the import.
+	 */
+	public void putWay(OsmWay way) {
+		String[] tags = new String[way.getTags().size() * 2];
+		int i = 0;
+		for (Map.Entry<String, String> tag : way.getTags().entrySet()) {
+			tags[i++] = tag.getKey();
+			tags[i++] = tag.getValue();
+		}
+		long[] nodes = way.getNodeIds();
+		ways.put(way.getId(), new StoredWay(nodes, tags));
+		if (nodeWays != null) {
+			addNodeWays(way.getId(), nodes);
+		}
+	}
+
+	public void removeWay(long id) {
+		ways.remove(id);
+	}
+
+	public boolean containsWay(long id) {
+		return ways.containsKey(id);
+	}
+
+	/**
+	 * @return Ids of the way nodes or null if the state doesn't contain the way. The array mustn't be modified.
+	 */
+	public long[] getWayNodes(long id) {
+		StoredWay way = ways.get(id);
+		return way == null ? null : way.nodes;
+	}
+
+	/**
+	 * @return Ids of the ways referencing any of the nodes.
+	 */
+	public Set<Long> findWaysWithNodes(Set<Long> nodeIds) {
+		Set<Long> wayIds = new HashSet<>();
+		if (nodeIds.isEmpty()) {
+			return wayIds;
+		}
+		buildNodeWays();
+		for (long nodeId : nodeIds) {
+			LongArrayList candidates = nodeWays.get(nodeId);
+			if (candidates == null) {
+				continue;
+			}
+			for (int i = 0; i < candidates.size(); i++) {
+				long wayId = candidates.get(i);
+				StoredWay way = ways.get(wayId);
+				if (way != null && way.contains(nodeId)) {
+					wayIds.add(wayId);
+				}
+			}
+		}
+		return wayIds;
+	}
+
+	private void buildNodeWays() {
+		if (nodeWays != null) {
+			return;
+		}
+		nodeWays = new HashMap<>();
+		for (Map.Entry<Long, StoredWay> entry : ways.entrySet()) {
+			addNodeWays(entry.getKey(), entry.getValue().nodes);
+		}
+	}
+
+	private void addNodeWays(long wayId, long[] nodes) {
+		for (long nodeId : nodes) {
+			LongArrayList nodeWayIds = nodeWays.computeIfAbsent(nodeId, k -> new LongArrayList(2));
+			// closed ways and ways put again
+			if (nodeWayIds.isEmpty() || nodeWayIds.get(nodeWayIds.size() - 1) != wayId) {
+				nodeWayIds.add(wayId);
+			}
+		}
+	}
+
+	public int getNodeCount() {
+		compact();
+		return nodeCount;
+	}
+
+	public int getWayCount() {
+		return ways.size();
+	}
+
+	/**
+	 * Passes all nodes to the visitor in the id order.
+	 */
+	public void forEachNode(NodeVisitor visitor) {
+		compact();
+		for (int i = 0; i < nodeCount; i++) {
+			visitor.visit(nodeIds[i], NodeLocationStore.fromE7(latitudesE7[i]),
+					NodeLocationStore.fromE7(longitudesE7[i]), elevations[i]);
+		}
+	}
+
+	/**
+	 * Passes all ways to the consumer in the id order. One way instance is reused for all the ways.
+	 */
+	public void forEachWay(Consumer<OsmWay> consumer) {
+		forEachWay(id -> true, consumer);
+	}
+
+	/**
+	 * Passes the ways accepted by the filter to the consumer in the id order. One way instance is reused for all the
+	 * ways.
+	 */
+	public void forEachWay(LongPredicate filter, Consumer<OsmWay> consumer) {
+		OsmWay way = new OsmWay(0);
+		for (Map.Entry<Long, StoredWay> entry : ways.entrySet()) {
+			if (!filter.test(entry.getKey())) {
+				continue;
+			}
+			way.reset(entry.getKey());
+			StoredWay storedWay = entry.getValue();
+			for (long nodeId : storedWay.nodes) {
+				way.addNode(nodeId);
+			}
+			for (int i = 0; i < storedWay.tags.length; i += 2) {
+				way.addTag(storedWay.tags[i], storedWay.tags[i + 1]);
+			}
+			consumer.accept(way);
+		}
+	}
+
+	/**
+	 * @param changeFile identifier of the change file
+	 * @return True if the change file was applied to the state.
+	 */
+	public boolean isChangeFileApplied(String changeFile) {
+		return appliedChangeFiles.contains(changeFile);
+	}
+
+	/**
+	 * Records the change file as applied to the state.
+	 *
+	 * @param changeFile identifier of the change file
+	 */
+	public void addAppliedChangeFile(String changeFile) {
+		appliedChangeFiles.add(changeFile);
+	}
+
+	/**
+	 * @return Identifiers of the applied change files in the order of application.
+	 */
+	public List<String> getAppliedChangeFiles() {
+		return Collections.unmodifiableList(appliedChangeFiles);
+	}
+
+	/**
+	 * @return Simplified graph built from the state or null if it isn't stored.
+	 */
+	public SimplifiedGraphState getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Sets the simplified graph built from the state. It has to be set to null whenever the state changes without
+	 * updating the graph.
+	 */
+	public void setGraph(SimplifiedGraphState graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Merges the added nodes into the sorted arrays, removes the deleted nodes and trims the arrays.
+	 */
+	public void compact() {
+		int size = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			if (latitudesE7[i] != DELETED) {
+				size++;
+			}
+		}
+		if (size == nodeCount && addedNodes.isEmpty() && nodeIds.length == size) {
+			return;
+		}
+		size += addedNodes.size();
+
+		long[] newIds = new long[size];
+		int[] newLatitudes = new int[size];
+		int[] newLongitudes = new int[size];
+		int[] newElevations = new int[size];
+		int index = 0;
+		int i = 0;
+		for (Map.Entry<Long, int[]> added : addedNodes.entrySet()) {
+			long id = added.getKey();
+			for (; i < nodeCount && nodeIds[i] < id; i++) {
+				if (latitudesE7[i] != DELETED) {
+					newIds[index] = nodeIds[i];
+					newLatitudes[index] = latitudesE7[i];
+					newLongitudes[index] = longitudesE7[i];
+					newElevations[index] = elevations[i];
+					index++;
+				}
+			}
+			int[] location = added.getValue();
+			newIds[index] = id;
+			newLatitudes[index] = location[0];
+			newLongitudes[index] = location[1];
+			newElevations[index] = location[2];
+			index++;
+		}
+		for (; i < nodeCount; i++) {
+			if (latitudesE7[i] != DELETED) {
+				newIds[index] = nodeIds[i];
+				newLatitudes[index] = latitudesE7[i];
+				newLongitudes[index] = longitudesE7[i];
+				newElevations[index] = elevations[i];
+				index++;
+			}
+		}
+		nodeIds = newIds;
+		latitudesE7 = newLatitudes;
+		longitudesE7 = newLongitudes;
+		elevations = newElevations;
+		nodeCount = size;
+		addedNodes = new TreeMap<>();
+	}
+
+	/**
+	 * Compacts the state and writes it to the file. The applied change files are written before the state, so they
+	 * can be read without the state by {@link #readAppliedChangeFiles}.
+	 */
+	public void save(File file) throws IOException {
+		compact();
+		try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeObject(appliedChangeFiles);
+			output.writeObject(this);
+		}
+	}
+
+	public static OsmImportState load(File file) throws IOException {
+		try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			input.readObject();
+			return (OsmImportState) input.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("File " + file + " doesn't contain the OSM import state.", e);
+		}
+	}
+
+	/**
+	 * Reads only the identifiers of the applied change files from the state file.
+	 *
+	 * @return Identifiers of the applied change files in the order of application.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<String> readAppliedChangeFiles(File file) throws IOException {
+		try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return (List<String>) input.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("File " + file + " doesn't contain the OSM import state.", e);
+		}
+	}
+
+	/**
+	 * @return Index of the node in the sorted arrays (even if it's deleted) or a negative number if it isn't there.
+	 */
+	private int findNode(long id) {
+		return Arrays.binarySearch(nodeIds, 0, nodeCount, id);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > nodeIds.length) {
+			int newLength = Math.max(capacity, nodeIds.length * 2);
+			nodeIds = Arrays.copyOf(nodeIds, newLength);
+			latitudesE7 = Arrays.copyOf(latitudesE7, newLength);
+			longitudesE7 = Arrays.copyOf(longitudesE7, newLength);
+			elevations = Arrays.copyOf(elevations, newLength);
+		}
+	}
+
+	@FunctionalInterface
+	public interface NodeVisitor {
+
+		void visit(long id, double lat, double lon, int elevation);
+	}
+
+	private static final class StoredWay implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final long[] nodes;
+
+		/**
+		 * Keys and values of the tags, alternating.
+		 */
+		final String[] tags;
+
+		StoredWay(long[] nodes, String[] tags) {
+			this.nodes = nodes;
+			this.tags = tags;
+		}
+
+		boolean contains(long nodeId) {
+			for (long node : nodes) {
+				if (node == nodeId) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
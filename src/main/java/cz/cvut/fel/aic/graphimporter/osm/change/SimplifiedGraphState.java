@@ -0,0 +1,399 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.change;
+
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.EdgeAttributes;
+import cz.cvut.fel.aic.graphimporter.util.IntArrayList;
+import cz.cvut.fel.aic.graphimporter.util.LongIntHashMap;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Simplified graph persisted in the {@link OsmImportState}. Every edge is stored with the source ids of all the nodes
+ * it replaces, so the part of the graph around the changed nodes can be removed and simplified again from the updated
+ * ways, while the rest of the graph is kept as it is. The ids of the edges covering the segments of each way are kept
+ * in a map by the way ids.
+ */
+public class SimplifiedGraphState implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Edges by their ids. The ids are given by the order of addition.
+	 */
+	private final TreeMap<Integer, StoredEdge> edges = new TreeMap<>();
+
+	/**
+	 * Ids of the edges covering the segments of the way, by the way id.
+	 */
+	private final Map<Long, int[]> wayEdges = new HashMap<>();
+
+	private int nextEdgeId;
+
+	/**
+	 * First unique way id (see {@link StoredEdge#getUniqueWayId()}) greater than the ids of all the stored edges.
+	 */
+	private int nextUniqueWayId;
+
+	/**
+	 * Ids of the edges starting or ending in the node, by the node source id. Built lazily, dropped when the edges
+	 * change.
+	 */
+	private transient Map<Long, IntArrayList> endpointEdges;
+
+	/**
+	 * Id of an edge passing through the node, by the node source id. Both directions of a two-way edge pass through
+	 * the same nodes, only one of them is mapped. Built lazily, dropped when the edges change.
+	 */
+	private transient LongIntHashMap interiorEdges;
+
+	/**
+	 * Adds the edge covering the segments of the ways.
+	 *
+	 * @param nodes source ids of the nodes replaced by the edge (in the edge direction, including its end nodes)
+	 * @param otherParams custom parameters of the edge, it has to be serializable
+	 * @param wayIds ids of the ways with the segments covered by the edge
+	 */
+	public void addEdge(long[] nodes, int lengthCm, EdgeAttributes attributes, int uniqueWayId,
+			int oppositeWayUniqueId, Map<String, Object> otherParams, long[] wayIds) {
+		int id = nextEdgeId++;
+		edges.put(id, new StoredEdge(id, nodes, lengthCm, attributes, uniqueWayId, oppositeWayUniqueId,
+				otherParams));
+		for (long wayId : wayIds) {
+			int[] ids = wayEdges.get(wayId);
+			if (ids == null) {
+				wayEdges.put(wayId, new int[]{id});
+			} else {
+				int[] newIds = Arrays.copyOf(ids, ids.length + 1);
+				newIds[ids.length] = id;
+				wayEdges.put(wayId, newIds);
+			}
+		}
+		nextUniqueWayId = Math.max(nextUniqueWayId, Math.max(uniqueWayId, oppositeWayUniqueId) + 1);
+		endpointEdges = null;
+		interiorEdges = null;
+	}
+
+	/**
+	 * Removes the edges that have to be simplified again because of the changed nodes: the edges passing through the
+	 * nodes or ending in them. The removed part is extended over the end nodes that could be removed by the
+	 * simplification (i.e., over whole chains of the simplified edges) and over the edges between the same end nodes,
+	 * as they can conflict in the simplification.
+	 *
+	 * @param changedNodes source ids of the nodes of the changed ways and of the changed nodes
+	 * @return Removed part of the graph.
+	 */
+	public Region removeRegion(Set<Long> changedNodes) {
+		buildIndices();
+		Set<Integer> removedIds = new LinkedHashSet<>();
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		for (long nodeId : changedNodes) {
+			int interiorEdge = interiorEdges.getOrDefault(nodeId, -1);
+			if (interiorEdge != -1) {
+				addToRegion(interiorEdge, removedIds, queue);
+			}
+			addAllToRegion(nodeId, removedIds, queue);
+		}
+		while (!queue.isEmpty()) {
+			StoredEdge edge = edges.get(queue.poll());
+			for (long endNode : new long[]{edge.getFromId(), edge.getToId()}) {
+				if (isChainNode(endNode)) {
+					addAllToRegion(endNode, removedIds, queue);
+				}
+			}
+			IntArrayList fromEdges = endpointEdges.get(edge.getFromId());
+			for (int i = 0; i < fromEdges.size(); i++) {
+				StoredEdge other = edges.get(fromEdges.get(i));
+				if (other.getFromId() == edge.getToId() || other.getToId() == edge.getToId()) {
+					addToRegion(other.id, removedIds, queue);
+				}
+			}
+		}
+
+		Region region = new Region();
+		for (int id : removedIds) {
+			StoredEdge edge = edges.get(id);
+			region.addSegments(edge.nodes, false);
+			for (long endNode : new long[]{edge.getFromId(), edge.getToId()}) {
+				IntArrayList incidentEdges = endpointEdges.get(endNode);
+				for (int i = 0; i < incidentEdges.size(); i++) {
+					if (!removedIds.contains(incidentEdges.get(i))) {
+						region.boundaryNodes.add(endNode);
+					}
+				}
+			}
+		}
+
+		for (int id : removedIds) {
+			edges.remove(id);
+		}
+		Iterator<Map.Entry<Long, int[]>> iterator = wayEdges.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Long, int[]> entry = iterator.next();
+			IntArrayList keptIds = new IntArrayList(entry.getValue().length);
+			for (int id : entry.getValue()) {
+				if (!removedIds.contains(id)) {
+					keptIds.add(id);
+				}
+			}
+			if (keptIds.size() < entry.getValue().length) {
+				region.wayIds.add(entry.getKey());
+				if (keptIds.isEmpty()) {
+					iterator.remove();
+				} else {
+					entry.setValue(keptIds.toArray());
+				}
+			}
+		}
+		region.edgeCount = removedIds.size();
+		endpointEdges = null;
+		interiorEdges = null;
+		return region;
+	}
+
+	private void addAllToRegion(long nodeId, Set<Integer> removedIds, ArrayDeque<Integer> queue) {
+		IntArrayList ids = endpointEdges.get(nodeId);
+		if (ids != null) {
+			for (int i = 0; i < ids.size(); i++) {
+				addToRegion(ids.get(i), removedIds, queue);
+			}
+		}
+	}
+
+	private static void addToRegion(int id, Set<Integer> removedIds, ArrayDeque<Integer> queue) {
+		if (removedIds.add(id)) {
+			queue.add(id);
+		}
+	}
+
+	/**
+	 * @return True if the node has the in and out degrees of the nodes removable by the simplification (both 1 or both
+	 * 2), i.e., it can be a part of a longer chain if its edges change.
+	 */
+	private boolean isChainNode(long nodeId) {
+		IntArrayList ids = endpointEdges.get(nodeId);
+		int inDegree = 0;
+		int outDegree = 0;
+		for (int i = 0; i < ids.size(); i++) {
+			StoredEdge edge = edges.get(ids.get(i));
+			if (edge.getFromId() == nodeId) {
+				outDegree++;
+			}
+			if (edge.getToId() == nodeId) {
+				inDegree++;
+			}
+		}
+		return inDegree == outDegree && (inDegree == 1 || inDegree == 2);
+	}
+
+	private void buildIndices() {
+		if (endpointEdges != null) {
+			return;
+		}
+		endpointEdges = new HashMap<>();
+		interiorEdges = new LongIntHashMap();
+		for (StoredEdge edge : edges.values()) {
+			endpointEdges.computeIfAbsent(edge.getFromId(), k -> new IntArrayList(4)).add(edge.id);
+			if (edge.getToId() != edge.getFromId()) {
+				endpointEdges.computeIfAbsent(edge.getToId(), k -> new IntArrayList(4)).add(edge.id);
+			}
+			for (int i = 1; i < edge.nodes.length - 1; i++) {
+				interiorEdges.put(edge.nodes[i], edge.id);
+			}
+		}
+	}
+
+	/**
+	 * @return Read-only view of the edges in the order of their ids.
+	 */
+	public Collection<StoredEdge> getEdges() {
+		return Collections.unmodifiableCollection(edges.values());
+	}
+
+	public int getEdgeCount() {
+		return edges.size();
+	}
+
+	/**
+	 * @return Ids of the edges covering the segments of the way, empty if there is no such edge.
+	 */
+	public int[] getWayEdges(long wayId) {
+		int[] ids = wayEdges.get(wayId);
+		return ids == null ? new int[0] : ids.clone();
+	}
+
+	/**
+	 * @return Unique way id greater than the unique way ids of all the stored edges.
+	 */
+	public int getNextUniqueWayId() {
+		return nextUniqueWayId;
+	}
+
+	/**
+	 * Part of the graph removed by {@link #removeRegion}.
+	 */
+	public static final class Region {
+
+		/**
+		 * Segments of the removed edges (and the added segments), the end nodes by the start nodes.
+		 */
+		private final Map<Long, Set<Long>> segments = new HashMap<>();
+
+		private final Set<Long> boundaryNodes = new HashSet<>();
+
+		private final Set<Long> wayIds = new HashSet<>();
+
+		private int edgeCount;
+
+		/**
+		 * Adds the segments between the consecutive nodes.
+		 *
+		 * @param bothDirections if true, the segments are added also in the opposite direction
+		 */
+		public void addSegments(long[] nodes, boolean bothDirections) {
+			for (int i = 1; i < nodes.length; i++) {
+				segments.computeIfAbsent(nodes[i - 1], k -> new HashSet<>()).add(nodes[i]);
+				if (bothDirections) {
+					segments.computeIfAbsent(nodes[i], k -> new HashSet<>()).add(nodes[i - 1]);
+				}
+			}
+		}
+
+		/**
+		 * @return True if the segment is a part of the region, i.e. the edge between the nodes has to be added to the
+		 * graph simplified again.
+		 */
+		public boolean containsSegment(long fromNodeId, long toNodeId) {
+			Set<Long> toNodes = segments.get(fromNodeId);
+			return toNodes != null && toNodes.contains(toNodeId);
+		}
+
+		/**
+		 * @return Source ids of the end nodes of the removed edges that have other edges in the graph. They have to be
+		 * kept by the simplification of the region.
+		 */
+		public Set<Long> getBoundaryNodes() {
+			return boundaryNodes;
+		}
+
+		/**
+		 * @return Ids of the ways with segments covered by the removed edges.
+		 */
+		public Set<Long> getWayIds() {
+			return wayIds;
+		}
+
+		/**
+		 * @return Number of the removed edges.
+		 */
+		public int getEdgeCount() {
+			return edgeCount;
+		}
+	}
+
+	/**
+	 * Edge of the simplified graph with the nodes it replaces. The edge data are those of the edge created by the
+	 * simplification, except for the shape, which is given by the node locations.
+	 */
+	public static final class StoredEdge implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int id;
+
+		private final long[] nodes;
+
+		private final int lengthCm;
+
+		private final EdgeAttributes attributes;
+
+		private final int uniqueWayId;
+
+		private final int oppositeWayUniqueId;
+
+		private final Map<String, Object> otherParams;
+
+		StoredEdge(int id, long[] nodes, int lengthCm, EdgeAttributes attributes, int uniqueWayId,
+				int oppositeWayUniqueId, Map<String, Object> otherParams) {
+			this.id = id;
+			this.nodes = nodes;
+			this.lengthCm = lengthCm;
+			this.attributes = attributes;
+			this.uniqueWayId = uniqueWayId;
+			this.oppositeWayUniqueId = oppositeWayUniqueId;
+			this.otherParams = otherParams;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public long getFromId() {
+			return nodes[0];
+		}
+
+		public long getToId() {
+			return nodes[nodes.length - 1];
+		}
+
+		public int getNodeCount() {
+			return nodes.length;
+		}
+
+		/**
+		 * @return Source id of the node at the index in the edge direction.
+		 */
+		public long getNode(int index) {
+			return nodes[index];
+		}
+
+		public int getLengthCm() {
+			return lengthCm;
+		}
+
+		public EdgeAttributes getAttributes() {
+			return attributes;
+		}
+
+		public int getUniqueWayId() {
+			return uniqueWayId;
+		}
+
+		public int getOppositeWayUniqueId() {
+			return oppositeWayUniqueId;
+		}
+
+		/**
+		 * @return Custom parameters, they mustn't be modified.
+		 */
+		public Map<String, Object> getOtherParams() {
+			return otherParams;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.compression;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens the input files that can be compressed. The compression is detected by the magic bytes at the start of the
+ * file (the file extension isn't reliable), gzip and bzip2 are supported. The decompression runs in a background
+ * thread, bzip2 blocks are decompressed in parallel.
+ */
+public final class CompressedInput {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private CompressedInput() {
+	}
+
+	/**
+	 * Opens the file with the bzip2 decompression using all available processors.
+	 *
+	 * @param file
+	 * @return Stream of the (decompressed) file content.
+	 * @throws IOException
+	 */
+	public static InputStream open(File file) throws IOException {
+		return open(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param file
+	 * @param threadCount number of threads decompressing bzip2 blocks
+	 * @return Stream of the (decompressed) file content.
+	 * @throws IOException
+	 */
+	public static InputStream open(File file, int threadCount) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			in.mark(3);
+			int first = in.read();
+			int second = in.read();
+			int third = in.read();
+			in.reset();
+			if (first == 0x1F && second == 0x8B) {
+				return new ReadAheadInputStream(new GZIPInputStream(in, BUFFER_SIZE));
+			}
+			if (first == 'B' && second == 'Z' && third == 'h') {
+				return new ReadAheadInputStream(new ParallelBzip2InputStream(in, threadCount));
+			}
+			return in;
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,506 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Bzip2 decompressing stream that decompresses the blocks in parallel.
+ * <p>
+ * Bzip2 blocks are independent, but they aren't byte aligned, so the compressed stream is scanned for the block
+ * (and end of stream) magic numbers bit by bit. Each block is then shifted into a separate single-block bzip2 stream
+ * (with the block CRC as the stream CRC) and decompressed by a worker thread. The decompressed blocks are returned in
+ * the original order. Each block is checked by its CRC, the combined CRC of the whole stream isn't checked.
+ * Concatenated streams (e.g. files created by pbzip2) are supported.
+ * <p>
+ * The magic numbers can appear inside the compressed data by chance. A false block magic number splits a block in two,
+ * the decompression of the first part fails and it is merged with the following one and decompressed again. An end of
+ * stream magic number is only tentative until it is followed by the combined CRC, the byte padding and either the
+ * header of the next stream or the end of the input. Until then, the block continues, so a false end of stream magic
+ * number doesn't cut the block.
+ */
+public class ParallelBzip2InputStream extends InputStream {
+
+	private static final long BLOCK_MAGIC = 0x314159265359L;
+
+	private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+	private static final long MAGIC_MASK = (1L << 48) - 1;
+
+	private static final int MAGIC_BITS = 48;
+
+	private static final int CRC_BITS = 32;
+
+	private static final int HEADER_BITS = 32;
+
+	private static final byte[] STREAM_HEADER = {'B', 'Z', 'h', '9'};
+
+	/**
+	 * Number of blocks that can be decompressed ahead per worker thread.
+	 */
+	private static final int BLOCKS_AHEAD_PER_THREAD = 2;
+
+	/**
+	 * Maximal number of blocks merged when the decompression fails (because of a false magic number).
+	 */
+	private static final int MAX_MERGED_BLOCKS = 4;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final InputStream in;
+
+	private final int maxPendingBlocks;
+
+	private final ExecutorService executor;
+
+	private final Queue<PendingBlock> pendingBlocks = new ArrayDeque<>();
+
+	/**
+	 * Blocks found by the scanner but not submitted for the decompression yet.
+	 */
+	private final Queue<CompressedBlock> scannedBlocks = new ArrayDeque<>();
+
+	private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+
+	private int inputPosition;
+
+	private int inputLimit;
+
+	private boolean endOfInput;
+
+	/**
+	 * Scanned compressed data that can still be a part of some block.
+	 */
+	private byte[] scanned = new byte[1 << 20];
+
+	private int scannedLength;
+
+	/**
+	 * Absolute position (in bits) of the first scanned byte.
+	 */
+	private long scannedStart;
+
+	/**
+	 * Absolute position (in bits) of the next scanned bit.
+	 */
+	private long bitPosition;
+
+	/**
+	 * Last 64 scanned bits, the last scanned bit is the lowest one.
+	 */
+	private long window;
+
+	/**
+	 * Absolute position of the current block start or -1 if the scanner isn't in a block.
+	 */
+	private long blockStart = -1;
+
+	/**
+	 * Absolute position of the end of stream magic number that ends the current block if it is followed by a valid
+	 * stream end, or -1 if no such magic number was found.
+	 */
+	private long pendingEndOfStream = -1;
+
+	private boolean headerChecked;
+
+	private byte[] decompressed = new byte[0];
+
+	private int decompressedPosition;
+
+	/**
+	 * @param in compressed stream
+	 * @param threadCount number of threads decompressing the blocks
+	 */
+	public ParallelBzip2InputStream(InputStream in, int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		this.in = in;
+		maxPendingBlocks = threadCount * BLOCKS_AHEAD_PER_THREAD;
+		executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+			Thread thread = new Thread(runnable, "bzip2-decoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		return decompressed[decompressedPosition++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		int count = Math.min(len, decompressed.length - decompressedPosition);
+		System.arraycopy(decompressed, decompressedPosition, b, off, count);
+		decompressedPosition += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		in.close();
+	}
+
+	private boolean ensureAvailable() throws IOException {
+		while (decompressedPosition == decompressed.length) {
+			submitBlocks();
+			PendingBlock block = pendingBlocks.poll();
+			if (block == null) {
+				return false;
+			}
+			decompressed = getDecompressed(block);
+			decompressedPosition = 0;
+		}
+		return true;
+	}
+
+	private void submitBlocks() throws IOException {
+		while (pendingBlocks.size() < maxPendingBlocks) {
+			CompressedBlock block = nextBlock();
+			if (block == null) {
+				return;
+			}
+			pendingBlocks.add(new PendingBlock(block, executor.submit(() -> decompress(block))));
+		}
+	}
+
+	private byte[] getDecompressed(PendingBlock block) throws IOException {
+		try {
+			return block.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Decompression of the bzip2 stream was interrupted.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (!(cause instanceof IOException)) {
+				throw new IllegalStateException("Decompression of a bzip2 block failed.", cause);
+			}
+			return decompressMerged(block.block, (IOException) cause);
+		}
+	}
+
+	/**
+	 * Merges the block that can't be decompressed with the following blocks and tries to decompress it again.
+	 */
+	private byte[] decompressMerged(CompressedBlock block, IOException originalException) throws IOException {
+		CompressedBlock merged = block;
+		for (int i = 1; i < MAX_MERGED_BLOCKS && !merged.endsStream; i++) {
+			submitBlocks();
+			PendingBlock next = pendingBlocks.poll();
+			if (next == null) {
+				break;
+			}
+			next.future.cancel(false);
+			merged = merged.append(next.block);
+			try {
+				return decompress(merged);
+			} catch (IOException e) {
+				// try to merge more blocks
+			}
+		}
+		throw originalException;
+	}
+
+	private static byte[] decompress(CompressedBlock block) throws IOException {
+		try (InputStream blockStream = new BZip2CompressorInputStream(new ByteArrayInputStream(block.toStream()))) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = blockStream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid bzip2 block.", e);
+		}
+	}
+
+	/**
+	 * Scans the compressed stream for the next block.
+	 *
+	 * @return Next block or null if the end of the stream is reached.
+	 */
+	private CompressedBlock nextBlock() throws IOException {
+		while (scannedBlocks.isEmpty()) {
+			int value = nextInputByte();
+			if (value == -1) {
+				finishScan();
+				return scannedBlocks.poll();
+			}
+			scanByte((byte) value);
+			if (!headerChecked && bitPosition == STREAM_HEADER.length * 8) {
+				checkHeader();
+			}
+		}
+		return scannedBlocks.poll();
+	}
+
+	private void scanByte(byte value) {
+		appendScanned(value);
+		window = window << 8 | (value & 0xFF);
+		bitPosition += 8;
+		// the magic number can end at any of the 8 new bits, the earlier positions are checked first
+		for (int shift = 7; shift >= 0; shift--) {
+			long magic = window >>> shift & MAGIC_MASK;
+			long magicEnd = bitPosition - shift;
+			if ((magic == BLOCK_MAGIC || magic == END_OF_STREAM_MAGIC) && magicEnd >= MAGIC_BITS) {
+				long magicStart = magicEnd - MAGIC_BITS;
+				// a real end of stream is confirmed before any following magic number, so the pending one was false
+				pendingEndOfStream = -1;
+				if (magic == BLOCK_MAGIC) {
+					if (blockStart >= 0) {
+						scannedBlocks.add(createBlock(blockStart, magicStart, false));
+					}
+					blockStart = magicStart;
+				} else if (blockStart >= 0) {
+					pendingEndOfStream = magicStart;
+				}
+			}
+		}
+		if (pendingEndOfStream >= 0 && bitPosition == getNextHeaderStart(pendingEndOfStream) + HEADER_BITS) {
+			if (isHeader(getNextHeaderStart(pendingEndOfStream))) {
+				confirmEndOfStream();
+			} else {
+				pendingEndOfStream = -1;
+			}
+		}
+	}
+
+	/**
+	 * Handles the end of the input, the pending end of stream is confirmed if the combined CRC is complete.
+	 */
+	private void finishScan() throws IOException {
+		if (!headerChecked) {
+			throw new IOException("Truncated bzip2 stream.");
+		}
+		if (pendingEndOfStream >= 0 && bitPosition >= pendingEndOfStream + MAGIC_BITS + CRC_BITS) {
+			confirmEndOfStream();
+		}
+		if (blockStart >= 0) {
+			throw new IOException("Truncated bzip2 stream.");
+		}
+	}
+
+	private void confirmEndOfStream() {
+		scannedBlocks.add(createBlock(blockStart, pendingEndOfStream, true));
+		blockStart = -1;
+		pendingEndOfStream = -1;
+	}
+
+	/**
+	 * @param endOfStream absolute position of the end of stream magic number
+	 * @return Absolute position of the byte aligned header of the stream that can follow the end of stream.
+	 */
+	private static long getNextHeaderStart(long endOfStream) {
+		return (endOfStream + MAGIC_BITS + CRC_BITS + 7) & ~7L;
+	}
+
+	private boolean isHeader(long position) {
+		int index = (int) ((position - scannedStart) / 8);
+		return scanned[index] == 'B' && scanned[index + 1] == 'Z' && scanned[index + 2] == 'h'
+				&& scanned[index + 3] >= '1' && scanned[index + 3] <= '9';
+	}
+
+	private int nextInputByte() throws IOException {
+		if (inputPosition == inputLimit) {
+			if (endOfInput) {
+				return -1;
+			}
+			int read = in.read(inputBuffer);
+			if (read == -1) {
+				endOfInput = true;
+				return -1;
+			}
+			inputPosition = 0;
+			inputLimit = read;
+		}
+		return inputBuffer[inputPosition++] & 0xFF;
+	}
+
+	/**
+	 * Checks the header of the first stream, the scanned buffer has to contain the first four bytes.
+	 */
+	private void checkHeader() throws IOException {
+		if (!isHeader(0)) {
+			throw new IOException("Not a bzip2 stream.");
+		}
+		headerChecked = true;
+	}
+
+	private void appendScanned(byte value) {
+		if (scannedLength == scanned.length) {
+			// keep the bytes of the current block or the bytes that can contain the start of the next magic number
+			long keepFrom = blockStart >= 0 ? blockStart : Math.max(0, bitPosition - MAGIC_BITS - 8);
+			int discardedBytes = (int) ((keepFrom - scannedStart) / 8);
+			System.arraycopy(scanned, discardedBytes, scanned, 0, scannedLength - discardedBytes);
+			scannedLength -= discardedBytes;
+			scannedStart += discardedBytes * 8L;
+			if (scannedLength == scanned.length) {
+				scanned = Arrays.copyOf(scanned, scanned.length * 2);
+			}
+		}
+		scanned[scannedLength++] = value;
+	}
+
+	private CompressedBlock createBlock(long start, long end, boolean endsStream) {
+		int startByte = (int) ((start - scannedStart) / 8);
+		int endByte = (int) ((end - scannedStart + 7) / 8);
+		return new CompressedBlock(Arrays.copyOfRange(scanned, startByte, endByte), (int) (start % 8),
+				(int) (end - start), endsStream);
+	}
+
+	/**
+	 * Compressed block, bit-level slice of the compressed stream from its magic number to the next magic number.
+	 */
+	private static final class CompressedBlock {
+
+		final byte[] data;
+
+		final int bitOffset;
+
+		final int bitLength;
+
+		/**
+		 * True if the block is followed by the end of stream magic number.
+		 */
+		final boolean endsStream;
+
+		CompressedBlock(byte[] data, int bitOffset, int bitLength, boolean endsStream) {
+			this.data = data;
+			this.bitOffset = bitOffset;
+			this.bitLength = bitLength;
+			this.endsStream = endsStream;
+		}
+
+		/**
+		 * @param next block immediately following this block
+		 * @return Block containing the bits of both blocks.
+		 */
+		CompressedBlock append(CompressedBlock next) {
+			int end = bitOffset + bitLength;
+			byte[] merged = Arrays.copyOf(data, end / 8 + next.data.length);
+			System.arraycopy(next.data, 0, merged, end / 8, next.data.length);
+			return new CompressedBlock(merged, bitOffset, bitLength + next.bitLength, next.endsStream);
+		}
+
+		/**
+		 * Creates a complete single-block bzip2 stream containing this block.
+		 */
+		byte[] toStream() throws IOException {
+			if (bitLength < MAGIC_BITS + CRC_BITS) {
+				throw new IOException("Too short bzip2 block.");
+			}
+			BitWriter writer = new BitWriter(STREAM_HEADER.length + bitLength / 8 + 16);
+			for (byte b : STREAM_HEADER) {
+				writer.write(b, 8);
+			}
+			int fullBytes = bitLength / 8;
+			for (int i = 0; i < fullBytes; i++) {
+				writer.write(getByte(bitOffset + i * 8), 8);
+			}
+			for (int i = fullBytes * 8; i < bitLength; i++) {
+				writer.write(getBit(bitOffset + i), 1);
+			}
+			long blockCrc = 0;
+			for (int i = MAGIC_BITS; i < MAGIC_BITS + CRC_BITS; i++) {
+				blockCrc = blockCrc << 1 | getBit(bitOffset + i);
+			}
+			writer.write(END_OF_STREAM_MAGIC, MAGIC_BITS);
+			writer.write(blockCrc, CRC_BITS);
+			return writer.toByteArray();
+		}
+
+		private int getBit(int position) {
+			return data[position >>> 3] >>> (7 - (position & 7)) & 1;
+		}
+
+		private int getByte(int position) {
+			int shift = position & 7;
+			int index = position >>> 3;
+			if (shift == 0) {
+				return data[index] & 0xFF;
+			}
+			int next = index + 1 < data.length ? data[index + 1] & 0xFF : 0;
+			return (data[index] << shift | next >>> (8 - shift)) & 0xFF;
+		}
+	}
+
+	private static final class BitWriter {
+
+		private final byte[] data;
+
+		private int bitPosition;
+
+		BitWriter(int capacity) {
+			data = new byte[capacity];
+		}
+
+		void write(long value, int bitCount) {
+			if ((bitPosition & 7) == 0 && bitCount == 8) {
+				data[bitPosition >>> 3] = (byte) value;
+				bitPosition += 8;
+				return;
+			}
+			for (int i = bitCount - 1; i >= 0; i--) {
+				if ((value >>> i & 1) != 0) {
+					data[bitPosition >>> 3] |= 0x80 >>> (bitPosition & 7);
+				}
+				bitPosition++;
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(data, (bitPosition + 7) / 8);
+		}
+	}
+
+	private static final class PendingBlock {
+
+		final CompressedBlock block;
+
+		final Future<byte[]> future;
+
+		PendingBlock(CompressedBlock block, Future<byte[]> future) {
+			this.block = block;
+			this.future = future;
+		}
+	}
+}
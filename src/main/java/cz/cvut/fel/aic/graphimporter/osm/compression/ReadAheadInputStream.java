@@ -0,0 +1,194 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads the underlying stream in a background thread. It's used for the decompressing streams, so
+ * the decompression runs in parallel with the parsing of the decompressed data.
+ * <p>
+ * The end of the stream and the failure of the underlying stream are final, all following reads return -1 or throw
+ * the exception again. The underlying stream is closed by the background thread when it stops reading.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private static final int CHUNKS_AHEAD = 4;
+
+	private static final Chunk END_OF_STREAM = new Chunk(null, -1, null);
+
+	private final InputStream in;
+
+	private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+
+	private final Thread readerThread;
+
+	private Chunk currentChunk;
+
+	private int position;
+
+	private boolean finished;
+
+	/**
+	 * Failure of the underlying stream or null if it didn't fail.
+	 */
+	private Exception readError;
+
+	private boolean closed;
+
+	/**
+	 * Failure of closing the underlying stream, it's written by the background thread before it ends.
+	 */
+	private IOException closeError;
+
+	public ReadAheadInputStream(InputStream in) {
+		this.in = in;
+		readerThread = new Thread(this::readAhead, "read-ahead");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		return currentChunk.data[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		int count = Math.min(len, currentChunk.length - position);
+		System.arraycopy(currentChunk.data, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		readerThread.interrupt();
+		try {
+			readerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Closing of the stream was interrupted.", e);
+		}
+		if (closeError != null) {
+			throw closeError;
+		}
+	}
+
+	private boolean ensureAvailable() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed.");
+		}
+		if (readError != null) {
+			throw new IOException("Reading of the stream failed.", readError);
+		}
+		while (!finished && (currentChunk == null || position == currentChunk.length)) {
+			Chunk chunk;
+			try {
+				chunk = chunks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Reading of the stream was interrupted.", e);
+			}
+			if (chunk.error != null) {
+				readError = chunk.error;
+				finished = true;
+				throw new IOException("Reading of the stream failed.", readError);
+			}
+			if (chunk == END_OF_STREAM) {
+				finished = true;
+			} else {
+				currentChunk = chunk;
+				position = 0;
+			}
+		}
+		return !finished;
+	}
+
+	private void readAhead() {
+		try {
+			while (true) {
+				byte[] data = new byte[CHUNK_SIZE];
+				int length = 0;
+				int read = 0;
+				while (length < CHUNK_SIZE && (read = in.read(data, length, CHUNK_SIZE - length)) != -1) {
+					length += read;
+					if (Thread.interrupted()) {
+						// the stream was closed
+						return;
+					}
+				}
+				if (length > 0) {
+					chunks.put(new Chunk(data, length, null));
+				}
+				if (read == -1) {
+					chunks.put(END_OF_STREAM);
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// the stream was closed
+		} catch (IOException | RuntimeException e) {
+			try {
+				chunks.put(new Chunk(null, -1, e));
+			} catch (InterruptedException ex) {
+				// the stream was closed
+			}
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				closeError = e;
+			}
+		}
+	}
+
+	private static final class Chunk {
+
+		final byte[] data;
+
+		final int length;
+
+		final Exception error;
+
+		Chunk(byte[] data, int length, Exception error) {
+			this.data = data;
+			this.length = length;
+			this.error = error;
+		}
+	}
+}
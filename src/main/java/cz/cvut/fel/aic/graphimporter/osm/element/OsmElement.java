@@ -18,43 +18,320 @@
  */
 package cz.cvut.fel.aic.graphimporter.osm.element;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * @author Marek Cuchý
  */
 public abstract class OsmElement {
 
-	public final long id;
+	private static final TagDictionary DICTIONARY = TagDictionary.getInstance();
 
-	private final Map<String, String> tags = new HashMap<>();
+	private static final int[] NO_TAGS = new int[0];
+
+	/**
+	 * Id of the element. It changes when the element is reused by a reader (see {@link #reset(long)}).
+	 *
+	 * @deprecated The field will become private, read it by {@link #getId()}.
+	 */
+	@Deprecated
+	public long id;
+
+	/**
+	 * Tags as pairs of key and value codes from {@link TagDictionary}. Strings without the code are stored in
+	 * {@link #rawStrings} at the same index.
+	 */
+	private int[] tagCodes = NO_TAGS;
+
+	private String[] rawStrings;
+
+	private int tagCount;
+
+	private TagMap tagMap;
 
 	public OsmElement(long id) {
 		this.id = id;
 	}
 
 	public void addTag(String key, String value) {
-		tags.put(key, value);
+		int index = indexOf(key);
+		if (index < 0) {
+			index = tagCount * 2;
+			if (index == tagCodes.length) {
+				tagCodes = Arrays.copyOf(tagCodes, Math.max(4, index * 2));
+				if (rawStrings != null) {
+					rawStrings = Arrays.copyOf(rawStrings, tagCodes.length);
+				}
+			}
+			set(index, DICTIONARY.internKey(key), key);
+			tagCount++;
+		}
+		set(index + 1, DICTIONARY.internValue(value), value);
 	}
 
 	public void clearTags() {
-		tags.clear();
+		tagCount = 0;
+		rawStrings = null;
 	}
 
+	/**
+	 * Prepares the element for the reuse as a new element with the given id. The allocated tag storage is kept.
+	 *
+	 * @param id
+	 */
+	protected void reset(long id) {
+		this.id = id;
+		clearTags();
+	}
+
+	/**
+	 * Copies the tags of the {@code other} element to this element, the current tags are replaced.
+	 *
+	 * @param other
+	 */
+	protected void copyTags(OsmElement other) {
+		tagCount = other.tagCount;
+		tagCodes = Arrays.copyOf(other.tagCodes, other.tagCount * 2);
+		rawStrings = other.rawStrings == null ? null : Arrays.copyOf(other.rawStrings, other.tagCount * 2);
+	}
+
+	/**
+	 * Returns the tags of the element. The map is a view of the compact tag storage of the element, the same instance
+	 * is returned by all calls. The tags can be changed by {@code put}, {@code remove} and {@code clear} of the map,
+	 * the key set, the values and the entry set are read-only.
+	 *
+	 * @return
+	 */
 	public Map<String, String> getTags() {
-		return tags;
+		if (tagMap == null) {
+			tagMap = new TagMap();
+		}
+		return tagMap;
+	}
+
+	/**
+	 * @param key
+	 * @return Value of the tag or null if the element doesn't have the tag.
+	 */
+	public String getTag(String key) {
+		int index = indexOf(key);
+		return index < 0 ? null : get(index + 1);
+	}
+
+	public int getTagCount() {
+		return tagCount;
+	}
+
+	/**
+	 * @param tag index of the tag, from 0 to {@link #getTagCount()} - 1
+	 * @return Code of the tag key or {@link TagDictionary#NO_CODE} if the key isn't in the dictionary.
+	 */
+	public int getKeyCode(int tag) {
+		return getCode(checkTagIndex(tag) * 2);
+	}
+
+	/**
+	 * @param tag index of the tag, from 0 to {@link #getTagCount()} - 1
+	 * @return Code of the tag value or {@link TagDictionary#NO_CODE} if the value isn't in the dictionary.
+	 */
+	public int getValueCode(int tag) {
+		return getCode(checkTagIndex(tag) * 2 + 1);
+	}
+
+	/**
+	 * @param keyCode code of the key from {@link TagDictionary}
+	 * @return Code of the value of the tag or {@link TagDictionary#NO_CODE} if the element doesn't have the tag or if
+	 * the value isn't in the dictionary.
+	 */
+	public int getTagCode(int keyCode) {
+		int index = indexOfCode(keyCode);
+		return index < 0 ? TagDictionary.NO_CODE : getCode(index + 1);
+	}
+
+	/**
+	 * @param keyCode code of the key from {@link TagDictionary}
+	 * @return True if the element has a tag with the key.
+	 */
+	public boolean hasTag(int keyCode) {
+		return indexOfCode(keyCode) >= 0;
+	}
+
+	/**
+	 * @param keyCode code of the key from {@link TagDictionary}
+	 * @param valueCode code of the value from {@link TagDictionary}
+	 * @return True if the element has the tag with the key and the value.
+	 */
+	public boolean hasTag(int keyCode, int valueCode) {
+		return valueCode != TagDictionary.NO_CODE && getTagCode(keyCode) == valueCode;
 	}
 
 	public long getId() {
 		return id;
 	}
 
+	private void set(int index, int code, String string) {
+		tagCodes[index] = code;
+		if (code == TagDictionary.NO_CODE) {
+			if (rawStrings == null) {
+				rawStrings = new String[tagCodes.length];
+			}
+			rawStrings[index] = string;
+		}
+	}
+
+	private String get(int index) {
+		int code = tagCodes[index];
+		return code == TagDictionary.NO_CODE ? rawStrings[index] : DICTIONARY.getString(code);
+	}
+
+	/**
+	 * Returns the code of the string at the index. A string stored without the code can get it later (e.g. a value
+	 * registered after the element was read), so it's looked up in the dictionary.
+	 */
+	private int getCode(int index) {
+		int code = tagCodes[index];
+		return code == TagDictionary.NO_CODE ? DICTIONARY.getCode(rawStrings[index]) : code;
+	}
+
+	private int checkTagIndex(int tag) {
+		if (tag < 0 || tag >= tagCount) {
+			throw new IndexOutOfBoundsException("Tag: " + tag + ", tag count: " + tagCount);
+		}
+		return tag;
+	}
+
+	/**
+	 * @return Index of the key code or -1 if the element doesn't have the tag.
+	 */
+	private int indexOfCode(int keyCode) {
+		if (keyCode == TagDictionary.NO_CODE) {
+			return -1;
+		}
+		for (int i = 0; i < tagCount * 2; i += 2) {
+			if (tagCodes[i] == keyCode || tagCodes[i] == TagDictionary.NO_CODE && getCode(i) == keyCode) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void removeAt(int index) {
+		int moved = tagCount * 2 - index - 2;
+		System.arraycopy(tagCodes, index + 2, tagCodes, index, moved);
+		if (rawStrings != null) {
+			System.arraycopy(rawStrings, index + 2, rawStrings, index, moved);
+			rawStrings[tagCount * 2 - 2] = null;
+			rawStrings[tagCount * 2 - 1] = null;
+		}
+		tagCount--;
+	}
+
+	/**
+	 * @return Index of the key code or -1 if the element doesn't have the tag.
+	 */
+	private int indexOf(Object key) {
+		if (!(key instanceof String)) {
+			return -1;
+		}
+		int keyCode = DICTIONARY.getCode((String) key);
+		for (int i = 0; i < tagCount * 2; i += 2) {
+			if (keyCode != TagDictionary.NO_CODE ? tagCodes[i] == keyCode
+					: tagCodes[i] == TagDictionary.NO_CODE && rawStrings[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	@Override
 	public String toString() {
 		return "" +
 				"id=" + id +
-				", tags=" + tags
+				", tags=" + getTags()
 				;
 	}
+
+	/**
+	 * Map view of the tags. Lookups compare the dictionary codes instead of the strings.
+	 */
+	private class TagMap extends AbstractMap<String, String> {
+
+		@Override
+		public String get(Object key) {
+			int index = indexOf(key);
+			return index < 0 ? null : OsmElement.this.get(index + 1);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOf(key) >= 0;
+		}
+
+		@Override
+		public String put(String key, String value) {
+			String previous = getTag(key);
+			addTag(key, value);
+			return previous;
+		}
+
+		@Override
+		public String remove(Object key) {
+			int index = indexOf(key);
+			if (index < 0) {
+				return null;
+			}
+			String previous = OsmElement.this.get(index + 1);
+			removeAt(index);
+			return previous;
+		}
+
+		@Override
+		public int size() {
+			return tagCount;
+		}
+
+		@Override
+		public void clear() {
+			clearTags();
+		}
+
+		@Override
+		public Set<Entry<String, String>> entrySet() {
+			return new AbstractSet<Entry<String, String>>() {
+				@Override
+				public Iterator<Entry<String, String>> iterator() {
+					return new Iterator<Entry<String, String>>() {
+						private int index;
+
+						@Override
+						public boolean hasNext() {
+							return index < tagCount * 2;
+						}
+
+						@Override
+						public Entry<String, String> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, String> entry = new SimpleImmutableEntry<>(OsmElement.this.get(index),
+									OsmElement.this.get(index + 1));
+							index += 2;
+							return entry;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return tagCount;
+				}
+			};
+		}
+	}
 }
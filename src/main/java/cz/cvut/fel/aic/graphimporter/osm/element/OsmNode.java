@@ -23,8 +23,17 @@ package cz.cvut.fel.aic.graphimporter.osm.element;
  */
 public class OsmNode extends OsmElement {
 
-	public final double lat;
-	public final double lon;
+	/**
+	 * @deprecated The field will become private, read it by {@link #getLat()}.
+	 */
+	@Deprecated
+	public double lat;
+
+	/**
+	 * @deprecated The field will become private, read it by {@link #getLon()}.
+	 */
+	@Deprecated
+	public double lon;
 
 	public OsmNode(long id, double lat, double lon) {
 		super(id);
@@ -32,6 +41,36 @@ public class OsmNode extends OsmElement {
 		this.lon = lon;
 	}
 
+	public double getLat() {
+		return lat;
+	}
+
+	public double getLon() {
+		return lon;
+	}
+
+	/**
+	 * Prepares the node for the reuse as a new node without tags.
+	 *
+	 * @param id
+	 * @param lat
+	 * @param lon
+	 */
+	public void reset(long id, double lat, double lon) {
+		reset(id);
+		this.lat = lat;
+		this.lon = lon;
+	}
+
+	/**
+	 * @return Independent copy of the node, it can be kept even if this node is reused.
+	 */
+	public OsmNode copy() {
+		OsmNode copy = new OsmNode(getId(), lat, lon);
+		copy.copyTags(this);
+		return copy;
+	}
+
 	@Override
 	public String toString() {
 		return "OsmNode [" +
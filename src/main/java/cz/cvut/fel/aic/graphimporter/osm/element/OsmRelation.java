@@ -18,31 +18,108 @@
  */
 package cz.cvut.fel.aic.graphimporter.osm.element;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * @author Marek Cuchý
  */
 public class OsmRelation extends OsmElement {
 
-	private final List<Long> nodes = new ArrayList<>();
-	private final List<Long> ways = new ArrayList<>();
-	private final List<Long> relations = new ArrayList<>();
+	private static final MemberType[] MEMBER_TYPES = MemberType.values();
+
+	/**
+	 * Members in the order of the relation definition, only the first {@link #memberCount} are valid.
+	 */
+	private byte[] memberTypes = new byte[4];
+	private long[] memberIds = new long[4];
+	private String[] memberRoles = new String[4];
+
+	private int memberCount;
 
 	public OsmRelation(long id) {
 		super(id);
 	}
 
 	public void addNode(long nodeId) {
-		nodes.add(nodeId);
+		addMember(MemberType.NODE, nodeId, "");
 	}
 
 	public void addWay(long wayId) {
-		ways.add(wayId);
+		addMember(MemberType.WAY, wayId, "");
 	}
 
 	public void addRelation(long relationId) {
-		relations.add(relationId);
+		addMember(MemberType.RELATION, relationId, "");
+	}
+
+	public void addMember(MemberType type, long id, String role) {
+		if (memberCount == memberIds.length) {
+			memberTypes = Arrays.copyOf(memberTypes, memberCount * 2);
+			memberIds = Arrays.copyOf(memberIds, memberCount * 2);
+			memberRoles = Arrays.copyOf(memberRoles, memberCount * 2);
+		}
+		memberTypes[memberCount] = (byte) type.ordinal();
+		memberIds[memberCount] = id;
+		memberRoles[memberCount] = role == null ? "" : role;
+		memberCount++;
+	}
+
+	public int getMemberCount() {
+		return memberCount;
+	}
+
+	public MemberType getMemberType(int index) {
+		checkMemberIndex(index);
+		return MEMBER_TYPES[memberTypes[index]];
+	}
+
+	public long getMemberId(int index) {
+		checkMemberIndex(index);
+		return memberIds[index];
+	}
+
+	/**
+	 * @param index
+	 * @return Role of the member, empty string if the member doesn't have any role.
+	 */
+	public String getMemberRole(int index) {
+		checkMemberIndex(index);
+		return memberRoles[index];
+	}
+
+	private void checkMemberIndex(int index) {
+		if (index >= memberCount) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + memberCount);
+		}
+	}
+
+	/**
+	 * Prepares the relation for the reuse as a new relation without tags and members. The allocated storage is kept.
+	 */
+	@Override
+	public void reset(long id) {
+		super.reset(id);
+		Arrays.fill(memberRoles, 0, memberCount, null);
+		memberCount = 0;
+	}
+
+	/**
+	 * @return Independent copy of the relation, it can be kept even if this relation is reused.
+	 */
+	public OsmRelation copy() {
+		OsmRelation copy = new OsmRelation(getId());
+		copy.copyTags(this);
+		int capacity = Math.max(memberCount, 1);
+		copy.memberTypes = Arrays.copyOf(memberTypes, capacity);
+		copy.memberIds = Arrays.copyOf(memberIds, capacity);
+		copy.memberRoles = Arrays.copyOf(memberRoles, capacity);
+		copy.memberCount = memberCount;
+		return copy;
+	}
+
+	public enum MemberType {
+		NODE,
+		WAY,
+		RELATION
 	}
 }
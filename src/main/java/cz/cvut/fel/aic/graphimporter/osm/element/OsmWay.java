@@ -18,27 +18,61 @@
  */
 package cz.cvut.fel.aic.graphimporter.osm.element;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.function.LongPredicate;
 
 /**
  * @author Marek Cuchý
  */
 public class OsmWay extends OsmElement {
 
-	private final List<Long> nodes = new ArrayList<>();
+	/**
+	 * Ids of the way nodes, only the first {@link #nodeCount} are valid.
+	 */
+	private long[] nodes = new long[8];
+
+	private int nodeCount;
 
 	public OsmWay(long id) {
 		super(id);
 	}
 
 	public void addNode(long nodeId) {
-		nodes.add(nodeId);
+		if (nodeCount == nodes.length) {
+			nodes = Arrays.copyOf(nodes, nodeCount * 2);
+		}
+		nodes[nodeCount++] = nodeId;
 	}
 
+	/**
+	 * Returns the way nodes. The list is a view of the primitive node storage of the way.
+	 *
+	 * @return
+	 */
 	public List<Long> getNodes() {
-		return nodes;
+		return new NodeList();
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public long getNode(int index) {
+		if (index >= nodeCount) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + nodeCount);
+		}
+		return nodes[index];
+	}
+
+	/**
+	 * @return Copy of the way node ids.
+	 */
+	public long[] getNodeIds() {
+		return Arrays.copyOf(nodes, nodeCount);
 	}
 
 	/**
@@ -47,13 +81,64 @@ public class OsmWay extends OsmElement {
 	 * @param nodeIds
 	 */
 	public void removeMissingNodes(Set<Long> nodeIds) {
-		nodes.removeIf(l -> !nodeIds.contains(l));
+		removeMissingNodes(nodeIds::contains);
+	}
+
+	/**
+	 * Remove all nodes not satisfying the {@code containsNode} predicate from the way nodes.
+	 *
+	 * @param containsNode
+	 */
+	public void removeMissingNodes(LongPredicate containsNode) {
+		int newCount = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			if (containsNode.test(nodes[i])) {
+				nodes[newCount++] = nodes[i];
+			}
+		}
+		nodeCount = newCount;
+	}
+
+	/**
+	 * Prepares the way for the reuse as a new way without tags and nodes. The allocated storage is kept.
+	 */
+	@Override
+	public void reset(long id) {
+		super.reset(id);
+		nodeCount = 0;
+	}
+
+	/**
+	 * @return Independent copy of the way, it can be kept even if this way is reused.
+	 */
+	public OsmWay copy() {
+		OsmWay copy = new OsmWay(getId());
+		copy.copyTags(this);
+		copy.nodes = Arrays.copyOf(nodes, Math.max(nodeCount, 1));
+		copy.nodeCount = nodeCount;
+		return copy;
 	}
 
 	@Override
 	public String toString() {
 		return "OsmWay{" +
-				"nodes=" + nodes +
+				"nodes=" + getNodes() +
 				'}';
 	}
+
+	/**
+	 * List view of the way nodes.
+	 */
+	private class NodeList extends AbstractList<Long> implements RandomAccess {
+
+		@Override
+		public Long get(int index) {
+			return getNode(index);
+		}
+
+		@Override
+		public int size() {
+			return nodeCount;
+		}
+	}
 }
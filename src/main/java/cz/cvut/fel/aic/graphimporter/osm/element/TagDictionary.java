@@ -0,0 +1,143 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.element;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the tag keys and values. Strings are interned to small integer codes, so the OSM elements store only
+ * the codes and all elements share the same string instances. Keys are always interned. Values are interned only if
+ * they are in the fixed set of common values or if they were registered by {@link #registerValue} (e.g. by the tag
+ * evaluators for the values they compare), free-form values (names, numbers, etc.) are stored by the elements as
+ * strings. Therefore, the dictionary doesn't grow with the number of imported elements even though it's never
+ * cleared. The dictionary size is bounded, when it's full, the new strings are no longer interned.
+ * <p>
+ * The dictionary is thread-safe, it's shared by all readers (including the parallel PBF decoding).
+ */
+public final class TagDictionary {
+
+	/**
+	 * Code of the strings that aren't in the dictionary.
+	 */
+	public static final int NO_CODE = -1;
+
+	private static final int MAX_SIZE = 1 << 18;
+
+	private static final String[] COMMON_VALUES = {"yes", "no", "true", "false", "1", "0", "-1", "designated",
+			"permissive", "private", "destination", "delivery", "customers", "agricultural", "forestry", "official",
+			"use_sidepath", "dismount", "motorway", "motorway_link", "trunk", "trunk_link", "primary", "primary_link",
+			"secondary", "secondary_link", "tertiary", "tertiary_link", "unclassified", "residential",
+			"living_street", "service", "road", "track", "pedestrian", "footway", "cycleway", "bridleway", "path",
+			"steps", "construction", "proposed", "platform", "bus_guideway", "busway", "corridor", "sidewalk",
+			"crossing", "driveway", "parking_aisle", "alley", "both", "left", "right", "none", "lane", "shared_lane",
+			"opposite", "opposite_lane", "opposite_track", "separate", "reversible", "alternating", "asphalt", "paved",
+			"unpaved", "concrete", "gravel", "ground", "dirt", "grass", "sett", "paving_stones", "compacted"};
+
+	private static final TagDictionary INSTANCE = new TagDictionary();
+
+	private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+	private volatile String[] strings = new String[1024];
+
+	private int size;
+
+	private TagDictionary() {
+		for (String value : COMMON_VALUES) {
+			intern(value);
+		}
+	}
+
+	public static TagDictionary getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param key
+	 * @return Code of the key or {@link #NO_CODE} if the dictionary is full.
+	 */
+	public int internKey(String key) {
+		return intern(key);
+	}
+
+	/**
+	 * Returns the code of the value. The value isn't added to the dictionary, only the common values and the
+	 * registered values (see {@link #registerValue}) have codes.
+	 *
+	 * @param value
+	 * @return Code of the value or {@link #NO_CODE} if the value isn't in the dictionary.
+	 */
+	public int internValue(String value) {
+		return getCode(value);
+	}
+
+	/**
+	 * Adds the value to the dictionary, so the tags with the value are stored and compared by the code.
+	 *
+	 * @param value
+	 * @return Code of the value or {@link #NO_CODE} if the dictionary is full.
+	 */
+	public int registerValue(String value) {
+		return intern(value);
+	}
+
+	/**
+	 * Returns the code of the string without adding it to the dictionary.
+	 *
+	 * @param string
+	 * @return Code of the string or {@link #NO_CODE} if it isn't in the dictionary.
+	 */
+	public int getCode(String string) {
+		Integer code = codes.get(string);
+		return code == null ? NO_CODE : code;
+	}
+
+	public String getString(int code) {
+		return strings[code];
+	}
+
+	public int size() {
+		return codes.size();
+	}
+
+	private int intern(String string) {
+		Integer code = codes.get(string);
+		if (code != null) {
+			return code;
+		}
+		synchronized (this) {
+			code = codes.get(string);
+			if (code != null) {
+				return code;
+			}
+			if (size == MAX_SIZE) {
+				return NO_CODE;
+			}
+			String[] currentStrings = strings;
+			if (size == currentStrings.length) {
+				currentStrings = Arrays.copyOf(currentStrings, size * 2);
+			}
+			currentStrings[size] = string;
+			// the array is published before the code, so any thread that gets the code can read the string
+			strings = currentStrings;
+			codes.put(string, size);
+			return size++;
+		}
+	}
+}
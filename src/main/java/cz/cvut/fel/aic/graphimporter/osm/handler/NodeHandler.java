@@ -34,6 +34,10 @@ public class NodeHandler extends OsmElementHandler<OsmNode> {
 		super(consumer);
 	}
 
+	public NodeHandler(OsmElementConsumer consumer, boolean reuseElements) {
+		super(consumer, reuseElements);
+	}
+
 	@Override
 	public void startElement(String qName, Attributes attributes) {
 		switch (qName) {
@@ -52,7 +56,15 @@ public class NodeHandler extends OsmElementHandler<OsmNode> {
 		long id = parseId(attributes);
 		double lat = Double.parseDouble(attributes.getValue("lat"));
 		double lon = Double.parseDouble(attributes.getValue("lon"));
-		currentElement = new OsmNode(id, lat, lon);
+		handleNewNode(id, lat, lon);
+	}
+
+	protected void handleNewNode(long id, double lat, double lon) {
+		if (reuseElements && currentElement != null) {
+			currentElement.reset(id, lat, lon);
+		} else {
+			currentElement = new OsmNode(id, lat, lon);
+		}
 	}
 
 
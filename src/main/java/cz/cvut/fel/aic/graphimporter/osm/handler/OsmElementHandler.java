@@ -19,7 +19,9 @@
 package cz.cvut.fel.aic.graphimporter.osm.handler;
 
 import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
 import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import java.util.Set;
 import org.xml.sax.Attributes;
 
 /**
@@ -29,10 +31,40 @@ public abstract class OsmElementHandler<TElement extends OsmElement> {
 
 	protected final OsmElementConsumer consumer;
 
+	/**
+	 * If true, one element instance is reset and passed to the consumer for all the elements of the type, so the
+	 * consumer has to copy everything it wants to keep after the {@code accept} call.
+	 */
+	protected final boolean reuseElements;
+
+	/**
+	 * Keys of the tags added to the elements, null means all tags.
+	 */
+	private Set<String> tagKeys;
+
 	protected TElement currentElement;
 
 	public OsmElementHandler(OsmElementConsumer consumer) {
+		this(consumer, false);
+	}
+
+	public OsmElementHandler(OsmElementConsumer consumer, boolean reuseElements) {
 		this.consumer = consumer;
+		this.reuseElements = reuseElements;
+	}
+
+	/**
+	 * Sets the keys of the tags added to the elements, other tags are skipped.
+	 *
+	 * @param tagKeys
+	 * 		Keys of the needed tags, null if all tags are needed.
+	 */
+	public void setTagKeys(Set<String> tagKeys) {
+		this.tagKeys = tagKeys;
+	}
+
+	protected boolean isTagNeeded(String key) {
+		return ParseProfile.isTagNeeded(tagKeys, key);
 	}
 
 	public abstract void startElement(String qName, Attributes attributes);
@@ -47,7 +79,15 @@ public abstract class OsmElementHandler<TElement extends OsmElement> {
 
 	protected void handleTag(Attributes attributes) {
 		String key = attributes.getValue("k");
-		String value = attributes.getValue("v");
+		if (isTagNeeded(key)) {
+			handleTag(key, attributes.getValue("v"));
+		}
+	}
+
+	/**
+	 * Adds the tag to the current element. The callers skip the tags that aren't needed (see {@link #isTagNeeded}).
+	 */
+	protected void handleTag(String key, String value) {
 		currentElement.addTag(key, value);
 	}
 }
@@ -19,6 +19,7 @@
 package cz.cvut.fel.aic.graphimporter.osm.handler;
 
 import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
 import org.apache.log4j.Logger;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -39,8 +40,25 @@ public class OsmHandler extends DefaultHandler {
 
 	private OsmElementHandler<?> currentElementHandler;
 
+	private ParseProfile profile = ParseProfile.ALL;
+
+	/**
+	 * True inside of an element skipped according to the profile.
+	 */
+	private boolean skippingElement;
+
 	public OsmHandler(OsmElementConsumer consumer) {
-		this(new NodeHandler(consumer), new WayHandler(consumer), new RelationHandler(consumer));
+		this(consumer, false);
+	}
+
+	/**
+	 * @param consumer
+	 * @param reuseElements
+	 * 		If true, element instances are reused, so the consumer has to copy everything it wants to keep.
+	 */
+	public OsmHandler(OsmElementConsumer consumer, boolean reuseElements) {
+		this(new NodeHandler(consumer, reuseElements), new WayHandler(consumer, reuseElements),
+				new RelationHandler(consumer, reuseElements));
 	}
 
 	public OsmHandler(NodeHandler nodeHandler, WayHandler wayHandler, RelationHandler relationHandler) {
@@ -49,20 +67,43 @@ public class OsmHandler extends DefaultHandler {
 		this.relationHandler = relationHandler;
 	}
 
+	/**
+	 * Sets the profile of the parsed data. The parsing is stopped by {@link ParsingStoppedException} at the first
+	 * relation if the relations aren't needed.
+	 *
+	 * @param profile
+	 */
+	public void setParseProfile(ParseProfile profile) {
+		this.profile = profile;
+		nodeHandler.setTagKeys(profile.getNodeTagKeys());
+		wayHandler.setTagKeys(profile.getWayTagKeys());
+		relationHandler.setTagKeys(profile.getRelationTagKeys());
+	}
+
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		if (skippingElement) {
+			return;
+		}
 		switch (qName) {
 			case "node":
 				currentElementHandler = nodeHandler;
+				skippingElement = !profile.isNodesNeeded();
 				break;
 			case "way":
 				currentElementHandler = wayHandler;
+				skippingElement = !profile.isWaysNeeded();
 				break;
 			case "relation":
+				if (!profile.isRelationsNeeded()) {
+					throw new ParsingStoppedException();
+				}
 				currentElementHandler = relationHandler;
 				break;
 		}
-		if (currentElementHandler == null) {
+		if (skippingElement) {
+			currentElementHandler = null;
+		} else if (currentElementHandler == null) {
 			LOGGER.debug("Ignoring start of '" + qName + "' element.");
 		} else {
 			currentElementHandler.startElement(qName, attributes);
@@ -75,14 +116,32 @@ public class OsmHandler extends DefaultHandler {
 			case "node":
 			case "way":
 			case "relation":
-				currentElementHandler.endElement(qName);
+				if (!skippingElement) {
+					currentElementHandler.endElement(qName);
+				}
 				currentElementHandler = null;
+				skippingElement = false;
 				return;
 		}
+		if (skippingElement) {
+			return;
+		}
 		if (currentElementHandler == null) {
 			LOGGER.debug("Ignoring end of '" + qName + "' element.");
 		} else {
 			currentElementHandler.endElement(qName);
 		}
 	}
+
+	/**
+	 * Signals that the rest of the file isn't needed according to the parse profile.
+	 */
+	static final class ParsingStoppedException extends SAXException {
+
+		private static final long serialVersionUID = 1L;
+
+		ParsingStoppedException() {
+			super("Parsing stopped, the rest of the file isn't needed.");
+		}
+	}
 }
@@ -0,0 +1,74 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.handler;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.OsmReader;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reader of OSM XML files based on the SAX parser and {@link OsmHandler}.
+ */
+public class OsmXmlReader implements OsmReader {
+
+	private final boolean reuseElements;
+
+	public OsmXmlReader() {
+		this(false);
+	}
+
+	/**
+	 * @param reuseElements
+	 * 		If true, one instance of each element type is reused for all the elements, so the consumer has to copy
+	 * 		everything it wants to keep after the {@code accept} call.
+	 */
+	public OsmXmlReader(boolean reuseElements) {
+		this.reuseElements = reuseElements;
+	}
+
+	@Override
+	public void read(InputStream inputStream, OsmElementConsumer consumer) throws IOException {
+		read(inputStream, consumer, ParseProfile.ALL);
+	}
+
+	@Override
+	public void read(InputStream inputStream, OsmElementConsumer consumer, ParseProfile profile) throws IOException {
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			SAXParser parser = factory.newSAXParser();
+			XMLReader xmlreader = parser.getXMLReader();
+			OsmHandler handler = new OsmHandler(consumer, reuseElements);
+			handler.setParseProfile(profile);
+			xmlreader.setContentHandler(handler);
+			xmlreader.parse(new InputSource(inputStream));
+		} catch (OsmHandler.ParsingStoppedException e) {
+			// the rest of the file isn't needed
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("OSM XML can't be parsed.", e);
+		}
+	}
+}
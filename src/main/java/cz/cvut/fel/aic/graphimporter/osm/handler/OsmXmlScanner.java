@@ -0,0 +1,705 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.handler;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.OsmReader;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Specialised scanner of OSM XML files. Unlike {@link OsmXmlReader}, it doesn't use the SAX stack. It works directly on
+ * a byte buffer: ids and coordinates are parsed from the bytes without creating any strings and the repeating tag keys
+ * and values are taken from a small cache. The parsed data are passed to the same element handlers as in the SAX
+ * parsing.
+ * <p>
+ * Only the subset of XML used by OSM files is supported: the input has to be UTF-8 (or ASCII) encoded and it can't
+ * contain CDATA sections, a DTD or custom entities. Such input is rejected with an {@link IOException}, it can be read
+ * by {@link OsmXmlReader}. Text content of the elements is ignored. The scanner keeps the parsing state, so one
+ * instance can't be used from more threads at once.
+ */
+public class OsmXmlScanner implements OsmReader {
+
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+	private static final byte[] NODE = bytes("node");
+	private static final byte[] WAY = bytes("way");
+	private static final byte[] RELATION = bytes("relation");
+	private static final byte[] TAG = bytes("tag");
+	private static final byte[] ND = bytes("nd");
+	private static final byte[] MEMBER = bytes("member");
+
+	private static final byte[] ID = bytes("id");
+	private static final byte[] LAT = bytes("lat");
+	private static final byte[] LON = bytes("lon");
+	private static final byte[] REF = bytes("ref");
+	private static final byte[] TYPE = bytes("type");
+	private static final byte[] ROLE = bytes("role");
+	private static final byte[] KEY = bytes("k");
+	private static final byte[] VALUE = bytes("v");
+
+	private static final byte[] COMMENT_START = bytes("!--");
+	private static final byte[] CDATA_START = bytes("![CDATA[");
+	private static final byte[] DOCTYPE_START = bytes("!DOCTYPE");
+
+	private static final byte[] XML_DECLARATION = bytes("?xml");
+	private static final byte[] ENCODING = bytes("encoding");
+
+	private static final byte[] ENTITY_AMP = bytes("amp");
+	private static final byte[] ENTITY_LT = bytes("lt");
+	private static final byte[] ENTITY_GT = bytes("gt");
+	private static final byte[] ENTITY_QUOT = bytes("quot");
+	private static final byte[] ENTITY_APOS = bytes("apos");
+
+	/**
+	 * Powers of ten that are exactly representable as double.
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final StringCache stringCache = new StringCache();
+
+	private InputStream in;
+
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+	private int position;
+
+	private int limit;
+
+	private boolean endOfStream;
+
+	/**
+	 * Bounds of the currently scanned attribute and position of the next attribute in the current XML tag.
+	 */
+	private int attributeNameStart;
+	private int attributeNameEnd;
+	private int attributeValueStart;
+	private int attributeValueEnd;
+	private int attributePosition;
+	private int attributesEnd;
+
+	/**
+	 * Buffer for attribute values containing entities.
+	 */
+	private byte[] unescapeBuffer = new byte[256];
+
+	private final boolean reuseElements;
+
+	private NodeHandler nodeHandler;
+	private WayHandler wayHandler;
+	private RelationHandler relationHandler;
+
+	private OsmElementHandler<?> currentElementHandler;
+
+	private ParseProfile profile;
+
+	/**
+	 * True if the rest of the file isn't needed according to the profile.
+	 */
+	private boolean stopped;
+
+	public OsmXmlScanner() {
+		this(false);
+	}
+
+	/**
+	 * @param reuseElements
+	 * 		If true, one instance of each element type is reused for all the elements, so the consumer has to copy
+	 * 		everything it wants to keep after the {@code accept} call.
+	 */
+	public OsmXmlScanner(boolean reuseElements) {
+		this.reuseElements = reuseElements;
+	}
+
+	@Override
+	public void read(InputStream inputStream, OsmElementConsumer consumer) throws IOException {
+		read(inputStream, consumer, ParseProfile.ALL);
+	}
+
+	@Override
+	public void read(InputStream inputStream, OsmElementConsumer consumer, ParseProfile profile) throws IOException {
+		this.profile = profile;
+		stopped = false;
+		in = inputStream;
+		position = 0;
+		limit = 0;
+		endOfStream = false;
+		nodeHandler = new NodeHandler(consumer, reuseElements);
+		wayHandler = new WayHandler(consumer, reuseElements);
+		relationHandler = new RelationHandler(consumer, reuseElements);
+		nodeHandler.setTagKeys(profile.getNodeTagKeys());
+		wayHandler.setTagKeys(profile.getWayTagKeys());
+		relationHandler.setTagKeys(profile.getRelationTagKeys());
+		currentElementHandler = null;
+		try {
+			checkByteOrderMark();
+			while (!stopped && skipToTagStart()) {
+				int tagEnd = findTagEnd();
+				handleTag(position + 1, tagEnd);
+				position = tagEnd + 1;
+			}
+		} finally {
+			in = null;
+		}
+	}
+
+	private void checkByteOrderMark() throws IOException {
+		while (limit < 2) {
+			if (!fill()) {
+				return;
+			}
+		}
+		if ((buffer[0] == (byte) 0xFE && buffer[1] == (byte) 0xFF
+				|| buffer[0] == (byte) 0xFF && buffer[1] == (byte) 0xFE)) {
+			throw new IOException("UTF-16 OSM XML isn't supported by OsmXmlScanner, use OsmXmlReader.");
+		}
+	}
+
+	/**
+	 * Moves the position to the next '<' character.
+	 *
+	 * @return False if the end of the stream is reached.
+	 */
+	private boolean skipToTagStart() throws IOException {
+		while (true) {
+			for (int i = position; i < limit; i++) {
+				if (buffer[i] == '<') {
+					position = i;
+					return true;
+				}
+			}
+			position = limit;
+			if (!fill()) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Finds the end of the tag starting at the current position and ensures that the whole tag is in the buffer.
+	 *
+	 * @return Index of the closing '>' character.
+	 */
+	private int findTagEnd() throws IOException {
+		int offset = 1;
+		if (startsWith(COMMENT_START)) {
+			while (true) {
+				for (int i = position + offset; i + 2 < limit; i++) {
+					if (buffer[i] == '-' && buffer[i + 1] == '-' && buffer[i + 2] == '>') {
+						return i + 2;
+					}
+				}
+				offset = Math.max(1, limit - position - 2);
+				if (!fill()) {
+					throw new IOException("Unexpected end of OSM XML inside a comment.");
+				}
+			}
+		}
+		if (startsWith(CDATA_START)) {
+			throw new IOException("CDATA sections aren't supported by OsmXmlScanner, use OsmXmlReader.");
+		}
+		if (startsWith(DOCTYPE_START)) {
+			throw new IOException("DTDs aren't supported by OsmXmlScanner, use OsmXmlReader.");
+		}
+
+		byte quote = 0;
+		while (true) {
+			for (int i = position + offset; i < limit; i++) {
+				byte b = buffer[i];
+				if (quote != 0) {
+					if (b == quote) {
+						quote = 0;
+					}
+				} else if (b == '"' || b == '\'') {
+					quote = b;
+				} else if (b == '>') {
+					return i;
+				}
+			}
+			offset = limit - position;
+			if (!fill()) {
+				throw new IOException("Unexpected end of OSM XML inside a tag.");
+			}
+		}
+	}
+
+	private boolean startsWith(byte[] prefix) throws IOException {
+		while (limit - position <= prefix.length) {
+			if (!fill()) {
+				return false;
+			}
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer[position + 1 + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads more data into the buffer. The data before the current position are discarded and the buffer is grown if
+	 * it's full.
+	 *
+	 * @return False if no more data are available.
+	 */
+	private boolean fill() throws IOException {
+		if (endOfStream) {
+			return false;
+		}
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		int read = in.read(buffer, limit, buffer.length - limit);
+		if (read == -1) {
+			endOfStream = true;
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	/**
+	 * Handles the tag between {@code start} (after '<') and {@code end} (the '>' position).
+	 */
+	private void handleTag(int start, int end) throws IOException {
+		byte first = buffer[start];
+		if (first == '?') {
+			checkEncoding(start, end);
+			return;
+		}
+		if (first == '!') {
+			return;
+		}
+		if (first == '/') {
+			int nameEnd = findNameEnd(start + 1, end);
+			if (isElementName(start + 1, nameEnd)) {
+				finishElement();
+			}
+			return;
+		}
+
+		int nameEnd = findNameEnd(start, end);
+		boolean empty = buffer[end - 1] == '/';
+		attributePosition = nameEnd;
+		attributesEnd = empty ? end - 1 : end;
+
+		if (equals(start, nameEnd, NODE)) {
+			if (!profile.isNodesNeeded()) {
+				// subelements of the skipped element are ignored as there is no current handler
+				return;
+			}
+			handleNode();
+			currentElementHandler = nodeHandler;
+		} else if (equals(start, nameEnd, WAY)) {
+			if (!profile.isWaysNeeded()) {
+				return;
+			}
+			wayHandler.handleNewWay(parseId());
+			currentElementHandler = wayHandler;
+		} else if (equals(start, nameEnd, RELATION)) {
+			if (!profile.isRelationsNeeded()) {
+				// relations are the last section of the file
+				stopped = true;
+				return;
+			}
+			relationHandler.handleNewRelation(parseId());
+			currentElementHandler = relationHandler;
+		} else {
+			if (currentElementHandler != null) {
+				handleSubelement(start, nameEnd);
+			}
+			return;
+		}
+		if (empty) {
+			finishElement();
+		}
+	}
+
+	/**
+	 * Checks the encoding of the XML declaration, other processing instructions are ignored.
+	 */
+	private void checkEncoding(int start, int end) throws IOException {
+		int nameEnd = findNameEnd(start, end);
+		if (!equals(start, nameEnd, XML_DECLARATION)) {
+			return;
+		}
+		attributePosition = nameEnd;
+		attributesEnd = buffer[end - 1] == '?' ? end - 1 : end;
+		while (nextAttribute()) {
+			if (attributeNameEquals(ENCODING)) {
+				String encoding = attributeValueString();
+				if (!encoding.equalsIgnoreCase("UTF-8") && !encoding.equalsIgnoreCase("US-ASCII")) {
+					throw new IOException("Encoding " + encoding + " isn't supported by OsmXmlScanner, use "
+							+ "OsmXmlReader.");
+				}
+			}
+		}
+	}
+
+	private void handleNode() throws IOException {
+		long id = 0;
+		double lat = Double.NaN;
+		double lon = Double.NaN;
+		boolean hasId = false;
+		while (nextAttribute()) {
+			if (attributeNameEquals(ID)) {
+				id = parseLong();
+				hasId = true;
+			} else if (attributeNameEquals(LAT)) {
+				lat = parseDouble();
+			} else if (attributeNameEquals(LON)) {
+				lon = parseDouble();
+			}
+		}
+		if (!hasId || Double.isNaN(lat) || Double.isNaN(lon)) {
+			throw new IOException("OSM node without id or coordinates.");
+		}
+		nodeHandler.handleNewNode(id, lat, lon);
+	}
+
+	private long parseId() throws IOException {
+		while (nextAttribute()) {
+			if (attributeNameEquals(ID)) {
+				return parseLong();
+			}
+		}
+		throw new IOException("OSM element without id.");
+	}
+
+	private void handleSubelement(int nameStart, int nameEnd) throws IOException {
+		if (equals(nameStart, nameEnd, TAG)) {
+			String key = null;
+			String value = null;
+			while (nextAttribute()) {
+				if (attributeNameEquals(KEY)) {
+					key = decodeAttributeValue();
+					if (!currentElementHandler.isTagNeeded(key)) {
+						return;
+					}
+				} else if (attributeNameEquals(VALUE)) {
+					value = decodeAttributeValue();
+				}
+			}
+			currentElementHandler.handleTag(key, value);
+		} else if (equals(nameStart, nameEnd, ND) && currentElementHandler == wayHandler) {
+			while (nextAttribute()) {
+				if (attributeNameEquals(REF)) {
+					wayHandler.handleNode(parseLong());
+				}
+			}
+		} else if (equals(nameStart, nameEnd, MEMBER) && currentElementHandler == relationHandler) {
+			String type = null;
+			long ref = 0;
+			String role = "";
+			while (nextAttribute()) {
+				if (attributeNameEquals(TYPE)) {
+					type = decodeAttributeValue();
+				} else if (attributeNameEquals(REF)) {
+					ref = parseLong();
+				} else if (attributeNameEquals(ROLE)) {
+					role = decodeAttributeValue();
+				}
+			}
+			if (type == null) {
+				throw new IOException("Relation member without type.");
+			}
+			relationHandler.handleMember(type, ref, role);
+		}
+	}
+
+	private void finishElement() {
+		if (currentElementHandler != null) {
+			currentElementHandler.addCurrentElement();
+			currentElementHandler = null;
+		}
+	}
+
+	private boolean isElementName(int start, int end) {
+		return equals(start, end, NODE) || equals(start, end, WAY) || equals(start, end, RELATION);
+	}
+
+	private int findNameEnd(int start, int end) {
+		int i = start;
+		while (i < end && !isWhitespace(buffer[i]) && buffer[i] != '/') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Moves to the next attribute of the current tag and stores its bounds.
+	 *
+	 * @return False if there are no more attributes.
+	 */
+	private boolean nextAttribute() throws IOException {
+		int i = attributePosition;
+		while (i < attributesEnd && isWhitespace(buffer[i])) {
+			i++;
+		}
+		if (i >= attributesEnd) {
+			return false;
+		}
+		attributeNameStart = i;
+		while (i < attributesEnd && buffer[i] != '=' && !isWhitespace(buffer[i])) {
+			i++;
+		}
+		attributeNameEnd = i;
+		while (i < attributesEnd && buffer[i] != '"' && buffer[i] != '\'') {
+			i++;
+		}
+		if (i >= attributesEnd) {
+			throw new IOException("Malformed attribute in OSM XML.");
+		}
+		byte quote = buffer[i];
+		attributeValueStart = ++i;
+		while (i < attributesEnd && buffer[i] != quote) {
+			i++;
+		}
+		if (i >= attributesEnd) {
+			throw new IOException("Unterminated attribute value in OSM XML.");
+		}
+		attributeValueEnd = i;
+		attributePosition = i + 1;
+		return true;
+	}
+
+	private boolean attributeNameEquals(byte[] name) {
+		return equals(attributeNameStart, attributeNameEnd, name);
+	}
+
+	private long parseLong() {
+		int i = attributeValueStart;
+		boolean negative = i < attributeValueEnd && buffer[i] == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == attributeValueEnd || attributeValueEnd - i > 18) {
+			return Long.parseLong(attributeValueString());
+		}
+		long value = 0;
+		for (; i < attributeValueEnd; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.parseLong(attributeValueString());
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the decimal numbers used for coordinates. If both the digits and the power of ten are exactly
+	 * representable as double, one division gives the correctly rounded result, i.e. the same value as
+	 * {@link Double#parseDouble(String)}. Other numbers are parsed by {@link Double#parseDouble(String)}.
+	 */
+	private double parseDouble() {
+		int i = attributeValueStart;
+		boolean negative = i < attributeValueEnd && buffer[i] == '-';
+		if (negative) {
+			i++;
+		}
+		long digits = 0;
+		int digitCount = 0;
+		int fractionDigits = -1;
+		for (; i < attributeValueEnd; i++) {
+			byte b = buffer[i];
+			if (b >= '0' && b <= '9') {
+				digits = digits * 10 + (b - '0');
+				digitCount++;
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			} else if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else {
+				return Double.parseDouble(attributeValueString());
+			}
+		}
+		if (digitCount == 0 || digitCount > 15) {
+			return Double.parseDouble(attributeValueString());
+		}
+		double value = fractionDigits > 0 ? digits / POWERS_OF_TEN[fractionDigits] : digits;
+		return negative ? -value : value;
+	}
+
+	private String attributeValueString() {
+		return new String(buffer, attributeValueStart, attributeValueEnd - attributeValueStart,
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decodes the attribute value with the XML entities and whitespace normalization (as the SAX parser does).
+	 */
+	private String decodeAttributeValue() throws IOException {
+		int start = attributeValueStart;
+		int end = attributeValueEnd;
+		boolean plain = true;
+		for (int i = start; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '&' || b == '\t' || b == '\n' || b == '\r') {
+				plain = false;
+				break;
+			}
+		}
+		if (plain) {
+			return stringCache.get(buffer, start, end - start);
+		}
+
+		if (unescapeBuffer.length < end - start) {
+			unescapeBuffer = new byte[Math.max(end - start, unescapeBuffer.length * 2)];
+		}
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer[i];
+			if (b == '&') {
+				int entityEnd = i + 1;
+				while (entityEnd < end && buffer[entityEnd] != ';') {
+					entityEnd++;
+				}
+				if (entityEnd == end) {
+					throw new IOException("Unterminated entity in OSM XML.");
+				}
+				length = appendEntity(i + 1, entityEnd, length);
+				i = entityEnd;
+			} else if (b == '\r') {
+				if (i + 1 == end || buffer[i + 1] != '\n') {
+					unescapeBuffer[length++] = ' ';
+				}
+			} else if (b == '\t' || b == '\n') {
+				unescapeBuffer[length++] = ' ';
+			} else {
+				unescapeBuffer[length++] = b;
+			}
+		}
+		return stringCache.get(unescapeBuffer, 0, length);
+	}
+
+	private int appendEntity(int start, int end, int length) throws IOException {
+		int codePoint;
+		if (buffer[start] == '#') {
+			try {
+				if (buffer[start + 1] == 'x') {
+					codePoint = Integer.parseInt(new String(buffer, start + 2, end - start - 2,
+							StandardCharsets.US_ASCII), 16);
+				} else {
+					codePoint = Integer.parseInt(new String(buffer, start + 1, end - start - 1,
+							StandardCharsets.US_ASCII));
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid character reference in OSM XML.", e);
+			}
+		} else if (equals(start, end, ENTITY_AMP)) {
+			codePoint = '&';
+		} else if (equals(start, end, ENTITY_LT)) {
+			codePoint = '<';
+		} else if (equals(start, end, ENTITY_GT)) {
+			codePoint = '>';
+		} else if (equals(start, end, ENTITY_QUOT)) {
+			codePoint = '"';
+		} else if (equals(start, end, ENTITY_APOS)) {
+			codePoint = '\'';
+		} else {
+			throw new IOException("Unknown entity in OSM XML: " + new String(buffer, start, end - start,
+					StandardCharsets.UTF_8));
+		}
+		// the unescaped value is never longer than the escaped one, the buffer is long enough
+		byte[] encoded = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(encoded, 0, unescapeBuffer, length, encoded.length);
+		return length + encoded.length;
+	}
+
+	private boolean equals(int start, int end, byte[] name) {
+		if (end - start != name.length) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if (buffer[start + i] != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Direct mapped cache of short strings. Tag keys and the common values repeat very often, so most of them are
+	 * returned from the cache without decoding.
+	 */
+	private static final class StringCache {
+
+		private static final int SIZE = 1 << 12;
+
+		private static final int MAX_LENGTH = 32;
+
+		private final byte[][] keys = new byte[SIZE][];
+
+		private final String[] values = new String[SIZE];
+
+		String get(byte[] bytes, int start, int length) {
+			if (length > MAX_LENGTH) {
+				return new String(bytes, start, length, StandardCharsets.UTF_8);
+			}
+			int hash = 0;
+			for (int i = start; i < start + length; i++) {
+				hash = 31 * hash + bytes[i];
+			}
+			int slot = (hash ^ hash >>> 16) & (SIZE - 1);
+			byte[] cached = keys[slot];
+			if (cached != null && cached.length == length) {
+				boolean equal = true;
+				for (int i = 0; i < length; i++) {
+					if (cached[i] != bytes[start + i]) {
+						equal = false;
+						break;
+					}
+				}
+				if (equal) {
+					return values[slot];
+				}
+			}
+			String value = new String(bytes, start, length, StandardCharsets.UTF_8);
+			keys[slot] = Arrays.copyOfRange(bytes, start, start + length);
+			values[slot] = value;
+			return value;
+		}
+	}
+}
@@ -34,6 +34,10 @@ public class RelationHandler extends OsmElementHandler<OsmRelation> {
 		super(consumer);
 	}
 
+	public RelationHandler(OsmElementConsumer consumer, boolean reuseElements) {
+		super(consumer, reuseElements);
+	}
+
 	@Override
 	public void startElement(String qName, Attributes attributes) {
 		switch (qName) {
@@ -52,26 +56,36 @@ public class RelationHandler extends OsmElementHandler<OsmRelation> {
 	}
 
 	private void handleMember(Attributes attributes) {
-		long memberId = Long.parseLong(attributes.getValue("ref"));
+		handleMember(attributes.getValue("type"), Long.parseLong(attributes.getValue("ref")),
+				attributes.getValue("role"));
+	}
 
-		switch (attributes.getValue("type")) {
+	protected void handleMember(String type, long memberId, String role) {
+		switch (type) {
 			case "node":
-				currentElement.addNode(memberId);
+				currentElement.addMember(OsmRelation.MemberType.NODE, memberId, role);
 				break;
 			case "way":
-				currentElement.addWay(memberId);
+				currentElement.addMember(OsmRelation.MemberType.WAY, memberId, role);
 				break;
 			case "relation":
-				currentElement.addRelation(memberId);
+				currentElement.addMember(OsmRelation.MemberType.RELATION, memberId, role);
 				break;
 			default:
-				throw new IllegalArgumentException("Illegal 'type' value for relation member: " + attributes.getValue
-						("type"));
+				throw new IllegalArgumentException("Illegal 'type' value for relation member: " + type);
 		}
 	}
 
 	private void handleNewRelation(Attributes attributes) {
-		currentElement = new OsmRelation(parseId(attributes));
+		handleNewRelation(parseId(attributes));
+	}
+
+	protected void handleNewRelation(long id) {
+		if (reuseElements && currentElement != null) {
+			currentElement.reset(id);
+		} else {
+			currentElement = new OsmRelation(id);
+		}
 	}
 
 	@Override
@@ -34,6 +34,10 @@ public class WayHandler extends OsmElementHandler<OsmWay> {
 		super(consumer);
 	}
 
+	public WayHandler(OsmElementConsumer consumer, boolean reuseElements) {
+		super(consumer, reuseElements);
+	}
+
 	@Override
 	public void startElement(String qName, Attributes attributes) {
 		switch (qName) {
@@ -52,11 +56,23 @@ public class WayHandler extends OsmElementHandler<OsmWay> {
 	}
 
 	private void handleNode(Attributes attributes) {
-		currentElement.addNode(Long.parseLong(attributes.getValue("ref")));
+		handleNode(Long.parseLong(attributes.getValue("ref")));
+	}
+
+	protected void handleNode(long nodeId) {
+		currentElement.addNode(nodeId);
 	}
 
 	private void handleNewWay(Attributes attributes) {
-		currentElement = new OsmWay(parseId(attributes));
+		handleNewWay(parseId(attributes));
+	}
+
+	protected void handleNewWay(long id) {
+		if (reuseElements && currentElement != null) {
+			currentElement.reset(id);
+		} else {
+			currentElement = new OsmWay(id);
+		}
 	}
 
 	@Override
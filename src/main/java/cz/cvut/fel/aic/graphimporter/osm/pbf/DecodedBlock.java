@@ -0,0 +1,81 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.pbf;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmNode;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmRelation;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Elements of one PBF block decoded on a worker thread. They are kept in the file order until they can be passed to
+ * the real consumer.
+ */
+final class DecodedBlock implements OsmElementConsumer {
+
+	private final List<OsmElement> elements = new ArrayList<>();
+
+	/**
+	 * True if the rest of the file after this block isn't needed.
+	 */
+	private boolean last;
+
+	@Override
+	public void accept(OsmNode node) {
+		elements.add(node);
+	}
+
+	@Override
+	public void accept(OsmWay way) {
+		elements.add(way);
+	}
+
+	@Override
+	public void accept(OsmRelation relation) {
+		elements.add(relation);
+	}
+
+	void setLast(boolean last) {
+		this.last = last;
+	}
+
+	boolean isLast() {
+		return last;
+	}
+
+	/**
+	 * Passes all elements to the {@code consumer} in the order in which they were decoded.
+	 *
+	 * @param consumer
+	 */
+	void replay(OsmElementConsumer consumer) {
+		for (OsmElement element : elements) {
+			if (element instanceof OsmNode) {
+				consumer.accept((OsmNode) element);
+			} else if (element instanceof OsmWay) {
+				consumer.accept((OsmWay) element);
+			} else {
+				consumer.accept((OsmRelation) element);
+			}
+		}
+	}
+}
@@ -0,0 +1,518 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.pbf;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmNode;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmRelation;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import cz.cvut.fel.aic.graphimporter.util.IntArrayList;
+import cz.cvut.fel.aic.graphimporter.util.LongArrayList;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses and decodes blobs of the OSM PBF format (see
+ * <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>) and passes the decoded elements to an
+ * {@link OsmElementConsumer}. The decoder keeps buffers that are reused between the blocks, so one instance can't be
+ * used from more threads at once.
+ */
+final class PbfBlockDecoder {
+
+	private static final Set<String> SUPPORTED_FEATURES = new HashSet<>(Arrays.asList("OsmSchema-V0.6",
+			"DenseNodes"));
+
+	private static final int NODE_MEMBER = 0;
+	private static final int WAY_MEMBER = 1;
+	private static final int RELATION_MEMBER = 2;
+
+	private final ParseProfile profile;
+
+	/**
+	 * True if the decoded block contains relations and they aren't needed.
+	 */
+	private boolean unneededRelationsReached;
+
+	private String[] strings = new String[256];
+	private int stringCount;
+
+	private int granularity;
+	private long latOffset;
+	private long lonOffset;
+
+	private final IntArrayList groupOffsets = new IntArrayList();
+	private final IntArrayList groupLengths = new IntArrayList();
+
+	private final LongArrayList ids = new LongArrayList();
+	private final LongArrayList lats = new LongArrayList();
+	private final LongArrayList lons = new LongArrayList();
+	private final IntArrayList keys = new IntArrayList();
+	private final IntArrayList values = new IntArrayList();
+	private final IntArrayList types = new IntArrayList();
+	private final IntArrayList roles = new IntArrayList();
+
+	PbfBlockDecoder() {
+		this(ParseProfile.ALL);
+	}
+
+	/**
+	 * @param profile
+	 * 		Profile of the decoded data, elements and tags that aren't needed are skipped.
+	 */
+	PbfBlockDecoder(ParseProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Decodes the blob and passes its elements to the consumer.
+	 *
+	 * @return False if the blob contains relations that aren't needed according to the profile, so the rest of the file
+	 * can be skipped.
+	 */
+	boolean decode(PbfBlob blob, OsmElementConsumer consumer) throws IOException {
+		unneededRelationsReached = false;
+		switch (blob.type) {
+			case PbfBlob.TYPE_HEADER:
+				checkHeaderBlock(decompress(blob.data));
+				break;
+			case PbfBlob.TYPE_DATA:
+				decodePrimitiveBlock(decompress(blob.data), consumer);
+				break;
+			default:
+				// unknown blob types has to be skipped according to the specification
+		}
+		return !unneededRelationsReached;
+	}
+
+	private static byte[] decompress(byte[] blob) throws IOException {
+		ProtobufReader in = new ProtobufReader(blob);
+		byte[] raw = null;
+		int rawSize = -1;
+		int zlibOffset = -1;
+		int zlibLength = 0;
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			switch (key >>> 3) {
+				case 1:
+					raw = in.readBytes();
+					break;
+				case 2:
+					rawSize = in.readInt32();
+					break;
+				case 3:
+					zlibLength = in.readLength();
+					zlibOffset = in.getPosition();
+					in.skip(zlibLength);
+					break;
+				case 4:
+				case 5:
+				case 6:
+				case 7:
+					throw new IOException("Unsupported compression of PBF blob, only raw and zlib blobs are supported.");
+				default:
+					in.skipField(key);
+			}
+		}
+		if (raw != null) {
+			return raw;
+		}
+		if (zlibOffset < 0 || rawSize < 0) {
+			throw new IOException("PBF blob doesn't contain any data.");
+		}
+
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(blob, zlibOffset, zlibLength);
+			byte[] data = new byte[rawSize];
+			int length = 0;
+			while (length < rawSize && !inflater.finished()) {
+				int inflated = inflater.inflate(data, length, rawSize - length);
+				if (inflated == 0 && inflater.needsInput()) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != rawSize) {
+				throw new IOException("Size of the decompressed PBF blob doesn't match its declared size.");
+			}
+			return data;
+		} catch (DataFormatException e) {
+			throw new IOException("PBF blob can't be decompressed.", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static void checkHeaderBlock(byte[] data) throws IOException {
+		ProtobufReader in = new ProtobufReader(data);
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			if (key >>> 3 == 4) {
+				String feature = in.readString();
+				if (!SUPPORTED_FEATURES.contains(feature)) {
+					throw new IOException("PBF file requires unsupported feature: " + feature);
+				}
+			} else {
+				in.skipField(key);
+			}
+		}
+	}
+
+	private void decodePrimitiveBlock(byte[] data, OsmElementConsumer consumer) throws IOException {
+		ProtobufReader in = new ProtobufReader(data);
+		stringCount = 0;
+		granularity = 100;
+		latOffset = 0;
+		lonOffset = 0;
+		groupOffsets.clear();
+		groupLengths.clear();
+
+		// granularity and offsets are serialized after the groups, so the groups are decoded in the second pass
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			switch (key >>> 3) {
+				case 1:
+					int oldLimit = in.pushLimit();
+					readStringTable(in);
+					in.popLimit(oldLimit);
+					break;
+				case 2:
+					int length = in.readLength();
+					groupOffsets.add(in.getPosition());
+					groupLengths.add(length);
+					in.skip(length);
+					break;
+				case 17:
+					granularity = in.readInt32();
+					break;
+				case 19:
+					latOffset = in.readVarint();
+					break;
+				case 20:
+					lonOffset = in.readVarint();
+					break;
+				default:
+					in.skipField(key);
+			}
+		}
+
+		for (int i = 0; i < groupOffsets.size(); i++) {
+			decodePrimitiveGroup(new ProtobufReader(data, groupOffsets.get(i), groupLengths.get(i)), consumer);
+		}
+	}
+
+	private void readStringTable(ProtobufReader in) throws IOException {
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			if (key >>> 3 == 1) {
+				if (stringCount == strings.length) {
+					strings = Arrays.copyOf(strings, stringCount * 2);
+				}
+				strings[stringCount++] = in.readString();
+			} else {
+				in.skipField(key);
+			}
+		}
+	}
+
+	private void decodePrimitiveGroup(ProtobufReader in, OsmElementConsumer consumer) throws IOException {
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			int oldLimit;
+			switch (key >>> 3) {
+				case 1:
+					if (!profile.isNodesNeeded()) {
+						in.skipField(key);
+						break;
+					}
+					oldLimit = in.pushLimit();
+					decodeNode(in, consumer);
+					in.popLimit(oldLimit);
+					break;
+				case 2:
+					if (!profile.isNodesNeeded()) {
+						in.skipField(key);
+						break;
+					}
+					oldLimit = in.pushLimit();
+					decodeDenseNodes(in, consumer);
+					in.popLimit(oldLimit);
+					break;
+				case 3:
+					if (!profile.isWaysNeeded()) {
+						in.skipField(key);
+						break;
+					}
+					oldLimit = in.pushLimit();
+					decodeWay(in, consumer);
+					in.popLimit(oldLimit);
+					break;
+				case 4:
+					if (!profile.isRelationsNeeded()) {
+						unneededRelationsReached = true;
+						in.skipField(key);
+						break;
+					}
+					oldLimit = in.pushLimit();
+					decodeRelation(in, consumer);
+					in.popLimit(oldLimit);
+					break;
+				default:
+					in.skipField(key);
+			}
+		}
+	}
+
+	private void decodeNode(ProtobufReader in, OsmElementConsumer consumer) throws IOException {
+		long id = 0;
+		long lat = 0;
+		long lon = 0;
+		keys.clear();
+		values.clear();
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			switch (key >>> 3) {
+				case 1:
+					id = in.readSInt64();
+					break;
+				case 2:
+					readInts(in, key, keys);
+					break;
+				case 3:
+					readInts(in, key, values);
+					break;
+				case 8:
+					lat = in.readSInt64();
+					break;
+				case 9:
+					lon = in.readSInt64();
+					break;
+				default:
+					in.skipField(key);
+			}
+		}
+		OsmNode node = new OsmNode(id, toDegrees(latOffset, lat), toDegrees(lonOffset, lon));
+		addTags(node, keys, values, profile.getNodeTagKeys());
+		consumer.accept(node);
+	}
+
+	private void decodeDenseNodes(ProtobufReader in, OsmElementConsumer consumer) throws IOException {
+		ids.clear();
+		lats.clear();
+		lons.clear();
+		keys.clear();
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			switch (key >>> 3) {
+				case 1:
+					readDeltaCodedLongs(in, key, ids);
+					break;
+				case 8:
+					readDeltaCodedLongs(in, key, lats);
+					break;
+				case 9:
+					readDeltaCodedLongs(in, key, lons);
+					break;
+				case 10:
+					readInts(in, key, keys);
+					break;
+				default:
+					in.skipField(key);
+			}
+		}
+		if (ids.size() != lats.size() || ids.size() != lons.size()) {
+			throw new IOException("Dense nodes in PBF block have inconsistent number of ids and coordinates.");
+		}
+
+		Set<String> nodeTagKeys = profile.getNodeTagKeys();
+		int tagIndex = 0;
+		for (int i = 0; i < ids.size(); i++) {
+			OsmNode node = new OsmNode(ids.get(i), toDegrees(latOffset, lats.get(i)), toDegrees(lonOffset,
+					lons.get(i)));
+			// keys and values of all nodes are in one array, tags of each node are terminated by 0
+			if (tagIndex < keys.size()) {
+				while (keys.get(tagIndex) != 0) {
+					String key = getString(keys.get(tagIndex));
+					if (ParseProfile.isTagNeeded(nodeTagKeys, key)) {
+						node.addTag(key, getString(keys.get(tagIndex + 1)));
+					}
+					tagIndex += 2;
+				}
+				tagIndex++;
+			}
+			consumer.accept(node);
+		}
+	}
+
+	private void decodeWay(ProtobufReader in, OsmElementConsumer consumer) throws IOException {
+		long id = 0;
+		keys.clear();
+		values.clear();
+		ids.clear();
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			switch (key >>> 3) {
+				case 1:
+					id = in.readVarint();
+					break;
+				case 2:
+					readInts(in, key, keys);
+					break;
+				case 3:
+					readInts(in, key, values);
+					break;
+				case 8:
+					readDeltaCodedLongs(in, key, ids);
+					break;
+				default:
+					in.skipField(key);
+			}
+		}
+		OsmWay way = new OsmWay(id);
+		for (int i = 0; i < ids.size(); i++) {
+			way.addNode(ids.get(i));
+		}
+		addTags(way, keys, values, profile.getWayTagKeys());
+		consumer.accept(way);
+	}
+
+	private void decodeRelation(ProtobufReader in, OsmElementConsumer consumer) throws IOException {
+		long id = 0;
+		keys.clear();
+		values.clear();
+		ids.clear();
+		types.clear();
+		roles.clear();
+		while (in.hasRemaining()) {
+			int key = in.readKey();
+			switch (key >>> 3) {
+				case 1:
+					id = in.readVarint();
+					break;
+				case 2:
+					readInts(in, key, keys);
+					break;
+				case 3:
+					readInts(in, key, values);
+					break;
+				case 8:
+					readInts(in, key, roles);
+					break;
+				case 9:
+					readDeltaCodedLongs(in, key, ids);
+					break;
+				case 10:
+					readInts(in, key, types);
+					break;
+				default:
+					in.skipField(key);
+			}
+		}
+		if (ids.size() != types.size() || ids.size() != roles.size()) {
+			throw new IOException("Relation " + id + " in PBF block has inconsistent number of member ids, types and "
+					+ "roles.");
+		}
+		OsmRelation relation = new OsmRelation(id);
+		for (int i = 0; i < ids.size(); i++) {
+			String role = getString(roles.get(i));
+			switch (types.get(i)) {
+				case NODE_MEMBER:
+					relation.addMember(OsmRelation.MemberType.NODE, ids.get(i), role);
+					break;
+				case WAY_MEMBER:
+					relation.addMember(OsmRelation.MemberType.WAY, ids.get(i), role);
+					break;
+				case RELATION_MEMBER:
+					relation.addMember(OsmRelation.MemberType.RELATION, ids.get(i), role);
+					break;
+				default:
+					throw new IOException("Illegal member type of relation " + id + ": " + types.get(i));
+			}
+		}
+		addTags(relation, keys, values, profile.getRelationTagKeys());
+		consumer.accept(relation);
+	}
+
+	private void addTags(OsmElement element, IntArrayList keys, IntArrayList values, Set<String> tagKeys)
+			throws IOException {
+		if (keys.size() != values.size()) {
+			throw new IOException("Element " + element.getId() + " in PBF block has inconsistent number of tag keys and "
+					+ "values.");
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			String key = getString(keys.get(i));
+			if (ParseProfile.isTagNeeded(tagKeys, key)) {
+				element.addTag(key, getString(values.get(i)));
+			}
+		}
+	}
+
+	private String getString(int index) throws IOException {
+		if (index < 0 || index >= stringCount) {
+			throw new IOException("String table index out of range: " + index);
+		}
+		return strings[index];
+	}
+
+	/**
+	 * Converts the coordinate stored in the PBF block to degrees. The division (not the multiplication by 1E-9) gives
+	 * the same double as parsing the decimal representation used in the OSM XML.
+	 */
+	private double toDegrees(long offset, long value) {
+		return (offset + granularity * value) / 1E9;
+	}
+
+	/**
+	 * Reads repeated int field that can be both packed and unpacked.
+	 */
+	private static void readInts(ProtobufReader in, int key, IntArrayList target) throws IOException {
+		if ((key & 7) == ProtobufReader.WIRE_TYPE_LENGTH_DELIMITED) {
+			int oldLimit = in.pushLimit();
+			while (in.hasRemaining()) {
+				target.add(in.readInt32());
+			}
+			in.popLimit(oldLimit);
+		} else {
+			target.add(in.readInt32());
+		}
+	}
+
+	/**
+	 * Reads repeated sint64 field where each value is stored as a difference from the previous one.
+	 */
+	private static void readDeltaCodedLongs(ProtobufReader in, int key, LongArrayList target) throws IOException {
+		long value = target.isEmpty() ? 0 : target.get(target.size() - 1);
+		if ((key & 7) == ProtobufReader.WIRE_TYPE_LENGTH_DELIMITED) {
+			int oldLimit = in.pushLimit();
+			while (in.hasRemaining()) {
+				value += in.readSInt64();
+				target.add(value);
+			}
+			in.popLimit(oldLimit);
+		} else {
+			target.add(value + in.readSInt64());
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.pbf;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.OsmReader;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reader of the OSM PBF format. Blobs are decompressed with {@code java.util.zip} and decoded directly into the OSM
+ * elements, no intermediate representation (e.g. XML) is used.
+ * <p>
+ * Blobs are independent of each other, so they are decompressed and decoded on a pool of worker threads. The stream
+ * is read and the decoded elements are passed to the consumer by the calling thread, always in the file order.
+ * Therefore, the consumer sees exactly the same sequence of elements as with the single threaded decoding.
+ */
+public class PbfReader implements OsmReader {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Maximal sizes of the blob header and the blob given by the format specification.
+	 */
+	private static final int MAX_BLOB_HEADER_SIZE = 64 * 1024;
+	private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+	/**
+	 * Number of blocks that can be decoded ahead per worker thread.
+	 */
+	private static final int BLOCKS_AHEAD_PER_THREAD = 2;
+
+	private final int threadCount;
+
+	/**
+	 * Creates reader that uses all available processors.
+	 */
+	public PbfReader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threadCount
+	 * 		Number of threads decoding the blocks. If it's 1, everything is done by the calling thread.
+	 */
+	public PbfReader(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count must be positive.");
+		}
+		this.threadCount = threadCount;
+	}
+
+	@Override
+	public void read(InputStream inputStream, OsmElementConsumer consumer) throws IOException {
+		read(inputStream, consumer, ParseProfile.ALL);
+	}
+
+	@Override
+	public void read(InputStream inputStream, OsmElementConsumer consumer, ParseProfile profile) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+		if (threadCount == 1) {
+			readSequentially(in, consumer, profile);
+		} else {
+			readInParallel(in, consumer, profile);
+		}
+	}
+
+	private void readSequentially(DataInputStream in, OsmElementConsumer consumer, ParseProfile profile)
+			throws IOException {
+		PbfBlockDecoder decoder = new PbfBlockDecoder(profile);
+		PbfBlob blob;
+		while ((blob = readBlob(in)) != null) {
+			if (!decoder.decode(blob, consumer)) {
+				return;
+			}
+		}
+	}
+
+	private void readInParallel(DataInputStream in, OsmElementConsumer consumer, ParseProfile profile)
+			throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+			Thread thread = new Thread(runnable, "pbf-decoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ThreadLocal<PbfBlockDecoder> decoders = ThreadLocal.withInitial(() -> new PbfBlockDecoder(profile));
+		Queue<Future<DecodedBlock>> pendingBlocks = new ArrayDeque<>();
+		try {
+			PbfBlob blob;
+			while ((blob = readBlob(in)) != null) {
+				PbfBlob submittedBlob = blob;
+				pendingBlocks.add(executor.submit(() -> {
+					DecodedBlock block = new DecodedBlock();
+					block.setLast(!decoders.get().decode(submittedBlob, block));
+					return block;
+				}));
+				if (pendingBlocks.size() >= threadCount * BLOCKS_AHEAD_PER_THREAD
+						&& !replay(pendingBlocks.poll(), consumer)) {
+					return;
+				}
+			}
+			while (!pendingBlocks.isEmpty()) {
+				if (!replay(pendingBlocks.poll(), consumer)) {
+					return;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Passes the elements of the decoded block to the consumer.
+	 *
+	 * @return False if the rest of the file isn't needed.
+	 */
+	private static boolean replay(Future<DecodedBlock> future, OsmElementConsumer consumer) throws IOException {
+		DecodedBlock block = getDecodedBlock(future);
+		block.replay(consumer);
+		return !block.isLast();
+	}
+
+	private static DecodedBlock getDecodedBlock(Future<DecodedBlock> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Reading of the PBF file was interrupted.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException("Decoding of a PBF block failed.", cause);
+		}
+	}
+
+	/**
+	 * Reads next blob from the stream.
+	 *
+	 * @return Next blob or null if the end of the stream is reached.
+	 */
+	static PbfBlob readBlob(DataInputStream in) throws IOException {
+		int firstByte = in.read();
+		if (firstByte == -1) {
+			return null;
+		}
+		int headerSize;
+		try {
+			headerSize = firstByte << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8
+					| in.readUnsignedByte();
+		} catch (EOFException e) {
+			throw new IOException("Truncated PBF file.", e);
+		}
+		if (headerSize < 0 || headerSize > MAX_BLOB_HEADER_SIZE) {
+			throw new IOException("Invalid size of PBF blob header: " + headerSize);
+		}
+
+		byte[] header = new byte[headerSize];
+		in.readFully(header);
+
+		String type = null;
+		int dataSize = -1;
+		ProtobufReader headerReader = new ProtobufReader(header);
+		while (headerReader.hasRemaining()) {
+			int key = headerReader.readKey();
+			switch (key >>> 3) {
+				case 1:
+					type = headerReader.readString();
+					break;
+				case 3:
+					dataSize = headerReader.readInt32();
+					break;
+				default:
+					headerReader.skipField(key);
+			}
+		}
+		if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+			throw new IOException("Invalid PBF blob header (type: " + type + ", size: " + dataSize + ").");
+		}
+
+		byte[] data = new byte[dataSize];
+		in.readFully(data);
+		return new PbfBlob(type, data);
+	}
+}
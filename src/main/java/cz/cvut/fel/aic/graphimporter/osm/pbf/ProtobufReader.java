@@ -0,0 +1,155 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.pbf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader of the protocol buffers wire format. It reads only the wire types used by the OSM PBF format and
+ * works directly on a byte array, so no objects are created except for strings and byte arrays.
+ */
+final class ProtobufReader {
+
+	static final int WIRE_TYPE_VARINT = 0;
+	static final int WIRE_TYPE_FIXED64 = 1;
+	static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+	static final int WIRE_TYPE_FIXED32 = 5;
+
+	private final byte[] buffer;
+
+	private int position;
+
+	private int limit;
+
+	ProtobufReader(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	ProtobufReader(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	boolean hasRemaining() {
+		return position < limit;
+	}
+
+	/**
+	 * Reads the key of the next field. The field number is {@code key >>> 3} and the wire type is {@code key & 7}.
+	 */
+	int readKey() throws IOException {
+		return (int) readVarint();
+	}
+
+	long readVarint() throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position >= limit) {
+				throw new IOException("Truncated varint in PBF data.");
+			}
+			byte b = buffer[position++];
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint in PBF data.");
+	}
+
+	int readInt32() throws IOException {
+		return (int) readVarint();
+	}
+
+	long readSInt64() throws IOException {
+		long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	int readLength() throws IOException {
+		long length = readVarint();
+		if (length < 0 || length > limit - position) {
+			throw new IOException("Length of PBF field exceeds the enclosing message.");
+		}
+		return (int) length;
+	}
+
+	byte[] readBytes() throws IOException {
+		int length = readLength();
+		byte[] bytes = new byte[length];
+		System.arraycopy(buffer, position, bytes, 0, length);
+		position += length;
+		return bytes;
+	}
+
+	String readString() throws IOException {
+		int length = readLength();
+		String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return string;
+	}
+
+	/**
+	 * Restricts reading to the following length delimited field, i.e. to an embedded message or a packed array.
+	 *
+	 * @return Previous limit that has to be passed to {@link #popLimit(int)} after the field is read.
+	 */
+	int pushLimit() throws IOException {
+		int length = readLength();
+		int oldLimit = limit;
+		limit = position + length;
+		return oldLimit;
+	}
+
+	int getPosition() {
+		return position;
+	}
+
+	void popLimit(int oldLimit) {
+		position = limit;
+		limit = oldLimit;
+	}
+
+	void skipField(int key) throws IOException {
+		switch (key & 7) {
+			case WIRE_TYPE_VARINT:
+				readVarint();
+				break;
+			case WIRE_TYPE_FIXED64:
+				skip(8);
+				break;
+			case WIRE_TYPE_LENGTH_DELIMITED:
+				skip(readLength());
+				break;
+			case WIRE_TYPE_FIXED32:
+				skip(4);
+				break;
+			default:
+				throw new IOException("Unsupported wire type in PBF data: " + (key & 7));
+		}
+	}
+
+	void skip(int length) throws IOException {
+		if (length > limit - position) {
+			throw new IOException("Truncated PBF data.");
+		}
+		position += length;
+	}
+}
@@ -0,0 +1,179 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.store;
+
+import java.util.Arrays;
+
+/**
+ * Node location store based on an open addressing hash table with linear probing. Keys and values are kept in
+ * primitive arrays, so a node takes about 30 bytes instead of hundreds of bytes of a map of {@code OsmNode} objects.
+ */
+public class InMemoryNodeLocationStore implements NodeLocationStore {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private static final double MAX_LOAD_FACTOR = 0.7;
+
+	private static final int MAX_TABLE_SIZE = 1 << 30;
+
+	private long[] ids;
+
+	private int[] latsE7;
+
+	private int[] lonsE7;
+
+	private int[] elevations;
+
+	private int mask;
+
+	private int size;
+
+	private int resizeThreshold;
+
+	public InMemoryNodeLocationStore() {
+		this(1 << 16);
+	}
+
+	/**
+	 * @param expectedSize expected number of stored nodes
+	 */
+	public InMemoryNodeLocationStore(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	@Override
+	public void put(long id, double lat, double lon, int elevation) {
+		if (id == EMPTY) {
+			throw new IllegalArgumentException("Node id " + id + " can't be stored.");
+		}
+		int slot = findSlot(id);
+		if (ids[slot] == EMPTY) {
+			if (size >= resizeThreshold) {
+				resize();
+				slot = findSlot(id);
+			}
+			ids[slot] = id;
+			size++;
+		}
+		latsE7[slot] = NodeLocationStore.toE7(lat);
+		lonsE7[slot] = NodeLocationStore.toE7(lon);
+		elevations[slot] = elevation;
+	}
+
+	@Override
+	public boolean contains(long id) {
+		return getSlot(id) >= 0;
+	}
+
+	@Override
+	public double getLat(long id) {
+		int slot = getSlot(id);
+		return slot >= 0 ? NodeLocationStore.fromE7(latsE7[slot]) : Double.NaN;
+	}
+
+	@Override
+	public double getLon(long id) {
+		int slot = getSlot(id);
+		return slot >= 0 ? NodeLocationStore.fromE7(lonsE7[slot]) : Double.NaN;
+	}
+
+	@Override
+	public int getElevation(long id) {
+		int slot = getSlot(id);
+		return slot >= 0 ? elevations[slot] : 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		allocate(tableSizeFor(0));
+	}
+
+	/**
+	 * @return Slot containing the id or -1 if the id isn't stored.
+	 */
+	private int getSlot(long id) {
+		if (id == EMPTY) {
+			// the id marks the empty slots
+			return -1;
+		}
+		int slot = findSlot(id);
+		return ids[slot] == id ? slot : -1;
+	}
+
+	/**
+	 * @return Slot containing the id or the empty slot where the id should be inserted.
+	 */
+	private int findSlot(long id) {
+		int slot = hash(id) & mask;
+		while (ids[slot] != id && ids[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		if (ids.length == MAX_TABLE_SIZE) {
+			throw new IllegalStateException("Node location store can't hold more than " + size + " nodes.");
+		}
+		long[] oldIds = ids;
+		int[] oldLats = latsE7;
+		int[] oldLons = lonsE7;
+		int[] oldElevations = elevations;
+		allocate(oldIds.length * 2);
+		for (int i = 0; i < oldIds.length; i++) {
+			if (oldIds[i] != EMPTY) {
+				int slot = findSlot(oldIds[i]);
+				ids[slot] = oldIds[i];
+				latsE7[slot] = oldLats[i];
+				lonsE7[slot] = oldLons[i];
+				elevations[slot] = oldElevations[i];
+				size++;
+			}
+		}
+	}
+
+	private void allocate(int tableSize) {
+		ids = new long[tableSize];
+		Arrays.fill(ids, EMPTY);
+		latsE7 = new int[tableSize];
+		lonsE7 = new int[tableSize];
+		elevations = new int[tableSize];
+		mask = tableSize - 1;
+		resizeThreshold = (int) (tableSize * MAX_LOAD_FACTOR);
+		size = 0;
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		long required = (long) (Math.max(expectedSize, 16) / MAX_LOAD_FACTOR) + 1;
+		if (required > MAX_TABLE_SIZE) {
+			return MAX_TABLE_SIZE;
+		}
+		return Integer.highestOneBit((int) required - 1) << 1;
+	}
+
+	private static int hash(long id) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
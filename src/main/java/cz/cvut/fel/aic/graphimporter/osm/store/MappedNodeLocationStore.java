@@ -0,0 +1,190 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.log4j.Logger;
+
+/**
+ * Node location store backed by a memory mapped file. The file is a dense array indexed by the OSM node id, each
+ * node takes 12 bytes (latitude, longitude and elevation). The file is sparse, only the pages with some stored
+ * nodes take disk space, and the OS page cache decides which parts are kept in memory, so the store can be much
+ * larger than the Java heap.
+ * <p>
+ * The file is mapped in segments of about 800 MB, the segments are mapped when the first node is stored in them.
+ * The file is created in the given directory and deleted by {@link #clear()} (or at the JVM exit). Only
+ * non-negative node ids are supported.
+ */
+public class MappedNodeLocationStore implements NodeLocationStore {
+
+	private static final Logger LOGGER = Logger.getLogger(MappedNodeLocationStore.class);
+
+	private static final int NODE_BYTES = 12;
+
+	private static final int NODES_PER_SEGMENT_SHIFT = 26;
+
+	private static final long NODES_PER_SEGMENT = 1L << NODES_PER_SEGMENT_SHIFT;
+
+	private static final long SEGMENT_BYTES = NODES_PER_SEGMENT * NODE_BYTES;
+
+	/**
+	 * Latitude is stored with this offset, so the zero value (the value of the not written parts of the file) means
+	 * a missing node.
+	 */
+	private static final int LAT_OFFSET = 1_000_000_000;
+
+	private final File directory;
+
+	private File file;
+
+	private RandomAccessFile randomAccessFile;
+
+	private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+	private int size;
+
+	/**
+	 * Creates the store with the file in the default temporary directory.
+	 */
+	public MappedNodeLocationStore() {
+		this(new File(System.getProperty("java.io.tmpdir")));
+	}
+
+	/**
+	 * @param directory directory where the file with the node locations is created
+	 */
+	public MappedNodeLocationStore(File directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public void put(long id, double lat, double lon, int elevation) {
+		if (id < 0) {
+			throw new IllegalArgumentException("Negative node id " + id + " can't be stored in the mapped store.");
+		}
+		MappedByteBuffer segment = getOrMapSegment((int) (id >>> NODES_PER_SEGMENT_SHIFT));
+		int position = getPositionInSegment(id);
+		if (segment.getInt(position) == 0) {
+			size++;
+		}
+		segment.putInt(position, NodeLocationStore.toE7(lat) + LAT_OFFSET);
+		segment.putInt(position + 4, NodeLocationStore.toE7(lon));
+		segment.putInt(position + 8, elevation);
+	}
+
+	@Override
+	public boolean contains(long id) {
+		MappedByteBuffer segment = getSegment(id);
+		return segment != null && segment.getInt(getPositionInSegment(id)) != 0;
+	}
+
+	@Override
+	public double getLat(long id) {
+		MappedByteBuffer segment = getSegment(id);
+		if (segment == null) {
+			return Double.NaN;
+		}
+		int latE7 = segment.getInt(getPositionInSegment(id));
+		return latE7 == 0 ? Double.NaN : NodeLocationStore.fromE7(latE7 - LAT_OFFSET);
+	}
+
+	@Override
+	public double getLon(long id) {
+		MappedByteBuffer segment = getSegment(id);
+		if (segment == null) {
+			return Double.NaN;
+		}
+		int position = getPositionInSegment(id);
+		return segment.getInt(position) == 0 ? Double.NaN : NodeLocationStore.fromE7(segment.getInt(position + 4));
+	}
+
+	@Override
+	public int getElevation(long id) {
+		MappedByteBuffer segment = getSegment(id);
+		return segment == null ? 0 : segment.getInt(getPositionInSegment(id) + 8);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		segments = new MappedByteBuffer[0];
+		size = 0;
+		if (randomAccessFile != null) {
+			try {
+				randomAccessFile.close();
+			} catch (IOException e) {
+				LOGGER.warn("Node location file " + file + " can't be closed.", e);
+			}
+			if (!file.delete()) {
+				LOGGER.warn("Node location file " + file + " can't be deleted.");
+			}
+			randomAccessFile = null;
+			file = null;
+		}
+	}
+
+	private MappedByteBuffer getSegment(long id) {
+		if (id < 0) {
+			return null;
+		}
+		long segmentIndex = id >>> NODES_PER_SEGMENT_SHIFT;
+		return segmentIndex < segments.length ? segments[(int) segmentIndex] : null;
+	}
+
+	private static int getPositionInSegment(long id) {
+		return (int) (id & (NODES_PER_SEGMENT - 1)) * NODE_BYTES;
+	}
+
+	private MappedByteBuffer getOrMapSegment(int segmentIndex) {
+		if (segmentIndex >= segments.length) {
+			MappedByteBuffer[] newSegments = new MappedByteBuffer[segmentIndex + 1];
+			System.arraycopy(segments, 0, newSegments, 0, segments.length);
+			segments = newSegments;
+		}
+		if (segments[segmentIndex] == null) {
+			try {
+				FileChannel channel = getFile().getChannel();
+				segments[segmentIndex] = channel.map(FileChannel.MapMode.READ_WRITE, segmentIndex * SEGMENT_BYTES,
+						SEGMENT_BYTES);
+			} catch (IOException e) {
+				throw new IllegalStateException("Segment " + segmentIndex + " of the node location file can't be "
+						+ "mapped.", e);
+			}
+		}
+		return segments[segmentIndex];
+	}
+
+	private RandomAccessFile getFile() throws IOException {
+		if (randomAccessFile == null) {
+			file = File.createTempFile("node-locations", ".bin", directory);
+			file.deleteOnExit();
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			LOGGER.info("Node locations are stored in " + file);
+		}
+		return randomAccessFile;
+	}
+}
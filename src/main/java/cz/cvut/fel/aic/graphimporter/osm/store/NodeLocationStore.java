@@ -0,0 +1,71 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.store;
+
+/**
+ * Storage of OSM node locations used during the import. Only the data needed for the graph nodes are stored: the
+ * coordinates (with the OSM precision of 7 decimal places) and the elevation.
+ */
+public interface NodeLocationStore {
+
+	/**
+	 * Stores the location of the node. The previous location of the node with the same id is replaced.
+	 *
+	 * @param id OSM node id
+	 * @param lat latitude in degrees
+	 * @param lon longitude in degrees
+	 * @param elevation elevation in meters
+	 */
+	void put(long id, double lat, double lon, int elevation);
+
+	boolean contains(long id);
+
+	/**
+	 * @param id OSM node id
+	 * @return Latitude of the node or {@code NaN} if the node isn't stored.
+	 */
+	double getLat(long id);
+
+	/**
+	 * @param id OSM node id
+	 * @return Longitude of the node or {@code NaN} if the node isn't stored.
+	 */
+	double getLon(long id);
+
+	/**
+	 * @param id OSM node id
+	 * @return Elevation of the node or 0 if the node isn't stored.
+	 */
+	int getElevation(long id);
+
+	int size();
+
+	/**
+	 * Removes all nodes and releases the memory (or other resources) held by the store.
+	 */
+	void clear();
+
+	static int toE7(double degrees) {
+		return (int) Math.round(degrees * 1E7);
+	}
+
+	static double fromE7(int degreesE7) {
+		return degreesE7 / 1E7;
+	}
+}
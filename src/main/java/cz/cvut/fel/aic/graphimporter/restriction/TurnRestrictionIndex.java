@@ -0,0 +1,230 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.restriction;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Compact index of turn restrictions. A restriction is identified by the source (OSM) ids of three graph nodes: the
+ * start node of the from edge, the via node and the end node of the to edge, i.e., it applies to the turn from the
+ * edge {@code from -> via} to the edge {@code via -> to}.
+ * <p>
+ * Restrictions are stored in primitive arrays sorted by the node ids. The index is filled by {@link #add} and it has
+ * to be sorted by {@link #sort()} before the first query.
+ */
+public class TurnRestrictionIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final TurnRestrictionType[] TYPES = TurnRestrictionType.values();
+
+	private long[] fromNodes = new long[16];
+	private long[] viaNodes = new long[16];
+	private long[] toNodes = new long[16];
+	private byte[] types = new byte[16];
+
+	private int size;
+
+	private boolean sorted = true;
+
+	public void add(long fromSourceId, long viaSourceId, long toSourceId, TurnRestrictionType type) {
+		if (size == fromNodes.length) {
+			fromNodes = Arrays.copyOf(fromNodes, size * 2);
+			viaNodes = Arrays.copyOf(viaNodes, size * 2);
+			toNodes = Arrays.copyOf(toNodes, size * 2);
+			types = Arrays.copyOf(types, size * 2);
+		}
+		fromNodes[size] = fromSourceId;
+		viaNodes[size] = viaSourceId;
+		toNodes[size] = toSourceId;
+		types[size] = (byte) type.ordinal();
+		size++;
+		sorted = false;
+	}
+
+	/**
+	 * Sorts the restrictions and trims the arrays. If there are more restrictions for the same turn, only the first
+	 * added is kept.
+	 */
+	public void sort() {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		// stable sort keeps the first added restriction first
+		sortOrder(order, new int[size], 0, size);
+
+		long[] newFromNodes = new long[size];
+		long[] newViaNodes = new long[size];
+		long[] newToNodes = new long[size];
+		byte[] newTypes = new byte[size];
+		int newSize = 0;
+		for (int i : order) {
+			if (newSize > 0 && newViaNodes[newSize - 1] == viaNodes[i] && newFromNodes[newSize - 1] == fromNodes[i]
+					&& newToNodes[newSize - 1] == toNodes[i]) {
+				continue;
+			}
+			newFromNodes[newSize] = fromNodes[i];
+			newViaNodes[newSize] = viaNodes[i];
+			newToNodes[newSize] = toNodes[i];
+			newTypes[newSize] = types[i];
+			newSize++;
+		}
+		fromNodes = Arrays.copyOf(newFromNodes, newSize);
+		viaNodes = Arrays.copyOf(newViaNodes, newSize);
+		toNodes = Arrays.copyOf(newToNodes, newSize);
+		types = Arrays.copyOf(newTypes, newSize);
+		size = newSize;
+		sorted = true;
+	}
+
+	/**
+	 * Stable merge sort of the restriction indices in {@code order[from, to)} by their node ids.
+	 *
+	 * @param buffer array of the same length as {@code order}
+	 */
+	private void sortOrder(int[] order, int[] buffer, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sortOrder(order, buffer, from, middle);
+		sortOrder(order, buffer, middle, to);
+		if (compare(order[middle - 1], fromNodes[order[middle]], viaNodes[order[middle]], toNodes[order[middle]])
+				<= 0) {
+			return;
+		}
+		System.arraycopy(order, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right == to || left < middle && compare(buffer[left], fromNodes[buffer[right]],
+					viaNodes[buffer[right]], toNodes[buffer[right]]) <= 0) {
+				order[i] = buffer[left++];
+			} else {
+				order[i] = buffer[right++];
+			}
+		}
+	}
+
+	/**
+	 * @param fromSourceId
+	 * @param viaSourceId
+	 * @param toSourceId
+	 * @return Restriction of the turn or null if there is no restriction for the turn.
+	 */
+	public TurnRestrictionType getRestriction(long fromSourceId, long viaSourceId, long toSourceId) {
+		int index = find(fromSourceId, viaSourceId, toSourceId);
+		return index < 0 ? null : TYPES[types[index]];
+	}
+
+	/**
+	 * Checks whether the turn is allowed. The turn is prohibited if it has a prohibitive restriction or if there is a
+	 * mandatory restriction for another turn from the same edge.
+	 *
+	 * @param fromSourceId
+	 * @param viaSourceId
+	 * @param toSourceId
+	 * @return
+	 */
+	public boolean isTurnAllowed(long fromSourceId, long viaSourceId, long toSourceId) {
+		int index = find(fromSourceId, viaSourceId, toSourceId);
+		if (index >= 0) {
+			return TYPES[types[index]].isMandatory();
+		}
+		int insertionPoint = -index - 1;
+		// restrictions of the same from edge are just before and after the insertion point
+		for (int i = insertionPoint - 1; i >= 0 && viaNodes[i] == viaSourceId && fromNodes[i] == fromSourceId; i--) {
+			if (TYPES[types[i]].isMandatory()) {
+				return false;
+			}
+		}
+		for (int i = insertionPoint; i < size && viaNodes[i] == viaSourceId && fromNodes[i] == fromSourceId; i++) {
+			if (TYPES[types[i]].isMandatory()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Index of the restriction or {@code -(insertion point) - 1} if there is no such restriction.
+	 */
+	private int find(long fromSourceId, long viaSourceId, long toSourceId) {
+		if (!sorted) {
+			throw new IllegalStateException("Turn restriction index has to be sorted before the queries.");
+		}
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = compare(middle, fromSourceId, viaSourceId, toSourceId);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private int compare(int index, long fromSourceId, long viaSourceId, long toSourceId) {
+		int comparison = Long.compare(viaNodes[index], viaSourceId);
+		if (comparison == 0) {
+			comparison = Long.compare(fromNodes[index], fromSourceId);
+		}
+		if (comparison == 0) {
+			comparison = Long.compare(toNodes[index], toSourceId);
+		}
+		return comparison;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getFromNode(int index) {
+		checkIndex(index);
+		return fromNodes[index];
+	}
+
+	public long getViaNode(int index) {
+		checkIndex(index);
+		return viaNodes[index];
+	}
+
+	public long getToNode(int index) {
+		checkIndex(index);
+		return toNodes[index];
+	}
+
+	public TurnRestrictionType getType(int index) {
+		checkIndex(index);
+		return TYPES[types[index]];
+	}
+
+	private void checkIndex(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.restriction;
+
+/**
+ * Type of a turn restriction given by the {@code restriction} tag of an OSM relation.
+ */
+public enum TurnRestrictionType {
+	NO_LEFT_TURN("no_left_turn"),
+	NO_RIGHT_TURN("no_right_turn"),
+	NO_STRAIGHT_ON("no_straight_on"),
+	NO_U_TURN("no_u_turn"),
+	NO_ENTRY("no_entry"),
+	NO_EXIT("no_exit"),
+	ONLY_LEFT_TURN("only_left_turn"),
+	ONLY_RIGHT_TURN("only_right_turn"),
+	ONLY_STRAIGHT_ON("only_straight_on"),
+	ONLY_U_TURN("only_u_turn");
+
+	private final String tagValue;
+
+	TurnRestrictionType(String tagValue) {
+		this.tagValue = tagValue;
+	}
+
+	public String getTagValue() {
+		return tagValue;
+	}
+
+	/**
+	 * @return True if the restriction allows only the given turn, false if it prohibits the given turn.
+	 */
+	public boolean isMandatory() {
+		return tagValue.startsWith("only_");
+	}
+
+	/**
+	 * @param tagValue
+	 * @return Type with the given value of the {@code restriction} tag or null if the value isn't supported.
+	 */
+	public static TurnRestrictionType fromTagValue(String tagValue) {
+		if (tagValue == null) {
+			return null;
+		}
+		for (TurnRestrictionType type : values()) {
+			if (type.tagValue.equals(tagValue)) {
+				return type;
+			}
+		}
+		return null;
+	}
+}
@@ -7,6 +7,12 @@ import cz.cvut.fel.aic.geographtools.Node;
 import cz.cvut.fel.aic.geographtools.TransportMode;
 
 /**
+ * Edge between nodes with temporary ids. The edge is built by {@link #build} when the final graph is created.
+ * <p>
+ * {@link TmpGraphBuilder#createGraphBuilder()} builds the edges in parallel, so {@link #build} has to be
+ * thread-safe: it mustn't modify state shared with other builders (counters, caches, etc.) and it may only read the
+ * graph builder it gets.
+ *
  * @author Marek Cuchý
  */
 public abstract class EdgeBuilder<TEdge extends Edge, TNode extends Node> {
@@ -36,12 +42,31 @@ public abstract class EdgeBuilder<TEdge extends Edge, TNode extends Node> {
 		this.length = length;
 	}
 
+	/**
+	 * Builds the final edge. It can be called from any thread, concurrently with the other edge builders.
+	 *
+	 * @param fromId final id of the from node
+	 * @param toId final id of the to node
+	 * @param builder graph builder already containing all the nodes, it may only be read (e.g. by
+	 * {@link GraphBuilder#getNode})
+	 * @return
+	 */
 	public abstract TEdge build(int fromId, int toId, GraphBuilder<TNode, TEdge> builder);
 
 	public abstract boolean checkFeasibility(TransportMode mode);
 
 	public abstract EdgeBuilder<TEdge, TNode> copy(int tmpFromId, int tmpToId, int length);
 
+	/**
+	 * Replaces the shapes of the edge kept in a {@link PolylineStore} by their copies in the new store. Called by
+	 * {@link TmpGraphBuilder#createGraphBuilder} before the edges are built, so the built graph references only the
+	 * shapes of its edges. Edges without stored shapes don't have to override it.
+	 *
+	 * @param relocation
+	 */
+	public void relocatePolylines(PolylineStore.Relocation relocation) {
+	}
+
 	public boolean isCircle(EdgeBuilder<?, ?> edge) {
 		return tmpFromId == edge.tmpToId && tmpToId == edge.tmpFromId;
 	}
@@ -0,0 +1,47 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.structurebuilders;
+
+import cz.cvut.fel.aic.geographtools.Edge;
+import cz.cvut.fel.aic.geographtools.Node;
+
+/**
+ * Push-style receiver of the nodes and edges produced by an importer. The importer passes each node before the edges
+ * using it and doesn't modify the builders after passing them, so a sink can write them out right away (see
+ * {@link cz.cvut.fel.aic.graphimporter.Importer#loadGraph(GraphSink)}).
+ * <p>
+ * The importer doesn't look the passed elements up, so the same pair of nodes can be connected by more edges, e.g.,
+ * when two OSM ways share a segment. Resolving such edges is up to the sink. {@link TmpGraphBuilder} keeps the first
+ * edge.
+ *
+ * @param <TNode>
+ * @param <TEdge>
+ */
+public interface GraphSink<TNode extends Node, TEdge extends Edge> {
+
+	void addNode(NodeBuilder<TNode> node);
+
+	void addEdge(EdgeBuilder<TEdge, TNode> edge);
+
+	/**
+	 * Called once after the last node and edge.
+	 */
+	default void finish() {
+	}
+}
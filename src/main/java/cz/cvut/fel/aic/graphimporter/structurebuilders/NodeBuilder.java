@@ -5,6 +5,11 @@ import cz.cvut.fel.aic.geographtools.Node;
 
 
 /**
+ * Node with a temporary id. The node is built by {@link #buildNode(int)} when the final graph is created.
+ * <p>
+ * {@link TmpGraphBuilder#createGraphBuilder()} builds the nodes in parallel, so {@link #buildNode(int)} has to be
+ * thread-safe: it mustn't modify state shared with other builders (counters, caches, etc.).
+ *
  * @author Marek Cuchý
  */
 public abstract class NodeBuilder<TNode extends Node> {
@@ -19,6 +24,12 @@ public abstract class NodeBuilder<TNode extends Node> {
 		this.location = location;
 	}
 
+	/**
+	 * Builds the final node. It can be called from any thread, concurrently with the other node builders.
+	 *
+	 * @param id final id of the node
+	 * @return
+	 */
 	public abstract TNode buildNode(int id);
 
 	@Override
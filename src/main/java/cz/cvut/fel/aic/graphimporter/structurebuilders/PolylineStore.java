@@ -0,0 +1,203 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.structurebuilders;
+
+import cz.cvut.fel.aic.geographtools.GPSLocation;
+import cz.cvut.fel.aic.graphimporter.util.LongIntHashMap;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Packed storage of edge shapes. Coordinates of all shapes are kept in shared primitive arrays (E6 and projected
+ * coordinates and the elevation), each shape is a lightweight {@link Polyline} view of its range in the arrays. The
+ * locations are created when they are read from the view.
+ * <p>
+ * The store is append-only, the points of the shapes that are no longer used stay in the arrays until the used
+ * shapes are copied to a new store by a {@link Relocation}.
+ */
+public class PolylineStore implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] latitudesE6 = new int[64];
+	private int[] longitudesE6 = new int[64];
+	private int[] latitudesProjected = new int[64];
+	private int[] longitudesProjected = new int[64];
+	private int[] elevations = new int[64];
+
+	private int size;
+
+	/**
+	 * Copies the locations into the store.
+	 *
+	 * @return View of the stored locations.
+	 */
+	public Polyline add(List<GPSLocation> locations) {
+		ensureCapacity(size + locations.size());
+		int offset = size;
+		for (GPSLocation location : locations) {
+			latitudesE6[size] = location.latE6;
+			longitudesE6[size] = location.lonE6;
+			latitudesProjected[size] = location.getLatitudeProjected1E2();
+			longitudesProjected[size] = location.getLongitudeProjected1E2();
+			elevations[size] = location.elevation;
+			size++;
+		}
+		return new Polyline(this, offset, locations.size(), false);
+	}
+
+	/**
+	 * @return Number of the stored points.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Trims the arrays to the number of the stored points.
+	 */
+	public void trimToSize() {
+		if (latitudesE6.length != size) {
+			latitudesE6 = Arrays.copyOf(latitudesE6, size);
+			longitudesE6 = Arrays.copyOf(longitudesE6, size);
+			latitudesProjected = Arrays.copyOf(latitudesProjected, size);
+			longitudesProjected = Arrays.copyOf(longitudesProjected, size);
+			elevations = Arrays.copyOf(elevations, size);
+		}
+	}
+
+	/**
+	 * Copies the points of the range of the source store to the end of this store.
+	 */
+	private void addRange(PolylineStore source, int offset, int length) {
+		ensureCapacity(size + length);
+		System.arraycopy(source.latitudesE6, offset, latitudesE6, size, length);
+		System.arraycopy(source.longitudesE6, offset, longitudesE6, size, length);
+		System.arraycopy(source.latitudesProjected, offset, latitudesProjected, size, length);
+		System.arraycopy(source.longitudesProjected, offset, longitudesProjected, size, length);
+		System.arraycopy(source.elevations, offset, elevations, size, length);
+		size += length;
+	}
+
+	private GPSLocation getLocation(int index) {
+		return new GPSLocation(latitudesE6[index], longitudesE6[index], latitudesProjected[index],
+				longitudesProjected[index], elevations[index]);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > latitudesE6.length) {
+			int newLength = Math.max(capacity, latitudesE6.length * 2);
+			latitudesE6 = Arrays.copyOf(latitudesE6, newLength);
+			longitudesE6 = Arrays.copyOf(longitudesE6, newLength);
+			latitudesProjected = Arrays.copyOf(latitudesProjected, newLength);
+			longitudesProjected = Arrays.copyOf(longitudesProjected, newLength);
+			elevations = Arrays.copyOf(elevations, newLength);
+		}
+	}
+
+	/**
+	 * Read-only view of a shape in the store.
+	 */
+	public static final class Polyline extends AbstractList<GPSLocation> implements RandomAccess, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final PolylineStore store;
+
+		private final int offset;
+
+		private final int length;
+
+		private final boolean reversed;
+
+		private Polyline(PolylineStore store, int offset, int length, boolean reversed) {
+			this.store = store;
+			this.offset = offset;
+			this.length = length;
+			this.reversed = reversed;
+		}
+
+		@Override
+		public GPSLocation get(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + length);
+			}
+			return store.getLocation(offset + (reversed ? length - 1 - index : index));
+		}
+
+		@Override
+		public int size() {
+			return length;
+		}
+
+		/**
+		 * @return View of the same points in the opposite order, nothing is copied.
+		 */
+		public Polyline reversed() {
+			return new Polyline(store, offset, length, !reversed);
+		}
+	}
+
+	/**
+	 * Copying of the used polylines to a new store, so the points of the shapes that are no longer used are dropped.
+	 * Each range of points is copied only once, so the polylines sharing the points (e.g. the shape and its reversed
+	 * view) share them in the new store as well.
+	 */
+	public static final class Relocation {
+
+		private final PolylineStore store = new PolylineStore();
+
+		/**
+		 * Offsets of the copied ranges in the new store by the source store and the range (see {@link #rangeKey}).
+		 */
+		private final Map<PolylineStore, LongIntHashMap> copiedRanges = new IdentityHashMap<>();
+
+		/**
+		 * @return View of the same points (in the same direction) in the new store.
+		 */
+		public Polyline relocate(Polyline polyline) {
+			LongIntHashMap ranges = copiedRanges.computeIfAbsent(polyline.store, source -> new LongIntHashMap());
+			long key = rangeKey(polyline.offset, polyline.length);
+			int offset = ranges.getOrDefault(key, -1);
+			if (offset == -1) {
+				offset = store.size;
+				store.addRange(polyline.store, polyline.offset, polyline.length);
+				ranges.put(key, offset);
+			}
+			return new Polyline(store, offset, polyline.length, polyline.reversed);
+		}
+
+		/**
+		 * @return New store with the relocated polylines, trimmed to their points.
+		 */
+		public PolylineStore getStore() {
+			store.trimToSize();
+			return store;
+		}
+
+		private static long rangeKey(int offset, int length) {
+			return (long) offset << 32 | length & 0xFFFFFFFFL;
+		}
+	}
+}
@@ -1,98 +1,239 @@
 package cz.cvut.fel.aic.graphimporter.structurebuilders;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
 import cz.cvut.fel.aic.geographtools.*;
+import cz.cvut.fel.aic.graphimporter.util.IntArrayList;
+import cz.cvut.fel.aic.graphimporter.util.LongIntHashMap;
 import java.util.*;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import static java.util.stream.Collectors.*;
 import org.apache.log4j.Logger;
 
 /**
  * This builder stores node builders and edge builders with temporary ids and assigns the final id when {@link
  * #createGraph()} is called.
+ * <p>
+ * Tmp ids of the nodes are expected to be dense (they are given by {@link #getNodeCount()} by the importers), so the
+ * nodes are stored in a list indexed by the tmp id. Edges are stored in a list of slots in the order of addition and
+ * the adjacency of each node is kept in growable arrays of the edge slots. The edge slots are looked up by the tmp ids
+ * of the edge nodes packed into one {@code long}, so the lookups don't allocate {@link EdgeId}s. Nodes are iterated in
+ * the tmp id order and edges in the order of addition.
  *
  * @author Marek Cuchý
  */
-public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
+public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> implements GraphSink<TNode, TEdge> {
 
 	private static final Logger LOGGER = Logger.getLogger(TmpGraphBuilder.class);
 
-	private final Map<Integer, NodeBuilder<TNode>> nodes = new LinkedHashMap<>();
+	private static final int[] NO_EDGES = new int[0];
 
-	private final Map<EdgeId, EdgeBuilder<TEdge, TNode>> edges = new HashMap<>();
-	private final ListMultimap<Integer, EdgeBuilder<TEdge, TNode>> nodeOutgoingEdges = ArrayListMultimap.create();
-	private final ListMultimap<Integer, EdgeBuilder<TEdge, TNode>> nodeIncomingEdges = ArrayListMultimap.create();
+	/**
+	 * Node builders indexed by the tmp id, null for the ids without a node.
+	 */
+	private final ArrayList<NodeBuilder<TNode>> nodes = new ArrayList<>();
+
+	private int nodeCount;
+
+	/**
+	 * Edge builders in the order of addition, null for the removed edges. The list is compacted when most of its slots
+	 * are null (see {@link #compactEdges()}).
+	 */
+	private final ArrayList<EdgeBuilder<TEdge, TNode>> edges = new ArrayList<>();
+
+	private int edgeCount;
+
+	/**
+	 * Number of the compactions of {@link #edges}, the edge iterators fail if the slots were moved.
+	 */
+	private int edgeCompactions;
+
+	/**
+	 * Slots of the edges in {@link #edges} by their keys (see {@link #edgeKey}).
+	 */
+	private final LongIntHashMap edgeSlots = new LongIntHashMap();
+
+	/**
+	 * Slots of the outgoing and incoming edges of the nodes, indexed by the tmp id. Only the first
+	 * {@code outDegrees[tmpId]} (or {@code inDegrees[tmpId]}) slots are used.
+	 */
+	private int[][] outgoingEdges = new int[0][];
+	private int[][] incomingEdges = new int[0][];
+	private int[] outDegrees = new int[0];
+	private int[] inDegrees = new int[0];
+
+	/**
+	 * Tmp ids of the nodes by their source ids.
+	 */
+	private final LongIntHashMap longIdToIntId = new LongIntHashMap();
 
-	private final Map<Long, Integer> longIdToIntId = new HashMap<>();
+	/**
+	 * Store of the edge shapes created for this graph.
+	 */
+	private PolylineStore polylineStore = new PolylineStore();
 
 	public TmpGraphBuilder() {
 	}
 
 	public TmpGraphBuilder(TmpGraphBuilder<TNode, TEdge> builder) {
-		nodes.putAll(builder.nodes);
-		edges.putAll(builder.edges);
-		nodeIncomingEdges.putAll(builder.nodeIncomingEdges);
-		nodeOutgoingEdges.putAll(builder.nodeOutgoingEdges);
-		longIdToIntId.putAll(builder.longIdToIntId);
+		addAll(builder);
 	}
 
 	public void addAll(TmpGraphBuilder<TNode, TEdge> builder) {
-		nodes.putAll(builder.nodes);
-		edges.putAll(builder.edges);
-		nodeIncomingEdges.putAll(builder.nodeIncomingEdges);
-		nodeOutgoingEdges.putAll(builder.nodeOutgoingEdges);
-		longIdToIntId.putAll(builder.longIdToIntId);
+		for (NodeBuilder<TNode> node : builder.getAllNodes()) {
+			setNode(node);
+		}
+		for (EdgeBuilder<TEdge, TNode> edge : builder.getAllEdges()) {
+			remove(edge);
+			addEdge(edge);
+		}
+		builder.longIdToIntId.forEach(longIdToIntId::put);
 	}
 
+	@Override
 	public void addNode(NodeBuilder<TNode> builder) {
-		if (nodes.containsKey(builder.tmpId)) throw new IllegalArgumentException(
+		if (getNode(builder.tmpId) != null) throw new IllegalArgumentException(
 				"Graph builder already contains node builder with tmp id: " + builder.tmpId);
-		nodes.put(builder.tmpId, builder);
+		setNode(builder);
 		longIdToIntId.put(builder.sourceId, builder.tmpId);
 	}
 
+	private void setNode(NodeBuilder<TNode> builder) {
+		int tmpId = builder.tmpId;
+		while (nodes.size() <= tmpId) {
+			nodes.add(null);
+		}
+		if (nodes.set(tmpId, builder) == null) {
+			nodeCount++;
+		}
+		ensureAdjacencyCapacity(tmpId + 1);
+	}
+
+	private void ensureAdjacencyCapacity(int capacity) {
+		if (outDegrees.length < capacity) {
+			int newCapacity = Math.max(capacity, outDegrees.length + (outDegrees.length >> 1));
+			outgoingEdges = Arrays.copyOf(outgoingEdges, newCapacity);
+			incomingEdges = Arrays.copyOf(incomingEdges, newCapacity);
+			outDegrees = Arrays.copyOf(outDegrees, newCapacity);
+			inDegrees = Arrays.copyOf(inDegrees, newCapacity);
+		}
+	}
+
+	@Override
 	public void addEdge(EdgeBuilder<TEdge, TNode> builder) {
-		EdgeId id = getId(builder);
-		if (edges.containsKey(id)) {
+		long key = edgeKey(builder.getTmpFromId(), builder.getTmpToId());
+		if (edgeSlots.containsKey(key)) {
 			LOGGER.info(String.format("Graph already contains edge %s, the edge was discarded", builder.toString()));
 //			throw new IllegalArgumentException(
 //				"Graph builder already contains edge builder: [" + nodes.get(builder.getTmpFromId()) + ", " +
 //						nodes.get(builder.getTmpToId()) + "] ");
 		}
 		else{
-			nodeOutgoingEdges.put(builder.getTmpFromId(), builder);
-			nodeIncomingEdges.put(builder.getTmpToId(), builder);
-			edges.put(id, builder);
+			int slot = edges.size();
+			edges.add(builder);
+			edgeCount++;
+			edgeSlots.put(key, slot);
+			ensureAdjacencyCapacity(Math.max(builder.getTmpFromId(), builder.getTmpToId()) + 1);
+			outgoingEdges[builder.getTmpFromId()] = addSlot(outgoingEdges[builder.getTmpFromId()],
+					outDegrees[builder.getTmpFromId()]++, slot);
+			incomingEdges[builder.getTmpToId()] = addSlot(incomingEdges[builder.getTmpToId()],
+					inDegrees[builder.getTmpToId()]++, slot);
+		}
+	}
+
+	private static int[] addSlot(int[] slots, int degree, int slot) {
+		if (slots == null) {
+			slots = new int[2];
+		} else if (slots.length == degree) {
+			slots = Arrays.copyOf(slots, degree * 2);
+		}
+		slots[degree] = slot;
+		return slots;
+	}
+
+	/**
+	 * Removes the slot from the first {@code degree} slots, the order of the remaining slots is kept.
+	 */
+	private static void removeSlot(int[] slots, int degree, int slot) {
+		for (int i = 0; i < degree; i++) {
+			if (slots[i] == slot) {
+				System.arraycopy(slots, i + 1, slots, i, degree - i - 1);
+				return;
+			}
 		}
+		throw new IllegalStateException("Edge slot " + slot + " isn't in the node adjacency.");
 	}
 
 	private EdgeId getId(EdgeBuilder<TEdge, TNode> builder) {
 		return builder.getEdgeId();
 	}
 
+	/**
+	 * @return Tmp ids of the edge nodes packed into one key (used e.g. by {@link #edgeSlots}).
+	 */
+	public static long edgeKey(int tmpFromId, int tmpToId) {
+		return (long) tmpFromId << 32 | tmpToId & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Builds the nodes and edges and adds them to a new graph builder. Final ids of the nodes are given by their order
+	 * (i.e., the tmp id order). Nodes and edges are built in parallel, so {@link NodeBuilder#buildNode} and
+	 * {@link EdgeBuilder#build} mustn't modify shared state (the edge builders get the graph builder with all the nodes
+	 * for lookups). The built elements are added to the graph builder in the same order as if built sequentially.
+	 *
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
 	public GraphBuilder<TNode, TEdge> createGraphBuilder() {
-		int id = 0;
+		if (edgeCount < edges.size()) {
+			compactEdges();
+		}
+
+		// the built edges reference the store, so it keeps only the shapes of the current edges (not e.g. the shapes
+		// of the edges removed by the simplification)
+		PolylineStore.Relocation relocation = new PolylineStore.Relocation();
+		for (EdgeBuilder<TEdge, TNode> edge : getAllEdges()) {
+			edge.relocatePolylines(relocation);
+		}
+		polylineStore = relocation.getStore();
 
 		GraphBuilder<TNode, TEdge> builder = new GraphBuilder<>();
 
-		Map<Integer, Integer> tmpToFinalId = new HashMap<>();
+		List<NodeBuilder<TNode>> nodeBuilders = new ArrayList<>(getAllNodes());
+		int[] tmpToFinalId = new int[nodes.size()];
+		Arrays.fill(tmpToFinalId, -1);
+		for (int id = 0; id < nodeBuilders.size(); id++) {
+			tmpToFinalId[nodeBuilders.get(id).tmpId] = id;
+		}
 
-		for (NodeBuilder<? extends TNode> nodeBuilder : nodes.values()) {
-			tmpToFinalId.put(nodeBuilder.tmpId, id);
-			builder.addNode(nodeBuilder.buildNode(id++));
+		Object[] builtNodes = new Object[nodeBuilders.size()];
+		IntStream.range(0, builtNodes.length).parallel()
+				.forEach(id -> builtNodes[id] = nodeBuilders.get(id).buildNode(id));
+		for (Object node : builtNodes) {
+			builder.addNode((TNode) node);
 		}
 
-		for (EdgeBuilder<TEdge, TNode> edgeBuilder : edges.values()) {
-			int fromId = tmpToFinalId.get(edgeBuilder.getTmpFromId());
-			Node fromNode = builder.getNode(fromId);
-			int toId = tmpToFinalId.get(edgeBuilder.getTmpToId());
-			Node toNode = builder.getNode(toId);
-			builder.addEdge(edgeBuilder.build(fromId, toId, builder));
+		List<EdgeBuilder<TEdge, TNode>> edgeBuilders = new ArrayList<>(getAllEdges());
+		Object[] builtEdges = new Object[edgeBuilders.size()];
+		IntStream.range(0, builtEdges.length).parallel().forEach(i -> {
+			EdgeBuilder<TEdge, TNode> edgeBuilder = edgeBuilders.get(i);
+			builtEdges[i] = edgeBuilder.build(getFinalId(tmpToFinalId, edgeBuilder.getTmpFromId()),
+					getFinalId(tmpToFinalId, edgeBuilder.getTmpToId()), builder);
+		});
+		for (Object edge : builtEdges) {
+			builder.addEdge((TEdge) edge);
 		}
 		return builder;
 	}
 
+	private static int getFinalId(int[] tmpToFinalId, int tmpId) {
+		if (tmpId < 0 || tmpId >= tmpToFinalId.length || tmpToFinalId[tmpId] == -1) {
+			throw new IllegalStateException("Edge references node " + tmpId + " that isn't in the graph builder.");
+		}
+		return tmpToFinalId[tmpId];
+	}
+
 	public Graph<TNode, TEdge> createGraph() {
 		GraphBuilder<TNode, TEdge> builder = createGraphBuilder();
 		Graph<TNode, TEdge> g = builder.createGraph();
@@ -117,20 +258,29 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 		edgeCounts.forEach((k, v) -> LOGGER.debug(k.getName() + ": " + v));
 	}
 
+	public PolylineStore getPolylineStore() {
+		return polylineStore;
+	}
+
 	public int getIntIdForSourceId(long sourceId) {
-		return longIdToIntId.get(sourceId);
+		int tmpId = longIdToIntId.getOrDefault(sourceId, -1);
+		if (tmpId == -1) {
+			throw new IllegalArgumentException("Graph builder doesn't contain node with source id: " + sourceId);
+		}
+		return tmpId;
 	}
 
 	public boolean containsEdge(int tmpFromId, int tmpToId) {
-		return edges.containsKey(new EdgeId(tmpFromId, tmpToId));
+		return edgeSlots.containsKey(edgeKey(tmpFromId, tmpToId));
 	}
 
 	public EdgeBuilder<TEdge, TNode> getEdge(int tmpFromId, int tmpToId) {
-		return edges.get(new EdgeId(tmpFromId, tmpToId));
+		int slot = edgeSlots.getOrDefault(edgeKey(tmpFromId, tmpToId), -1);
+		return slot == -1 ? null : edges.get(slot);
 	}
 
 	public NodeBuilder<? extends TNode> getNode(int tmpId) {
-		return nodes.get(tmpId);
+		return tmpId >= 0 && tmpId < nodes.size() ? nodes.get(tmpId) : null;
 	}
 
 	public boolean containsNode(long sourceId) {
@@ -138,24 +288,33 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 	}
 
 	public int getNodeCount() {
-		return nodes.size();
+		return nodeCount;
 	}
 
 	public int getMaxId() {
-		return nodes.keySet().stream().max(Integer::compare).get();
+		for (int tmpId = nodes.size() - 1; tmpId >= 0; tmpId--) {
+			if (nodes.get(tmpId) != null) {
+				return tmpId;
+			}
+		}
+		throw new NoSuchElementException("Graph builder doesn't contain any node.");
 	}
 
 	public int getEdgeCount() {
-		return edges.size();
+		return edgeCount;
 	}
 
+	/**
+	 * @return Read-only view of the edges. Edges can't be removed while the view is iterated, the removals can compact
+	 * the edges, which fails the iteration.
+	 */
 	public Collection<EdgeBuilder<TEdge, TNode>> getAllEdges() {
-		return edges.values();
+		return new SlotCollection<>(edges, edgeCount, () -> edgeCompactions);
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T extends NodeBuilder<? extends TNode>> List<T> getNodesOfType(Class<T> type) {
-		return nodes.values().stream().filter(type::isInstance).map(n -> (T) n).collect(toList());
+		return getAllNodes().stream().filter(type::isInstance).map(n -> (T) n).collect(toList());
 	}
 
 	/**
@@ -165,7 +324,7 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 	 * @return
 	 */
 	public List<EdgeBuilder<TEdge, TNode>> getFeasibleEdges(TransportMode mode) {
-		return edges.values().stream().filter(e -> e.checkFeasibility(mode)).collect(toList());
+		return getAllEdges().stream().filter(e -> e.checkFeasibility(mode)).collect(toList());
 	}
 
 	/**
@@ -175,7 +334,7 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 	 */
 	public Set<NodeBuilder<TNode>> getFeasibleNodes(TransportMode mode) {
 		Set<NodeBuilder<TNode>> feasibleNodes = new HashSet<>();
-		for (EdgeBuilder<TEdge, TNode> edge : edges.values()) {
+		for (EdgeBuilder<TEdge, TNode> edge : getAllEdges()) {
 			if (edge.checkFeasibility(mode)) {
 				feasibleNodes.add(nodes.get(edge.getTmpFromId()));
 				feasibleNodes.add(nodes.get(edge.getTmpToId()));
@@ -190,12 +349,13 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 	 * @return
 	 */
 	public int removeIsolatedNodes() {
-		int pre = nodes.size();
-		TreeMap<Integer, Set<Integer>> nodesByDegree = getNodesByDegree();
-		Set<Integer> isolatedIds = nodesByDegree.get(0);
-		if (isolatedIds == null || isolatedIds.isEmpty()) return 0;
-		nodes.keySet().removeAll(isolatedIds);
-		return pre - nodes.size();
+		int pre = nodeCount;
+		for (int tmpId = 0; tmpId < nodes.size(); tmpId++) {
+			if (nodes.get(tmpId) != null && inDegrees[tmpId] + outDegrees[tmpId] == 0) {
+				removeNode(tmpId);
+			}
+		}
+		return pre - nodeCount;
 	}
 
 	/**
@@ -205,30 +365,101 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 	 * @return
 	 */
 	public int removeEdges(Predicate<EdgeBuilder<TEdge, TNode>> predicate) {
-		int pre = edges.size();
-		for (Iterator<EdgeBuilder<TEdge, TNode>> it = edges.values().iterator(); it.hasNext(); ) {
-			EdgeBuilder<TEdge, TNode> edge = it.next();
-			if (predicate.test(edge)) {
-				it.remove();
-				nodeIncomingEdges.remove(edge.getTmpToId(), edge);
-				nodeOutgoingEdges.remove(edge.getTmpFromId(), edge);
+		int pre = edgeCount;
+		for (int slot = 0; slot < edges.size(); slot++) {
+			EdgeBuilder<TEdge, TNode> edge = edges.get(slot);
+			if (edge != null && predicate.test(edge)) {
+				removeEdgeInSlot(slot, false);
 			}
 		}
-		return pre - edges.size();
+		compactEdgesIfSparse();
+		return pre - edgeCount;
 	}
 
 	public EdgeBuilder<TEdge, TNode> remove(EdgeBuilder<TEdge, TNode> edge) {
-		return remove(getId(edge));
+		return remove(edge.getTmpFromId(), edge.getTmpToId());
 	}
 
+	/**
+	 * Removes the edge with the given id. The id doesn't give the node ids, so the edge is searched for among all
+	 * edges.
+	 *
+	 * @param edgeId
+	 * @return Removed edge or null if there is no such edge.
+	 * @deprecated It takes O(E) time, use {@link #remove(int, int)} instead.
+	 */
+	@Deprecated
 	public EdgeBuilder<TEdge, TNode> remove(EdgeId edgeId) {
-		EdgeBuilder<TEdge, TNode> edge = edges.remove(edgeId);
-		if (edge == null) {
+		for (int slot = 0; slot < edges.size(); slot++) {
+			EdgeBuilder<TEdge, TNode> edge = edges.get(slot);
+			if (edge != null && getId(edge).equals(edgeId)) {
+				return removeEdgeInSlot(slot, true);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Removed edge or null if there is no such edge.
+	 */
+	public EdgeBuilder<TEdge, TNode> remove(int tmpFromId, int tmpToId) {
+		int slot = edgeSlots.getOrDefault(edgeKey(tmpFromId, tmpToId), -1);
+		if (slot == -1) {
 			return null;
 		} else {
-			nodeIncomingEdges.remove(edge.getTmpToId(), edge);
-			nodeOutgoingEdges.remove(edge.getTmpFromId(), edge);
-			return edge;
+			return removeEdgeInSlot(slot, true);
+		}
+	}
+
+	/**
+	 * @param compact if true, the edges are compacted if most of the slots are empty after the removal
+	 */
+	private EdgeBuilder<TEdge, TNode> removeEdgeInSlot(int slot, boolean compact) {
+		EdgeBuilder<TEdge, TNode> edge = edges.set(slot, null);
+		edgeCount--;
+		edgeSlots.remove(edgeKey(edge.getTmpFromId(), edge.getTmpToId()));
+		removeSlot(outgoingEdges[edge.getTmpFromId()], outDegrees[edge.getTmpFromId()]--, slot);
+		removeSlot(incomingEdges[edge.getTmpToId()], inDegrees[edge.getTmpToId()]--, slot);
+		if (compact) {
+			compactEdgesIfSparse();
+		}
+		return edge;
+	}
+
+	private void compactEdgesIfSparse() {
+		if (edges.size() - edgeCount > edges.size() / 2) {
+			compactEdges();
+		}
+	}
+
+	/**
+	 * Moves the edges to the beginning of {@link #edges}, so the removed edges don't take any slots. The order of the
+	 * edges is kept, the slots in {@link #edgeSlots} and in the node adjacency are remapped.
+	 */
+	private void compactEdges() {
+		int[] newSlots = new int[edges.size()];
+		int size = 0;
+		for (int slot = 0; slot < edges.size(); slot++) {
+			EdgeBuilder<TEdge, TNode> edge = edges.get(slot);
+			if (edge != null) {
+				newSlots[slot] = size;
+				edges.set(size, edge);
+				edgeSlots.put(edgeKey(edge.getTmpFromId(), edge.getTmpToId()), size);
+				size++;
+			}
+		}
+		edges.subList(size, edges.size()).clear();
+		edges.trimToSize();
+		for (int tmpId = 0; tmpId < outDegrees.length; tmpId++) {
+			remapSlots(outgoingEdges[tmpId], outDegrees[tmpId], newSlots);
+			remapSlots(incomingEdges[tmpId], inDegrees[tmpId], newSlots);
+		}
+		edgeCompactions++;
+	}
+
+	private static void remapSlots(int[] slots, int degree, int[] newSlots) {
+		for (int i = 0; i < degree; i++) {
+			slots[i] = newSlots[slots[i]];
 		}
 	}
 
@@ -243,54 +474,98 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 	}
 
 	public boolean removeNode(Integer nodeId) {
-		if (nodeIncomingEdges.containsKey(nodeId) || nodeOutgoingEdges.containsKey(nodeId)) {
+		if (getNode(nodeId) == null) {
+			return false;
+		}
+		if (inDegrees[nodeId] > 0 || outDegrees[nodeId] > 0) {
 			throw new IllegalStateException("Node can't be removed because existing edges.");
 		}
-		return nodes.remove(nodeId) != null;
+		nodes.set(nodeId, null);
+		outgoingEdges[nodeId] = null;
+		incomingEdges[nodeId] = null;
+		nodeCount--;
+		return true;
+	}
+
+	public int getInDegree(int tmpId) {
+		return tmpId >= 0 && tmpId < inDegrees.length ? inDegrees[tmpId] : 0;
+	}
+
+	public int getOutDegree(int tmpId) {
+		return tmpId >= 0 && tmpId < outDegrees.length ? outDegrees[tmpId] : 0;
+	}
+
+	/**
+	 * Get the nodes with the given in and out degrees. The degrees are maintained by the edge additions and removals,
+	 * so only the degree arrays are scanned.
+	 *
+	 * @param inDegree
+	 * @param outDegree
+	 * @return Tmp ids of the nodes in ascending order.
+	 */
+	public int[] getNodesWithDegree(int inDegree, int outDegree) {
+		IntArrayList tmpIds = new IntArrayList();
+		for (int tmpId = 0; tmpId < nodes.size(); tmpId++) {
+			if (inDegrees[tmpId] == inDegree && outDegrees[tmpId] == outDegree && nodes.get(tmpId) != null) {
+				tmpIds.add(tmpId);
+			}
+		}
+		return tmpIds.toArray();
 	}
 
 	public TreeMap<Integer, Set<Integer>> getNodesByDegree() {
-		return nodes.keySet()
-				.stream()
-				.collect(groupingBy(id -> nodeIncomingEdges.get(id).size() + nodeOutgoingEdges.get(id).size(),
-						TreeMap::new, toSet()));
+		return groupNodesBy(id -> inDegrees[id] + outDegrees[id]);
 	}
 
 	public TreeMap<Integer, Set<Integer>> getNodesByOutDegree() {
-		return nodes.keySet()
-				.stream()
-				.collect(groupingBy(id -> nodeOutgoingEdges.get(id).size(), TreeMap::new, toSet()));
+		return groupNodesBy(id -> outDegrees[id]);
 	}
 
 	public TreeMap<Integer, Set<Integer>> getNodesByInDegree() {
-		return nodes.keySet()
-				.stream()
-				.collect(groupingBy(id -> nodeIncomingEdges.get(id).size(), TreeMap::new, toSet()));
+		return groupNodesBy(id -> inDegrees[id]);
+	}
+
+	private TreeMap<Integer, Set<Integer>> groupNodesBy(IntUnaryOperator degree) {
+		TreeMap<Integer, Set<Integer>> nodesByDegree = new TreeMap<>();
+		for (int tmpId = 0; tmpId < nodes.size(); tmpId++) {
+			if (nodes.get(tmpId) != null) {
+				nodesByDegree.computeIfAbsent(degree.applyAsInt(tmpId), d -> new HashSet<>()).add(tmpId);
+			}
+		}
+		return nodesByDegree;
 	}
 
 	public List<EdgeBuilder<TEdge, TNode>> getOutgoingEdges(NodeBuilder<Node> node) {
-		return nodeOutgoingEdges.get(node.tmpId);
+		return getOutgoingEdges(node.tmpId);
 	}
 
 	public List<EdgeBuilder<TEdge, TNode>> getIncomingEdges(NodeBuilder<Node> node) {
-		return nodeIncomingEdges.get(node.tmpId);
+		return getIncomingEdges(node.tmpId);
 	}
 
 	public List<EdgeBuilder<TEdge, TNode>> getOutgoingEdges(int tmpId) {
-		return nodeOutgoingEdges.get(tmpId);
+		return new AdjacencyList(tmpId, true);
 	}
 
 	public List<EdgeBuilder<TEdge, TNode>> getIncomingEdges(int tmpId) {
-		return nodeIncomingEdges.get(tmpId);
+		return new AdjacencyList(tmpId, false);
 	}
 
 	public Collection<NodeBuilder<TNode>> getAllNodes() {
-		return nodes.values();
+		return new SlotCollection<>(nodes, nodeCount, () -> 0);
 	}
 
 	public void clear() {
 		nodes.clear();
+		nodeCount = 0;
 		edges.clear();
+		edgeCount = 0;
+		edgeCompactions++;
+		edgeSlots.clear();
+		outgoingEdges = new int[0][];
+		incomingEdges = new int[0][];
+		outDegrees = new int[0];
+		inDegrees = new int[0];
 		longIdToIntId.clear();
 	}
 
@@ -298,11 +573,151 @@ public class TmpGraphBuilder<TNode extends Node, TEdge extends Edge> {
 		return containsEdge(edge.getTmpFromId(), edge.getTmpToId());
 	}
 
+	/**
+	 * @return Read-only view of the edges by their ids. The lookups search all edges.
+	 * @deprecated The lookups take O(E) time, use {@link #getEdge(int, int)} or {@link #containsEdge(int, int)}
+	 * instead.
+	 */
+	@Deprecated
 	public Map<EdgeId, EdgeBuilder<TEdge, TNode>> getEdgesById() {
-		return Collections.unmodifiableMap(edges);
+		return new EdgesById();
 	}
 
 	public void addEdges(Collection<EdgeBuilder<TEdge, TNode>> virtualEdges) {
 		virtualEdges.forEach(this::addEdge);
 	}
+
+	/**
+	 * Read-only view of the non-null elements of a list of slots.
+	 */
+	private static class SlotCollection<T> extends AbstractCollection<T> {
+
+		private final List<T> slots;
+
+		private final int size;
+
+		/**
+		 * Number of the compactions of the slots, the iterator fails if it changes.
+		 */
+		private final IntSupplier compactions;
+
+		SlotCollection(List<T> slots, int size, IntSupplier compactions) {
+			this.slots = slots;
+			this.size = size;
+			this.compactions = compactions;
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				private final int expectedCompactions = compactions.getAsInt();
+
+				private int slot = advance(0);
+
+				@Override
+				public boolean hasNext() {
+					checkCompactions();
+					return slot < slots.size();
+				}
+
+				@Override
+				public T next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					T element = slots.get(slot);
+					slot = advance(slot + 1);
+					return element;
+				}
+
+				private int advance(int slot) {
+					while (slot < slots.size() && slots.get(slot) == null) {
+						slot++;
+					}
+					return slot;
+				}
+
+				private void checkCompactions() {
+					if (compactions.getAsInt() != expectedCompactions) {
+						throw new ConcurrentModificationException("Slots were compacted during the iteration.");
+					}
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Read-only view of the outgoing or incoming edges of a node.
+	 */
+	private class AdjacencyList extends AbstractList<EdgeBuilder<TEdge, TNode>> implements RandomAccess {
+
+		private final int tmpId;
+
+		private final boolean outgoing;
+
+		AdjacencyList(int tmpId, boolean outgoing) {
+			this.tmpId = tmpId;
+			this.outgoing = outgoing;
+		}
+
+		@Override
+		public EdgeBuilder<TEdge, TNode> get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+			}
+			return edges.get(outgoing ? outgoingEdges[tmpId][index] : incomingEdges[tmpId][index]);
+		}
+
+		@Override
+		public int size() {
+			if (tmpId < 0 || tmpId >= outDegrees.length) {
+				return 0;
+			}
+			return outgoing ? outDegrees[tmpId] : inDegrees[tmpId];
+		}
+	}
+
+	/**
+	 * Read-only view of the edges by their ids. The edges aren't indexed by the ids, so the lookups iterate over the
+	 * edges.
+	 */
+	private class EdgesById extends AbstractMap<EdgeId, EdgeBuilder<TEdge, TNode>> {
+
+		@Override
+		public int size() {
+			return edgeCount;
+		}
+
+		@Override
+		public Set<Entry<EdgeId, EdgeBuilder<TEdge, TNode>>> entrySet() {
+			return new AbstractSet<Entry<EdgeId, EdgeBuilder<TEdge, TNode>>>() {
+				@Override
+				public Iterator<Entry<EdgeId, EdgeBuilder<TEdge, TNode>>> iterator() {
+					Iterator<EdgeBuilder<TEdge, TNode>> iterator = getAllEdges().iterator();
+					return new Iterator<Entry<EdgeId, EdgeBuilder<TEdge, TNode>>>() {
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						@Override
+						public Entry<EdgeId, EdgeBuilder<TEdge, TNode>> next() {
+							EdgeBuilder<TEdge, TNode> edge = iterator.next();
+							return new SimpleImmutableEntry<>(getId(edge), edge);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return edgeCount;
+				}
+			};
+		}
+	}
 }
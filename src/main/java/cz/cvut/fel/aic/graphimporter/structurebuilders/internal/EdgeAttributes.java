@@ -0,0 +1,131 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.structurebuilders.internal;
+
+import cz.cvut.fel.aic.geographtools.TransportMode;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable attributes of an edge compared by the graph simplification: the modes, the max speed and the lanes
+ * count. Instances are interned by {@link #of}, so there is only one instance for each combination of the values and
+ * the instances can be compared by reference. Most edges share a few hundred combinations, so the edges point to the
+ * canonical instances instead of carrying their own mode sets.
+ */
+public final class EdgeAttributes implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Canonical instances. The number of the combinations is small, so the instances are never removed.
+	 */
+	private static final ConcurrentMap<EdgeAttributes, EdgeAttributes> INTERNED = new ConcurrentHashMap<>();
+
+	private final Set<TransportMode> modesOfTransport;
+
+	private final int allowedMaxSpeedInKmh;
+
+	private final int lanesCount;
+
+	private EdgeAttributes(Set<TransportMode> modesOfTransport, int allowedMaxSpeedInKmh, int lanesCount) {
+		this.modesOfTransport = modesOfTransport;
+		this.allowedMaxSpeedInKmh = allowedMaxSpeedInKmh;
+		this.lanesCount = lanesCount;
+	}
+
+	/**
+	 * @return Canonical instance with the given values.
+	 */
+	public static EdgeAttributes of(Set<TransportMode> modesOfTransport, int allowedMaxSpeedInKmh, int lanesCount) {
+		Set<TransportMode> modes = modesOfTransport.isEmpty() ? EnumSet.noneOf(TransportMode.class)
+				: EnumSet.copyOf(modesOfTransport);
+		return intern(new EdgeAttributes(Collections.unmodifiableSet(modes), allowedMaxSpeedInKmh, lanesCount));
+	}
+
+	private static EdgeAttributes intern(EdgeAttributes attributes) {
+		EdgeAttributes interned = INTERNED.putIfAbsent(attributes, attributes);
+		return interned != null ? interned : attributes;
+	}
+
+	/**
+	 * @return Canonical instance with the modes of these attributes and the {@code addedModes}.
+	 */
+	public EdgeAttributes withAddedModes(Set<TransportMode> addedModes) {
+		if (modesOfTransport.containsAll(addedModes)) {
+			return this;
+		}
+		Set<TransportMode> modes = EnumSet.copyOf(modesOfTransport.isEmpty() ? addedModes : modesOfTransport);
+		modes.addAll(addedModes);
+		return intern(new EdgeAttributes(Collections.unmodifiableSet(modes), allowedMaxSpeedInKmh, lanesCount));
+	}
+
+	/**
+	 * @return Unmodifiable set of the modes.
+	 */
+	public Set<TransportMode> getModesOfTransport() {
+		return modesOfTransport;
+	}
+
+	public int getAllowedMaxSpeedInKmh() {
+		return allowedMaxSpeedInKmh;
+	}
+
+	public int getLanesCount() {
+		return lanesCount;
+	}
+
+	/**
+	 * Deserialized attributes are replaced by the canonical instances.
+	 */
+	private Object readResolve() {
+		return intern(this);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		EdgeAttributes that = (EdgeAttributes) o;
+
+		return allowedMaxSpeedInKmh == that.allowedMaxSpeedInKmh && lanesCount == that.lanesCount
+				&& modesOfTransport.equals(that.modesOfTransport);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = modesOfTransport.hashCode();
+		result = 31 * result + allowedMaxSpeedInKmh;
+		result = 31 * result + lanesCount;
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "EdgeAttributes{" +
+			   "modesOfTransport=" + modesOfTransport +
+			   ", allowedMaxSpeedInKmh=" + allowedMaxSpeedInKmh +
+			   ", lanesCount=" + lanesCount +
+			   '}';
+	}
+}
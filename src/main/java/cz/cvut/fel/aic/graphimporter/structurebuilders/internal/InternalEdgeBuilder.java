@@ -9,7 +9,8 @@ import cz.cvut.fel.aic.geographtools.GPSLocation;
 import cz.cvut.fel.aic.geographtools.GraphBuilder;
 import cz.cvut.fel.aic.geographtools.TransportMode;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.EdgeBuilder;
-import java.util.EnumSet;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.PolylineStore;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -20,9 +21,17 @@ import java.util.Set;
  */
 public class InternalEdgeBuilder extends EdgeBuilder<InternalEdge, InternalNode> {
 
+	/**
+	 * Custom parameters of the edge. The map can be shared by more builders (e.g. all edges of one OSM way), so it's
+	 * never modified.
+	 */
 	private final Map<String, Object> otherParams;
 
-	private Set<TransportMode> modeOfTransports = EnumSet.noneOf(TransportMode.class);
+	/**
+	 * Interned attributes compared by the simplification. The max speed and lanes count fields can be assigned, so
+	 * the attributes are interned again by {@link #getAttributes()} when they differ.
+	 */
+	private EdgeAttributes attributes;
 
 	public int uniqueWayID;
 
@@ -45,34 +54,57 @@ public class InternalEdgeBuilder extends EdgeBuilder<InternalEdge, InternalNode>
 	public InternalEdgeBuilder(int tmpFromId, int tmpToId, int uniqueWayId, int oppositeWayUniqueId,
 			int lengthCm, Set<TransportMode> modeOfTransports, int allowedMaxSpeedInKmh, Integer lanesCount,
 			List<GPSLocation> coordinateList, Map<String,Object> otherParams) {
+		this(tmpFromId, tmpToId, uniqueWayId, oppositeWayUniqueId, lengthCm,
+				EdgeAttributes.of(modeOfTransports, allowedMaxSpeedInKmh, lanesCount), coordinateList, otherParams);
+	}
+
+	public InternalEdgeBuilder(int tmpFromId, int tmpToId, int uniqueWayId, int oppositeWayUniqueId,
+			int lengthCm, EdgeAttributes attributes, List<GPSLocation> coordinateList, Map<String,Object> otherParams) {
 		super(tmpFromId, tmpToId, lengthCm);
 
-		this.modeOfTransports = EnumSet.copyOf(modeOfTransports);
+		this.attributes = attributes;
 		this.uniqueWayID = uniqueWayId;
 		this.oppositeWayUniqueId = oppositeWayUniqueId;
 
 		// extras
-		this.allowedMaxSpeedInKmh = allowedMaxSpeedInKmh;
-		this.lanesCount = lanesCount;
+		this.allowedMaxSpeedInKmh = attributes.getAllowedMaxSpeedInKmh();
+		this.lanesCount = attributes.getLanesCount();
 		this.coordinateList = coordinateList;
 
 		this.otherParams = otherParams;
 	}
 
 	public InternalEdgeBuilder addModeOfTransports(Set<TransportMode> ModeOfTransports) {
-		this.modeOfTransports.addAll(ModeOfTransports);
+		attributes = getAttributes().withAddedModes(ModeOfTransports);
 		return this;
 	}
 
+	/**
+	 * @return Interned attributes with the current values of {@link #allowedMaxSpeedInKmh} and {@link #lanesCount}.
+	 */
+	public EdgeAttributes getAttributes() {
+		if (attributes.getAllowedMaxSpeedInKmh() != allowedMaxSpeedInKmh || attributes.getLanesCount() != lanesCount) {
+			attributes = EdgeAttributes.of(attributes.getModesOfTransport(), allowedMaxSpeedInKmh, lanesCount);
+		}
+		return attributes;
+	}
+
+	/**
+	 * @return Read-only view of the custom parameters.
+	 */
+	public Map<String, Object> getOtherParams() {
+		return Collections.unmodifiableMap(otherParams);
+	}
+
+	/**
+	 * Builds the edge with the parameters in {@link InternalEdgeParams}, the custom parameters map and the attributes
+	 * are shared, not copied. The edge gets its own copy of the modes.
+	 */
 	@Override
 	public InternalEdge build(int fromId, int toId, GraphBuilder<InternalNode, InternalEdge> builder) {
-		otherParams.put("uniqueWayID", uniqueWayID);
-		otherParams.put("oppositeWayUniqueId", oppositeWayUniqueId);
-		otherParams.put("modeOfTransports", modeOfTransports);
-		otherParams.put("allowedMaxSpeedInMpS", allowedMaxSpeedInKmh);
-		otherParams.put("lanesCount", lanesCount);
-		otherParams.put("coordinateList", coordinateList);
-		return new InternalEdge(builder.getNode(fromId), builder.getNode(toId), getLengthCm(), otherParams);
+		return new InternalEdge(builder.getNode(fromId), builder.getNode(toId), getLengthCm(),
+				new InternalEdgeParams(otherParams, uniqueWayID, oppositeWayUniqueId, getAttributes(),
+						coordinateList));
 	}
 
 	@Override
@@ -84,20 +116,27 @@ public class InternalEdgeBuilder extends EdgeBuilder<InternalEdge, InternalNode>
 	@Override
 	public InternalEdgeBuilder copy(int tmpFromId, int tmpToId, int length) {
 		return new InternalEdgeBuilder(tmpFromId, tmpToId, uniqueWayID, oppositeWayUniqueId, length,
-				modeOfTransports, allowedMaxSpeedInKmh, lanesCount, coordinateList, otherParams);
+				getAttributes(), coordinateList, otherParams);
 	}
 
 	public InternalEdgeBuilder copy(int tmpFromId, int tmpToId, int length, List<GPSLocation> coordinateList) {
 		return new InternalEdgeBuilder(tmpFromId, tmpToId, uniqueWayID, oppositeWayUniqueId, length,
-				modeOfTransports, allowedMaxSpeedInKmh, lanesCount, coordinateList, otherParams);
+				getAttributes(), coordinateList, otherParams);
+	}
+
+	@Override
+	public void relocatePolylines(PolylineStore.Relocation relocation) {
+		if (coordinateList instanceof PolylineStore.Polyline) {
+			coordinateList = relocation.relocate((PolylineStore.Polyline) coordinateList);
+		}
 	}
 
+	/**
+	 * @return True if the edges have the same modes, max speed and lanes count. The attributes are interned, so they
+	 * are compared by reference.
+	 */
 	public boolean equalAttributes(InternalEdgeBuilder that) {
-		return lanesCount == that.lanesCount
-				&& (modeOfTransports != null
-						? modeOfTransports.equals(that.modeOfTransports)
-								&& Float.compare(that.allowedMaxSpeedInKmh, allowedMaxSpeedInKmh) == 0
-						: that.modeOfTransports == null);
+		return getAttributes() == that.getAttributes();
 	}
 
 	@Override
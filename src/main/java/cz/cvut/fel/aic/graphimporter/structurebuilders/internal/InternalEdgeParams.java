@@ -0,0 +1,113 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.structurebuilders.internal;
+
+import cz.cvut.fel.aic.geographtools.GPSLocation;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import cz.cvut.fel.aic.geographtools.TransportMode;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only parameters of an {@link InternalEdge}. The parameters set by {@link InternalEdgeBuilder#build} are kept in
+ * fields and the custom parameters in the map shared with other edges (e.g. of the same way), so no map is allocated
+ * per edge. The modes are copied into a set of the edge, as the set was modifiable before the attributes were
+ * interned.
+ */
+final class InternalEdgeParams extends AbstractMap<String, Object> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, Object> otherParams;
+
+	private final int uniqueWayID;
+
+	private final int oppositeWayUniqueId;
+
+	private final EdgeAttributes attributes;
+
+	private final EnumSet<TransportMode> modeOfTransports;
+
+	private final List<GPSLocation> coordinateList;
+
+	InternalEdgeParams(Map<String, Object> otherParams, int uniqueWayID, int oppositeWayUniqueId,
+			EdgeAttributes attributes, List<GPSLocation> coordinateList) {
+		this.otherParams = otherParams;
+		this.uniqueWayID = uniqueWayID;
+		this.oppositeWayUniqueId = oppositeWayUniqueId;
+		this.attributes = attributes;
+		this.modeOfTransports = EnumSet.noneOf(TransportMode.class);
+		modeOfTransports.addAll(attributes.getModesOfTransport());
+		this.coordinateList = coordinateList;
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (key instanceof String) {
+			switch ((String) key) {
+				case "uniqueWayID":
+					return uniqueWayID;
+				case "oppositeWayUniqueId":
+					return oppositeWayUniqueId;
+				case "modeOfTransports":
+					return modeOfTransports;
+				case "allowedMaxSpeedInMpS":
+					return attributes.getAllowedMaxSpeedInKmh();
+				case "lanesCount":
+					return attributes.getLanesCount();
+				case "coordinateList":
+					return coordinateList;
+			}
+		}
+		return otherParams.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (key instanceof String) {
+			switch ((String) key) {
+				case "uniqueWayID":
+				case "oppositeWayUniqueId":
+				case "modeOfTransports":
+				case "allowedMaxSpeedInMpS":
+				case "lanesCount":
+				case "coordinateList":
+					return true;
+			}
+		}
+		return otherParams.containsKey(key);
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		Map<String, Object> params = new HashMap<>(otherParams);
+		params.put("uniqueWayID", uniqueWayID);
+		params.put("oppositeWayUniqueId", oppositeWayUniqueId);
+		params.put("modeOfTransports", modeOfTransports);
+		params.put("allowedMaxSpeedInMpS", attributes.getAllowedMaxSpeedInKmh());
+		params.put("lanesCount", attributes.getLanesCount());
+		params.put("coordinateList", coordinateList);
+		return Collections.unmodifiableMap(params).entrySet();
+	}
+}
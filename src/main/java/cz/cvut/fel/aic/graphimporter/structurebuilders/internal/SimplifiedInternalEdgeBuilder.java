@@ -4,9 +4,11 @@ import com.google.common.collect.Lists;
 import cz.cvut.fel.aic.geographtools.EdgeId;
 import cz.cvut.fel.aic.geographtools.GPSLocation;
 import cz.cvut.fel.aic.geographtools.util.GPSLocationTools;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.PolylineStore;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
+import cz.cvut.fel.aic.graphimporter.util.LongIntHashMap;
 import java.util.*;
-import static java.util.stream.Collectors.toList;
+import java.util.function.BiConsumer;
 
 /**
  * @author Zdenek Bousa
@@ -122,11 +124,28 @@ public class SimplifiedInternalEdgeBuilder {
 	 * @param graph
 	 *			Graph from which are retrieved locations of nodes and properties
 	 *			of the edges.
+	 * @param removedEdgeIndices
+	 *			Indices of the removed edges in {@code removedEdges} by the packed tmp ids of their nodes (see
+	 *			{@link TmpGraphBuilder#edgeKey}).
 	 * @param removedEdges
+	 *			Edges removed from the graph, they serve as references for the properties of the new edges.
 	 * @return
 	 */
 	public List<InternalEdgeBuilder> build(int numberOfParts, TmpGraphBuilder<InternalNode, InternalEdge> graph,
-			Map<EdgeId, InternalEdgeBuilder> removedEdges) {
+			LongIntHashMap removedEdgeIndices, List<InternalEdgeBuilder> removedEdges) {
+		return build(numberOfParts, graph, removedEdgeIndices, removedEdges, null);
+	}
+
+	/**
+	 * Same as {@link #build(int, TmpGraphBuilder, LongIntHashMap, List)}, the tmp ids of the nodes of each created
+	 * edge (in the edge direction) are passed to {@code edgeNodes}.
+	 *
+	 * @param edgeNodes
+	 *			Consumer of the created edges and their nodes, can be null.
+	 */
+	public List<InternalEdgeBuilder> build(int numberOfParts, TmpGraphBuilder<InternalNode, InternalEdge> graph,
+			LongIntHashMap removedEdgeIndices, List<InternalEdgeBuilder> removedEdges,
+			BiConsumer<InternalEdgeBuilder, List<Integer>> edgeNodes) {
 		if (numberOfParts < 1)
 			throw new IllegalArgumentException("Number of parts must be positive.");
 		if (numberOfParts > 3)
@@ -140,47 +159,57 @@ public class SimplifiedInternalEdgeBuilder {
 
 		switch (numberOfParts) {
 			case 1 :
-				return build(nodes, graph, removedEdges);
+				return build(nodes, graph, removedEdgeIndices, removedEdges, edgeNodes);
 			case 2 :
 				List<InternalEdgeBuilder> result2 = new ArrayList<>(2);
-				result2.addAll(build(nodes.subList(0, numberOfNodes / 2 + 1), graph, removedEdges));
-				result2.addAll(build(nodes.subList(numberOfNodes / 2, numberOfNodes), graph, removedEdges));
+				result2.addAll(build(nodes.subList(0, numberOfNodes / 2 + 1), graph, removedEdgeIndices, removedEdges, edgeNodes));
+				result2.addAll(build(nodes.subList(numberOfNodes / 2, numberOfNodes), graph, removedEdgeIndices, removedEdges, edgeNodes));
 				return result2;
 			case 3 :
 				List<InternalEdgeBuilder> result3 = new ArrayList<>(3);
-				result3.addAll(build(nodes.subList(0, numberOfNodes / 3 + 1), graph, removedEdges));
-				result3.addAll(build(nodes.subList(numberOfNodes / 3, 2 * numberOfNodes / 3 + 1), graph, removedEdges));
-				result3.addAll(build(nodes.subList(2 * numberOfNodes / 3, numberOfNodes), graph, removedEdges));
+				result3.addAll(build(nodes.subList(0, numberOfNodes / 3 + 1), graph, removedEdgeIndices, removedEdges, edgeNodes));
+				result3.addAll(build(nodes.subList(numberOfNodes / 3, 2 * numberOfNodes / 3 + 1), graph, removedEdgeIndices, removedEdges, edgeNodes));
+				result3.addAll(build(nodes.subList(2 * numberOfNodes / 3, numberOfNodes), graph, removedEdgeIndices, removedEdges, edgeNodes));
 				return result3;
 		}
 		throw new IllegalStateException("Not reachable");
 	}
 
 	private List<InternalEdgeBuilder> build(List<Integer> nodes, TmpGraphBuilder<InternalNode, InternalEdge> graph,
-			Map<EdgeId, InternalEdgeBuilder> removedEdges) {
+			LongIntHashMap removedEdgeIndices, List<InternalEdgeBuilder> removedEdges,
+			BiConsumer<InternalEdgeBuilder, List<Integer>> edgeNodes) {
 		int length = (int) Math.round(calculateLength(nodes, graph));
-		List<GPSLocation> shape = toShape(nodes, graph);
+		PolylineStore.Polyline shape = toShape(nodes, graph);
 		List<InternalEdgeBuilder> result = new ArrayList<>(2);
 		switch (type) {
 			case TWO_WAY :
-				Collections.reverse(shape);
-				result.add(createEdge(Lists.reverse(nodes), length, removedEdges, shape));
+				result.add(createEdge(Lists.reverse(nodes), length, removedEdgeIndices, removedEdges, shape.reversed()));
+				if (edgeNodes != null) {
+					edgeNodes.accept(result.get(0), Lists.reverse(nodes));
+				}
 			case ONEWAY :
-				result.add(createEdge(nodes, length, removedEdges, shape));
+				result.add(createEdge(nodes, length, removedEdgeIndices, removedEdges, shape));
+				if (edgeNodes != null) {
+					edgeNodes.accept(result.get(result.size() - 1), nodes);
+				}
 		}
 		return result;
 	}
 
-	private List<GPSLocation> toShape(List<Integer> nodes, TmpGraphBuilder<InternalNode, InternalEdge> graph) {
-		return nodes.stream().map(graph::getNode).map(b -> b.location).collect(toList());
+	/**
+	 * Stores the locations of the nodes in the polyline store of the graph.
+	 */
+	private PolylineStore.Polyline toShape(List<Integer> nodes, TmpGraphBuilder<InternalNode, InternalEdge> graph) {
+		return graph.getPolylineStore().add(Lists.transform(nodes, node -> graph.getNode(node).location));
 	}
 
-	private InternalEdgeBuilder createEdge(List<Integer> nodes, int length,
-			Map<EdgeId, InternalEdgeBuilder> removedEdges, List<GPSLocation> shape) {
+	private InternalEdgeBuilder createEdge(List<Integer> nodes, int length, LongIntHashMap removedEdgeIndices,
+			List<InternalEdgeBuilder> removedEdges, List<GPSLocation> shape) {
 		int from = nodes.get(0);
 		int m = nodes.get(1);
 		int to = nodes.get(nodes.size() - 1);
-		InternalEdgeBuilder referenceEdge = removedEdges.get(new EdgeId(from, m));
+		int referenceIndex = removedEdgeIndices.getOrDefault(TmpGraphBuilder.edgeKey(from, m), -1);
+		InternalEdgeBuilder referenceEdge = removedEdges.get(referenceIndex);
 		return createEdge(from, to, length, referenceEdge, shape);
 	}
 
@@ -0,0 +1,88 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.util;
+
+import cz.cvut.fel.aic.geographtools.GPSLocation;
+import cz.cvut.fel.aic.geographtools.util.GPSLocationTools;
+import cz.cvut.fel.aic.geographtools.util.Transformer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Projection of GPS coordinates in bulk. Coordinates are collected into primitive arrays and projected in parallel
+ * chunks, the locations are then returned all at once in the order of addition. The projection of each location is
+ * independent, so the transformer has to be usable from more threads at once.
+ */
+public class BatchProjection {
+
+	/**
+	 * Number of locations projected by one task.
+	 */
+	private static final int CHUNK_SIZE = 1024;
+
+	private final Transformer projection;
+
+	private double[] latitudes = new double[16];
+	private double[] longitudes = new double[16];
+	private int[] elevations = new int[16];
+
+	private int size;
+
+	public BatchProjection(Transformer projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * @return Index of the location in the array returned by {@link #project()}.
+	 */
+	public int add(double lat, double lon, int elevation) {
+		if (size == latitudes.length) {
+			latitudes = Arrays.copyOf(latitudes, size * 2);
+			longitudes = Arrays.copyOf(longitudes, size * 2);
+			elevations = Arrays.copyOf(elevations, size * 2);
+		}
+		latitudes[size] = lat;
+		longitudes[size] = lon;
+		elevations[size] = elevation;
+		return size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Projects all added coordinates and clears the batch. The allocated capacity is kept for the next batch.
+	 *
+	 * @return Projected locations in the order of addition.
+	 */
+	public GPSLocation[] project() {
+		GPSLocation[] locations = new GPSLocation[size];
+		int chunkCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+			int end = Math.min(locations.length, (chunk + 1) * CHUNK_SIZE);
+			for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+				locations[i] = GPSLocationTools.createGPSLocation(latitudes[i], longitudes[i], elevations[i],
+						projection);
+			}
+		});
+		size = 0;
+		return locations;
+	}
+}
@@ -0,0 +1,80 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive {@code int} values. It's used instead of {@code List<Integer>} where the boxing
+ * overhead matters.
+ */
+public class IntArrayList {
+
+	private int[] values;
+
+	private int size;
+
+	public IntArrayList() {
+		this(16);
+	}
+
+	public IntArrayList(int initialCapacity) {
+		values = new int[Math.max(initialCapacity, 1)];
+	}
+
+	public void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	public int get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return values[index];
+	}
+
+	public void set(int index, int value) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		values[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all values, the allocated capacity is kept for the reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,94 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive {@code long} values. It's used instead of {@code List<Long>} where the boxing
+ * overhead matters.
+ */
+public class LongArrayList {
+
+	private long[] values;
+
+	private int size;
+
+	public LongArrayList() {
+		this(16);
+	}
+
+	public LongArrayList(int initialCapacity) {
+		values = new long[Math.max(initialCapacity, 1)];
+	}
+
+	public void add(long value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	public long get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return values[index];
+	}
+
+	public void set(int index, long value) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		values[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all values, the allocated capacity is kept for the reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Sorts the values and removes the duplicates, so the list can be searched by {@link Arrays#binarySearch}.
+	 */
+	public void sortUnique() {
+		Arrays.sort(values, 0, size);
+		int uniqueSize = 0;
+		for (int i = 0; i < size; i++) {
+			if (uniqueSize == 0 || values[uniqueSize - 1] != values[i]) {
+				values[uniqueSize++] = values[i];
+			}
+		}
+		size = uniqueSize;
+	}
+
+	public long[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,187 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.util;
+
+import java.util.Arrays;
+
+/**
+ * Map from {@code long} keys to {@code int} values based on an open addressing hash table with linear probing. Keys
+ * and values are kept in primitive arrays, so neither the lookups nor the insertions allocate objects. Removed entries
+ * are deleted by shifting the following entries of the probe sequence back, so no tombstones are left in the table.
+ * <p>
+ * {@link Long#MIN_VALUE} marks the empty slots, so it can't be used as a key.
+ */
+public class LongIntHashMap {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private static final double MAX_LOAD_FACTOR = 0.7;
+
+	private static final int MAX_TABLE_SIZE = 1 << 30;
+
+	private long[] keys;
+
+	private int[] values;
+
+	private int mask;
+
+	private int size;
+
+	private int resizeThreshold;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize expected number of entries
+	 */
+	public LongIntHashMap(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	public void put(long key, int value) {
+		if (key == EMPTY) {
+			throw new IllegalArgumentException("Key " + key + " can't be stored.");
+		}
+		int slot = findSlot(key);
+		if (keys[slot] == EMPTY) {
+			if (size >= resizeThreshold) {
+				resize();
+				slot = findSlot(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+	}
+
+	public boolean containsKey(long key) {
+		return keys[findSlot(key)] == key;
+	}
+
+	/**
+	 * @return Value of the key or {@code defaultValue} if the map doesn't contain the key.
+	 */
+	public int getOrDefault(long key, int defaultValue) {
+		int slot = findSlot(key);
+		return keys[slot] == key ? values[slot] : defaultValue;
+	}
+
+	/**
+	 * @return True if the key was present.
+	 */
+	public boolean remove(long key) {
+		int slot = findSlot(key);
+		if (keys[slot] != key) {
+			return false;
+		}
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int home = hash(keys[next]) & mask;
+			// the entry can fill the gap only if the gap lies between its home slot and its current slot
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+		size--;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		allocate(tableSizeFor(0));
+	}
+
+	public void forEach(EntryConsumer consumer) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY) {
+				consumer.accept(keys[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return Slot containing the key or the empty slot where the key should be inserted.
+	 */
+	private int findSlot(long key) {
+		int slot = hash(key) & mask;
+		while (keys[slot] != key && keys[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		if (keys.length == MAX_TABLE_SIZE) {
+			throw new IllegalStateException("Map can't hold more than " + size + " entries.");
+		}
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = findSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	private void allocate(int tableSize) {
+		keys = new long[tableSize];
+		Arrays.fill(keys, EMPTY);
+		values = new int[tableSize];
+		mask = tableSize - 1;
+		resizeThreshold = (int) (tableSize * MAX_LOAD_FACTOR);
+		size = 0;
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		long required = (long) (Math.max(expectedSize, 16) / MAX_LOAD_FACTOR) + 1;
+		if (required > MAX_TABLE_SIZE) {
+			return MAX_TABLE_SIZE;
+		}
+		return Integer.highestOneBit((int) required - 1) << 1;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@FunctionalInterface
+	public interface EntryConsumer {
+
+		void accept(long key, int value);
+	}
+}
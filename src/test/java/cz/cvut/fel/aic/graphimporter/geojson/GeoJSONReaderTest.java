@@ -22,6 +22,7 @@ import cz.cvut.fel.aic.geographtools.util.Transformer;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdge;
 import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNode;
+import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
 public class GeoJSONReaderTest {
@@ -38,4 +39,21 @@ public class GeoJSONReaderTest {
 		GeoJSONReader roadImporter = new GeoJSONReader(getClass().getResource("test2/graph_edges.geojson").getPath(), getClass().getResource("test2/graph_nodes.geojson").getPath(), new Transformer(32633));
 		TmpGraphBuilder<InternalNode, InternalEdge> graph = roadImporter.loadGraph();
 	}
+
+	/**
+	 * Test that the streaming import passes the same nodes and edges as the ones in the loaded graph.
+	 */
+	@Test
+	public void testStreaming() throws Exception {
+		GeoJSONReader roadImporter = new GeoJSONReader(getClass().getResource("test1/graph_edges.geojson").getPath(), getClass().getResource("test1/graph_nodes.geojson").getPath(), new Transformer(32633));
+		TmpGraphBuilder<InternalNode, InternalEdge> graph = roadImporter.loadGraph();
+
+		GeoJSONReader streamingImporter = new GeoJSONReader(getClass().getResource("test1/graph_edges.geojson").getPath(), getClass().getResource("test1/graph_nodes.geojson").getPath(), new Transformer(32633));
+		TmpGraphBuilder<InternalNode, InternalEdge> sink = new TmpGraphBuilder<>();
+		streamingImporter.loadGraph(sink);
+
+		assertEquals(graph.getNodeCount(), sink.getNodeCount());
+		assertEquals(graph.getEdgeCount(), sink.getEdgeCount());
+		assertEquals(graph.getEdgesById().keySet(), sink.getEdgesById().keySet());
+	}
 }
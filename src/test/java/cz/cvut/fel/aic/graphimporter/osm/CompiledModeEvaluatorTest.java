@@ -0,0 +1,153 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.cvut.fel.aic.geographtools.TransportMode;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class CompiledModeEvaluatorTest {
+
+	/**
+	 * Test of evaluators compiled from the test files, the results have to be the same as the results of the
+	 * original evaluators.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEvaluate() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		Map<TransportMode, TagEvaluator> modeEvaluators = new EnumMap<>(TransportMode.class);
+		modeEvaluators.put(TransportMode.CAR, mapper.readValue(this.getClass().getResourceAsStream
+				("incl_excl_tag_evaluator_test1.json"), InclExclTagEvaluator.class));
+		modeEvaluators.put(TransportMode.BIKE, mapper.readValue(this.getClass().getResourceAsStream
+				("incl_excl_tag_evaluator_test2.json"), InclExclTagEvaluator.class));
+		modeEvaluators.put(TransportMode.WALK, mapper.readValue(this.getClass().getResourceAsStream
+				("incl_excl_tag_evaluator_test3.json"), InclExclTagEvaluator.class));
+		Map<TransportMode, TagEvaluator> oneWayEvaluators = new EnumMap<>(TransportMode.class);
+		oneWayEvaluators.put(TransportMode.CAR, new OneTagEvaluator("oneway", "yes"));
+		oneWayEvaluators.put(TransportMode.BIKE, TagEvaluator.ALWAYS_FALSE);
+
+		CompiledModeEvaluator evaluator = new CompiledModeEvaluator(modeEvaluators, oneWayEvaluators);
+
+		Map<String, String> tags = new HashMap<>();
+		assertResult(evaluator, modeEvaluators, oneWayEvaluators, tags);
+
+		tags.put("highway", "trunk");
+		assertResult(evaluator, modeEvaluators, oneWayEvaluators, tags);
+
+		tags.put("access", "no");
+		assertResult(evaluator, modeEvaluators, oneWayEvaluators, tags);
+
+		tags.put("oneway", "yes");
+		tags.put("motor_vehicle", "yes");
+		assertResult(evaluator, modeEvaluators, oneWayEvaluators, tags);
+
+		tags.put("highway", "pedestrian");
+		assertResult(evaluator, modeEvaluators, oneWayEvaluators, tags);
+	}
+
+	/**
+	 * Test of the default mode evaluators. A primary road is allowed for all modes, a path only for walking and cycling.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testDefaultEvaluators() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		Map<TransportMode, TagEvaluator> modeEvaluators = new EnumMap<>(TransportMode.class);
+		for (TransportMode mode : EnumSet.of(TransportMode.CAR, TransportMode.BIKE, TransportMode.WALK)) {
+			modeEvaluators.put(mode, mapper.readValue(OsmImporter.class.getResourceAsStream("mode/"
+					+ mode.name().toLowerCase() + ".json"), InclExclTagEvaluator.class));
+		}
+		CompiledModeEvaluator evaluator = new CompiledModeEvaluator(modeEvaluators, Collections.emptyMap());
+
+		Map<String, String> tags = new HashMap<>();
+		tags.put("highway", "primary");
+		assertEquals(modeEvaluators.keySet(), CompiledModeEvaluator.getModes(evaluator.evaluate(tags)));
+
+		tags.put("highway", "path");
+		assertEquals(EnumSet.of(TransportMode.BIKE, TransportMode.WALK), CompiledModeEvaluator.getModes(evaluator.evaluate(tags)));
+	}
+
+	/**
+	 * Subclasses of the include/exclude evaluator can override the evaluation, so they aren't compiled.
+	 */
+	@Test
+	public void testSubclassEvaluator() {
+		Map<String, Set<String>> include = Collections.singletonMap("highway", Collections.singleton("*"));
+		Map<String, Set<String>> none = Collections.emptyMap();
+		Map<TransportMode, TagEvaluator> modeEvaluators = new EnumMap<>(TransportMode.class);
+		modeEvaluators.put(TransportMode.CAR, new InclExclTagEvaluator(include, none, none, none) {
+			@Override
+			public boolean test(Map<String, String> tags) {
+				return super.test(tags) && !"proposed".equals(tags.get("highway"));
+			}
+		});
+		modeEvaluators.put(TransportMode.WALK, new InclExclTagEvaluator(include, none, none, none));
+		Map<TransportMode, TagEvaluator> oneWayEvaluators = new EnumMap<>(TransportMode.class);
+		oneWayEvaluators.put(TransportMode.CAR, new InclExclTagEvaluator(Collections.singletonMap("oneway",
+				Collections.singleton("yes")), none, none, none) {
+			@Override
+			public boolean test(Map<String, String> tags) {
+				return super.test(tags) || "motorway".equals(tags.get("highway"));
+			}
+		});
+
+		CompiledModeEvaluator evaluator = new CompiledModeEvaluator(modeEvaluators, oneWayEvaluators);
+
+		Map<String, String> tags = new HashMap<>();
+		tags.put("highway", "proposed");
+		assertResult(evaluator, modeEvaluators, oneWayEvaluators, tags);
+		assertEquals(EnumSet.of(TransportMode.WALK), CompiledModeEvaluator.getModes(evaluator.evaluate(tags)));
+
+		tags.put("highway", "motorway");
+		assertResult(evaluator, modeEvaluators, oneWayEvaluators, tags);
+		assertEquals(EnumSet.of(TransportMode.CAR), CompiledModeEvaluator.getOneWayModes(evaluator.evaluate(tags)));
+	}
+
+	private static void assertResult(CompiledModeEvaluator evaluator, Map<TransportMode, TagEvaluator> modeEvaluators,
+									 Map<TransportMode, TagEvaluator> oneWayEvaluators, Map<String, String> tags) {
+		long result = evaluator.evaluate(tags);
+		OsmWay way = new OsmWay(1);
+		tags.forEach(way::addTag);
+		assertEquals(result, evaluator.evaluate(way));
+		assertEquals(evaluateAll(modeEvaluators, tags), CompiledModeEvaluator.getModes(result));
+		assertEquals(evaluateAll(oneWayEvaluators, tags), CompiledModeEvaluator.getOneWayModes(result));
+	}
+
+	private static EnumSet<TransportMode> evaluateAll(Map<TransportMode, TagEvaluator> evaluators,
+													  Map<String, String> tags) {
+		EnumSet<TransportMode> modes = EnumSet.noneOf(TransportMode.class);
+		for (Map.Entry<TransportMode, TagEvaluator> entry : evaluators.entrySet()) {
+			if (entry.getValue().test(tags)) {
+				modes.add(entry.getKey());
+			}
+		}
+		return modes;
+	}
+}
@@ -19,7 +19,11 @@
 package cz.cvut.fel.aic.graphimporter.osm;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -118,4 +122,58 @@ public class InclExclTagEvaluatorTest {
 		t1.put("highway", "pedestrian");
 		assertFalse(eval.test(t1));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Test of the evaluation of the element tags by the codes, the results have to be the same as the results of the
+	 * evaluation of the tag map.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testElement() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		InclExclTagEvaluator eval = mapper.readValue(this.getClass().getResourceAsStream
+				("incl_excl_tag_evaluator_test1.json"), InclExclTagEvaluator.class);
+		TagEvaluator incl = new InclTagEvaluator(Collections.singletonMap("highway",
+				new HashSet<>(Arrays.asList("trunk", "pedestrian"))));
+		TagEvaluator oneTag = new OneTagEvaluator("motor_vehicle", "yes");
+		TagEvaluator anyValue = new OneTagEvaluator("access", "*");
+
+		String[][] tags = {{"highway", "trunk"}, {"name", "Some street name that isn't interned"}, {"access", "no"},
+				{"motor_vehicle", "yes"}, {"highway", "pedestrian"}, {"motor_vehicle", "no"}};
+		Map<String, String> t1 = new HashMap<>();
+		OsmWay way = new OsmWay(1);
+		assertSameResult(t1, way, eval, incl, oneTag, anyValue);
+		for (String[] tag : tags) {
+			t1.put(tag[0], tag[1]);
+			way.addTag(tag[0], tag[1]);
+			assertSameResult(t1, way, eval, incl, oneTag, anyValue);
+		}
+	}
+
+	/**
+	 * Subclasses overriding the string based evaluation are used for the elements as well.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSubclassElement() throws Exception {
+		TagEvaluator incl = new InclTagEvaluator(Collections.singletonMap("highway", Collections.singleton("*"))) {
+			@Override
+			protected boolean include(Map.Entry<String, String> tag) {
+				return super.include(tag) && !tag.getValue().equals("proposed");
+			}
+		};
+		OsmWay way = new OsmWay(1);
+		way.addTag("highway", "proposed");
+
+		assertFalse(incl.test(way.getTags()));
+		assertFalse(incl.test(way));
+	}
+
+	private static void assertSameResult(Map<String, String> tags, OsmWay way, TagEvaluator... evaluators) {
+		for (TagEvaluator evaluator : evaluators) {
+			assertEquals(tags.toString(), evaluator.test(tags), evaluator.test(way));
+		}
+	}
+}
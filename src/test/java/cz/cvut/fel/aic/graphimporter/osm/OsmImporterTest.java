@@ -0,0 +1,446 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm;
+
+import cz.cvut.fel.aic.geographtools.TransportMode;
+import cz.cvut.fel.aic.geographtools.util.Transformer;
+import cz.cvut.fel.aic.graphimporter.GraphCreator;
+import cz.cvut.fel.aic.graphimporter.osm.area.AreaFilter;
+import cz.cvut.fel.aic.graphimporter.osm.area.BoundingBoxAreaFilter;
+import cz.cvut.fel.aic.graphimporter.osm.area.PolygonAreaFilter;
+import cz.cvut.fel.aic.graphimporter.osm.change.OsmImportState;
+import cz.cvut.fel.aic.graphimporter.osm.change.SimplifiedGraphState;
+import cz.cvut.fel.aic.graphimporter.osm.handler.OsmXmlReader;
+import cz.cvut.fel.aic.graphimporter.osm.handler.OsmXmlScanner;
+import cz.cvut.fel.aic.graphimporter.osm.store.InMemoryNodeLocationStore;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.EdgeBuilder;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.GraphSink;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.NodeBuilder;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.TmpGraphBuilder;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.EdgeAttributes;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdge;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdgeBuilder;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNode;
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OsmImporterTest {
+
+	/**
+	 * Way 10 leaves the area at node 3, so it's split into two sections. Way 11 has only one node in the area, so
+	 * it doesn't have any section. The result is the same for both filter types and for the batched way processing.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testAreaFilterSplitsWays() throws Exception {
+		AreaFilter box = new BoundingBoxAreaFilter(50.0, 13.99, 50.1, 14.1);
+		AreaFilter polygon = new PolygonAreaFilter(Collections.singletonList(new double[][]{{50.0, 13.99},
+				{50.0, 14.1}, {50.1, 14.1}, {50.1, 13.99}}));
+		// way 12 is one-way only for cars
+		List<String> expectedEdges = Arrays.asList("1-2", "1-8", "2-1", "4-5", "5-4", "8-1");
+
+		for (AreaFilter filter : Arrays.asList(box, polygon)) {
+			for (int batchSize : new int[]{1, 3}) {
+				OsmImporter importer = createImporter();
+				importer.setAreaFilter(filter);
+				importer.setWayBatchSize(batchSize);
+				TmpGraphBuilder<InternalNode, InternalEdge> graph = importer.loadGraph();
+
+				assertEquals(Arrays.asList(1L, 2L, 4L, 5L, 8L), getNodes(graph));
+				assertEquals(expectedEdges, getEdges(graph));
+			}
+		}
+	}
+
+	/**
+	 * The batched way processing gives the same graph as the sequential one, including the tmp ids, the order of the
+	 * edges and the unique way ids. Batch size 3 splits the ways of the file into two batches. Path 14 shares the
+	 * segment of way 10, so its modes are merged into the existing edges.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWayBatchesKeepIds() throws Exception {
+		List<String> expected = null;
+		for (int batchSize : new int[]{0, 1, 3}) {
+			OsmImporter importer = createImporter();
+			importer.setWayBatchSize(batchSize);
+			TmpGraphBuilder<InternalNode, InternalEdge> graph = importer.loadGraph();
+
+			List<String> elements = new ArrayList<>();
+			for (NodeBuilder<InternalNode> node : graph.getAllNodes()) {
+				elements.add("node " + node.tmpId + " " + node.sourceId);
+			}
+			for (EdgeBuilder<InternalEdge, InternalNode> edgeBuilder : graph.getAllEdges()) {
+				InternalEdgeBuilder edge = (InternalEdgeBuilder) edgeBuilder;
+				elements.add("edge " + edge.getTmpFromId() + "-" + edge.getTmpToId() + " " + edge.uniqueWayID + " "
+						+ edge.oppositeWayUniqueId + " " + edge.getAttributes().getModesOfTransport());
+			}
+			if (expected == null) {
+				expected = elements;
+			} else {
+				assertEquals("Batch size " + batchSize, expected, elements);
+			}
+		}
+	}
+
+	/**
+	 * The streaming import passes each node before the edges using it and calls {@link GraphSink#finish()} once at
+	 * the end. The segment of way 10 shared with path 14 is passed as two edges in each direction, each with the modes
+	 * of its way, other edges are the same as in the graph builder.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreaming() throws Exception {
+		List<String> expectedEdges = getEdges(createImporter().loadGraph());
+
+		RecordingGraphSink sink = new RecordingGraphSink();
+		createImporter().loadGraph(sink);
+
+		assertEquals(1, sink.finishCount);
+		List<String> streamedEdges = new ArrayList<>();
+		Map<String, List<Set<TransportMode>>> streamedModes = new HashMap<>();
+		for (InternalEdgeBuilder edge : sink.edges) {
+			String key = sink.sourceIds.get(edge.getTmpFromId()) + "-" + sink.sourceIds.get(edge.getTmpToId());
+			streamedEdges.add(key);
+			streamedModes.computeIfAbsent(key, k -> new ArrayList<>()).add(edge.getAttributes().getModesOfTransport());
+		}
+		Collections.sort(streamedEdges);
+
+		List<String> expectedStreamedEdges = new ArrayList<>(expectedEdges);
+		expectedStreamedEdges.addAll(Arrays.asList("1-2", "2-1"));
+		Collections.sort(expectedStreamedEdges);
+		assertEquals(expectedStreamedEdges, streamedEdges);
+		for (String edge : Arrays.asList("1-2", "2-1")) {
+			assertEquals(Arrays.asList(EnumSet.of(TransportMode.CAR, TransportMode.WALK), EnumSet.of(TransportMode.WALK)),
+					streamedModes.get(edge));
+		}
+	}
+
+	/**
+	 * The two-pass import stores only the nodes referenced by the allowed ways: node 7 isn't referenced by any way and
+	 * node 9 only by a way without a highway tag. The graph is the same as in the one-pass import.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTwoPassImport() throws Exception {
+		OsmImporter onePass = createImporter();
+		RecordingNodeLocationStore onePassStore = new RecordingNodeLocationStore();
+		onePass.setNodeLocationStore(onePassStore);
+		TmpGraphBuilder<InternalNode, InternalEdge> onePassGraph = onePass.loadGraph();
+
+		OsmImporter twoPass = createImporter();
+		RecordingNodeLocationStore twoPassStore = new RecordingNodeLocationStore();
+		twoPass.setNodeLocationStore(twoPassStore);
+		twoPass.setTwoPassImport(true);
+		TmpGraphBuilder<InternalNode, InternalEdge> twoPassGraph = twoPass.loadGraph();
+
+		assertEquals(new TreeSet<>(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)), onePassStore.storedIds);
+		assertEquals(new TreeSet<>(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 8L)), twoPassStore.storedIds);
+		assertEquals(getNodes(onePassGraph), getNodes(twoPassGraph));
+		assertEquals(getEdges(onePassGraph), getEdges(twoPassGraph));
+	}
+
+	/**
+	 * The ways reference many more nodes than there are, so the referenced ids are deduplicated during the first
+	 * pass. Node 1000 isn't referenced and node 1001 only by a way without tags.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTwoPassImportManyReferences() throws Exception {
+		File file = File.createTempFile("two_pass_test", ".osm");
+		try {
+			try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+				writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+				writer.println("<osm version=\"0.6\">");
+				for (int node = 0; node < 300; node++) {
+					writeNode(writer, node);
+				}
+				writeNode(writer, 1000);
+				writeNode(writer, 1001);
+				for (int way = 0; way < 700; way++) {
+					writer.println("<way id=\"" + way + "\">");
+					for (int i = 0; i < 100; i++) {
+						writer.println("<nd ref=\"" + (way + i) % 300 + "\"/>");
+					}
+					writer.println("<tag k=\"highway\" v=\"residential\"/>");
+					writer.println("</way>");
+				}
+				writer.println("<way id=\"700\"><nd ref=\"0\"/><nd ref=\"1001\"/></way>");
+				writer.println("</osm>");
+			}
+			OsmImporter onePass = new OsmImporter(file, EnumSet.of(TransportMode.CAR), new Transformer(32633));
+			TmpGraphBuilder<InternalNode, InternalEdge> onePassGraph = onePass.loadGraph();
+
+			OsmImporter twoPass = new OsmImporter(file, EnumSet.of(TransportMode.CAR), new Transformer(32633));
+			RecordingNodeLocationStore twoPassStore = new RecordingNodeLocationStore();
+			twoPass.setNodeLocationStore(twoPassStore);
+			twoPass.setTwoPassImport(true);
+			TmpGraphBuilder<InternalNode, InternalEdge> twoPassGraph = twoPass.loadGraph();
+
+			Set<Long> expectedIds = new TreeSet<>();
+			for (long node = 0; node < 300; node++) {
+				expectedIds.add(node);
+			}
+			assertEquals(expectedIds, twoPassStore.storedIds);
+			assertEquals(new ArrayList<>(expectedIds), getNodes(twoPassGraph));
+			assertEquals(getNodes(onePassGraph), getNodes(twoPassGraph));
+			assertEquals(getEdges(onePassGraph), getEdges(twoPassGraph));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void writeNode(PrintWriter writer, int id) {
+		writer.println("<node id=\"" + id + "\" lat=\"" + (50 + id * 1e-4) + "\" lon=\"" + (14 + id * 1e-4)
+				+ "\"/>");
+	}
+
+	/**
+	 * Way 13 without tags follows the primary way 12, it would get edges if the tags leaked between the reused
+	 * elements.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReusedElements() throws Exception {
+		TmpGraphBuilder<InternalNode, InternalEdge> expected = createImporter().loadGraph();
+		for (OsmReader reader : new OsmReader[]{new OsmXmlReader(true), new OsmXmlScanner(true)}) {
+			OsmImporter importer = createImporter();
+			importer.setReader(reader);
+			TmpGraphBuilder<InternalNode, InternalEdge> graph = importer.loadGraph();
+
+			assertFalse(getNodes(graph).contains(9L));
+			assertEquals(getNodes(expected), getNodes(graph));
+			assertEquals(getEdges(expected), getEdges(graph));
+		}
+	}
+
+	/**
+	 * All segments of way 10 share one attributes instance per direction. Adding a mode to one edge doesn't change
+	 * the attributes of the other segments.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWayAttributesShared() throws Exception {
+		TmpGraphBuilder<InternalNode, InternalEdge> graph = createImporter().loadGraph();
+		Map<String, InternalEdgeBuilder> edges = new HashMap<>();
+		for (EdgeBuilder<InternalEdge, InternalNode> edge : graph.getAllEdges()) {
+			edges.put(graph.getNode(edge.getTmpFromId()).sourceId + "-" + graph.getNode(edge.getTmpToId()).sourceId,
+					(InternalEdgeBuilder) edge);
+		}
+
+		EdgeAttributes forward = edges.get("1-2").getAttributes();
+		EdgeAttributes backward = edges.get("2-1").getAttributes();
+		assertSame(EdgeAttributes.of(EnumSet.of(TransportMode.CAR, TransportMode.WALK),
+				forward.getAllowedMaxSpeedInKmh(), forward.getLanesCount()), forward);
+		for (String edge : Arrays.asList("2-3", "3-4", "4-5")) {
+			assertSame(forward, edges.get(edge).getAttributes());
+		}
+		for (String edge : Arrays.asList("3-2", "4-3", "5-4")) {
+			assertSame(backward, edges.get(edge).getAttributes());
+		}
+		assertNotSame(forward, edges.get("1-8").getAttributes());
+
+		edges.get("1-2").addModeOfTransports(EnumSet.of(TransportMode.BIKE));
+
+		assertTrue(edges.get("1-2").getAttributes().getModesOfTransport().contains(TransportMode.BIKE));
+		assertSame(forward, edges.get("2-3").getAttributes());
+		assertFalse(forward.getModesOfTransport().contains(TransportMode.BIKE));
+	}
+
+	/**
+	 * The change moves node 3 and deletes way 12 starting in it, so way 100 becomes one simplified edge. It also
+	 * extends way 101 by a new way with the same attributes. The updated graph is the same as the simplified graph of
+	 * the updated OSM file, the edges of ways 200 and 201 far from the changes are kept in the stored graph. The
+	 * applied change file isn't applied again.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testIncrementalImport() throws Exception {
+		File stateFile = Files.createTempDirectory("import_state").resolve("state.ser").toFile();
+		stateFile.deleteOnExit();
+		File changeFile = new File(getClass().getResource("incremental_test_change.osc").toURI());
+
+		OsmImporter initial = createImporter("incremental_test.osm");
+		initial.setImportStateFile(stateFile);
+		assertFalse(initial.isSerializedGraphOutdated());
+		List<String> initialEdges = getSimplifiedEdges(initial.loadSimplifiedGraph());
+		assertEquals(getSimplifiedEdges(createImporter("incremental_test.osm").loadSimplifiedGraph()), initialEdges);
+		SimplifiedGraphState storedGraph = OsmImportState.load(stateFile).getGraph();
+		int[] keptEdges = storedGraph.getWayEdges(200);
+		int[] changedEdges = storedGraph.getWayEdges(100);
+		assertEquals(2, keptEdges.length);
+		assertEquals(4, changedEdges.length);
+
+		OsmImporter updated = createImporter("incremental_test.osm");
+		updated.setImportStateFile(stateFile);
+		updated.setChangeFiles(changeFile);
+		assertTrue(updated.isSerializedGraphOutdated());
+		List<String> updatedEdges = getSimplifiedEdges(updated.loadSimplifiedGraph());
+		assertFalse(updated.isSerializedGraphOutdated());
+
+		assertEquals(getSimplifiedEdges(createImporter("incremental_test_updated.osm").loadSimplifiedGraph()),
+				updatedEdges);
+		assertFalse(updatedEdges.equals(initialEdges));
+		storedGraph = OsmImportState.load(stateFile).getGraph();
+		assertArrayEquals(keptEdges, storedGraph.getWayEdges(200));
+		assertEquals(2, storedGraph.getWayEdges(100).length);
+		assertEquals(0, storedGraph.getWayEdges(102).length);
+		assertEquals(Collections.singletonList(changeFile.getAbsolutePath()),
+				OsmImportState.readAppliedChangeFiles(stateFile));
+
+		OsmImporter repeated = createImporter("incremental_test.osm");
+		repeated.setImportStateFile(stateFile);
+		repeated.setChangeFiles(changeFile);
+		assertFalse(repeated.isSerializedGraphOutdated());
+		assertEquals(updatedEdges, getSimplifiedEdges(repeated.loadSimplifiedGraph()));
+		assertEquals(1, OsmImportState.readAppliedChangeFiles(stateFile).size());
+	}
+
+	/**
+	 * The graph creator checks the importer before it uses the serialized graph, so the unsupported settings are
+	 * reported even if the serialized graph exists.
+	 *
+	 * @throws Exception
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testIncrementalImportRejectsTurnRestrictions() throws Exception {
+		OsmImporter importer = createImporter("incremental_test.osm");
+		importer.setImportStateFile(Files.createTempDirectory("import_state").resolve("state.ser").toFile());
+		importer.setTurnRestrictionsEnabled(true);
+
+		new GraphCreator<InternalNode, InternalEdge>(true, true, importer, null, null).getMap();
+	}
+
+	static OsmImporter createImporter() throws Exception {
+		return createImporter("importer_test.osm");
+	}
+
+	static OsmImporter createImporter(String resource) throws Exception {
+		File file = new File(OsmImporterTest.class.getResource(resource).toURI());
+		return new OsmImporter(file, EnumSet.of(TransportMode.CAR, TransportMode.WALK), new Transformer(32633));
+	}
+
+	/**
+	 * @return Sorted source ids of the graph nodes.
+	 */
+	static List<Long> getNodes(TmpGraphBuilder<InternalNode, InternalEdge> graph) {
+		List<Long> nodes = new ArrayList<>();
+		for (NodeBuilder<InternalNode> node : graph.getAllNodes()) {
+			nodes.add(node.sourceId);
+		}
+		Collections.sort(nodes);
+		return nodes;
+	}
+
+	/**
+	 * @return Sorted edges as pairs of the source ids of their nodes.
+	 */
+	static List<String> getEdges(TmpGraphBuilder<InternalNode, InternalEdge> graph) {
+		List<String> edges = new ArrayList<>();
+		for (EdgeBuilder<InternalEdge, InternalNode> edge : graph.getAllEdges()) {
+			edges.add(graph.getNode(edge.getTmpFromId()).sourceId + "-" + graph.getNode(edge.getTmpToId()).sourceId);
+		}
+		Collections.sort(edges);
+		return edges;
+	}
+
+	/**
+	 * @return Sorted edges with the source ids of their nodes, the length, the number of the shape points and the
+	 * attributes.
+	 */
+	static List<String> getSimplifiedEdges(TmpGraphBuilder<InternalNode, InternalEdge> graph) {
+		List<String> edges = new ArrayList<>();
+		for (EdgeBuilder<InternalEdge, InternalNode> edgeBuilder : graph.getAllEdges()) {
+			InternalEdgeBuilder edge = (InternalEdgeBuilder) edgeBuilder;
+			edges.add(graph.getNode(edge.getTmpFromId()).sourceId + "-" + graph.getNode(edge.getTmpToId()).sourceId
+					+ " " + edge.getLengthCm() + " " + edge.coordinateList.size() + " " + edge.getAttributes());
+		}
+		Collections.sort(edges);
+		return edges;
+	}
+
+	/**
+	 * Sink recording the passed edges. It checks that the nodes of each edge were passed before it and that nothing is
+	 * passed after the finish.
+	 */
+	private static class RecordingGraphSink implements GraphSink<InternalNode, InternalEdge> {
+
+		/**
+		 * Source ids of the passed nodes by their tmp ids.
+		 */
+		private final Map<Integer, Long> sourceIds = new HashMap<>();
+
+		private final List<InternalEdgeBuilder> edges = new ArrayList<>();
+
+		private int finishCount;
+
+		@Override
+		public void addNode(NodeBuilder<InternalNode> node) {
+			assertEquals(0, finishCount);
+			assertNull(sourceIds.put(node.tmpId, node.sourceId));
+		}
+
+		@Override
+		public void addEdge(EdgeBuilder<InternalEdge, InternalNode> edge) {
+			assertEquals(0, finishCount);
+			assertTrue("Edge passed before its from node", sourceIds.containsKey(edge.getTmpFromId()));
+			assertTrue("Edge passed before its to node", sourceIds.containsKey(edge.getTmpToId()));
+			edges.add((InternalEdgeBuilder) edge);
+		}
+
+		@Override
+		public void finish() {
+			finishCount++;
+		}
+	}
+
+	/**
+	 * In-memory store recording the ids of all stored nodes.
+	 */
+	private static class RecordingNodeLocationStore extends InMemoryNodeLocationStore {
+
+		private final Set<Long> storedIds = new TreeSet<>();
+
+		@Override
+		public void put(long id, double lat, double lon, int elevation) {
+			storedIds.add(id);
+			super.put(id, lat, lon, elevation);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.area;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class BoundingBoxAreaFilterTest {
+
+	/**
+	 * The box edges and corners are inside.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testContains() throws Exception {
+		AreaFilter filter = new BoundingBoxAreaFilter(50.0, 14.0, 50.1, 14.2);
+
+		assertTrue(filter.contains(50.05, 14.1));
+		assertTrue(filter.contains(50.0, 14.1));
+		assertTrue(filter.contains(50.1, 14.1));
+		assertTrue(filter.contains(50.05, 14.0));
+		assertTrue(filter.contains(50.05, 14.2));
+		assertTrue(filter.contains(50.0, 14.0));
+		assertTrue(filter.contains(50.1, 14.2));
+
+		assertFalse(filter.contains(Math.nextDown(50.0), 14.1));
+		assertFalse(filter.contains(Math.nextUp(50.1), 14.1));
+		assertFalse(filter.contains(50.05, Math.nextDown(14.0)));
+		assertFalse(filter.contains(50.05, Math.nextUp(14.2)));
+	}
+
+	@Test
+	public void testNegativeCoordinates() throws Exception {
+		AreaFilter filter = new BoundingBoxAreaFilter(-34.0, -58.5, -33.9, -58.3);
+
+		assertTrue(filter.contains(-33.95, -58.4));
+		assertFalse(filter.contains(33.95, 58.4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBox() throws Exception {
+		new BoundingBoxAreaFilter(50.1, 14.0, 50.0, 14.2);
+	}
+}
@@ -0,0 +1,127 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.area;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PolygonAreaFilterTest {
+
+	private static final double[][] SQUARE = {{0, 0}, {0, 10}, {10, 10}, {10, 0}};
+
+	private static final double[][] HOLE = {{4, 4}, {4, 6}, {6, 6}, {6, 4}};
+
+	@Test
+	public void testPolygonWithHole() throws Exception {
+		AreaFilter filter = new PolygonAreaFilter(Arrays.asList(SQUARE, HOLE));
+
+		assertTrue(filter.contains(1, 1));
+		assertTrue(filter.contains(9, 5));
+		assertTrue(filter.contains(3.9, 5));
+		assertFalse(filter.contains(5, 5));
+		assertFalse(filter.contains(4.1, 5.9));
+		assertFalse(filter.contains(-1, 5));
+		assertFalse(filter.contains(5, 11));
+	}
+
+	/**
+	 * A point inside more overlapping polygons is inside the area, the polygons don't cancel each other out.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testOverlappingPolygons() throws Exception {
+		double[][] shifted = {{5, 5}, {5, 15}, {15, 15}, {15, 5}};
+		AreaFilter filter = PolygonAreaFilter.fromPolygons(Arrays.asList(Collections.singletonList(SQUARE),
+				Collections.singletonList(shifted)));
+
+		assertTrue(filter.contains(2, 2));
+		assertTrue(filter.contains(7, 7));
+		assertTrue(filter.contains(12, 12));
+		assertFalse(filter.contains(2, 12));
+		assertFalse(filter.contains(16, 16));
+	}
+
+	/**
+	 * Each feature of the GeoJSON file is a separate polygon, the hole of the multipolygon applies only to its
+	 * polygon and geometries other than polygons are ignored.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGeoJsonFeatures() throws Exception {
+		File file = new File(getClass().getResource("overlapping_areas.geojson").toURI());
+		AreaFilter filter = PolygonAreaFilter.fromGeoJson(file);
+
+		assertTrue(filter.contains(50.05, 14.05));
+		assertTrue(filter.contains(50.15, 14.15));
+		assertTrue(filter.contains(50.25, 14.15));
+		assertFalse(filter.contains(50.25, 14.25));
+		assertTrue(filter.contains(51.01, 15.05));
+		assertFalse(filter.contains(50.25, 14.05));
+		assertFalse(filter.contains(52.0, 16.0));
+	}
+
+	/**
+	 * The grid index has to give the same results as the ray casting over all edges.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testIndexMatchesRayCasting() throws Exception {
+		Random random = new Random(42);
+		double[][] star = new double[200][];
+		for (int i = 0; i < star.length; i++) {
+			double angle = 2 * Math.PI * i / star.length;
+			double radius = i % 2 == 0 ? 10 : 4 + random.nextDouble() * 4;
+			star[i] = new double[]{50 + radius * Math.sin(angle) / 100, 14 + radius * Math.cos(angle) / 100};
+		}
+		List<double[][]> rings = Collections.singletonList(star);
+		AreaFilter filter = new PolygonAreaFilter(rings);
+
+		for (int i = 0; i < 100000; i++) {
+			double lat = 49.88 + random.nextDouble() * 0.24;
+			double lon = 13.88 + random.nextDouble() * 0.24;
+			assertEquals(lat + ", " + lon, rayCasting(star, lat, lon), filter.contains(lat, lon));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooFewVertices() throws Exception {
+		new PolygonAreaFilter(Collections.singletonList(new double[][]{{0, 0}, {1, 1}}));
+	}
+
+	private static boolean rayCasting(double[][] ring, double lat, double lon) {
+		boolean inside = false;
+		for (int i = 0; i < ring.length; i++) {
+			double[] from = ring[i];
+			double[] to = ring[(i + 1) % ring.length];
+			if ((from[0] > lat) != (to[0] > lat)
+					&& lon < from[1] + (lat - from[0]) / (to[0] - from[0]) * (to[1] - from[1])) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+}
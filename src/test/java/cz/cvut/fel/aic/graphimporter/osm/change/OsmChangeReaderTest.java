@@ -0,0 +1,134 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.change;
+
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmNode;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmRelation;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OsmChangeReaderTest {
+
+	private static final String CHANGE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<osmChange version=\"0.6\">\n"
+			+ "<create>\n"
+			+ "  <node id=\"1\" version=\"1\" lat=\"50.1\" lon=\"14.2\"><tag k=\"height\" v=\"200\"/></node>\n"
+			+ "  <way id=\"10\" version=\"1\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"highway\" v=\"primary\"/>"
+			+ "<tag k=\"name\" v=\"A\"/></way>\n"
+			+ "</create>\n"
+			+ "<modify>\n"
+			+ "  <node id=\"2\" version=\"2\" lat=\"50.3\" lon=\"14.4\"/>\n"
+			+ "  <relation id=\"20\" version=\"2\"><member type=\"way\" ref=\"10\" role=\"from\"/></relation>\n"
+			+ "</modify>\n"
+			+ "<delete>\n"
+			+ "  <node id=\"3\" version=\"3\"/>\n"
+			+ "  <way id=\"11\" version=\"2\"><nd ref=\"3\"/></way>\n"
+			+ "  <relation id=\"21\" version=\"2\"/>\n"
+			+ "</delete>\n"
+			+ "</osmChange>\n";
+
+	@Test
+	public void testRead() throws Exception {
+		ChangeCollector collector = read(ParseProfile.ALL);
+
+		assertEquals(Arrays.asList(1L, 2L), collector.nodeIds);
+		assertEquals(Arrays.asList(10L), collector.wayIds);
+		assertEquals(Arrays.asList(1L, 2L), collector.wayNodes.get(0));
+		assertEquals(Arrays.asList(20L), collector.relationIds);
+		assertEquals(Arrays.asList(3L), collector.deletedNodes);
+		assertEquals(Arrays.asList(11L), collector.deletedWays);
+		assertEquals(Arrays.asList(21L), collector.deletedRelations);
+	}
+
+	/**
+	 * Relations and tags not needed by the profile are skipped, the deleted elements are reported anyway.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadWithProfile() throws Exception {
+		ParseProfile profile = new ParseProfile(true, null, true, new HashSet<>(Arrays.asList("highway")),
+				false, null);
+		ChangeCollector collector = read(profile);
+
+		assertEquals(Arrays.asList(1L, 2L), collector.nodeIds);
+		assertEquals(1, collector.wayTagCounts.get(0).intValue());
+		assertTrue(collector.relationIds.isEmpty());
+		assertEquals(Arrays.asList(21L), collector.deletedRelations);
+	}
+
+	private static ChangeCollector read(ParseProfile profile) throws Exception {
+		ChangeCollector collector = new ChangeCollector();
+		new OsmChangeReader().read(new ByteArrayInputStream(CHANGE.getBytes(StandardCharsets.UTF_8)), collector,
+				profile);
+		return collector;
+	}
+
+	private static class ChangeCollector implements OsmChangeConsumer {
+
+		private final List<Long> nodeIds = new ArrayList<>();
+		private final List<Long> wayIds = new ArrayList<>();
+		private final List<List<Long>> wayNodes = new ArrayList<>();
+		private final List<Integer> wayTagCounts = new ArrayList<>();
+		private final List<Long> relationIds = new ArrayList<>();
+		private final List<Long> deletedNodes = new ArrayList<>();
+		private final List<Long> deletedWays = new ArrayList<>();
+		private final List<Long> deletedRelations = new ArrayList<>();
+
+		@Override
+		public void accept(OsmNode node) {
+			nodeIds.add(node.getId());
+		}
+
+		@Override
+		public void accept(OsmWay way) {
+			wayIds.add(way.getId());
+			wayNodes.add(new ArrayList<>(way.getNodes()));
+			wayTagCounts.add(way.getTags().size());
+		}
+
+		@Override
+		public void accept(OsmRelation relation) {
+			relationIds.add(relation.getId());
+		}
+
+		@Override
+		public void deleteNode(long id) {
+			deletedNodes.add(id);
+		}
+
+		@Override
+		public void deleteWay(long id) {
+			deletedWays.add(id);
+		}
+
+		@Override
+		public void deleteRelation(long id) {
+			deletedRelations.add(id);
+		}
+	}
+}
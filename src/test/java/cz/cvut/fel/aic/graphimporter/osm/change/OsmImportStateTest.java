@@ -0,0 +1,120 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.change;
+
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OsmImportStateTest {
+
+	/**
+	 * The ways are found by the index of the node ways, the ways put or removed after the index is built are found
+	 * by their current nodes.
+	 */
+	@Test
+	public void testFindWaysWithNodes() {
+		OsmImportState state = new OsmImportState();
+		state.putWay(createWay(10, 1, 2, 3));
+		state.putWay(createWay(11, 3, 4, 3));
+		state.putWay(createWay(12, 5, 6));
+
+		assertEquals(new HashSet<>(Arrays.asList(10L, 11L)), state.findWaysWithNodes(Collections.singleton(3L)));
+		assertEquals(new HashSet<>(Arrays.asList(10L, 12L)), state.findWaysWithNodes(new HashSet<>(Arrays.asList(1L,
+				6L, 7L))));
+
+		state.putWay(createWay(10, 1, 7));
+		state.removeWay(11);
+		state.putWay(createWay(13, 4, 6));
+
+		assertEquals(Collections.emptySet(), state.findWaysWithNodes(Collections.singleton(3L)));
+		assertEquals(new HashSet<>(Arrays.asList(10L)), state.findWaysWithNodes(Collections.singleton(7L)));
+		assertEquals(new HashSet<>(Arrays.asList(12L, 13L)), state.findWaysWithNodes(Collections.singleton(6L)));
+	}
+
+	/**
+	 * A deleted node is replaced by a node added before the last node, so the compacted size is the same as before.
+	 */
+	@Test
+	public void testDeleteAndAddNode() throws IOException {
+		OsmImportState state = new OsmImportState();
+		state.putNode(10, 50.1, 14.1, 0);
+		state.putNode(20, 50.2, 14.2, 0);
+		state.putNode(30, 50.3, 14.3, 0);
+		state.compact();
+
+		state.removeNode(20);
+		state.putNode(15, 50.15, 14.15, 5);
+		assertFalse(state.containsNode(20));
+		assertTrue(state.containsNode(15));
+		state.compact();
+
+		assertNodes(state, "10 50.1 14.1 0", "15 50.15 14.15 5", "30 50.3 14.3 0");
+		assertFalse(state.containsNode(20));
+
+		File file = File.createTempFile("import-state", ".ser");
+		try {
+			state.save(file);
+			OsmImportState loaded = OsmImportState.load(file);
+			assertNodes(loaded, "10 50.1 14.1 0", "15 50.15 14.15 5", "30 50.3 14.3 0");
+			assertEquals(3, loaded.getNodeCount());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Nodes deleted and added at the end are compacted as well.
+	 */
+	@Test
+	public void testDeleteAndAppendNode() {
+		OsmImportState state = new OsmImportState();
+		state.putNode(10, 50.1, 14.1, 0);
+		state.putNode(20, 50.2, 14.2, 0);
+		state.compact();
+
+		state.removeNode(10);
+		state.putNode(30, 50.3, 14.3, 0);
+		state.removeNode(30);
+		state.putNode(25, 50.25, 14.25, 0);
+
+		assertNodes(state, "20 50.2 14.2 0", "25 50.25 14.25 0");
+	}
+
+	private static void assertNodes(OsmImportState state, String... expected) {
+		List<String> nodes = new ArrayList<>();
+		state.forEachNode((id, lat, lon, elevation) -> nodes.add(id + " " + lat + " " + lon + " " + elevation));
+		assertEquals(Arrays.asList(expected), nodes);
+	}
+
+	private static OsmWay createWay(long id, long... nodes) {
+		OsmWay way = new OsmWay(id);
+		for (long node : nodes) {
+			way.addNode(node);
+		}
+		return way;
+	}
+}
@@ -0,0 +1,144 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ParallelBzip2InputStreamTest {
+
+	/**
+	 * Test of a stream with several blocks (the smallest block size is used).
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMultipleBlocks() throws Exception {
+		byte[] data = createData(1_000_000, 1);
+		assertArrayEquals(data, decompress(compress(data), 4));
+	}
+
+	/**
+	 * Test of concatenated streams, as created by pbzip2.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcatenatedStreams() throws Exception {
+		byte[] first = createData(300_000, 2);
+		byte[] second = createData(50_000, 3);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compressed.write(compress(first));
+		compressed.write(compress(second));
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(first);
+		expected.write(second);
+		assertArrayEquals(expected.toByteArray(), decompress(compressed.toByteArray(), 2));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedStream() throws Exception {
+		byte[] compressed = compress(createData(300_000, 4));
+		byte[] truncated = new byte[compressed.length / 2];
+		System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+		decompress(truncated, 2);
+	}
+
+	/**
+	 * Test of a block that contains the end of stream magic number. The symbol map of a block is a bitmap of the used
+	 * byte values, so the block of data using just the byte values below contains the bit pattern of the end of stream
+	 * magic number in its symbol map.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testFalseEndOfStreamMagic() throws Exception {
+		byte[] symbols = createSymbolsWithBitmap(0x1772, 0x4538, 0x5090);
+		byte[] crafted = new byte[symbols.length * 1000];
+		for (int i = 0; i < crafted.length; i++) {
+			crafted[i] = symbols[i % symbols.length];
+		}
+		byte[] following = createData(200_000, 5);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		compressed.write(compress(crafted));
+		compressed.write(compress(following));
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(crafted);
+		expected.write(following);
+		assertArrayEquals(expected.toByteArray(), decompress(compressed.toByteArray(), 2));
+	}
+
+	/**
+	 * Creates byte values whose bzip2 symbol map (one 16 bit bitmap per group of 16 byte values) are the given bitmaps.
+	 */
+	private static byte[] createSymbolsWithBitmap(int... groupBitmaps) {
+		ByteArrayOutputStream symbols = new ByteArrayOutputStream();
+		for (int group = 0; group < groupBitmaps.length; group++) {
+			for (int i = 0; i < 16; i++) {
+				if ((groupBitmaps[group] >>> (15 - i) & 1) != 0) {
+					symbols.write(group * 16 + i);
+				}
+			}
+		}
+		return symbols.toByteArray();
+	}
+
+	/**
+	 * Creates OSM-like text data that compress well.
+	 */
+	private static byte[] createData(int size, long seed) {
+		Random random = new Random(seed);
+		StringBuilder builder = new StringBuilder(size + 100);
+		while (builder.length() < size) {
+			builder.append("  <node id=\"").append(random.nextInt(1_000_000)).append("\" lat=\"50.")
+					.append(random.nextInt(10_000_000)).append("\" lon=\"14.").append(random.nextInt(10_000_000))
+					.append("\"/>\n");
+		}
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(out, 1)) {
+			bzip2.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] decompress(byte[] compressed, int threadCount) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new ParallelBzip2InputStream(new ByteArrayInputStream(compressed), threadCount)) {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+		return out.toByteArray();
+	}
+}
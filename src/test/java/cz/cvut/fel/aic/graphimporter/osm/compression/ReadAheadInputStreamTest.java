@@ -0,0 +1,89 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+	/**
+	 * Test that the failure of the underlying stream is thrown by every following read.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailureIsFinal() throws Exception {
+		InputStream failing = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Broken stream.");
+			}
+		};
+		try (InputStream in = new ReadAheadInputStream(failing)) {
+			for (int i = 0; i < 2; i++) {
+				try {
+					in.read();
+					fail("The failure of the underlying stream wasn't thrown.");
+				} catch (IOException e) {
+					assertEquals("Broken stream.", e.getCause().getMessage());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEndOfStreamIsFinal() throws Exception {
+		try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(new byte[]{1, 2}))) {
+			assertEquals(1, in.read());
+			assertEquals(2, in.read());
+			assertEquals(-1, in.read());
+			assertEquals(-1, in.read(new byte[4], 0, 4));
+		}
+	}
+
+	/**
+	 * Test that the underlying stream is closed once the reading stops, even if it wasn't read to the end.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCloseStopsReading() throws Exception {
+		AtomicBoolean underlyingClosed = new AtomicBoolean();
+		InputStream endless = new InputStream() {
+			@Override
+			public int read() {
+				return 0;
+			}
+
+			@Override
+			public void close() {
+				underlyingClosed.set(true);
+			}
+		};
+		InputStream in = new ReadAheadInputStream(endless);
+		assertEquals(0, in.read());
+		in.close();
+		assertTrue(underlyingClosed.get());
+	}
+}
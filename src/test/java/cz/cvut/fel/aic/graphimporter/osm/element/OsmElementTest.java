@@ -0,0 +1,158 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.element;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OsmElementTest {
+
+	private static final TagDictionary DICTIONARY = TagDictionary.getInstance();
+
+	/**
+	 * Free-form values aren't added to the dictionary, keys and common values are.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testDictionary() throws Exception {
+		int size = DICTIONARY.size();
+		OsmWay way = new OsmWay(1);
+		for (int i = 0; i < 100; i++) {
+			way.addTag("name", "Street " + i);
+		}
+		way.addTag("highway", "residential");
+		assertTrue(DICTIONARY.size() <= size + 2);
+		assertEquals(TagDictionary.NO_CODE, DICTIONARY.getCode("Street 99"));
+		assertEquals("Street 99", way.getTag("name"));
+
+		int keyCode = DICTIONARY.getCode("highway");
+		int valueCode = DICTIONARY.getCode("residential");
+		assertTrue(keyCode != TagDictionary.NO_CODE);
+		assertTrue(valueCode != TagDictionary.NO_CODE);
+		assertTrue(way.hasTag(keyCode));
+		assertTrue(way.hasTag(keyCode, valueCode));
+		assertFalse(way.hasTag(keyCode, DICTIONARY.getCode("primary")));
+		assertEquals(valueCode, way.getTagCode(keyCode));
+		assertEquals(TagDictionary.NO_CODE, way.getTagCode(DICTIONARY.getCode("name")));
+		assertFalse(way.hasTag(DICTIONARY.internKey("surface")));
+	}
+
+	/**
+	 * A value registered after the element was read is found by its code.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRegisteredValue() throws Exception {
+		OsmWay way = new OsmWay(1);
+		way.addTag("maxspeed:test", "37 mph");
+		int keyCode = DICTIONARY.getCode("maxspeed:test");
+		assertEquals(TagDictionary.NO_CODE, way.getTagCode(keyCode));
+
+		int valueCode = DICTIONARY.registerValue("37 mph");
+		assertTrue(way.hasTag(keyCode, valueCode));
+		assertEquals(valueCode, way.getValueCode(0));
+		assertEquals(keyCode, way.getKeyCode(0));
+	}
+
+	@Test
+	public void testTagMap() throws Exception {
+		OsmWay way = new OsmWay(1);
+		Map<String, String> tags = way.getTags();
+		assertSame(tags, way.getTags());
+
+		way.addTag("highway", "primary");
+		way.addTag("name", "Main street");
+		way.addTag("oneway", "yes");
+		assertEquals(3, tags.size());
+		assertEquals("Main street", tags.get("name"));
+
+		assertEquals("Main street", tags.remove("name"));
+		assertNull(tags.remove("name"));
+		assertEquals(2, way.getTagCount());
+		assertNull(way.getTag("name"));
+		assertEquals("primary", tags.get("highway"));
+		assertEquals("yes", tags.get("oneway"));
+
+		assertEquals("yes", tags.put("oneway", "no"));
+		assertEquals("no", way.getTag("oneway"));
+
+		tags.clear();
+		assertTrue(tags.isEmpty());
+		way.addTag("highway", "service");
+		assertEquals("service", tags.get("highway"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testTagMapIteratorRemove() throws Exception {
+		OsmWay way = new OsmWay(1);
+		way.addTag("highway", "primary");
+		Iterator<String> keys = way.getTags().keySet().iterator();
+		keys.next();
+		keys.remove();
+	}
+
+	/**
+	 * A reused element doesn't keep anything of the previous element and its copy isn't affected by the reuse.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReset() throws Exception {
+		OsmWay way = new OsmWay(1);
+		way.addTag("highway", "primary");
+		way.addTag("name", "Main street");
+		for (long node = 1; node <= 20; node++) {
+			way.addNode(node);
+		}
+		OsmWay copy = way.copy();
+
+		way.reset(2);
+		way.addTag("oneway", "yes");
+		way.addNode(30);
+		way.addNode(31);
+
+		assertEquals(2, way.getId());
+		assertEquals(Collections.singletonMap("oneway", "yes"), way.getTags());
+		assertEquals(Arrays.asList(30L, 31L), way.getNodes());
+		assertNull(way.getTag("name"));
+
+		assertEquals(1, copy.getId());
+		assertEquals(2, copy.getTagCount());
+		assertEquals("Main street", copy.getTag("name"));
+		assertEquals(20, copy.getNodeCount());
+		assertEquals(20, copy.getNode(19));
+
+		OsmRelation relation = new OsmRelation(1);
+		relation.addTag("type", "restriction");
+		relation.addMember(OsmRelation.MemberType.WAY, 10, "from");
+		relation.reset(2);
+		relation.addNode(3);
+
+		assertTrue(relation.getTags().isEmpty());
+		assertEquals(1, relation.getMemberCount());
+		assertEquals(OsmRelation.MemberType.NODE, relation.getMemberType(0));
+		assertEquals("", relation.getMemberRole(0));
+	}
+}
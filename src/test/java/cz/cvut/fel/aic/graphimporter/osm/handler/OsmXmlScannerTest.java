@@ -0,0 +1,202 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.handler;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.OsmReader;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmElement;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmNode;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmRelation;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OsmXmlScannerTest {
+
+	/**
+	 * The scanner has to produce the same elements as the SAX reader. The fixture contains entities, character
+	 * references, non-ASCII characters, single-quoted attributes, self-closing and open elements, coordinates with
+	 * signs and exponents and relation members with and without roles.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameAsSax() throws Exception {
+		List<String> expected = read(new OsmXmlReader());
+		assertEquals(8, expected.size());
+		assertEquals("node 2 -33.8688197 -151.2092955 {name=Náměstí Míru & okolí, note=quote \"x\" <y> 'z' é€\uD83D"
+				+ "\uDE00}", expected.get(1));
+
+		assertEquals(expected, read(new OsmXmlScanner()));
+		assertEquals(expected, read(new OsmXmlScanner(true)));
+	}
+
+	/**
+	 * Only the needed elements and tags are read with a profile.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameAsSaxWithProfile() throws Exception {
+		ParseProfile profile = new ParseProfile(true, Collections.emptySet(), true, Collections.singleton("highway"),
+				false, null);
+		List<String> expected = read(new OsmXmlReader(), profile);
+		assertEquals(6, expected.size());
+		assertEquals("way 10 {highway=residential} [1, 2, 3]", expected.get(4));
+
+		assertEquals(expected, read(new OsmXmlScanner(), profile));
+	}
+
+	/**
+	 * The buffer is refilled in the middle of the tags when the stream returns one byte at a time.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSmallReads() throws Exception {
+		List<String> expected = read(new OsmXmlReader());
+		ElementRecorder recorder = new ElementRecorder();
+		try (InputStream stream = new OneByteInputStream(getClass().getResourceAsStream("scanner_test.osm"))) {
+			new OsmXmlScanner().read(stream, recorder);
+		}
+		assertEquals(expected, recorder.elements);
+	}
+
+	/**
+	 * Readers reusing the elements mustn't leak tags, nodes or members of the previous element of the same type.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReusedElements() throws Exception {
+		for (OsmReader reader : new OsmReader[]{new OsmXmlReader(true), new OsmXmlScanner(true)}) {
+			List<String> elements = read(reader);
+			assertEquals("node 3 50.0 14.42 {}", elements.get(2));
+			assertEquals("node -4 0.0 -1.0E-7 {ref=multi line value, maxspeed=50}", elements.get(3));
+			assertEquals("way 11 {oneway=yes} [3, -4]", elements.get(5));
+			assertEquals("relation 21 {} []", elements.get(7));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testCdata() throws Exception {
+		readString("<osm><node id=\"1\" lat=\"0\" lon=\"0\"><![CDATA[text]]></node></osm>");
+	}
+
+	@Test(expected = IOException.class)
+	public void testDoctype() throws Exception {
+		readString("<!DOCTYPE osm [<!ENTITY e \"x\">]><osm><node id=\"1\" lat=\"0\" lon=\"0\"/></osm>");
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownEntity() throws Exception {
+		readString("<osm><node id=\"1\" lat=\"0\" lon=\"0\"><tag k=\"a\" v=\"&e;\"/></node></osm>");
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedEncoding() throws Exception {
+		readString("<?xml version=\"1.0\" encoding=\"ISO-8859-2\"?><osm></osm>");
+	}
+
+	private static void readString(String xml) throws IOException {
+		new OsmXmlScanner().read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+				new ElementRecorder());
+	}
+
+	private List<String> read(OsmReader reader) throws IOException {
+		return read(reader, ParseProfile.ALL);
+	}
+
+	private List<String> read(OsmReader reader, ParseProfile profile) throws IOException {
+		ElementRecorder recorder = new ElementRecorder();
+		try (InputStream stream = getClass().getResourceAsStream("scanner_test.osm")) {
+			reader.read(stream, recorder, profile);
+		}
+		return recorder.elements;
+	}
+
+	/**
+	 * Records the elements as strings when they are accepted, so the reused elements can be compared too.
+	 */
+	private static class ElementRecorder implements OsmElementConsumer {
+
+		private final List<String> elements = new ArrayList<>();
+
+		@Override
+		public void accept(OsmNode node) {
+			elements.add("node " + node.getId() + " " + node.getLat() + " " + node.getLon() + " " + tags(node));
+		}
+
+		@Override
+		public void accept(OsmWay way) {
+			elements.add("way " + way.getId() + " " + tags(way) + " " + way.getNodes());
+		}
+
+		@Override
+		public void accept(OsmRelation relation) {
+			List<String> members = new ArrayList<>();
+			for (int i = 0; i < relation.getMemberCount(); i++) {
+				members.add(relation.getMemberType(i) + ":" + relation.getMemberId(i) + ":"
+						+ relation.getMemberRole(i));
+			}
+			elements.add("relation " + relation.getId() + " " + tags(relation) + " " + members);
+		}
+
+		private static String tags(OsmElement element) {
+			List<String> tags = new ArrayList<>();
+			for (Map.Entry<String, String> tag : element.getTags().entrySet()) {
+				tags.add(tag.getKey() + "=" + tag.getValue());
+			}
+			return "{" + String.join(", ", tags) + "}";
+		}
+	}
+
+	private static class OneByteInputStream extends InputStream {
+
+		private final InputStream in;
+
+		OneByteInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return len == 0 ? 0 : in.read(b, off, 1);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.pbf;
+
+import cz.cvut.fel.aic.graphimporter.osm.OsmElementConsumer;
+import cz.cvut.fel.aic.graphimporter.osm.ParseProfile;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmNode;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmRelation;
+import cz.cvut.fel.aic.graphimporter.osm.element.OsmWay;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PbfReaderTest {
+
+	/**
+	 * Test of a profile without node tags and relations.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadWithProfile() throws Exception {
+		ElementCollector collector = new ElementCollector();
+		ParseProfile profile = new ParseProfile(true, Collections.emptySet(), true, null, false, null);
+		new PbfReader(1).read(new ByteArrayInputStream(createFile()), collector, profile);
+
+		assertEquals(3, collector.nodes.size());
+		assertTrue(collector.nodes.get(0).getTags().isEmpty());
+		assertEquals(1, collector.ways.size());
+		assertEquals("residential", collector.ways.get(0).getTags().get("highway"));
+		assertTrue(collector.relations.isEmpty());
+	}
+
+	/**
+	 * Test of a file with one zlib compressed data block containing dense nodes, a way and a relation.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRead() throws Exception {
+		testRead(new PbfReader(1));
+	}
+
+	/**
+	 * The same as {@link #testRead()}, but the block is decoded by a worker thread.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadInParallel() throws Exception {
+		testRead(new PbfReader(4));
+	}
+
+	private void testRead(PbfReader reader) throws Exception {
+		ElementCollector collector = new ElementCollector();
+		reader.read(new ByteArrayInputStream(createFile()), collector);
+
+		assertEquals(3, collector.nodes.size());
+		OsmNode node = collector.nodes.get(0);
+		assertEquals(1, node.getId());
+		assertEquals(50.0812345, node.getLat(), 0);
+		assertEquals(14.4205678, node.getLon(), 0);
+		assertEquals("100", node.getTags().get("height"));
+		assertTrue(collector.nodes.get(1).getTags().isEmpty());
+		assertEquals(3, collector.nodes.get(2).getId());
+		assertEquals(-0.0000001, collector.nodes.get(2).getLon(), 0);
+
+		assertEquals(1, collector.ways.size());
+		OsmWay way = collector.ways.get(0);
+		assertEquals(10, way.getId());
+		assertEquals(Arrays.asList(1L, 2L, 3L), way.getNodes());
+		assertEquals("residential", way.getTags().get("highway"));
+
+		assertEquals(1, collector.relations.size());
+		assertEquals(20, collector.relations.get(0).getId());
+		OsmRelation relation = collector.relations.get(0);
+		assertEquals(2, relation.getMemberCount());
+		assertEquals(OsmRelation.MemberType.WAY, relation.getMemberType(0));
+		assertEquals(10, relation.getMemberId(0));
+		assertEquals("from", relation.getMemberRole(0));
+		assertEquals(OsmRelation.MemberType.NODE, relation.getMemberType(1));
+		assertEquals(2, relation.getMemberId(1));
+		assertEquals("", relation.getMemberRole(1));
+	}
+
+	/**
+	 * Test that the file requiring a feature the reader can't handle is refused.
+	 *
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void testUnsupportedFeature() throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		writeBlob(file, "OSMHeader", new Message().string(4, "OsmSchema-V0.6").string(4, "HistoricalInformation")
+				.toByteArray());
+		new PbfReader().read(new ByteArrayInputStream(file.toByteArray()), new ElementCollector());
+	}
+
+	private static byte[] createFile() throws IOException {
+		Message stringTable = new Message();
+		for (String s : new String[]{"", "highway", "residential", "height", "100", "from"}) {
+			stringTable.string(1, s);
+		}
+
+		Message dense = new Message()
+				.packedSInt64(1, 1, 1, 1)
+				.packedSInt64(8, 500812345, 1, -500812346)
+				.packedSInt64(9, 144205678, 1, -144205680)
+				.packedInt32(10, 3, 4, 0, 0, 0);
+		Message way = new Message()
+				.varint(1, 10)
+				.packedInt32(2, 1)
+				.packedInt32(3, 2)
+				.packedSInt64(8, 1, 1, 1);
+		Message relation = new Message()
+				.varint(1, 20)
+				.packedInt32(8, 5, 0)
+				.packedSInt64(9, 10, -8)
+				.packedInt32(10, 1, 0);
+
+		Message block = new Message()
+				.message(1, stringTable)
+				.message(2, new Message().message(2, dense))
+				.message(2, new Message().message(3, way))
+				.message(2, new Message().message(4, relation));
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		writeBlob(file, "OSMHeader", new Message().string(4, "OsmSchema-V0.6").string(4, "DenseNodes").toByteArray());
+		writeBlob(file, "OSMData", block.toByteArray());
+		return file.toByteArray();
+	}
+
+	private static void writeBlob(ByteArrayOutputStream file, String type, byte[] content) throws IOException {
+		Deflater deflater = new Deflater();
+		deflater.setInput(content);
+		deflater.finish();
+		byte[] buffer = new byte[content.length + 64];
+		int compressedLength = deflater.deflate(buffer);
+		deflater.end();
+
+		byte[] blob = new Message().varint(2, content.length).bytes(3, Arrays.copyOf(buffer, compressedLength))
+				.toByteArray();
+		byte[] header = new Message().string(1, type).varint(3, blob.length).toByteArray();
+
+		file.write(header.length >>> 24);
+		file.write(header.length >>> 16);
+		file.write(header.length >>> 8);
+		file.write(header.length);
+		file.write(header);
+		file.write(blob);
+	}
+
+	/**
+	 * Minimal protocol buffers writer for the test data.
+	 */
+	private static class Message {
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Message varint(int field, long value) {
+			writeVarint(out, field << 3);
+			writeVarint(out, value);
+			return this;
+		}
+
+		Message bytes(int field, byte[] value) {
+			writeVarint(out, field << 3 | 2);
+			writeVarint(out, value.length);
+			out.write(value, 0, value.length);
+			return this;
+		}
+
+		Message string(int field, String value) {
+			return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		Message message(int field, Message message) {
+			return bytes(field, message.toByteArray());
+		}
+
+		Message packedInt32(int field, int... values) {
+			ByteArrayOutputStream packed = new ByteArrayOutputStream();
+			for (int value : values) {
+				writeVarint(packed, value);
+			}
+			return bytes(field, packed.toByteArray());
+		}
+
+		Message packedSInt64(int field, long... values) {
+			ByteArrayOutputStream packed = new ByteArrayOutputStream();
+			for (long value : values) {
+				writeVarint(packed, (value << 1) ^ (value >> 63));
+			}
+			return bytes(field, packed.toByteArray());
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+
+		private static void writeVarint(ByteArrayOutputStream out, long value) {
+			while ((value & ~0x7FL) != 0) {
+				out.write((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.write((int) value);
+		}
+	}
+
+	private static class ElementCollector implements OsmElementConsumer {
+
+		private final List<OsmNode> nodes = new ArrayList<>();
+		private final List<OsmWay> ways = new ArrayList<>();
+		private final List<OsmRelation> relations = new ArrayList<>();
+
+		@Override
+		public void accept(OsmNode node) {
+			nodes.add(node);
+		}
+
+		@Override
+		public void accept(OsmWay way) {
+			ways.add(way);
+		}
+
+		@Override
+		public void accept(OsmRelation relation) {
+			relations.add(relation);
+		}
+	}
+}
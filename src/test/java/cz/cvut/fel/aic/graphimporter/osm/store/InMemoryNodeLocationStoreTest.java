@@ -0,0 +1,111 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.store;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class InMemoryNodeLocationStoreTest {
+
+	/**
+	 * The store starts small, so it's resized several times. Ids are sequential, negative and large, so the probing
+	 * sequences collide.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPutAndResize() throws Exception {
+		NodeLocationStore store = new InMemoryNodeLocationStore(1);
+		int count = 10000;
+		for (int i = 0; i < count; i++) {
+			store.put(getId(i), getLat(i), getLon(i), i);
+		}
+		assertEquals(count, store.size());
+		for (int i = 0; i < count; i++) {
+			long id = getId(i);
+			assertTrue(store.contains(id));
+			assertEquals(getLat(i), store.getLat(id), 1E-7);
+			assertEquals(getLon(i), store.getLon(id), 1E-7);
+			assertEquals(i, store.getElevation(id));
+		}
+	}
+
+	@Test
+	public void testMissingIds() throws Exception {
+		NodeLocationStore store = new InMemoryNodeLocationStore();
+		store.put(1, 50.1, 14.4, 200);
+
+		assertFalse(store.contains(2));
+		assertTrue(Double.isNaN(store.getLat(2)));
+		assertTrue(Double.isNaN(store.getLon(-1)));
+		assertEquals(0, store.getElevation(0));
+		assertFalse(store.contains(Long.MIN_VALUE));
+	}
+
+	@Test
+	public void testReplace() throws Exception {
+		NodeLocationStore store = new InMemoryNodeLocationStore();
+		store.put(7, 50.1, 14.4, 200);
+		store.put(7, -33.8688197, -151.2092955, -5);
+
+		assertEquals(1, store.size());
+		assertEquals(-33.8688197, store.getLat(7), 0);
+		assertEquals(-151.2092955, store.getLon(7), 0);
+		assertEquals(-5, store.getElevation(7));
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		NodeLocationStore store = new InMemoryNodeLocationStore(1);
+		for (int i = 0; i < 100; i++) {
+			store.put(i, 50, 14, 0);
+		}
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertFalse(store.contains(5));
+		store.put(5, 50, 14, 0);
+		assertEquals(1, store.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReservedId() throws Exception {
+		new InMemoryNodeLocationStore().put(Long.MIN_VALUE, 50, 14, 0);
+	}
+
+	private static long getId(int i) {
+		switch (i % 3) {
+			case 0:
+				return i;
+			case 1:
+				return -i;
+			default:
+				return (long) i << 40;
+		}
+	}
+
+	private static double getLat(int i) {
+		return new Random(i).nextDouble() * 180 - 90;
+	}
+
+	private static double getLon(int i) {
+		return new Random(-i).nextDouble() * 360 - 180;
+	}
+}
@@ -0,0 +1,106 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.osm.store;
+
+import java.io.File;
+import java.nio.file.Files;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MappedNodeLocationStoreTest {
+
+	/**
+	 * Number of nodes in one mapped segment of the store.
+	 */
+	private static final long SEGMENT_NODES = 1L << 26;
+
+	/**
+	 * Nodes around the segment boundary are stored in two different segments. The file is sparse, so the segments
+	 * don't take the disk space.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSegmentBoundary() throws Exception {
+		File directory = Files.createTempDirectory("mapped-store-test").toFile();
+		NodeLocationStore store = new MappedNodeLocationStore(directory);
+		try {
+			store.put(SEGMENT_NODES - 1, 50.0870000, 14.4210000, 250);
+			store.put(SEGMENT_NODES, -33.8688197, -151.2092955, -3);
+			store.put(0, 0, 0, 0);
+
+			assertEquals(3, store.size());
+			assertEquals(50.087, store.getLat(SEGMENT_NODES - 1), 0);
+			assertEquals(14.421, store.getLon(SEGMENT_NODES - 1), 0);
+			assertEquals(250, store.getElevation(SEGMENT_NODES - 1));
+			assertEquals(-33.8688197, store.getLat(SEGMENT_NODES), 0);
+			assertEquals(-151.2092955, store.getLon(SEGMENT_NODES), 0);
+			assertEquals(-3, store.getElevation(SEGMENT_NODES));
+			assertTrue(store.contains(0));
+			assertEquals(0, store.getLat(0), 0);
+
+			assertFalse(store.contains(SEGMENT_NODES + 1));
+			assertTrue(Double.isNaN(store.getLat(SEGMENT_NODES - 2)));
+			assertTrue(Double.isNaN(store.getLon(3 * SEGMENT_NODES)));
+			assertEquals(0, store.getElevation(3 * SEGMENT_NODES));
+			assertFalse(store.contains(-1));
+
+			store.put(SEGMENT_NODES, 1, 2, 3);
+			assertEquals(3, store.size());
+			assertEquals(1, store.getLat(SEGMENT_NODES), 0);
+		} finally {
+			store.clear();
+			directory.delete();
+		}
+	}
+
+	/**
+	 * The file is created with the first node and deleted by {@code clear}.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testClearDeletesFile() throws Exception {
+		File directory = Files.createTempDirectory("mapped-store-test").toFile();
+		try {
+			NodeLocationStore store = new MappedNodeLocationStore(directory);
+			assertEquals(0, directory.list().length);
+			store.put(10, 50, 14, 0);
+			assertEquals(1, directory.list().length);
+
+			store.clear();
+			assertEquals(0, directory.list().length);
+			assertEquals(0, store.size());
+			assertFalse(store.contains(10));
+
+			// the store can be used again
+			store.put(10, 50, 14, 0);
+			assertTrue(store.contains(10));
+			store.clear();
+			assertEquals(0, directory.list().length);
+		} finally {
+			directory.delete();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeId() throws Exception {
+		new MappedNodeLocationStore().put(-1, 50, 14, 0);
+	}
+}
@@ -0,0 +1,94 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.restriction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class TurnRestrictionIndexTest {
+
+	@Test
+	public void testQueries() {
+		TurnRestrictionIndex index = new TurnRestrictionIndex();
+		index.add(1, 2, 3, TurnRestrictionType.NO_LEFT_TURN);
+		index.add(5, 6, 7, TurnRestrictionType.ONLY_STRAIGHT_ON);
+		index.add(-4, 2, 1, TurnRestrictionType.NO_U_TURN);
+		index.add(1, 2, 3, TurnRestrictionType.NO_RIGHT_TURN);
+		index.sort();
+
+		assertEquals(3, index.size());
+		assertEquals(TurnRestrictionType.NO_LEFT_TURN, index.getRestriction(1, 2, 3));
+		assertEquals(TurnRestrictionType.NO_U_TURN, index.getRestriction(-4, 2, 1));
+		assertNull(index.getRestriction(3, 2, 1));
+
+		assertFalse(index.isTurnAllowed(1, 2, 3));
+		assertTrue(index.isTurnAllowed(1, 2, 4));
+		assertTrue(index.isTurnAllowed(5, 6, 7));
+		assertFalse(index.isTurnAllowed(5, 6, 8));
+		assertTrue(index.isTurnAllowed(4, 6, 8));
+	}
+
+	/**
+	 * Test of the sort of many restrictions with repeated turns, the first added restriction of each turn is kept.
+	 */
+	@Test
+	public void testSortMany() {
+		TurnRestrictionIndex index = new TurnRestrictionIndex();
+		Map<List<Long>, TurnRestrictionType> firstTypes = new HashMap<>();
+		TurnRestrictionType[] types = TurnRestrictionType.values();
+		Random random = new Random(1);
+		for (int i = 0; i < 5000; i++) {
+			long from = random.nextInt(20) - 10;
+			long via = random.nextInt(20);
+			long to = random.nextInt(20);
+			TurnRestrictionType type = types[random.nextInt(types.length)];
+			index.add(from, via, to, type);
+			firstTypes.putIfAbsent(Arrays.asList(from, via, to), type);
+		}
+		index.sort();
+
+		assertEquals(firstTypes.size(), index.size());
+		for (int i = 0; i < index.size(); i++) {
+			List<Long> turn = Arrays.asList(index.getFromNode(i), index.getViaNode(i), index.getToNode(i));
+			assertEquals(firstTypes.get(turn), index.getType(i));
+			if (i > 0) {
+				int comparison = Long.compare(index.getViaNode(i - 1), index.getViaNode(i));
+				if (comparison == 0) {
+					comparison = Long.compare(index.getFromNode(i - 1), index.getFromNode(i));
+				}
+				if (comparison == 0) {
+					comparison = Long.compare(index.getToNode(i - 1), index.getToNode(i));
+				}
+				assertTrue(comparison < 0);
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnsortedQuery() {
+		TurnRestrictionIndex index = new TurnRestrictionIndex();
+		index.add(1, 2, 3, TurnRestrictionType.NO_LEFT_TURN);
+		index.getRestriction(1, 2, 3);
+	}
+}
@@ -0,0 +1,80 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.structurebuilders;
+
+import cz.cvut.fel.aic.geographtools.GPSLocation;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PolylineStoreTest {
+
+	private static final GPSLocation A = new GPSLocation(50000000, 14000000, 100, 200, 1);
+	private static final GPSLocation B = new GPSLocation(50000010, 14000020, 300, 400, 2);
+	private static final GPSLocation C = new GPSLocation(50000030, 14000040, 500, 600, 3);
+
+	@Test
+	public void testAdd() {
+		PolylineStore store = new PolylineStore();
+		List<GPSLocation> first = store.add(Arrays.asList(A, B));
+		List<GPSLocation> second = store.add(Arrays.asList(B, C, A));
+
+		assertEquals(5, store.size());
+		assertEquals(Arrays.asList(A, B), first);
+		assertEquals(Arrays.asList(B, C, A), second);
+		assertEquals(300, second.get(0).getLatitudeProjected1E2());
+		assertEquals(3, second.get(1).elevation);
+	}
+
+	@Test
+	public void testReversed() {
+		PolylineStore.Polyline polyline = new PolylineStore().add(Arrays.asList(A, B, C));
+
+		assertEquals(Arrays.asList(C, B, A), polyline.reversed());
+		assertEquals(polyline, polyline.reversed().reversed());
+	}
+
+	/**
+	 * Only the relocated polylines are copied, the views of the same points share them in the new store.
+	 */
+	@Test
+	public void testRelocation() {
+		PolylineStore store = new PolylineStore();
+		store.add(Arrays.asList(A, B, C));
+		PolylineStore.Polyline used = store.add(Arrays.asList(C, A));
+		store.add(Arrays.asList(B, A));
+
+		PolylineStore.Relocation relocation = new PolylineStore.Relocation();
+		PolylineStore.Polyline relocated = relocation.relocate(used);
+		PolylineStore.Polyline reversed = relocation.relocate(used.reversed());
+		PolylineStore newStore = relocation.getStore();
+
+		assertEquals(2, newStore.size());
+		assertEquals(Arrays.asList(C, A), relocated);
+		assertEquals(Arrays.asList(A, C), reversed);
+		assertEquals(600, relocated.get(0).getLongitudeProjected1E2());
+		assertEquals(7, store.size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() {
+		new PolylineStore().add(Arrays.asList(A, B)).set(0, C);
+	}
+}
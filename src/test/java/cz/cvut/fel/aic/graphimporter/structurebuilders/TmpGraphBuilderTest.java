@@ -0,0 +1,299 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.structurebuilders;
+
+import cz.cvut.fel.aic.geographtools.GPSLocation;
+import cz.cvut.fel.aic.geographtools.Graph;
+import cz.cvut.fel.aic.geographtools.TransportMode;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.EdgeAttributes;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdge;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalEdgeBuilder;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNode;
+import cz.cvut.fel.aic.graphimporter.structurebuilders.internal.InternalNodeBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TmpGraphBuilderTest {
+
+	TmpGraphBuilder<InternalNode, InternalEdge> builder;
+
+	@Before
+	public void setUp() throws Exception {
+		builder = new TmpGraphBuilder<>();
+		for (int i = 0; i < 5; i++) {
+			GPSLocation location = new GPSLocation(50000000 + i, 14000000, 100 * i, 0, 0);
+			builder.addNode(new InternalNodeBuilder(i, 10 + i, location, new HashMap<>()));
+		}
+		addEdge(0, 1);
+		addEdge(1, 2);
+		addEdge(2, 1);
+		addEdge(3, 1);
+		addEdge(1, 3);
+	}
+
+	private void addEdge(int from, int to) {
+		builder.addEdge(new InternalEdgeBuilder(from, to, builder.getEdgeCount(), -1, 100,
+				Collections.singleton(TransportMode.CAR), 50, 1,
+				Arrays.asList(builder.getNode(from).location, builder.getNode(to).location), new HashMap<>()));
+	}
+
+	@Test
+	public void testAdjacency() throws Exception {
+		Assert.assertEquals(5, builder.getNodeCount());
+		Assert.assertEquals(5, builder.getEdgeCount());
+		Assert.assertEquals(11, builder.getNode(1).sourceId);
+		Assert.assertEquals(3, builder.getIntIdForSourceId(13));
+		Assert.assertEquals(Arrays.asList(2, 3), toIds(builder.getOutgoingEdges(1), false));
+		Assert.assertEquals(Arrays.asList(0, 2, 3), toIds(builder.getIncomingEdges(1), true));
+		Assert.assertTrue(builder.getOutgoingEdges(4).isEmpty());
+		Assert.assertTrue(builder.containsEdge(2, 1));
+		Assert.assertFalse(builder.containsEdge(1, 0));
+	}
+
+	@Test
+	public void testRemoveEdge() throws Exception {
+		builder.remove(builder.getEdge(1, 2));
+
+		Assert.assertEquals(4, builder.getEdgeCount());
+		Assert.assertFalse(builder.containsEdge(1, 2));
+		Assert.assertEquals(Collections.singletonList(3), toIds(builder.getOutgoingEdges(1), false));
+		Assert.assertTrue(builder.getIncomingEdges(2).isEmpty());
+		Assert.assertEquals(4, builder.getAllEdges().size());
+		Assert.assertEquals(4, builder.getEdgesById().size());
+	}
+
+	@Test
+	public void testEdgeOrder() throws Exception {
+		builder.remove(builder.getEdge(1, 2));
+		addEdge(1, 2);
+
+		List<Integer> from = new ArrayList<>();
+		for (EdgeBuilder<InternalEdge, InternalNode> edge : builder.getAllEdges()) {
+			from.add(edge.getTmpFromId());
+		}
+		Assert.assertEquals(Arrays.asList(0, 2, 3, 1, 1), from);
+	}
+
+	/**
+	 * Removal of most edges compacts the edge slots, the order, lookups and adjacency of the remaining edges are kept.
+	 */
+	@Test
+	public void testEdgeCompaction() throws Exception {
+		builder.remove(0, 1);
+		builder.remove(2, 1);
+		builder.remove(1, 2);
+		addEdge(4, 1);
+
+		List<Integer> from = new ArrayList<>();
+		for (EdgeBuilder<InternalEdge, InternalNode> edge : builder.getAllEdges()) {
+			from.add(edge.getTmpFromId());
+		}
+		Assert.assertEquals(Arrays.asList(3, 1, 4), from);
+		Assert.assertEquals(3, builder.getEdgeCount());
+		Assert.assertEquals(3, builder.getEdge(1, 3).getTmpToId());
+		Assert.assertEquals(Collections.singletonList(3), toIds(builder.getOutgoingEdges(1), false));
+		Assert.assertEquals(Arrays.asList(3, 4), toIds(builder.getIncomingEdges(1), true));
+		Assert.assertEquals(3, builder.createGraph().getAllEdges().size());
+
+		builder.remove(3, 1);
+		Assert.assertEquals(Collections.singletonList(4), toIds(builder.getIncomingEdges(1), true));
+		Assert.assertSame(builder.getEdge(4, 1), builder.getIncomingEdges(1).get(0));
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testCompactionDuringIteration() throws Exception {
+		for (EdgeBuilder<InternalEdge, InternalNode> edge : builder.getAllEdges()) {
+			builder.remove(edge);
+		}
+	}
+
+	@Test
+	public void testNodesByDegree() throws Exception {
+		Assert.assertEquals(Collections.singleton(1), builder.getNodesByInDegree().get(3));
+		Assert.assertEquals(Collections.singleton(4), builder.getNodesByDegree().get(0));
+		Assert.assertEquals(1, builder.removeIsolatedNodes());
+		Assert.assertNull(builder.getNode(4));
+		Assert.assertEquals(3, builder.getMaxId());
+	}
+
+	@Test
+	public void testNodesWithDegree() throws Exception {
+		Assert.assertArrayEquals(new int[]{2, 3}, builder.getNodesWithDegree(1, 1));
+		Assert.assertArrayEquals(new int[]{1}, builder.getNodesWithDegree(3, 2));
+
+		builder.remove(1, 2);
+		Assert.assertArrayEquals(new int[]{3}, builder.getNodesWithDegree(1, 1));
+		Assert.assertArrayEquals(new int[]{0, 2}, builder.getNodesWithDegree(0, 1));
+		Assert.assertEquals(3, builder.getInDegree(1));
+		Assert.assertEquals(1, builder.getOutDegree(1));
+	}
+
+	@Test
+	public void testSourceIds() throws Exception {
+		Assert.assertTrue(builder.containsNode(14));
+		Assert.assertFalse(builder.containsNode(15));
+
+		TmpGraphBuilder<InternalNode, InternalEdge> copy = new TmpGraphBuilder<>(builder);
+		Assert.assertEquals(2, copy.getIntIdForSourceId(12));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingSourceId() throws Exception {
+		builder.getIntIdForSourceId(15);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRemoveNodeWithEdges() throws Exception {
+		builder.removeNode(1);
+	}
+
+	@Test
+	public void testCreateGraph() throws Exception {
+		builder.removeEdges(edge -> edge.getTmpFromId() == 0);
+		Assert.assertTrue(builder.removeNode(0));
+		Assert.assertFalse(builder.removeNode(0));
+
+		Graph<InternalNode, InternalEdge> graph = builder.createGraph();
+		Assert.assertEquals(4, graph.getAllNodes().size());
+		Assert.assertEquals(4, graph.getAllEdges().size());
+	}
+
+	/**
+	 * The assigned max speed and lanes count are interned again, each built edge gets its own modifiable set of the
+	 * modes.
+	 */
+	@Test
+	public void testEdgeParams() throws Exception {
+		InternalEdgeBuilder changed = (InternalEdgeBuilder) builder.getEdge(1, 2);
+		InternalEdgeBuilder other = (InternalEdgeBuilder) builder.getEdge(2, 1);
+		Assert.assertTrue(changed.equalAttributes(other));
+		changed.allowedMaxSpeedInKmh = 30;
+		changed.lanesCount = 2;
+		Assert.assertFalse(changed.equalAttributes(other));
+		Assert.assertSame(EdgeAttributes.of(Collections.singleton(TransportMode.CAR), 30, 2), changed.getAttributes());
+
+		Graph<InternalNode, InternalEdge> graph = builder.createGraph();
+		List<EnumSet<TransportMode>> modes = new ArrayList<>();
+		for (InternalEdge edge : graph.getAllEdges()) {
+			if (edge.getFromNode().sourceId == 11 && edge.getToNode().sourceId == 12) {
+				Assert.assertEquals(30, (int) edge.get("allowedMaxSpeedInMpS"));
+				Assert.assertEquals(2, (int) edge.get("lanesCount"));
+			}
+			modes.add(edge.get("modeOfTransports"));
+		}
+		modes.get(0).add(TransportMode.WALK);
+		Assert.assertEquals(EnumSet.of(TransportMode.CAR, TransportMode.WALK), modes.get(0));
+		Assert.assertEquals(EnumSet.of(TransportMode.CAR), modes.get(1));
+		Assert.assertEquals(EnumSet.of(TransportMode.CAR), other.getAttributes().getModesOfTransport());
+	}
+
+	/**
+	 * The store of the built graph keeps only the shapes of the remaining edges.
+	 */
+	@Test
+	public void testPolylineRelocation() throws Exception {
+		PolylineStore store = builder.getPolylineStore();
+		InternalEdgeBuilder removed = (InternalEdgeBuilder) builder.getEdge(0, 1);
+		removed.coordinateList = store.add(removed.coordinateList);
+		InternalEdgeBuilder forward = (InternalEdgeBuilder) builder.getEdge(1, 2);
+		InternalEdgeBuilder backward = (InternalEdgeBuilder) builder.getEdge(2, 1);
+		List<GPSLocation> shape = Arrays.asList(builder.getNode(1).location, builder.getNode(4).location,
+				builder.getNode(2).location);
+		PolylineStore.Polyline polyline = store.add(shape);
+		forward.coordinateList = polyline;
+		backward.coordinateList = polyline.reversed();
+		builder.remove(removed);
+
+		Graph<InternalNode, InternalEdge> graph = builder.createGraph();
+		Assert.assertEquals(3, builder.getPolylineStore().size());
+		Assert.assertEquals(5, store.size());
+		Assert.assertEquals(shape, forward.coordinateList);
+		for (InternalEdge edge : graph.getAllEdges()) {
+			if (edge.getFromNode().sourceId == 11 && edge.getToNode().sourceId == 12) {
+				Assert.assertEquals(shape, edge.get("coordinateList"));
+			}
+		}
+		Assert.assertEquals(Arrays.asList(builder.getNode(2).location, builder.getNode(4).location,
+				builder.getNode(1).location), backward.coordinateList);
+	}
+
+	@Test
+	public void testParallelBuildOrder() throws Exception {
+		builder = new TmpGraphBuilder<>();
+		int nodeCount = 5000;
+		for (int i = 0; i < nodeCount; i++) {
+			GPSLocation location = new GPSLocation(50000000 + i, 14000000, 100 * i, 0, 0);
+			builder.addNode(new InternalNodeBuilder(i, 100000 + i, location, new HashMap<>()));
+		}
+		for (int i = 0; i + 1 < nodeCount; i++) {
+			if (i % 7 != 0) {
+				addEdge(i, i + 1);
+			}
+			if (i % 11 == 0) {
+				addEdge(i + 1, i);
+			}
+		}
+		builder.removeEdges(edge -> edge.getTmpFromId() % 13 == 0);
+		builder.removeIsolatedNodes();
+
+		// expected order is the sequential one: tmp id order of the nodes, insertion order of the edges
+		List<Long> expectedNodes = new ArrayList<>();
+		for (NodeBuilder<InternalNode> node : builder.getAllNodes()) {
+			expectedNodes.add(node.sourceId);
+		}
+		List<Long> expectedEdges = new ArrayList<>();
+		for (EdgeBuilder<InternalEdge, InternalNode> edge : builder.getAllEdges()) {
+			expectedEdges.add(builder.getNode(edge.getTmpFromId()).sourceId);
+			expectedEdges.add(builder.getNode(edge.getTmpToId()).sourceId);
+		}
+		Assert.assertTrue(expectedNodes.size() < nodeCount);
+
+		Graph<InternalNode, InternalEdge> graph = builder.createGraph();
+		List<Long> nodes = new ArrayList<>();
+		int id = 0;
+		for (InternalNode node : graph.getAllNodes()) {
+			Assert.assertEquals(id++, node.getId());
+			nodes.add(node.sourceId);
+		}
+		List<Long> edges = new ArrayList<>();
+		for (InternalEdge edge : graph.getAllEdges()) {
+			edges.add(edge.getFromNode().sourceId);
+			edges.add(edge.getToNode().sourceId);
+			Assert.assertSame(graph.getNode(edge.getFromNode().getId()), edge.getFromNode());
+		}
+		Assert.assertEquals(expectedNodes, nodes);
+		Assert.assertEquals(expectedEdges, edges);
+	}
+
+	private static List<Integer> toIds(List<EdgeBuilder<InternalEdge, InternalNode>> edges, boolean from) {
+		List<Integer> ids = new ArrayList<>();
+		for (EdgeBuilder<InternalEdge, InternalNode> edge : edges) {
+			ids.add(from ? edge.getTmpFromId() : edge.getTmpToId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,72 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.structurebuilders.internal;
+
+import cz.cvut.fel.aic.geographtools.TransportMode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class EdgeAttributesTest {
+
+	@Test
+	public void testInterning() {
+		EdgeAttributes attributes = EdgeAttributes.of(EnumSet.of(TransportMode.CAR, TransportMode.BIKE), 50, 2);
+
+		assertSame(attributes, EdgeAttributes.of(new HashSet<>(EnumSet.of(TransportMode.BIKE, TransportMode.CAR)),
+				50, 2));
+		assertNotSame(attributes, EdgeAttributes.of(EnumSet.of(TransportMode.CAR), 50, 2));
+		assertNotSame(attributes, EdgeAttributes.of(EnumSet.of(TransportMode.CAR, TransportMode.BIKE), 30, 2));
+	}
+
+	@Test
+	public void testWithAddedModes() {
+		EdgeAttributes attributes = EdgeAttributes.of(EnumSet.of(TransportMode.CAR), 50, 1);
+
+		assertSame(attributes, attributes.withAddedModes(Collections.singleton(TransportMode.CAR)));
+		EdgeAttributes extended = attributes.withAddedModes(EnumSet.of(TransportMode.WALK));
+		assertSame(EdgeAttributes.of(EnumSet.of(TransportMode.CAR, TransportMode.WALK), 50, 1), extended);
+		assertEquals(EnumSet.of(TransportMode.CAR), attributes.getModesOfTransport());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testModesUnmodifiable() {
+		Set<TransportMode> modes = EdgeAttributes.of(EnumSet.of(TransportMode.CAR), 50, 1).getModesOfTransport();
+		modes.add(TransportMode.BUS);
+	}
+
+	@Test
+	public void testDeserializedInstanceIsCanonical() throws Exception {
+		EdgeAttributes attributes = EdgeAttributes.of(EnumSet.of(TransportMode.TRAM), 40, 1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(attributes);
+		}
+		try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertSame(attributes, input.readObject());
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.util;
+
+import cz.cvut.fel.aic.geographtools.GPSLocation;
+import cz.cvut.fel.aic.geographtools.util.GPSLocationTools;
+import cz.cvut.fel.aic.geographtools.util.Transformer;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class BatchProjectionTest {
+
+	/**
+	 * Test that the batch spanning more chunks gives the same locations in the same order as the projection of the
+	 * single points, also for the second batch reusing the arrays.
+	 */
+	@Test
+	public void testProjectMatchesSinglePoints() throws Exception {
+		Transformer projection = new Transformer(32633);
+		BatchProjection batch = new BatchProjection(projection);
+		Random random = new Random(42);
+		for (int size : new int[]{2500, 1025}) {
+			double[][] coordinates = new double[size][];
+			for (int i = 0; i < size; i++) {
+				coordinates[i] = new double[]{49 + random.nextDouble() * 2, 13 + random.nextDouble() * 5, i % 300};
+				assertEquals(i, batch.add(coordinates[i][0], coordinates[i][1], (int) coordinates[i][2]));
+			}
+			assertEquals(size, batch.size());
+
+			GPSLocation[] locations = batch.project();
+
+			assertEquals(0, batch.size());
+			assertEquals(size, locations.length);
+			for (int i = 0; i < size; i++) {
+				GPSLocation expected = GPSLocationTools.createGPSLocation(coordinates[i][0], coordinates[i][1],
+						(int) coordinates[i][2], projection);
+				assertEquals(expected, locations[i]);
+				assertEquals(expected.getLatitudeProjected(), locations[i].getLatitudeProjected(), 0);
+				assertEquals(expected.getLongitudeProjected(), locations[i].getLongitudeProjected(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testProjectEmpty() throws Exception {
+		assertEquals(0, new BatchProjection(new Transformer(32633)).project().length);
+	}
+}
@@ -0,0 +1,72 @@
+/* 
+ * Copyright (C) 2017 Czech Technical University in Prague.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package cz.cvut.fel.aic.graphimporter.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LongIntHashMapTest {
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		LongIntHashMap map = new LongIntHashMap();
+		map.put(5L << 32 | 7, 1);
+		map.put(-1, 2);
+		map.put(5L << 32 | 7, 3);
+
+		assertEquals(2, map.size());
+		assertEquals(3, map.getOrDefault(5L << 32 | 7, -1));
+		assertEquals(2, map.getOrDefault(-1, -1));
+		assertEquals(-1, map.getOrDefault(7L << 32 | 5, -1));
+		assertFalse(map.containsKey(0));
+	}
+
+	/**
+	 * Test that the entries of the probe sequences stay reachable after the removals, compared with a
+	 * {@link HashMap}.
+	 */
+	@Test
+	public void testRemove() throws Exception {
+		LongIntHashMap map = new LongIntHashMap(4);
+		Map<Long, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 20000; i++) {
+			long key = random.nextInt(2000);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key) != null, map.remove(key));
+			} else {
+				map.put(key, i);
+				expected.put(key, i);
+			}
+		}
+
+		assertEquals(expected.size(), map.size());
+		for (long key = 0; key < 2000; key++) {
+			assertEquals(expected.getOrDefault(key, -1).intValue(), map.getOrDefault(key, -1));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReservedKey() throws Exception {
+		new LongIntHashMap().put(Long.MIN_VALUE, 0);
+	}
+}